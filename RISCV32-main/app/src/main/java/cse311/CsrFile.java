@@ -0,0 +1,146 @@
+package cse311;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Control and Status Register file.
+ * All 4096 CSRs live in one dense int array; per-CSR behaviour (minimum
+ * privilege, read-only bits, legal-value mask, write side effect) comes from
+ * a static descriptor table, so reads, writes and trap entry never box or
+ * hash.
+ */
+public class CsrFile {
+    public static final int SIZE = 4096;
+
+    // Side-effect hooks run after an instruction writes a CSR
+    private static final int HOOK_NONE = 0;
+    private static final int HOOK_MSTATUS = 1; // Mirror the S-mode view into SSTATUS
+    private static final int HOOK_SSTATUS = 2; // Merge the S-mode view back into MSTATUS
+
+    // MSTATUS bits visible through SSTATUS: SIE, SPIE, SPP, SUM, MXR
+    private static final int SSTATUS_MASK = 0x000C0122;
+
+    /**
+     * Static description of one CSR.
+     */
+    private static final class Descriptor {
+        final int privilege; // Lowest privilege mode allowed to access it
+        final int readOnlyMask; // Bits that ignore writes
+        final int legalMask; // WARL: writable bits outside the mask read as zero
+        final int hook;
+
+        Descriptor(int privilege, int readOnlyMask, int legalMask, int hook) {
+            this.privilege = privilege;
+            this.readOnlyMask = readOnlyMask;
+            this.legalMask = legalMask;
+            this.hook = hook;
+        }
+    }
+
+    private static final Descriptor[] DESCRIPTORS = new Descriptor[SIZE];
+
+    static {
+        // Defaults follow the address encoding: bits 9:8 give the privilege
+        // level and bits 11:10 == 0b11 mark the read-only range
+        for (int address = 0; address < SIZE; address++) {
+            int privilege = (address >> 8) & 0x3;
+            int readOnly = ((address >> 10) & 0x3) == 0x3 ? ~0 : 0;
+            DESCRIPTORS[address] = new Descriptor(privilege, readOnly, ~0, HOOK_NONE);
+        }
+
+        define(RV32Cpu.MSTATUS, 0, ~0, HOOK_MSTATUS);
+        define(RV32Cpu.SSTATUS, 0, SSTATUS_MASK, HOOK_SSTATUS);
+        define(RV32Cpu.MISA, ~0, ~0, HOOK_NONE); // Fixed ISA, writes are ignored
+        define(RV32Cpu.MEPC, 0, ~0x3, HOOK_NONE); // IALIGN = 32
+        define(RV32Cpu.SEPC, 0, ~0x3, HOOK_NONE);
+    }
+
+    private static void define(int address, int readOnlyMask, int legalMask, int hook) {
+        int privilege = DESCRIPTORS[address].privilege;
+        DESCRIPTORS[address] = new Descriptor(privilege, readOnlyMask, legalMask, hook);
+    }
+
+    private final int[] values = new int[SIZE];
+
+    /**
+     * Whether the CSR may be accessed from a privilege mode.
+     */
+    public boolean isAccessible(int address, int privilegeMode) {
+        return privilegeMode >= DESCRIPTORS[address].privilege;
+    }
+
+    /**
+     * Whether an instruction may write the CSR at all. CSRs in the read-only
+     * address range trap on writes; elsewhere read-only bits are just ignored.
+     */
+    public boolean isWritable(int address) {
+        return ((address >> 10) & 0x3) != 0x3;
+    }
+
+    /**
+     * Raw read, without privilege checks.
+     */
+    public int get(int address) {
+        return values[address];
+    }
+
+    /**
+     * Raw write, bypassing masks and side effects (trap entry/exit and reset).
+     */
+    public void set(int address, int value) {
+        values[address] = value;
+    }
+
+    /**
+     * Write on behalf of a CSR instruction: read-only bits keep their value,
+     * illegal bits read back as zero, and the CSR's side effect is applied.
+     */
+    public void write(int address, int value) {
+        Descriptor d = DESCRIPTORS[address];
+        int oldValue = values[address];
+        int newValue = (oldValue & d.readOnlyMask) | (value & ~d.readOnlyMask & d.legalMask);
+        values[address] = newValue;
+
+        switch (d.hook) {
+            case HOOK_MSTATUS:
+                values[RV32Cpu.SSTATUS] = newValue & SSTATUS_MASK;
+                break;
+            case HOOK_SSTATUS:
+                values[RV32Cpu.MSTATUS] = (values[RV32Cpu.MSTATUS] & ~SSTATUS_MASK) | (newValue & SSTATUS_MASK);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Save the non-zero CSRs as (address, value) pairs.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        int count = 0;
+        for (int value : values) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int address = 0; address < SIZE; address++) {
+            if (values[address] != 0) {
+                out.writeShort(address);
+                out.writeInt(values[address]);
+            }
+        }
+    }
+
+    public void readState(DataInput in) throws IOException {
+        Arrays.fill(values, 0);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int address = in.readUnsignedShort();
+            values[address] = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package cse311;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Predecoded instruction cache keyed by physical address.
+ * Each cached 4 KiB page holds one packed entry per instruction slot:
+ * the handler id and register fields, plus the single immediate the
+ * handler needs. Writes to physical memory invalidate the affected entry,
+ * so self-modifying code and frame reuse are handled transparently.
+ *
+ * Pages that also hold compiled blocks are tracked separately; the first
+ * invalidation touching such a page reports it to the translation
+ * listener so the block cache can drop its code as well.
+ */
+public class DecodeCache {
+    public static final int PAGE_SHIFT = 12;
+    public static final int ENTRIES_PER_PAGE = 1 << (PAGE_SHIFT - 2); // 1024 words per page
+
+    // Set on every filled entry so that an all-zero slot means "not decoded"
+    public static final int VALID = 1 << 31;
+
+    private static final int SLOTS = 64; // Direct-mapped, 64 pages = 256 KiB of code
+    private static final int EMPTY = -1;
+
+    private final int[] tags = new int[SLOTS]; // Physical page number held by each slot
+    private final int[][] ops = new int[SLOTS][ENTRIES_PER_PAGE];
+    private final int[][] imms = new int[SLOTS][ENTRIES_PER_PAGE];
+
+    private final BitSet translatedPages = new BitSet(); // Physical pages with compiled blocks
+    private IntConsumer translationListener;
+    private final int addressMask; // Bus address bits that select physical memory
+
+    public DecodeCache() {
+        this(0x7FFFFFFF);
+    }
+
+    /**
+     * @param addressMask Mask applied to bus addresses before keying, matching
+     *                    the backing memory's {@link SimpleMemory#getAddressMask()}
+     */
+    public DecodeCache(int addressMask) {
+        this.addressMask = addressMask;
+        Arrays.fill(tags, EMPTY);
+    }
+
+    /**
+     * SimpleMemory folds the 0x80000000+ window onto low memory, so the
+     * physical index of a bus address is just its low 31 bits. Memories
+     * larger than 2 GiB use all 32.
+     */
+    private int physicalPage(int address) {
+        return (address & addressMask) >>> PAGE_SHIFT;
+    }
+
+    public int getAddressMask() {
+        return addressMask;
+    }
+
+    private static int entryIndex(int address) {
+        return (address >>> 2) & (ENTRIES_PER_PAGE - 1);
+    }
+
+    /**
+     * Look up the packed entry for the instruction at a physical address.
+     *
+     * @return The packed entry, or 0 if the instruction is not cached
+     */
+    public int lookup(int physicalAddress) {
+        int ppn = physicalPage(physicalAddress);
+        int slot = ppn & (SLOTS - 1);
+        if (tags[slot] != ppn) {
+            return 0;
+        }
+        return ops[slot][entryIndex(physicalAddress)];
+    }
+
+    /**
+     * Immediate of an entry previously returned by {@link #lookup(int)}.
+     */
+    public int immediate(int physicalAddress) {
+        int slot = physicalPage(physicalAddress) & (SLOTS - 1);
+        return imms[slot][entryIndex(physicalAddress)];
+    }
+
+    /**
+     * Store a decoded instruction, evicting whatever page held the slot.
+     */
+    public void fill(int physicalAddress, int packed, int immediate) {
+        int ppn = physicalPage(physicalAddress);
+        int slot = ppn & (SLOTS - 1);
+        if (tags[slot] != ppn) {
+            Arrays.fill(ops[slot], 0);
+            tags[slot] = ppn;
+        }
+        int index = entryIndex(physicalAddress);
+        ops[slot][index] = packed | VALID;
+        imms[slot][index] = immediate;
+    }
+
+    /**
+     * Register the callback told about writes to pages holding compiled code.
+     */
+    public void setTranslationListener(IntConsumer listener) {
+        this.translationListener = listener;
+    }
+
+    /**
+     * Record that a compiled block was built from this physical address.
+     */
+    public void markTranslated(int physicalAddress) {
+        translatedPages.set(physicalPage(physicalAddress));
+    }
+
+    private void dropTranslations(int ppn) {
+        if (translatedPages.get(ppn)) {
+            translatedPages.clear(ppn);
+            if (translationListener != null) {
+                translationListener.accept(ppn);
+            }
+        }
+    }
+
+    /**
+     * Drop the entry covering a written physical address (called on every
+     * store, so the miss path must stay a single compare).
+     */
+    public void invalidate(int physicalAddress) {
+        int ppn = physicalPage(physicalAddress);
+        int slot = ppn & (SLOTS - 1);
+        if (tags[slot] == ppn) {
+            ops[slot][entryIndex(physicalAddress)] = 0;
+        }
+        dropTranslations(ppn);
+    }
+
+    /**
+     * Drop the entries covering a store of length bytes, which touches two
+     * instruction words when misaligned.
+     */
+    public void invalidate(int physicalAddress, int length) {
+        invalidate(physicalAddress);
+        if (((physicalAddress & 3) + length) > 4) {
+            invalidate(physicalAddress + length - 1);
+        }
+    }
+
+    /**
+     * Drop a whole physical page (frame freed, remapped or bulk-copied).
+     */
+    public void invalidatePage(int ppn) {
+        int slot = ppn & (SLOTS - 1);
+        if (tags[slot] == ppn) {
+            tags[slot] = EMPTY;
+        }
+        dropTranslations(ppn);
+    }
+
+    /**
+     * Drop every page overlapping [physicalAddress, physicalAddress + length).
+     */
+    public void invalidateRange(int physicalAddress, int length) {
+        if (length <= 0) {
+            return;
+        }
+        int first = physicalPage(physicalAddress);
+        int last = physicalPage(physicalAddress + length - 1);
+        if (last - first >= SLOTS) {
+            invalidateAll();
+            return;
+        }
+        for (int ppn = first; ppn <= last; ppn++) {
+            invalidatePage(ppn);
+        }
+    }
+
+    public void invalidateAll() {
+        Arrays.fill(tags, EMPTY);
+        for (int ppn = translatedPages.nextSetBit(0); ppn >= 0; ppn = translatedPages.nextSetBit(ppn + 1)) {
+            dropTranslations(ppn);
+        }
+    }
+}
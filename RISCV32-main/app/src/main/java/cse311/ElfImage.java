@@ -0,0 +1,156 @@
+package cse311;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse311.ElfLoader.ElfSegment;
+import cse311.Exception.ElfException;
+
+/**
+ * A validated RISC-V ELF executable with its headers parsed: the file
+ * contents, the PT_LOAD segments, the entry point and the memory it needs.
+ * Immutable, so one image can be loaded into any number of processes.
+ *
+ * Images of files are read-only mappings of the file rather than heap
+ * copies, and segments are copied straight from the mapping into guest
+ * memory. The file must therefore be replaced (written elsewhere and
+ * renamed, as linkers do), not rewritten in place, while an image of it is
+ * in use.
+ */
+public final class ElfImage {
+    private static final int EM_RISCV = 243;
+    private static final int EI_DATA_LE = 1;
+    private static final int PT_LOAD = 1;
+
+    // Program Header Flags
+    private static final int PF_X = 1;
+    private static final int PF_W = 2;
+    private static final int PF_R = 4;
+
+    private final ByteBuffer data; // Read-only, little-endian
+    private final List<ElfSegment> segments;
+    private final int entryPoint;
+    private final int requiredMemory;
+
+    private ElfImage(ByteBuffer data, List<ElfSegment> segments, int entryPoint, int requiredMemory) {
+        this.data = data;
+        this.segments = segments;
+        this.entryPoint = entryPoint;
+        this.requiredMemory = requiredMemory;
+    }
+
+    /**
+     * Map an ELF file read-only and parse it in place.
+     */
+    public static ElfImage map(Path path) throws IOException, ElfException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Validate the ELF header and parse the program headers. The array is
+     * used, not copied.
+     */
+    public static ElfImage parse(byte[] data) throws ElfException {
+        return parse(ByteBuffer.wrap(data).asReadOnlyBuffer());
+    }
+
+    /**
+     * Parse the ELF file held by bytes 0 to capacity of data, which must
+     * not change afterwards.
+     */
+    public static ElfImage parse(ByteBuffer data) throws ElfException {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (!isValidHeader(buffer)) {
+            throw new ElfException("Invalid ELF file or not RISC-V");
+        }
+        int length = buffer.capacity();
+
+        // Parse Header Offsets
+        int programHeaderOffset = buffer.getInt(28);
+        int programHeaderEntrySize = buffer.getShort(42);
+        int programHeaderEntryCount = buffer.getShort(44);
+
+        List<ElfSegment> segments = new ArrayList<>();
+        int maxVirtualAddress = 0;
+        try {
+            for (int i = 0; i < programHeaderEntryCount; i++) {
+                int offset = programHeaderOffset + (i * programHeaderEntrySize);
+                if (buffer.getInt(offset) != PT_LOAD) {
+                    continue;
+                }
+
+                int fileOffset = buffer.getInt(offset + 4);
+                int virtualAddr = buffer.getInt(offset + 8);
+                // skip physical addr (offset + 12)
+                int fileSize = buffer.getInt(offset + 16);
+                int memorySize = buffer.getInt(offset + 20);
+                int flags = buffer.getInt(offset + 24);
+                if (fileSize < 0 || fileOffset < 0 || fileOffset > length - fileSize) {
+                    throw new ElfException("Segment at 0x" + Integer.toHexString(virtualAddr) + " is outside the file");
+                }
+
+                segments.add(new ElfSegment(virtualAddr, fileSize, memorySize,
+                        (flags & PF_R) != 0, (flags & PF_W) != 0, (flags & PF_X) != 0, fileOffset));
+                maxVirtualAddress = Math.max(maxVirtualAddress, virtualAddr + memorySize);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new ElfException("Program headers are outside the file");
+        }
+
+        // Align to 4KB page boundary just to be safe/clean
+        int requiredMemory = (maxVirtualAddress + 4095) & ~4095;
+        return new ElfImage(buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN),
+                Collections.unmodifiableList(segments), buffer.getInt(24), requiredMemory);
+    }
+
+    private static boolean isValidHeader(ByteBuffer buffer) {
+        if (buffer.capacity() < 52) { // Minimum size for 32-bit ELF header
+            return false;
+        }
+        return buffer.getInt(0) == 0x464C457F // 0x7F 'E' 'L' 'F'
+                && buffer.get(4) == 1 // 32-bit
+                && buffer.get(5) == EI_DATA_LE
+                && buffer.getShort(18) == EM_RISCV;
+    }
+
+    /**
+     * @return The file contents as a read-only little-endian buffer, read
+     *         with absolute gets only: the position is shared
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int size() {
+        return data.capacity();
+    }
+
+    /**
+     * @return The PT_LOAD segments in program header order
+     */
+    public List<ElfSegment> getSegments() {
+        return segments;
+    }
+
+    public int getEntryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * @return The highest virtual address used by the program, page
+     *         aligned, as {@link ElfLoader#calculateRequiredMemory} computes it
+     */
+    public int getRequiredMemory() {
+        return requiredMemory;
+    }
+}
@@ -0,0 +1,118 @@
+package cse311;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cse311.Exception.ElfException;
+
+/**
+ * Parsed ELF executables by path, so launching the same program again
+ * maps and parses nothing. An entry is used only while the file's size
+ * and modification time are unchanged. The least recently launched images
+ * are dropped once the mapped file bytes exceed the limit.
+ *
+ * One cache is shared by every kernel in the JVM: {@link #shared()}.
+ */
+public final class ElfImageCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final ElfImageCache SHARED = new ElfImageCache(DEFAULT_MAX_BYTES);
+
+    private static final class Entry {
+        final ElfImage image;
+        final long size;
+        final FileTime modified;
+
+        Entry(ElfImage image, long size, FileTime modified) {
+            this.image = image;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Access order
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public ElfImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static ElfImageCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The parsed image of an ELF file, read again only if the file
+     * changed since it was cached.
+     */
+    public synchronized ElfImage load(Path path) throws IOException, ElfException {
+        Path key = path.toAbsolutePath().normalize();
+        // Attributes first: a change during the read shows up next time
+        BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.size == attrs.size() && entry.modified.equals(attrs.lastModifiedTime())) {
+                hits++;
+                return entry.image;
+            }
+            remove(key);
+        }
+
+        misses++;
+        ElfImage image = ElfImage.map(key);
+        if (image.size() <= maxBytes) {
+            entries.put(key, new Entry(image, attrs.size(), attrs.lastModifiedTime()));
+            bytes += image.size();
+            evict();
+        }
+        return image;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().image.size();
+            it.remove();
+        }
+    }
+
+    private void remove(Path key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.image.size();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return File bytes mapped by cached images
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -3,7 +3,6 @@ package cse311;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,27 +14,19 @@ import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
 import cse311.kernel.process.ProgramInfo;
 
 public class ElfLoader {
-    private byte[] elfData;
+    private ElfImage image;
+    private ByteBuffer elfData; // Read-only view of the file, possibly mapped
     private MemoryManager memory;
     private List<ElfSegment> segments = new ArrayList<>();
 
     // ELF Header Constants
-    private static final byte[] ELF_MAGIC = { 0x7f, 0x45, 0x4c, 0x46 }; // "\177ELF"
     private static final int EI_CLASS_64 = 2;
-    private static final int EI_DATA_LE = 1;
-    private static final int EM_RISCV = 243;
-
-    // Program Header Types
-    private static final int PT_LOAD = 1;
 
     // Section Header Types
     private static final int SHT_PROGBITS = 1;
     private static final int SHT_NOBITS = 8;
 
-    // Program Header Flags
-    private static final int PF_X = 1;
-    private static final int PF_W = 2;
-    private static final int PF_R = 4;
+    private static final byte[] ZERO_PAGE = new byte[4096]; // Source for BSS zeroing
 
     /**
      * Represents an ELF segment with memory permissions
@@ -68,112 +59,61 @@ public class ElfLoader {
         }
     }
 
+    /**
+     * Places a PT_LOAD segment in memory in place of the loader's copy,
+     * e.g. by mapping frames shared with other processes.
+     */
+    public interface SegmentMapper {
+        /**
+         * @param segments Every PT_LOAD segment of the image
+         * @return false to have the loader copy the segment
+         */
+        boolean map(ElfSegment segment, List<ElfSegment> segments, ByteBuffer elfData) throws MemoryAccessException;
+    }
+
+    private SegmentMapper segmentMapper;
+
     public ElfLoader(MemoryManager memory) {
         this.memory = memory;
     }
 
+    public void setSegmentMapper(SegmentMapper segmentMapper) {
+        this.segmentMapper = segmentMapper;
+    }
+
     /**
-     * Load ELF from a file name path
+     * Load ELF from a file name path, copying segments straight from a
+     * read-only mapping of the file
      */
     public void loadElf(String filename) throws IOException, ElfException {
-        elfData = Files.readAllBytes(Paths.get(filename));
-
-        if (!validateElfHeader()) {
-            throw new ElfException("Invalid ELF file");
-        }
-
-        loadProgramSegments();
+        load(ElfImage.map(Paths.get(filename)));
     }
 
     /**
      * Load ELF from a byte array (Used by TaskManager).
      */
     public void loadElf(byte[] data) throws ElfException {
-        this.elfData = data;
-        parseAndLoad();
+        load(ElfImage.parse(data));
     }
 
     /**
-     * Shared parsing logic.
+     * Load an already parsed image, e.g. one from {@link ElfImageCache}.
      */
-    private void parseAndLoad() throws ElfException {
-        if (!validateElfHeader()) {
-            throw new ElfException("Invalid ELF file or not RISC-V");
-        }
+    public void load(ElfImage image) throws ElfException {
+        this.image = image;
+        this.elfData = image.getData();
+        this.segments = image.getSegments();
         loadProgramSegments();
     }
 
-    private boolean validateElfHeader() {
-        if (elfData.length < 52) { // Minimum size for 32-bit ELF header
-            return false;
-        }
-
-        // Check magic number
-        for (int i = 0; i < ELF_MAGIC.length; i++) {
-            if (elfData[i] != ELF_MAGIC[i]) {
-                return false;
-            }
-        }
-
-        // Check ELF class (32-bit)
-        if (elfData[4] != 1) {
-            return false;
-        }
-
-        // Check endianness (little-endian)
-        if (elfData[5] != EI_DATA_LE) {
-            return false;
-        }
-
-        // Check machine type (RISC-V)
-        ByteBuffer buffer = ByteBuffer.wrap(elfData).order(ByteOrder.LITTLE_ENDIAN);
-        buffer.position(18);
-        if (buffer.getShort() != EM_RISCV) {
-            return false;
-        }
-
-        return true;
-    }
-
     private void loadProgramSegments() throws ElfException {
-        ByteBuffer buffer = ByteBuffer.wrap(elfData).order(ByteOrder.LITTLE_ENDIAN);
-
-        // Parse Header Offsets
-        int programHeaderOffset = buffer.getInt(28);
-        int programHeaderEntrySize = buffer.getShort(42);
-        int programHeaderEntryCount = buffer.getShort(44);
-
-        // Process each program header
-        for (int i = 0; i < programHeaderEntryCount; i++) {
-            int offset = programHeaderOffset + (i * programHeaderEntrySize);
-
-            // Read Segment Type
-            int type = buffer.getInt(offset);
-
-            if (type != PT_LOAD) {
-                continue;
-            }
-
-            // Read Segment Details
-            int offset_in_file = buffer.getInt(offset + 4);
-            int virtual_addr = buffer.getInt(offset + 8);
-            // skip physical addr (offset + 12)
-            int size_in_file = buffer.getInt(offset + 16);
-            int size_in_mem = buffer.getInt(offset + 20);
-            int flags = buffer.getInt(offset + 24);
-
-            // Extract permissions from flags
-            boolean readable = (flags & PF_R) != 0;
-            boolean writable = (flags & PF_W) != 0;
-            boolean executable = (flags & PF_X) != 0;
-
-            // Create segment info
-            ElfSegment segment = new ElfSegment(virtual_addr, size_in_file, size_in_mem,
-                    readable, writable, executable, offset_in_file);
-            segments.add(segment);
-
+        // Load once all segments are known, so a mapper can see which pages
+        // they share
+        for (ElfSegment segment : segments) {
             try {
-                loadSegment(segment);
+                if (segmentMapper == null || !segmentMapper.map(segment, segments, elfData)) {
+                    loadSegment(segment);
+                }
             } catch (MemoryAccessException e) {
                 throw new ElfException("Failed to load segment: " + e.getMessage());
             }
@@ -185,19 +125,15 @@ public class ElfLoader {
         int loadAddr = segment.virtualAddr;
 
         if (segment.fileSize > 0) {
-            byte[] segmentData = new byte[segment.fileSize];
-            System.arraycopy(elfData, segment.fileOffset, segmentData, 0, segment.fileSize);
-
-            // Load segment data to the specified virtual address
-            for (int i = 0; i < segment.fileSize; i++) {
-                byte b = elfData[segment.fileOffset + i];
-                memory.writeByteToVirtualAddress(loadAddr + i, b);
-            }
+            // Load segment data to the specified virtual address, in one
+            // bulk copy from the file
+            memory.writeBytes(loadAddr, elfData, segment.fileOffset, segment.fileSize);
         }
 
         // Zero-initialize remaining memory (BSS section)
-        for (int i = segment.fileSize; i < segment.memorySize; i++) {
-            memory.writeByteToVirtualAddress(loadAddr + i, (byte) 0);
+        for (int i = segment.fileSize; i < segment.memorySize; i += ZERO_PAGE.length) {
+            int length = Math.min(ZERO_PAGE.length, segment.memorySize - i);
+            memory.writeBytes(loadAddr + i, ZERO_PAGE, 0, length);
         }
     }
 
@@ -251,8 +187,7 @@ public class ElfLoader {
     }
 
     public int getEntryPoint() {
-        ByteBuffer buffer = ByteBuffer.wrap(elfData).order(ByteOrder.LITTLE_ENDIAN);
-        return buffer.getInt(24);
+        return image.getEntryPoint();
     }
 
     /**
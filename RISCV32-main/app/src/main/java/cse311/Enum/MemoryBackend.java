@@ -0,0 +1,10 @@
+package cse311.Enum;
+
+/**
+ * Where guest physical RAM is kept.
+ */
+public enum MemoryBackend {
+    HEAP, // One byte[] on the Java heap (SimpleMemory), up to 2 GiB
+    OFF_HEAP, // Direct buffers outside the heap (OffHeapMemory), up to 4 GiB
+    SPARSE // 4 KiB heap pages committed on first write (SparseMemory), up to 4 GiB
+}
@@ -0,0 +1,25 @@
+package cse311.Exception;
+
+/**
+ * Raised by the MMU when a translation fails. Carries the trap cause
+ * (instruction, load or store page fault, or an access fault if the page
+ * table itself could not be read) and the faulting virtual address.
+ */
+public class PageFaultException extends MemoryAccessException {
+    private final int trapCause;
+    private final int address;
+
+    public PageFaultException(int trapCause, int address) {
+        super("Page fault (cause " + trapCause + ") at 0x" + Integer.toHexString(address));
+        this.trapCause = trapCause;
+        this.address = address;
+    }
+
+    public int getTrapCause() {
+        return trapCause;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+}
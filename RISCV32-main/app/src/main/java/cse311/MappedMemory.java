@@ -0,0 +1,102 @@
+package cse311;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Guest RAM mapped from a host file, one mapping per GiB. A machine's RAM
+ * can be kept as an image on disk and reopened without copying it in.
+ *
+ * In SHARED mode guest writes go to the file, and {@link #flush()} forces
+ * them to disk. In PRIVATE mode the file is mapped copy-on-write: it is
+ * only read, several JVMs can boot from the same image, and guest writes
+ * are discarded when the memory is dropped.
+ */
+public class MappedMemory extends OffHeapMemory implements AutoCloseable {
+
+    public enum Mode {
+        SHARED, // Writes reach the file
+        PRIVATE // Copy-on-write, the file is left unchanged
+    }
+
+    private final Path file;
+    private final Mode mode;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] mappings;
+
+    private MappedMemory(Path file, Mode mode, long size, FileChannel channel, MappedByteBuffer[] mappings) {
+        super(size, mappings);
+        this.file = file;
+        this.mode = mode;
+        this.channel = channel;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Map a RAM image. A SHARED image shorter than the requested size is
+     * extended with zeros. A PRIVATE image must already be large enough.
+     *
+     * @param file Host file holding the RAM image
+     * @param size Physical memory size in bytes, at most 4 GiB
+     * @param mode SHARED or PRIVATE
+     */
+    public static MappedMemory open(Path file, long size, Mode mode) throws IOException {
+        int count = chunkCount(size);
+        FileChannel channel = mode == Mode.SHARED
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (mode == Mode.PRIVATE && channel.size() < size) {
+                throw new IOException("RAM image " + file + " holds " + channel.size() + " bytes, " + size
+                        + " are needed");
+            }
+            MapMode mapMode = mode == Mode.SHARED ? MapMode.READ_WRITE : MapMode.PRIVATE;
+            MappedByteBuffer[] mappings = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                mappings[i] = channel.map(mapMode, chunkStart(i), chunkLength(size, i));
+                mappings[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedMemory(file, mode, size, channel, mappings);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Force guest writes out to the image. Private mappings have nothing to
+     * write back.
+     */
+    @Override
+    public void flush() {
+        if (mode == Mode.SHARED) {
+            for (MappedByteBuffer mapping : mappings) {
+                mapping.force();
+            }
+        }
+    }
+
+    /**
+     * Flush and close the file. The mappings stay readable until the memory
+     * is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
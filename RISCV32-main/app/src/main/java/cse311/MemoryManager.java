@@ -1,10 +1,13 @@
 package cse311;
 
+import java.nio.ByteBuffer;
+
 import cse311.Exception.MemoryAccessException;
 
 public class MemoryManager {
     private SimpleMemory memory;
     private Uart uart;
+    private final DecodeCache decodeCache;
 
     // UART Memory-Mapped Registers
     public static final int UART_BASE = 0x10000000;
@@ -15,13 +18,13 @@ public class MemoryManager {
     public static final int UART_CONTROL = UART_BASE + 0xC;
 
     public MemoryManager() {
-        this.memory = new SimpleMemory();
-        this.uart = new Uart();
+        this(new SimpleMemory());
     }
 
     public MemoryManager(SimpleMemory memory) {
         this.memory = memory;
         this.uart = new Uart();
+        this.decodeCache = new DecodeCache(memory.getAddressMask());
     }
 
     /**
@@ -37,11 +40,12 @@ public class MemoryManager {
     }
 
     // Memory access methods
+    // SimpleMemory checks bounds (and alignment) itself, so the address is
+    // only translated and validated once per access
     public byte readByte(int address) throws MemoryAccessException {
         if (address >= UART_BASE && address < UART_BASE + 0x1000) {
             return (byte) uart.read(address);
         }
-        validateAccess(address);
         return memory.readByte(address);
     }
 
@@ -49,8 +53,6 @@ public class MemoryManager {
         if (address >= UART_BASE && address < UART_BASE + 0x1000) {
             return (short) uart.read(address);
         }
-        validateAccess(address);
-        validateAccess(address + 1);
         return memory.readHalfWord(address);
     }
 
@@ -58,8 +60,6 @@ public class MemoryManager {
         if (address >= UART_BASE && address < UART_BASE + 0x1000) {
             return (int) uart.read(address);
         }
-        validateAccess(address);
-        validateAccess(address + 3);
         return memory.readWord(address);
     }
 
@@ -68,9 +68,8 @@ public class MemoryManager {
             uart.write(address, value);
             return;
         }
-        validateAccess(address);
-        validateWriteAccess(address);
         memory.writeByte(address, value);
+        decodeCache.invalidate(address);
     }
 
     public void writeHalfWord(int address, short value) throws MemoryAccessException {
@@ -78,10 +77,8 @@ public class MemoryManager {
             uart.write(address, value);
             return;
         }
-        validateAccess(address);
-        validateAccess(address + 1);
-        validateWriteAccess(address);
         memory.writeHalfWord(address, value);
+        decodeCache.invalidate(address, 2);
     }
 
     public void writeWord(int address, int value) throws MemoryAccessException {
@@ -89,10 +86,8 @@ public class MemoryManager {
             uart.write(address, value);
             return;
         }
-        validateAccess(address);
-        validateAccess(address + 3);
-        // validateWriteAccess(address);
         memory.writeWord(address, value);
+        decodeCache.invalidate(address, 4);
     }
 
     // New method for ELF loading to virtual addresses
@@ -106,12 +101,147 @@ public class MemoryManager {
         // but still validate the address is within reasonable bounds
         validateVirtualAddress(address);
         memory.writeByte(address, value);
+        decodeCache.invalidate(address);
+    }
+
+    // Bulk access
+    // Ranges are validated once and moved with System.arraycopy/Arrays.fill.
+    // Subclasses that relocate addresses override readBytes/writeBytes; fill
+    // and copy always take physical addresses.
+
+    /**
+     * Read a range of memory into a byte array (same addressing as readByte).
+     */
+    public void readBytes(int address, byte[] dst, int offset, int length) throws MemoryAccessException {
+        if (touchesUart(address, length)) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = readByte(address + i);
+            }
+            return;
+        }
+        memory.readBytes(address, dst, offset, length);
+    }
+
+    /**
+     * Write a byte array to a range of memory (same addressing as
+     * writeByteToVirtualAddress).
+     */
+    public void writeBytes(int address, byte[] src, int offset, int length) throws MemoryAccessException {
+        if (touchesUart(address, length)) {
+            for (int i = 0; i < length; i++) {
+                writeByteToVirtualAddress(address + i, src[offset + i]);
+            }
+            return;
+        }
+        memory.writeBytes(address, src, offset, length);
+        decodeCache.invalidateRange(address, length);
+    }
+
+    /**
+     * Write bytes offset to offset + length of a buffer, e.g. a mapped
+     * file, to a range of memory (same addressing as
+     * writeByteToVirtualAddress). The buffer's position is neither used nor
+     * changed.
+     */
+    public void writeBytes(int address, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        if (touchesUart(address, length)) {
+            for (int i = 0; i < length; i++) {
+                writeByteToVirtualAddress(address + i, src.get(offset + i));
+            }
+            return;
+        }
+        memory.writeBytes(address, src, offset, length);
+        decodeCache.invalidateRange(address, length);
+    }
+
+    /**
+     * Read a range of physical memory, bypassing any address translation.
+     */
+    public void readPhysical(int physicalAddress, byte[] dst, int offset, int length)
+            throws MemoryAccessException {
+        memory.readBytes(physicalAddress, dst, offset, length);
+    }
+
+    /**
+     * Write a range of physical memory, bypassing any address translation.
+     */
+    public void writePhysical(int physicalAddress, byte[] src, int offset, int length)
+            throws MemoryAccessException {
+        memory.writeBytes(physicalAddress, src, offset, length);
+        decodeCache.invalidateRange(physicalAddress, length);
+    }
+
+    /**
+     * Write part of a buffer to physical memory, bypassing any address
+     * translation.
+     */
+    public void writePhysical(int physicalAddress, ByteBuffer src, int offset, int length)
+            throws MemoryAccessException {
+        memory.writeBytes(physicalAddress, src, offset, length);
+        decodeCache.invalidateRange(physicalAddress, length);
+    }
+
+    /**
+     * Fill a range of physical memory with one byte value.
+     */
+    public void fillPhysical(int physicalAddress, int length, byte value) throws MemoryAccessException {
+        memory.fill(physicalAddress, length, value);
+        decodeCache.invalidateRange(physicalAddress, length);
+    }
+
+    /**
+     * Copy a range of physical memory (e.g. one frame to another).
+     */
+    public void copyPhysical(int srcAddress, int dstAddress, int length) throws MemoryAccessException {
+        memory.copy(srcAddress, dstAddress, length);
+        decodeCache.invalidateRange(dstAddress, length);
+    }
+
+    private static boolean touchesUart(int address, int length) {
+        return address < UART_BASE + UART_SIZE && address + length > UART_BASE;
+    }
+
+    // Instruction fetch path
+    /**
+     * Translate an instruction address to the physical address used to key the
+     * decoded instruction cache. Subclasses apply their own MMU here.
+     */
+    public int translateInstructionAddress(int address) throws MemoryAccessException {
+        if (address >= UART_BASE && address < UART_BASE + 0x1000) {
+            throw new MemoryAccessException("Instruction fetch from MMIO: 0x" + Integer.toHexString(address));
+        }
+        validateAccess(address);
+        validateAccess(address + 3);
+        return address;
+    }
+
+    /**
+     * Read an instruction word at a physical address returned by
+     * {@link #translateInstructionAddress(int)}.
+     */
+    public int readInstructionWord(int physicalAddress) throws MemoryAccessException {
+        return memory.readWord(physicalAddress);
+    }
+
+    /**
+     * Cache of predecoded instructions, or null if this memory cannot key
+     * instructions by physical address.
+     */
+    public DecodeCache getDecodeCache() {
+        return decodeCache;
     }
 
     public void reset() {
         // No pointers to reset anymore
     }
 
+    /**
+     * Persist physical memory if it is backed by a file.
+     */
+    public void flush() {
+        memory.flush();
+    }
+
     // Validation methods
     /**
      * Validate memory access based on address and current CPU privilege mode
@@ -168,13 +298,6 @@ public class MemoryManager {
         validateAccess(address, RV32Cpu.PRIVILEGE_MACHINE);
     }
 
-    /**
-     * Legacy method for backward compatibility
-     */
-    private void validateWriteAccess(int address) throws MemoryAccessException {
-        validateWriteAccess(address, RV32Cpu.PRIVILEGE_MACHINE);
-    }
-
     /**
      * Validate virtual address for ELF loading
      * More permissive than normal validation to allow loading at ELF-specified
@@ -185,29 +308,13 @@ public class MemoryManager {
         // translated
         // to a valid physical address within our memory bounds
 
-        // Use the same translation logic as SimpleMemory to get the physical address
-        int physicalAddress;
-        if (address < 0) {
-            // Handle high addresses (like 0x80000000) by converting to unsigned and mapping
-            long unsignedAddr = address & 0xFFFFFFFFL;
-
-            // Map high addresses (0x80000000+) to lower memory region
-            if (unsignedAddr >= 0x80000000L) {
-                physicalAddress = (int) (unsignedAddr - 0x80000000L);
-            } else {
-                // For other negative addresses, use as-is
-                physicalAddress = address;
-            }
-        } else {
-            // For positive addresses, use directly
-            physicalAddress = address;
-        }
+        long physicalAddress = memory.physicalAddress(address);
 
         // Check if the physical address is within our memory bounds
-        if (physicalAddress < 0 || physicalAddress >= memory.getMemory().length) {
+        if (physicalAddress >= memory.getSize()) {
             throw new MemoryAccessException("Virtual address 0x" + Integer.toHexString(address) +
-                    " maps to physical address 0x" + Integer.toHexString(physicalAddress) +
-                    " which is beyond memory bounds (0 - 0x" + Integer.toHexString(memory.getMemory().length - 1)
+                    " maps to physical address 0x" + Long.toHexString(physicalAddress) +
+                    " which is beyond memory bounds (0 - 0x" + Long.toHexString(memory.getSize() - 1)
                     + ")");
         }
     }
@@ -222,7 +329,7 @@ public class MemoryManager {
         StringBuilder sb = new StringBuilder();
         sb.append("Memory Map (Dynamic ELF Layout):\n");
         sb.append("ELF segments loaded at their virtual addresses\n");
-        sb.append(String.format("Memory Size: %d MB\n", memory.getMemory().length / (1024 * 1024)));
+        sb.append(String.format("Memory Size: %d MB\n", memory.getSize() / (1024 * 1024)));
         sb.append(String.format("UART:  0x%08X - 0x%08X\n", UART_BASE, UART_BASE + 0x1000 - 1));
         return sb.toString();
     }
@@ -234,7 +341,11 @@ public class MemoryManager {
     public String dumpMemory() throws MemoryAccessException {
         // For dynamic ELF loading, dump a reasonable range around the loaded program
         // Start from address 0 and dump first 64KB to see loaded segments
-        return memory.dumpMemory(0, Math.min(65536, memory.getMemory().length));
+        return memory.dumpMemory(0, (int) Math.min(65536, memory.getSize()));
+    }
+
+    public boolean isMisalignedAccessAllowed() {
+        return memory.isMisalignedAccessAllowed();
     }
 
     public byte[] getByteMemory() {
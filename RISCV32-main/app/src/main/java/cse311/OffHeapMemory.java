@@ -0,0 +1,279 @@
+package cse311;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import cse311.Exception.MemoryAccessException;
+
+/**
+ * Guest RAM kept outside the Java heap in direct ByteBuffers, one per GiB,
+ * so it is never scanned or copied by the garbage collector. Up to 4 GiB
+ * of physical memory is supported. Memories larger than 2 GiB use the full
+ * 32-bit physical address; smaller ones fold the 0x80000000+ window onto
+ * low memory like SimpleMemory does.
+ *
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to
+ * the maximum heap size, so large machines need that flag instead of a
+ * large -Xmx.
+ */
+public class OffHeapMemory extends SimpleMemory {
+    public static final long MAX_SIZE = 1L << 32;
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+    private final int addressMask;
+
+    public OffHeapMemory(long size) {
+        this(size, allocateChunks(size));
+    }
+
+    /**
+     * For subclasses supplying their own buffers, e.g. mapped files. Chunk i
+     * holds physical bytes [i GiB, (i + 1) GiB) and must be little-endian.
+     */
+    protected OffHeapMemory(long size, ByteBuffer[] chunks) {
+        super(size, null);
+        this.size = size;
+        this.addressMask = addressMaskFor(size);
+        this.chunks = chunks;
+    }
+
+    private static ByteBuffer[] allocateChunks(long size) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkLength(size, i)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+
+    /**
+     * @return How many 1 GiB chunks hold a memory of this size
+     * @throws IllegalArgumentException If the size is not between 1 byte and
+     *                                  4 GiB
+     */
+    protected static int chunkCount(long size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Memory size must be between 1 byte and 4 GiB: " + size);
+        }
+        return (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    }
+
+    protected static int chunkLength(long size, int chunk) {
+        return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_SHIFT));
+    }
+
+    protected static long chunkStart(int chunk) {
+        return (long) chunk << CHUNK_SHIFT;
+    }
+
+    @Override
+    public byte readByte(int address) throws MemoryAccessException {
+        if (address >= MMIO_START && address < MMIO_END) {
+            // Let MemoryManager handle MMIO
+            throw new MemoryAccessException("MMIO_ACCESS:" + address);
+        }
+        long pa = checkPhysicalAccess(address, 1);
+        return chunks[chunk(pa)].get(offset(pa));
+    }
+
+    @Override
+    public void writeByte(int address, byte value) throws MemoryAccessException {
+        if (address >= MMIO_START && address < MMIO_END) {
+            // Let MemoryManager handle MMIO
+            throw new MemoryAccessException("MMIO_ACCESS:" + address);
+        }
+        long pa = checkPhysicalAccess(address, 1);
+        chunks[chunk(pa)].put(offset(pa), value);
+    }
+
+    @Override
+    public short readHalfWord(int address) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 2);
+        int offset = offset(pa);
+        if (offset <= CHUNK_SIZE - 2) {
+            return chunks[chunk(pa)].getShort(offset);
+        }
+        return (short) readAcrossChunks(pa, 2);
+    }
+
+    @Override
+    public int readWord(int address) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 4);
+        int offset = offset(pa);
+        if (offset <= CHUNK_SIZE - 4) {
+            return chunks[chunk(pa)].getInt(offset);
+        }
+        return readAcrossChunks(pa, 4);
+    }
+
+    @Override
+    public void writeHalfWord(int address, short value) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 2);
+        int offset = offset(pa);
+        if (offset <= CHUNK_SIZE - 2) {
+            chunks[chunk(pa)].putShort(offset, value);
+        } else {
+            writeAcrossChunks(pa, 2, value);
+        }
+    }
+
+    @Override
+    public void writeWord(int address, int value) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 4);
+        int offset = offset(pa);
+        if (offset <= CHUNK_SIZE - 4) {
+            chunks[chunk(pa)].putInt(offset, value);
+        } else {
+            writeAcrossChunks(pa, 4, value);
+        }
+    }
+
+    // Only misaligned accesses can straddle two chunks
+
+    private int readAcrossChunks(long pa, int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            long p = pa + i;
+            value |= (chunks[chunk(p)].get(offset(p)) & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private void writeAcrossChunks(long pa, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            long p = pa + i;
+            chunks[chunk(p)].put(offset(p), (byte) (value >>> (8 * i)));
+        }
+    }
+
+    // Bulk access, split at chunk boundaries
+
+    @Override
+    public void readBytes(int address, byte[] dst, int offset, int length) throws MemoryAccessException {
+        readPhysical(checkPhysicalRange(address, length), dst, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int address, byte[] src, int offset, int length) throws MemoryAccessException {
+        writePhysical(checkPhysicalRange(address, length), src, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int address, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        long pa = checkPhysicalRange(address, length);
+        while (length > 0) {
+            int n = Math.min(length, CHUNK_SIZE - offset(pa));
+            chunks[chunk(pa)].put(offset(pa), src, offset, n);
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void fill(int address, int length, byte value) throws MemoryAccessException {
+        long pa = checkPhysicalRange(address, length);
+        fillPhysical(pa, length, value);
+    }
+
+    private void fillPhysical(long pa, long length, byte value) {
+        byte[] pattern = new byte[(int) Math.min(length, COPY_BUFFER_SIZE)];
+        if (value != 0) {
+            Arrays.fill(pattern, value);
+        }
+        while (length > 0) {
+            int n = (int) Math.min(Math.min(length, pattern.length), CHUNK_SIZE - offset(pa));
+            chunks[chunk(pa)].put(offset(pa), pattern, 0, n);
+            pa += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copy with memmove semantics, staged through a heap buffer. Blocks are
+     * copied back to front when the destination overlaps the end of the
+     * source.
+     */
+    @Override
+    public void copy(int srcAddress, int dstAddress, int length) throws MemoryAccessException {
+        long src = checkPhysicalRange(srcAddress, length);
+        long dst = checkPhysicalRange(dstAddress, length);
+        if (src == dst || length == 0) {
+            return;
+        }
+
+        byte[] buffer = new byte[Math.min(length, COPY_BUFFER_SIZE)];
+        boolean backwards = dst > src && dst < src + length;
+        int done = 0;
+        while (done < length) {
+            int n = Math.min(buffer.length, length - done);
+            long at = backwards ? length - done - n : done;
+            readPhysical(src + at, buffer, 0, n);
+            writePhysical(dst + at, buffer, 0, n);
+            done += n;
+        }
+    }
+
+    private void readPhysical(long pa, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, CHUNK_SIZE - offset(pa));
+            chunks[chunk(pa)].get(offset(pa), dst, offset, n);
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void writePhysical(long pa, byte[] src, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, CHUNK_SIZE - offset(pa));
+            chunks[chunk(pa)].put(offset(pa), src, offset, n);
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void clear() {
+        fillPhysical(0, size, (byte) 0);
+    }
+
+    @Override
+    public void initializeMemory(int startAddress, byte[] data) {
+        writePhysical(physicalAddress(startAddress), data, 0, data.length);
+    }
+
+    /**
+     * Guest RAM is not a heap array.
+     */
+    @Override
+    public byte[] getMemory() {
+        throw new UnsupportedOperationException("Off-heap memory has no backing byte[]");
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int getAddressMask() {
+        return addressMask;
+    }
+
+    private static int chunk(long pa) {
+        return (int) (pa >>> CHUNK_SHIFT);
+    }
+
+    private static int offset(long pa) {
+        return (int) pa & CHUNK_MASK;
+    }
+}
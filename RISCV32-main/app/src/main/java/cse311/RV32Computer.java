@@ -1,6 +1,20 @@
 package cse311;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import cse311.Enum.MemoryBackend;
 import cse311.Enum.MemoryMode;
+import cse311.Exception.MemoryAccessException;
 import cse311.kernel.Kernel;
 import cse311.kernel.NonContiguous.paging.*;
 import cse311.kernel.contiguous.AllocationStrategy;
@@ -9,21 +23,57 @@ import cse311.kernel.contiguous.ContiguousMemoryManager;
 import cse311.kernel.process.Task;
 
 public class RV32Computer {
+    // Snapshot file: magic and version, then tagged sections of
+    // (int tag, long length, payload), big-endian
+    private static final long SNAPSHOT_MAGIC = 0x52563332534E4150L; // "RV32SNAP"
+    private static final int SNAPSHOT_VERSION = 5;
+    private static final int SECTION_MACHINE = 0x4D414348; // "MACH"
+    private static final int SECTION_CPU = 0x43505520; // "CPU "
+    private static final int SECTION_MMU = 0x4D4D5520; // "MMU "
+    private static final int SECTION_KERNEL = 0x4B45524E; // "KERN"
+    private static final int SECTION_RAM = 0x52414D20; // "RAM "
+    private static final int SECTION_END = 0x454E4420; // "END "
+    private static final int PAGE_SIZE = 4096;
+    private static final int PAGES_PER_MAPPING = 1 << 16; // Map saved RAM 256 MiB at a time
+
     private RV32Cpu cpu;
     private MemoryManager memory;
     private Kernel kernel;
+    private final SimpleMemory ram;
+    private final MemoryMode mode;
+    private final int maxTasks;
 
     public RV32Computer(int memSize) {
         this(memSize, 16, MemoryMode.PAGING); // Default to 16 max tasks
     }
 
     public RV32Computer(int memSize, int maxTasks, MemoryMode mode) {
+        this(memSize, maxTasks, mode, MemoryBackend.HEAP);
+    }
+
+    /**
+     * @param memSize Physical memory in bytes; up to 4 GiB with the off-heap
+     *                backend (contiguous mode uses at most 2 GiB of it)
+     * @param backend Where guest RAM is allocated
+     */
+    public RV32Computer(long memSize, int maxTasks, MemoryMode mode, MemoryBackend backend) {
+        this(createMemory(memSize, backend), maxTasks, mode);
+    }
+
+    /**
+     * Boot on an existing physical memory, e.g. a {@link MappedMemory} RAM
+     * image.
+     */
+    public RV32Computer(SimpleMemory ram, int maxTasks, MemoryMode mode) {
         System.out.println("--- Booting RV32iComputer in " + mode + " Mode ---");
+        this.ram = ram;
+        this.mode = mode;
+        this.maxTasks = maxTasks;
 
         // 1. Initialize Memory Hardware & Logic
         if (mode == MemoryMode.PAGING) {
             // --- PAGING SETUP ---
-            PagedMemoryManager pmm = new PagedMemoryManager(memSize);
+            PagedMemoryManager pmm = new PagedMemoryManager(ram);
 
             // Configure Policies (Demand Paging + Clock Replacement)
             PagingConfiguration.configure(pmm,
@@ -38,7 +88,7 @@ public class RV32Computer {
             // AllocationStrategy allocator = new FirstFitStrategy();
 
             // 2. Create the Memory Manager with this strategy
-            this.memory = new ContiguousMemoryManager(memSize, allocator);
+            this.memory = new ContiguousMemoryManager(ram, allocator);
         }
 
         // 2. Initialize CPU (Polymorphic: works with either memory)
@@ -46,10 +96,274 @@ public class RV32Computer {
 
         // 3. Initialize Kernel (Kernel constructor detects memory type)
         this.kernel = new Kernel(cpu, memory);
+        this.kernel.getConfig().setMaxProcesses(maxTasks);
 
         this.cpu.turnOn();
 
-        System.out.println("System Initialized. Memory: " + (memSize / 1024 / 1024) + "MB");
+        System.out.println("System Initialized. Memory: " + (ram.getSize() / 1024 / 1024) + "MB");
+    }
+
+    private static SimpleMemory createMemory(long memSize, MemoryBackend backend) {
+        switch (backend) {
+            case OFF_HEAP:
+                return new OffHeapMemory(memSize);
+            case SPARSE:
+                return new SparseMemory(memSize);
+            case HEAP:
+            default:
+                if (memSize > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(
+                            "Heap memory is limited to 2 GiB, use the off-heap backend for " + memSize + " bytes");
+                }
+                return new SimpleMemory((int) memSize);
+        }
+    }
+
+    // ---- Snapshots ----
+
+    /**
+     * Save the whole machine: CPU, memory manager tables, kernel tasks and
+     * scheduler queue, and every non-zero page of RAM. RAM pages are stored
+     * page-aligned in the file so that {@link #restore} can map them.
+     * The kernel must not be executing a time slice meanwhile.
+     *
+     * Not saved: replacement-policy history (paging restarts cold), UART
+     * buffers and the legacy kernel stack bookkeeping.
+     */
+    public void snapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeLong(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            writeFully(channel, bytes);
+
+            out.writeUTF(mode.name());
+            out.writeLong(ram.getSize());
+            out.writeInt(maxTasks);
+            writeSection(channel, SECTION_MACHINE, bytes);
+
+            cpu.writeState(out);
+            writeSection(channel, SECTION_CPU, bytes);
+
+            if (memory instanceof PagedMemoryManager) {
+                ((PagedMemoryManager) memory).writeState(out);
+            } else if (memory instanceof ContiguousMemoryManager) {
+                ((ContiguousMemoryManager) memory).writeState(out);
+            }
+            writeSection(channel, SECTION_MMU, bytes);
+
+            kernel.writeState(out);
+            writeSection(channel, SECTION_KERNEL, bytes);
+
+            writeRam(channel);
+
+            writeSection(channel, SECTION_END, bytes);
+        }
+    }
+
+    /**
+     * Boot a machine from a snapshot, with guest RAM on the heap when it
+     * fits and off-heap otherwise.
+     */
+    public static RV32Computer restore(Path file) throws IOException {
+        return restore(file, null);
+    }
+
+    /**
+     * Boot a machine from a snapshot.
+     *
+     * @param backend Where guest RAM is allocated, or null to choose by size
+     */
+    public static RV32Computer restore(Path file, MemoryBackend backend) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            readFully(channel, header, 0);
+            if (header.getLong(0) != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            if (header.getInt(8) != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + header.getInt(8));
+            }
+
+            RV32Computer computer = null;
+            long position = 12;
+            while (true) {
+                readFully(channel, header, position);
+                int tag = header.getInt(0);
+                long length = header.getLong(4);
+                position += 12;
+                if (tag == SECTION_END) {
+                    break;
+                }
+                if (tag != SECTION_MACHINE && computer == null) {
+                    throw new IOException("Snapshot does not start with the machine section");
+                }
+
+                if (tag == SECTION_RAM) {
+                    computer.readRam(channel, position);
+                } else {
+                    DataInputStream in = new DataInputStream(
+                            new ByteArrayInputStream(readPayload(channel, position, length)));
+                    switch (tag) {
+                        case SECTION_MACHINE:
+                            MemoryMode mode = MemoryMode.valueOf(in.readUTF());
+                            long size = in.readLong();
+                            int maxTasks = in.readInt();
+                            if (backend == null) {
+                                backend = size <= Integer.MAX_VALUE ? MemoryBackend.HEAP : MemoryBackend.OFF_HEAP;
+                            }
+                            computer = new RV32Computer(size, maxTasks, mode, backend);
+                            break;
+                        case SECTION_CPU:
+                            computer.cpu.readState(in);
+                            break;
+                        case SECTION_MMU:
+                            if (computer.memory instanceof PagedMemoryManager) {
+                                ((PagedMemoryManager) computer.memory).readState(in);
+                            } else if (computer.memory instanceof ContiguousMemoryManager) {
+                                ((ContiguousMemoryManager) computer.memory).readState(in);
+                            }
+                            break;
+                        case SECTION_KERNEL:
+                            computer.kernel.readState(in);
+                            break;
+                        default:
+                            break; // Unknown sections are skipped
+                    }
+                }
+                position += length;
+            }
+            if (computer == null) {
+                throw new IOException("Snapshot holds no machine");
+            }
+            computer.memory.getDecodeCache().invalidateAll();
+            return computer;
+        }
+    }
+
+    /**
+     * RAM section: page count, page indices, padding to the next 4 KiB file
+     * offset, then the pages themselves. All-zero pages are left out.
+     */
+    private void writeRam(FileChannel channel) throws IOException {
+        long size = ram.getSize();
+        int pageCount = (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+        byte[] page = new byte[PAGE_SIZE];
+        byte[] zero = new byte[PAGE_SIZE];
+
+        int[] saved = new int[pageCount];
+        int count = 0;
+        for (int index = 0; index < pageCount; index++) {
+            readPage(index, page);
+            if (!Arrays.equals(page, zero)) {
+                saved[count++] = index;
+            }
+        }
+
+        long payloadStart = channel.position() + 12;
+        long dataStart = pageAligned(payloadStart + 4 + 4L * count);
+        ByteBuffer index = ByteBuffer.allocate((int) (dataStart - payloadStart + 12));
+        index.putInt(SECTION_RAM);
+        index.putLong(dataStart - payloadStart + (long) count * PAGE_SIZE);
+        index.putInt(count);
+        for (int i = 0; i < count; i++) {
+            index.putInt(saved[i]);
+        }
+        index.position(index.limit());
+        index.flip();
+        writeFully(channel, index);
+
+        for (int i = 0; i < count; i++) {
+            readPage(saved[i], page);
+            writeFully(channel, ByteBuffer.wrap(page));
+        }
+    }
+
+    private void readRam(FileChannel channel, long payloadStart) throws IOException {
+        ByteBuffer countBuffer = ByteBuffer.allocate(4);
+        readFully(channel, countBuffer, payloadStart);
+        int count = countBuffer.getInt(0);
+        ByteBuffer indices = ByteBuffer.allocate(4 * count);
+        readFully(channel, indices, payloadStart + 4);
+        long dataStart = pageAligned(payloadStart + 4 + 4L * count);
+
+        byte[] page = new byte[PAGE_SIZE];
+        for (int first = 0; first < count; first += PAGES_PER_MAPPING) {
+            int n = Math.min(PAGES_PER_MAPPING, count - first);
+            MappedByteBuffer pages = channel.map(FileChannel.MapMode.READ_ONLY,
+                    dataStart + (long) first * PAGE_SIZE, (long) n * PAGE_SIZE);
+            for (int i = 0; i < n; i++) {
+                pages.get(page);
+                long address = (long) indices.getInt(4 * (first + i)) * PAGE_SIZE;
+                int length = (int) Math.min(PAGE_SIZE, ram.getSize() - address);
+                try {
+                    ram.writeBytes((int) address, page, 0, length);
+                } catch (MemoryAccessException e) {
+                    throw new IOException("Snapshot page at 0x" + Long.toHexString(address) + " does not fit", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read one page of RAM; the tail of a partial last page reads as zero.
+     */
+    private void readPage(int index, byte[] page) throws IOException {
+        long address = (long) index * PAGE_SIZE;
+        int length = (int) Math.min(PAGE_SIZE, ram.getSize() - address);
+        Arrays.fill(page, length, PAGE_SIZE, (byte) 0);
+        try {
+            ram.readBytes((int) address, page, 0, length);
+        } catch (MemoryAccessException e) {
+            throw new IOException("Cannot read RAM at 0x" + Long.toHexString(address), e);
+        }
+    }
+
+    private static long pageAligned(long offset) {
+        return (offset + PAGE_SIZE - 1) & ~(long) (PAGE_SIZE - 1);
+    }
+
+    private static void writeSection(FileChannel channel, int tag, ByteArrayOutputStream payload)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(tag);
+        header.putLong(payload.size());
+        header.flip();
+        writeFully(channel, header);
+        writeFully(channel, payload);
+    }
+
+    private static void writeFully(FileChannel channel, ByteArrayOutputStream bytes) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        bytes.reset();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] readPayload(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot section of " + length + " bytes is too large");
+        }
+        ByteBuffer payload = ByteBuffer.allocate((int) length);
+        readFully(channel, payload, position);
+        return payload.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Snapshot is truncated");
+            }
+        }
     }
 
     /**
@@ -130,6 +444,15 @@ public class RV32Computer {
         return (memory instanceof TaskAwareMemoryManager) ? (TaskAwareMemoryManager) memory : null;
     }
 
+    /**
+     * Gets the task limit the machine was built with.
+     * 
+     * @return The maximum number of tasks
+     */
+    public int getMaxTasks() {
+        return maxTasks;
+    }
+
     /**
      * Gets the kernel.
      * 
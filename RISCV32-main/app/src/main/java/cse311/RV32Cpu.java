@@ -1,11 +1,16 @@
 package cse311;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Scanner;
 
 import cse311.Exception.MemoryAccessException;
-
-import java.util.HashMap;
-import java.util.Map;
+import cse311.Exception.PageFaultException;
+import cse311.jit.BlockCompiler;
+import cse311.jit.BlockRuntime;
+import cse311.jit.CodeCache;
+import cse311.jit.TranslatedBlock;
 
 public class RV32Cpu {
 
@@ -49,15 +54,90 @@ public class RV32Cpu {
     public static final int SIP = 0x144; // Supervisor interrupt pending
     public static final int SATP = 0x180; // Supervisor address translation and protection
 
-    // CSR access types
-    private static final int CSR_READ_WRITE = 0b01;
-    private static final int CSR_READ_SET = 0b10;
-    private static final int CSR_READ_CLEAR = 0b11;
-
-    // CSR registers map
-    private Map<Integer, Integer> csrRegisters = new HashMap<>();
+    private static final int MSTATUS_MPRV = 1 << 17; // Loads/stores use MPP's privilege
+
+    // CSR register file
+    private final CsrFile csrs = new CsrFile();
+    private final Sv32Mmu mmu;
+
+    // Instruction handler ids stored in decoded instruction cache entries and
+    // consumed by the block compiler.
+    // R-type, M-extension and I-type ALU groups follow func3 order.
+    public static final int OP_NOP = 0;
+    public static final int OP_ILLEGAL = 1;
+    public static final int OP_ADD = 2;
+    public static final int OP_SLL = 3;
+    public static final int OP_SLT = 4;
+    public static final int OP_SLTU = 5;
+    public static final int OP_XOR = 6;
+    public static final int OP_SRL = 7;
+    public static final int OP_OR = 8;
+    public static final int OP_AND = 9;
+    public static final int OP_SUB = 10;
+    public static final int OP_SRA = 11;
+    public static final int OP_MUL = 12;
+    public static final int OP_MULH = 13;
+    public static final int OP_MULHSU = 14;
+    public static final int OP_MULHU = 15;
+    public static final int OP_DIV = 16;
+    public static final int OP_DIVU = 17;
+    public static final int OP_REM = 18;
+    public static final int OP_REMU = 19;
+    public static final int OP_ADDI = 20;
+    public static final int OP_SLLI = 21;
+    public static final int OP_SLTI = 22;
+    public static final int OP_SLTIU = 23;
+    public static final int OP_XORI = 24;
+    public static final int OP_SRLI = 25;
+    public static final int OP_ORI = 26;
+    public static final int OP_ANDI = 27;
+    public static final int OP_SRAI = 28;
+    public static final int OP_LB = 29;
+    public static final int OP_LH = 30;
+    public static final int OP_LW = 31;
+    public static final int OP_LBU = 32;
+    public static final int OP_LHU = 33;
+    public static final int OP_SB = 34;
+    public static final int OP_SH = 35;
+    public static final int OP_SW = 36;
+    public static final int OP_BEQ = 37;
+    public static final int OP_BNE = 38;
+    public static final int OP_BLT = 39;
+    public static final int OP_BGE = 40;
+    public static final int OP_BLTU = 41;
+    public static final int OP_BGEU = 42;
+    public static final int OP_JAL = 43;
+    public static final int OP_JALR = 44;
+    public static final int OP_LUI = 45;
+    public static final int OP_AUIPC = 46;
+    public static final int OP_ECALL = 47;
+    public static final int OP_EBREAK = 48;
+    public static final int OP_MRET = 49;
+    public static final int OP_SRET = 50;
+    public static final int OP_CSRRW = 51;
+    public static final int OP_CSRRS = 52;
+    public static final int OP_CSRRC = 53;
+    public static final int OP_CSRRWI = 54;
+    public static final int OP_CSRRSI = 55;
+    public static final int OP_CSRRCI = 56;
+    public static final int OP_WFI = 57;
+    public static final int OP_SFENCE_VMA = 58;
+
+    // Exit reasons returned by run()
+    public static final int EXIT_SLICE_EXPIRED = 0; // Instruction budget used up
+    public static final int EXIT_ECALL = 1; // ECALL executed, PC points past it
+    public static final int EXIT_EXCEPTION = 2; // Trap taken, PC points at the handler
+    public static final int EXIT_HALT = 3; // Program exit or infinite loop detected
+    public static final int EXIT_WFI = 4; // WFI executed, nothing left to do until an interrupt
 
     private MemoryManager memory;
+    private final DecodeCache decodeCache; // null if the memory has no physical fetch path
+
+    // Basic-block compiler; the code cache is null while the JIT is disabled
+    private CodeCache codeCache;
+    private final BlockCompiler blockCompiler = new BlockCompiler();
+    private final BlockRuntime blockRuntime = new CpuBlockRuntime();
+    private boolean blockBoundary = true; // Current PC follows a control transfer
     private Scanner reader;
     private Thread cpuThread;
     private boolean running = false;
@@ -67,9 +147,15 @@ public class RV32Cpu {
     // Fields to track system calls and exceptions for kernel integration
     private boolean lastInstructionWasEcall = false;
     private boolean exceptionOccurred = false;
+    private boolean halted = false;
+    private boolean waitingForInterrupt = false;
+    private int retiredInstructions = 0; // Retired by the last run() call
 
     public RV32Cpu(MemoryManager memory) {
         this.memory = memory;
+        this.decodeCache = memory.getDecodeCache();
+        this.mmu = new Sv32Mmu(memory);
+        setJitEnabled(true);
         input = new InputThread();
 
         // Initialize CSR registers
@@ -77,146 +163,104 @@ public class RV32Cpu {
     }
 
     /**
-     * Initialize Control and Status Registers (CSRs) with default values
+     * Initialize Control and Status Registers (CSRs) with default values.
+     * Every other CSR starts at zero: no delegation, no interrupts, trap
+     * vectors at 0 and bare (untranslated) addressing.
      */
     private void initializeCSRs() {
-        // Machine-level CSRs
-        csrRegisters.put(MISA, 0x40001108); // RV32I base ISA with M-mode, M-extension, and Zicsr
-        csrRegisters.put(MSTATUS, 0x1800); // MPP (Machine Previous Privilege) set to M-mode
-        csrRegisters.put(MEDELEG, 0x0); // No exception delegation
-        csrRegisters.put(MIDELEG, 0x0); // No interrupt delegation
-        csrRegisters.put(MIE, 0x0); // No interrupts enabled
-        csrRegisters.put(MTVEC, 0x0); // Trap vector base address
-        csrRegisters.put(MEPC, 0x0); // Exception program counter
-        csrRegisters.put(MCAUSE, 0x0); // Trap cause
-        csrRegisters.put(MTVAL, 0x0); // Trap value
-        csrRegisters.put(MIP, 0x0); // No interrupts pending
-
-        // Supervisor-level CSRs
-        csrRegisters.put(SSTATUS, 0x0); // Supervisor status
-        csrRegisters.put(SIE, 0x0); // No supervisor interrupts enabled
-        csrRegisters.put(STVEC, 0x0); // Supervisor trap vector base address
-        csrRegisters.put(SEPC, 0x0); // Supervisor exception program counter
-        csrRegisters.put(SCAUSE, 0x0); // Supervisor trap cause
-        csrRegisters.put(STVAL, 0x0); // Supervisor trap value
-        csrRegisters.put(SIP, 0x0); // No supervisor interrupts pending
-        csrRegisters.put(SATP, 0x0); // No address translation (bare mode)
+        csrs.set(MISA, 0x40001108); // RV32I base ISA with M-mode, M-extension, and Zicsr
+        csrs.set(MSTATUS, 0x1800); // MPP (Machine Previous Privilege) set to M-mode
     }
 
-    /**
-     * Read a CSR register value
-     * 
-     * @param csrAddress The CSR address
-     * @return The CSR value, or 0 if the CSR is not accessible in the current
-     *         privilege mode
-     */
-    private int readCSR(int csrAddress) {
-        // Check if the CSR is accessible in the current privilege mode
-        if (!isCSRAccessible(csrAddress)) {
-            // For now, just return 0 instead of triggering exception to avoid recursion
-            // In a real implementation, this would trigger an illegal instruction exception
-            return 0;
-        }
+    public void setProgramCounterEntryPoint(int entryPoint) {
+        this.pc = entryPoint;
+        blockBoundary = true;
+    }
 
-        // Return the CSR value, or 0 if not initialized
-        return csrRegisters.getOrDefault(csrAddress, 0);
+    // Methods needed by the kernel
+    public void step() throws Exception {
+        fetchExecuteCycle(1);
     }
 
     /**
-     * Write a value to a CSR register
-     * 
-     * @param csrAddress The CSR address
-     * @param value      The value to write
-     * @param accessType The access type (CSR_READ_WRITE, CSR_READ_SET,
-     *                   CSR_READ_CLEAR)
-     * @return The previous CSR value, or 0 if the CSR is not accessible in the
-     *         current privilege mode
+     * Execute until the budget is used up or something needs the kernel.
+     * Unlike step(), the ECALL and exception flags are consumed here and
+     * reported through the return value instead.
+     *
+     * @param maxInstructions Maximum number of instructions to retire
+     * @return One of the EXIT_* codes; the number of instructions retired is
+     *         available from getRetiredInstructions()
      */
-    private int writeCSR(int csrAddress, int value, int accessType) {
-        // Check if the CSR is accessible in the current privilege mode
-        if (!isCSRAccessible(csrAddress)) {
-            // For now, just return 0 instead of triggering exception to avoid recursion
-            // In a real implementation, this would trigger an illegal instruction exception
-            return 0;
-        }
-
-        // Get the current value
-        int currentValue = csrRegisters.getOrDefault(csrAddress, 0);
-
-        // Calculate the new value based on the access type
-        int newValue;
-        switch (accessType) {
-            case CSR_READ_WRITE:
-                newValue = value;
+    public int run(int maxInstructions) throws Exception {
+        int retired = 0;
+        int exitReason = EXIT_SLICE_EXPIRED;
+        resetFlags();
+        halted = false;
+        waitingForInterrupt = false;
+
+        while (retired < maxInstructions) {
+            retired += fetchExecuteCycle(maxInstructions - retired);
+
+            if (lastInstructionWasEcall) {
+                lastInstructionWasEcall = false;
+                exitReason = EXIT_ECALL;
                 break;
-            case CSR_READ_SET:
-                newValue = currentValue | value;
+            }
+            if (exceptionOccurred) {
+                exceptionOccurred = false;
+                exitReason = EXIT_EXCEPTION;
                 break;
-            case CSR_READ_CLEAR:
-                newValue = currentValue & ~value;
+            }
+            if (halted) {
+                exitReason = EXIT_HALT;
                 break;
-            default:
-                newValue = value;
+            }
+            if (waitingForInterrupt) {
+                waitingForInterrupt = false;
+                exitReason = EXIT_WFI;
+                break;
+            }
         }
 
-        // Update the CSR value
-        csrRegisters.put(csrAddress, newValue);
-
-        // Handle side effects of writing to certain CSRs
-        handleCSRSideEffects(csrAddress, newValue, currentValue);
-
-        return currentValue;
+        retiredInstructions = retired;
+        return exitReason;
     }
 
     /**
-     * Check if a CSR is accessible in the current privilege mode
-     * 
-     * @param csrAddress The CSR address
-     * @return true if the CSR is accessible, false otherwise
+     * @return Number of instructions retired by the last run() call
      */
-    private boolean isCSRAccessible(int csrAddress) {
-        // Extract the privilege level from the CSR address (bits 9:8)
-        int csrPrivilege = (csrAddress >> 8) & 0x3;
-
-        // CSR is accessible if the current privilege level is >= the CSR privilege
-        // level
-        return privilegeMode >= csrPrivilege;
+    public int getRetiredInstructions() {
+        return retiredInstructions;
     }
 
     /**
-     * Handle side effects of writing to certain CSRs
-     * 
-     * @param csrAddress The CSR address
-     * @param newValue   The new CSR value
-     * @param oldValue   The old CSR value
+     * Execute the next instruction, or a whole compiled block if one starts at
+     * the current PC and fits in the remaining budget. A block never contains
+     * an ECALL, so isEcall() and isException() keep their per-step meaning.
+     *
+     * @param maxInstructions Maximum number of instructions that may retire
+     * @return Number of instructions retired
      */
-    private void handleCSRSideEffects(int csrAddress, int newValue, int oldValue) {
-        switch (csrAddress) {
-            case MSTATUS:
-                // Update SSTATUS when MSTATUS changes
-                int sstatus = newValue & 0x000C0122; // Only copy relevant bits to SSTATUS
-                csrRegisters.put(SSTATUS, sstatus);
-                break;
-            case SSTATUS:
-                // Update MSTATUS when SSTATUS changes
-                int mstatus = csrRegisters.getOrDefault(MSTATUS, 0); // Direct access to avoid recursion
-                mstatus = (mstatus & ~0x000C0122) | (newValue & 0x000C0122);
-                csrRegisters.put(MSTATUS, mstatus);
-                break;
-            case SATP:
-                // Handle address translation mode changes
-                // For now, we don't implement address translation
-                break;
-        }
+    public int stepBlock(int maxInstructions) throws Exception {
+        return fetchExecuteCycle(maxInstructions);
     }
 
-    public void setProgramCounterEntryPoint(int entryPoint) {
-        this.pc = entryPoint;
+    /**
+     * Enable or disable the basic-block compiler (enabled by default whenever
+     * the memory manager exposes a physical fetch path).
+     */
+    public void setJitEnabled(boolean enabled) {
+        if (enabled && codeCache == null && decodeCache != null) {
+            codeCache = new CodeCache(decodeCache.getAddressMask());
+            decodeCache.setTranslationListener(codeCache::invalidatePage);
+        } else if (!enabled && codeCache != null) {
+            codeCache = null;
+            decodeCache.setTranslationListener(null);
+        }
     }
 
-    // Methods needed by the kernel
-    public void step() throws Exception {
-        fetchExecuteCycle();
+    public CodeCache getCodeCache() {
+        return codeCache;
     }
 
     public boolean isEcall() {
@@ -257,6 +301,7 @@ public class RV32Cpu {
 
     public void setProgramCounter(int pc) {
         this.pc = pc;
+        blockBoundary = true;
     }
 
     public void turnOn() {
@@ -283,7 +328,14 @@ public class RV32Cpu {
         // this.cpuThread.start();
     }
 
-    private void fetchExecuteCycle() throws Exception {
+    /**
+     * Execute from the current PC: either one interpreted instruction or, if
+     * the PC starts a compiled block that fits in the budget, the whole block.
+     *
+     * @param budget Maximum number of instructions that may retire
+     * @return Number of instructions retired
+     */
+    private int fetchExecuteCycle(int budget) throws Exception {
         // Check for infinite loop
         if (pc == lastPC) {
             loopCount++;
@@ -291,7 +343,8 @@ public class RV32Cpu {
                 System.out.println("Infinite loop detected at PC: 0x" + Integer.toHexString(pc));
                 System.out.println("Program halted after " + LOOP_THRESHOLD + " iterations");
                 this.running = false;
-                return;
+                halted = true;
+                return 0;
             }
         } else {
             lastPC = pc;
@@ -299,12 +352,50 @@ public class RV32Cpu {
         }
 
         try {
-            // Fetch the instruction from memory at the address in the pc register
-            int instructionFetched = fetch();
-            InstructionDecoded instructionDecoded = decode(instructionFetched);
-            execute(instructionDecoded);
-            // System.out.println(instructionDecoded.toString());
+            // Fetch the instruction, decoding it only on a cache miss
+            int packed;
+            int imm;
+            int fetchAddress = pc;
+            int satp = csrs.get(SATP);
+            if (Sv32Mmu.isEnabled(satp, privilegeMode)) {
+                fetchAddress = mmu.translate(pc, Sv32Mmu.ACCESS_FETCH, privilegeMode, satp, csrs.get(MSTATUS));
+            }
+            try {
+                int physicalPc = memory.translateInstructionAddress(fetchAddress);
+                if (codeCache != null) {
+                    TranslatedBlock block = codeCache.lookup(physicalPc, pc);
+                    if (block == null && blockBoundary && codeCache.countExecution(physicalPc)) {
+                        block = compileBlock(physicalPc);
+                    }
+                    if (block != null && block.length <= budget) {
+                        return runBlock(block);
+                    }
+                }
+                packed = decodeCache != null ? decodeCache.lookup(physicalPc) : 0;
+                if (packed != 0) {
+                    imm = decodeCache.immediate(physicalPc);
+                } else {
+                    long decoded = predecode(memory.readInstructionWord(physicalPc));
+                    packed = (int) decoded;
+                    imm = (int) (decoded >> 32);
+                    if (decodeCache != null) {
+                        decodeCache.fill(physicalPc, packed, imm);
+                    }
+                }
+            } catch (Exception e) {
+                throw new MemoryAccessException("Failed to fetch instruction at PC: " + pc);
+            }
+
+            // Increment PC by instruction size (4 bytes)
+            pc += INSTRUCTION_SIZE;
+
+            int op = packed & 0xFF;
+            blockBoundary = !BlockCompiler.canCompile(op) || BlockCompiler.endsBlock(op);
+            execute(op, (packed >>> 8) & 0x1F, (packed >>> 13) & 0x1F, (packed >>> 18) & 0x1F, imm);
             // displayRegisters();
+        } catch (PageFaultException e) {
+            // The fetch itself faulted, so the PC still points at it
+            handleException(e.getTrapCause(), e.getAddress());
         } catch (MemoryAccessException e) {
             // Handle memory access exception using the handleException method
             handleException(7, pc - INSTRUCTION_SIZE); // 7 = store/AMO access fault
@@ -313,6 +404,181 @@ public class RV32Cpu {
             handleException(2, pc - INSTRUCTION_SIZE); // 2 = illegal instruction
             e.printStackTrace(); // Log the exception for debugging
         }
+        return 1;
+    }
+
+    /**
+     * Translate the block starting at the current PC. The block stops at the
+     * first control transfer, at the first instruction the compiler does not
+     * handle, or at the end of the page so it never spans two frames.
+     *
+     * @return The installed block, or null if nothing could be compiled
+     */
+    private TranslatedBlock compileBlock(int physicalPc) {
+        int max = BlockCompiler.MAX_BLOCK_LENGTH;
+        int[] ops = new int[max];
+        int[] rd = new int[max];
+        int[] rs1 = new int[max];
+        int[] rs2 = new int[max];
+        int[] imms = new int[max];
+
+        int length = 0;
+        try {
+            int address = pc;
+            while (length < max) {
+                long decoded = predecode(memory.readInstructionWord(physicalPc + length * INSTRUCTION_SIZE));
+                int packed = (int) decoded;
+                int op = packed & 0xFF;
+                if (!BlockCompiler.canCompile(op)) {
+                    break;
+                }
+                ops[length] = op;
+                rd[length] = (packed >>> 8) & 0x1F;
+                rs1[length] = (packed >>> 13) & 0x1F;
+                rs2[length] = (packed >>> 18) & 0x1F;
+                imms[length] = (int) (decoded >> 32);
+                length++;
+
+                address += INSTRUCTION_SIZE;
+                if (BlockCompiler.endsBlock(op) || (address & 0xFFF) == 0) {
+                    break;
+                }
+            }
+            if (length == 0) {
+                codeCache.markUncompilable(physicalPc);
+                return null;
+            }
+
+            TranslatedBlock block = new TranslatedBlock(physicalPc, pc, length,
+                    blockCompiler.compile(pc, length, ops, rd, rs1, rs2, imms));
+            codeCache.install(block);
+            decodeCache.markTranslated(physicalPc);
+            return block;
+        } catch (Exception e) {
+            // Keep interpreting this block rather than failing the guest
+            System.err.println("JIT: failed to compile block at PC 0x" + Integer.toHexString(pc) + ": " + e);
+            codeCache.markUncompilable(physicalPc);
+            return null;
+        }
+    }
+
+    /**
+     * Run a compiled block and raise any fault it recorded exactly as the
+     * interpreter would have for the faulting instruction.
+     *
+     * @return Number of instructions retired
+     */
+    private int runBlock(TranslatedBlock block) {
+        blockRuntime.faulted = false;
+        int next = block.code.run(x, blockRuntime);
+        blockBoundary = true;
+        if (blockRuntime.faulted) {
+            lastPC = blockRuntime.faultPc;
+            pc = blockRuntime.faultPc + INSTRUCTION_SIZE;
+            if (isPageFault(blockRuntime.faultCause)) {
+                pc = blockRuntime.faultPc; // Restartable once the handler maps the page
+            }
+            handleException(blockRuntime.faultCause, blockRuntime.faultValue);
+            return (blockRuntime.faultPc - block.virtualPc) / INSTRUCTION_SIZE + 1;
+        }
+        // Loop detection sees the last instruction executed, as if interpreted
+        lastPC = block.virtualPc + (block.length - 1) * INSTRUCTION_SIZE;
+        pc = next;
+        return block.length;
+    }
+
+    /**
+     * Memory callbacks for compiled blocks, mirroring the interpreter's load
+     * and store handlers and their exception causes.
+     */
+    private final class CpuBlockRuntime extends BlockRuntime {
+        private int load(int op, int address, int pc) {
+            try {
+                int physical = mapAddress(address, Sv32Mmu.ACCESS_LOAD);
+                switch (op) {
+                    case OP_LB:
+                        return memory.readByte(physical);
+                    case OP_LH:
+                        return memory.readHalfWord(physical);
+                    case OP_LW:
+                        return memory.readWord(physical);
+                    case OP_LBU:
+                        return memory.readByte(physical) & 0xFF;
+                    default: // OP_LHU
+                        return memory.readHalfWord(physical) & 0xFFFF;
+                }
+            } catch (PageFaultException e) {
+                fault(pc, e.getTrapCause(), address);
+            } catch (MemoryAccessException e) {
+                fault(pc, 5, address); // 5 = load access fault
+            } catch (RuntimeException e) {
+                fault(pc, 2, pc); // 2 = illegal instruction, as in fetchExecuteCycle
+            }
+            return 0;
+        }
+
+        private void store(int op, int address, int value, int pc) {
+            try {
+                int physical = mapAddressForWrite(address);
+                switch (op) {
+                    case OP_SB:
+                        memory.writeByte(physical, (byte) value);
+                        break;
+                    case OP_SH:
+                        memory.writeHalfWord(physical, (short) value);
+                        break;
+                    default: // OP_SW
+                        memory.writeWord(physical, value);
+                        break;
+                }
+            } catch (PageFaultException e) {
+                fault(pc, e.getTrapCause(), address);
+            } catch (MemoryAccessException e) {
+                fault(pc, 7, address); // 7 = store/AMO access fault
+            } catch (RuntimeException e) {
+                fault(pc, 2, pc);
+            }
+        }
+
+        @Override
+        public int lb(int address, int pc) {
+            return load(OP_LB, address, pc);
+        }
+
+        @Override
+        public int lh(int address, int pc) {
+            return load(OP_LH, address, pc);
+        }
+
+        @Override
+        public int lw(int address, int pc) {
+            return load(OP_LW, address, pc);
+        }
+
+        @Override
+        public int lbu(int address, int pc) {
+            return load(OP_LBU, address, pc);
+        }
+
+        @Override
+        public int lhu(int address, int pc) {
+            return load(OP_LHU, address, pc);
+        }
+
+        @Override
+        public void sb(int address, int value, int pc) {
+            store(OP_SB, address, value, pc);
+        }
+
+        @Override
+        public void sh(int address, int value, int pc) {
+            store(OP_SH, address, value, pc);
+        }
+
+        @Override
+        public void sw(int address, int value, int pc) {
+            store(OP_SW, address, value, pc);
+        }
     }
 
     /**
@@ -324,57 +590,58 @@ public class RV32Cpu {
     public void handleException(int cause, int tval) {
         // Set exception flag for kernel integration
         exceptionOccurred = true;
+        blockBoundary = true; // The trap handler starts a new block
 
         // Directly implement exception handling here to avoid recursive call
         // Check if the exception should be delegated to S-mode
         boolean delegate = false;
         if (privilegeMode < PRIVILEGE_MACHINE) {
-            int medeleg = csrRegisters.getOrDefault(MEDELEG, 0); // Direct access to avoid recursion
+            int medeleg = csrs.get(MEDELEG);
             delegate = ((medeleg >> cause) & 1) == 1;
         }
 
         if (delegate && privilegeMode == PRIVILEGE_USER) {
             // Delegate to S-mode
             // Save current PC to SEPC
-            csrRegisters.put(SEPC, pc);
+            csrs.set(SEPC, pc);
 
             // Set SCAUSE to the exception cause
-            csrRegisters.put(SCAUSE, cause);
+            csrs.set(SCAUSE, cause);
 
             // Set STVAL to the trap value
-            csrRegisters.put(STVAL, tval);
+            csrs.set(STVAL, tval);
 
             // Update SSTATUS SPP field to the current privilege mode
-            int sstatus = csrRegisters.getOrDefault(SSTATUS, 0); // Direct access to avoid recursion
+            int sstatus = csrs.get(SSTATUS);
             sstatus = (sstatus & ~0x100) | ((privilegeMode & 0x1) << 8);
-            csrRegisters.put(SSTATUS, sstatus);
+            csrs.set(SSTATUS, sstatus);
 
             // Set privilege mode to S-mode
             privilegeMode = PRIVILEGE_SUPERVISOR;
 
             // Jump to the trap handler address in STVEC
-            pc = csrRegisters.getOrDefault(STVEC, 0) & ~0x3; // Clear mode bits
+            pc = csrs.get(STVEC) & ~0x3; // Clear mode bits
         } else {
             // Handle in M-mode
             // Save current PC to MEPC
-            csrRegisters.put(MEPC, pc);
+            csrs.set(MEPC, pc);
 
             // Set MCAUSE to the exception cause
-            csrRegisters.put(MCAUSE, cause);
+            csrs.set(MCAUSE, cause);
 
             // Set MTVAL to the trap value
-            csrRegisters.put(MTVAL, tval);
+            csrs.set(MTVAL, tval);
 
             // Update MSTATUS MPP field to the current privilege mode
-            int mstatus = csrRegisters.getOrDefault(MSTATUS, 0); // Direct access to avoid recursion
+            int mstatus = csrs.get(MSTATUS);
             mstatus = (mstatus & ~0x1800) | (privilegeMode << 11);
-            csrRegisters.put(MSTATUS, mstatus);
+            csrs.set(MSTATUS, mstatus);
 
             // Set privilege mode to M-mode
             privilegeMode = PRIVILEGE_MACHINE;
 
             // Jump to the trap handler address in MTVEC
-            pc = csrRegisters.getOrDefault(MTVEC, 0) & ~0x3; // Clear mode bits
+            pc = csrs.get(MTVEC) & ~0x3; // Clear mode bits
         }
     }
 
@@ -388,7 +655,7 @@ public class RV32Cpu {
         if (fromMode == PRIVILEGE_MACHINE) {
             // MRET instruction
             // Get the previous privilege mode from MSTATUS.MPP
-            int mstatus = csrRegisters.getOrDefault(MSTATUS, 0); // Direct access to avoid recursion
+            int mstatus = csrs.get(MSTATUS);
             int prevMode = (mstatus >> 11) & 0x3;
 
             // Set the privilege mode to the previous mode
@@ -401,14 +668,14 @@ public class RV32Cpu {
             mstatus = (mstatus & ~0x8) | (((mstatus >> 7) & 0x1) << 3);
             // Set MPIE to 1
             mstatus = mstatus | 0x80;
-            csrRegisters.put(MSTATUS, mstatus);
+            csrs.set(MSTATUS, mstatus);
 
             // Set PC to the value in MEPC
-            pc = csrRegisters.getOrDefault(MEPC, 0); // Direct access to avoid recursion
+            pc = csrs.get(MEPC);
         } else if (fromMode == PRIVILEGE_SUPERVISOR) {
             // SRET instruction
             // Get the previous privilege mode from SSTATUS.SPP
-            int sstatus = csrRegisters.getOrDefault(SSTATUS, 0); // Direct access to avoid recursion
+            int sstatus = csrs.get(SSTATUS);
             int prevMode = ((sstatus >> 8) & 0x1) == 1 ? PRIVILEGE_SUPERVISOR : PRIVILEGE_USER;
 
             // Set the privilege mode to the previous mode
@@ -421,477 +688,524 @@ public class RV32Cpu {
             sstatus = (sstatus & ~0x2) | (((sstatus >> 5) & 0x1) << 1);
             // Set SPIE to 1
             sstatus = sstatus | 0x20;
-            csrRegisters.put(SSTATUS, sstatus);
+            csrs.set(SSTATUS, sstatus);
 
             // Set PC to the value in SEPC
-            pc = csrRegisters.getOrDefault(SEPC, 0); // Direct access to avoid recursion
-        }
-    }
-
-    private int fetch() throws MemoryAccessException {
-        // Read 32-bit instruction from memory at PC
-        int instruction = 0;
-
-        // Read 4 bytes and combine them
-        try {
-            byte byte0 = memory.readByte(pc);
-            byte byte1 = memory.readByte(pc + 1);
-            byte byte2 = memory.readByte(pc + 2);
-            byte byte3 = memory.readByte(pc + 3);
-
-            // Combine bytes into 32-bit instruction
-            instruction = (byte3 & 0xFF) << 24
-                    | (byte2 & 0xFF) << 16
-                    | (byte1 & 0xFF) << 8
-                    | (byte0 & 0xFF);
-
-            // Increment PC by instruction size (4 bytes)
-            pc += INSTRUCTION_SIZE;
-
-        } catch (Exception e) {
-            throw new MemoryAccessException("Failed to fetch instruction at PC: " + pc);
+            pc = csrs.get(SEPC);
         }
-
-        return instruction;
     }
 
-    private InstructionDecoded decode(int instructionInt) {
-        // Combine the bytes into a 32-bit instruction
-        /*
-         * int instructionInt = (instruction[3] & 0xFF) << 24
-         * | (instruction[2] & 0xFF) << 16
-         * | (instruction[1] & 0xFF) << 8
-         * | (instruction[0] & 0xFF);
-         */
-        InstructionDecoded instruction = new InstructionDecoded();
-
+    /**
+     * Decode a raw instruction into the compact form stored in the decoded
+     * instruction cache. The low word packs the handler id and register
+     * fields, the high word holds the one immediate that handler uses.
+     */
+    private static long predecode(int instructionInt) {
         // Extract instruction fields based on RISC-V RV32I format
         int opcode = instructionInt & 0x7F; // bits 0-6
-        instruction.setOpcode(opcode);
         int rd = (instructionInt >> 7) & 0x1F; // bits 7-11
-        instruction.setRd(rd);
         int func3 = (instructionInt >> 12) & 0x7; // bits 12-14
-        instruction.setFunc3(func3);
         int rs1 = (instructionInt >> 15) & 0x1F; // bits 15-19
-        instruction.setRs1(rs1);
         int rs2 = (instructionInt >> 20) & 0x1F; // bits 20-24
-        instruction.setRs2(rs2);
         int func7 = (instructionInt >> 25) & 0x7F; // bits 25-31
-        instruction.setFunc7(func7);
 
-        // Immediate values for different instruction formats
         // I-type: Sign extended 12-bit immediate
-        int imm_i = ((instructionInt >> 20) << 20) >> 20;
-        instruction.setImm_i(imm_i);
-
-        // S-type: Sign extended 12-bit immediate
-        int imm_s = (((instructionInt >> 25) << 5) | ((instructionInt >> 7) & 0x1F));
-        imm_s = (imm_s << 20) >> 20; // Sign extend
-        instruction.setImm_s(imm_s);
-
-        // B-type: Sign extended 13-bit immediate
-        int imm_b = (((instructionInt >> 31) << 12) // imm[12]
-                |
-                ((instructionInt >> 7) & 0x1) << 11) // imm[11]
-                |
-                ((instructionInt >> 25) & 0x3F) << 5 // imm[10:5]
-                |
-                ((instructionInt >> 8) & 0xF) << 1; // imm[4:1]
-        imm_b = (imm_b << 19) >> 19; // Sign extend
-        instruction.setImm_b(imm_b);
-
-        // U-type: 20-bit immediate, shifted left by 12
-        int imm_u = instructionInt & 0xFFFFF000;
-        instruction.setImm_u(imm_u);
-
-        // J-type: Sign extended 21-bit immediate
-        int imm_j = (((instructionInt >> 31) << 20) // imm[20]
-                |
-                ((instructionInt >> 12) & 0xFF) << 12 // imm[19:12]
-                |
-                ((instructionInt >> 20) & 0x1) << 11 // imm[11]
-                |
-                ((instructionInt >> 21) & 0x3FF) << 1); // imm[10:1]
-        imm_j = (imm_j << 11) >> 11; // Sign extend
-        instruction.setImm_j(imm_j);
-        return instruction;
+        int imm_i = instructionInt >> 20;
+        int op = decodeOp(opcode, func3, func7, imm_i);
+
+        // Only compute the immediate format this opcode actually uses
+        int imm;
+        switch (opcode) {
+            case 0b0100011: // S-type: Sign extended 12-bit immediate
+                imm = ((instructionInt >> 25) << 5) | ((instructionInt >> 7) & 0x1F);
+                break;
+            case 0b1100011: // B-type: Sign extended 13-bit immediate
+                imm = ((instructionInt >> 31) << 12) // imm[12]
+                        | ((instructionInt >> 7) & 0x1) << 11 // imm[11]
+                        | ((instructionInt >> 25) & 0x3F) << 5 // imm[10:5]
+                        | ((instructionInt >> 8) & 0xF) << 1; // imm[4:1]
+                break;
+            case 0b0110111: // LUI
+            case 0b0010111: // AUIPC: 20-bit immediate, shifted left by 12
+                imm = instructionInt & 0xFFFFF000;
+                break;
+            case 0b1101111: // J-type: Sign extended 21-bit immediate
+                imm = ((instructionInt >> 31) << 20) // imm[20]
+                        | ((instructionInt >> 12) & 0xFF) << 12 // imm[19:12]
+                        | ((instructionInt >> 20) & 0x1) << 11 // imm[11]
+                        | ((instructionInt >> 21) & 0x3FF) << 1; // imm[10:1]
+                break;
+            default:
+                imm = imm_i;
+        }
 
+        int packed = op | rd << 8 | rs1 << 13 | rs2 << 18;
+        return ((long) adjustImmediate(op, imm) << 32) | (packed & 0xFFFFFFFFL);
     }
 
-    private void execute(InstructionDecoded instruction) {
-        int opcode = instruction.getOpcode();
-        int rd = instruction.getRd();
-        int rs1 = instruction.getRs1();
-        int rs2 = instruction.getRs2();
-        int func3 = instruction.getFunc3();
-        int func7 = instruction.getFunc7();
-        int imm_i = instruction.getImm_i();
-        int imm_s = instruction.getImm_s();
-        int imm_b = instruction.getImm_b();
-        int imm_u = instruction.getImm_u();
-        int imm_j = instruction.getImm_j();
+    /**
+     * Map opcode/func3/func7 to a handler id. Encodings the interpreter has
+     * always ignored decode to OP_NOP; bad M/R-type func7 decodes to
+     * OP_ILLEGAL.
+     */
+    private static int decodeOp(int opcode, int func3, int func7, int imm_i) {
         switch (opcode) {
-            // R-type instructions
             case 0b0110011: // R-type
+                if (func7 == 0b0000001) {
+                    return OP_MUL + func3; // MUL..REMU follow func3 order
+                }
+                if (func7 == 0) {
+                    return OP_ADD + func3; // ADD..AND follow func3 order
+                }
+                if (func7 == 0b0100000) {
+                    if (func3 == 0b000)
+                        return OP_SUB;
+                    if (func3 == 0b101)
+                        return OP_SRA;
+                }
+                return OP_ILLEGAL;
+            case 0b0010011: // I-type ALU
+                if (func3 == 0b101) {
+                    if ((imm_i & 0xFE0) == 0)
+                        return OP_SRLI;
+                    if ((imm_i & 0xFE0) == 0x400)
+                        return OP_SRAI;
+                    return OP_NOP;
+                }
+                return OP_ADDI + func3; // ADDI..ANDI follow func3 order
+            case 0b0000011: // LOAD
                 switch (func3) {
-                    case 0b000: // ADD/SUB/MUL
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] + x[rs2]; // ADD
-                        } else if (func7 == 0b0100000) {
-                            x[rd] = x[rs1] - x[rs2]; // SUB
-                        } else if (func7 == 0b0000001) {
-                            x[rd] = x[rs1] * x[rs2]; // MUL (M-extension)
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b001: // SLL/MULH
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] << (x[rs2] & 0x1F); // SLL
-                        } else if (func7 == 0b0000001) {
-                            // MULH (M-extension) - high bits of signed×signed product
-                            long a = x[rs1];
-                            long b = x[rs2];
-                            // Sign extend to 64 bits
-                            if ((a & 0x80000000L) != 0)
-                                a |= 0xFFFFFFFF00000000L;
-                            if ((b & 0x80000000L) != 0)
-                                b |= 0xFFFFFFFF00000000L;
-                            long result = a * b;
-                            x[rd] = (int) (result >> 32); // High 32 bits
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b010: // SLT/MULHSU
-                        if (func7 == 0) {
-                            x[rd] = (x[rs1] < x[rs2]) ? 1 : 0; // SLT
-                        } else if (func7 == 0b0000001) {
-                            // MULHSU (M-extension) - high bits of signed×unsigned product
-                            long a = x[rs1];
-                            long b = Integer.toUnsignedLong(x[rs2]);
-                            // Sign extend a to 64 bits
-                            if ((a & 0x80000000L) != 0)
-                                a |= 0xFFFFFFFF00000000L;
-                            long result = a * b;
-                            x[rd] = (int) (result >> 32); // High 32 bits
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b011: // SLTU/MULHU
-                        if (func7 == 0) {
-                            x[rd] = (Integer.compareUnsigned(x[rs1], x[rs2]) < 0) ? 1 : 0; // SLTU
-                        } else if (func7 == 0b0000001) {
-                            // MULHU (M-extension) - high bits of unsigned×unsigned product
-                            long a = Integer.toUnsignedLong(x[rs1]);
-                            long b = Integer.toUnsignedLong(x[rs2]);
-                            long result = a * b;
-                            x[rd] = (int) (result >> 32); // High 32 bits
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b100: // XOR/DIV
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] ^ x[rs2]; // XOR
-                        } else if (func7 == 0b0000001) {
-                            // DIV (M-extension) - signed division
-                            if (x[rs2] == 0) {
-                                // Division by zero
-                                x[rd] = -1; // All 1s (0xFFFFFFFF)
-                            } else if (x[rs1] == Integer.MIN_VALUE && x[rs2] == -1) {
-                                // Signed overflow case
-                                x[rd] = Integer.MIN_VALUE;
-                            } else {
-                                x[rd] = x[rs1] / x[rs2];
-                            }
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b101: // SRL/SRA/DIVU
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] >>> (x[rs2] & 0x1F); // SRL
-                        } else if (func7 == 0b0100000) {
-                            x[rd] = x[rs1] >> (x[rs2] & 0x1F); // SRA
-                        } else if (func7 == 0b0000001) {
-                            // DIVU (M-extension) - unsigned division
-                            if (x[rs2] == 0) {
-                                // Division by zero
-                                x[rd] = -1; // All 1s (0xFFFFFFFF)
-                            } else {
-                                x[rd] = Integer.divideUnsigned(x[rs1], x[rs2]);
-                            }
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b110: // OR/REM
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] | x[rs2]; // OR
-                        } else if (func7 == 0b0000001) {
-                            // REM (M-extension) - signed remainder
-                            if (x[rs2] == 0) {
-                                // Division by zero
-                                x[rd] = x[rs1]; // Return dividend
-                            } else if (x[rs1] == Integer.MIN_VALUE && x[rs2] == -1) {
-                                // Signed overflow case
-                                x[rd] = 0;
-                            } else {
-                                x[rd] = x[rs1] % x[rs2];
-                            }
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
-                    case 0b111: // AND/REMU
-                        if (func7 == 0) {
-                            x[rd] = x[rs1] & x[rs2]; // AND
-                        } else if (func7 == 0b0000001) {
-                            // REMU (M-extension) - unsigned remainder
-                            if (x[rs2] == 0) {
-                                // Division by zero
-                                x[rd] = x[rs1]; // Return dividend
-                            } else {
-                                x[rd] = Integer.remainderUnsigned(x[rs1], x[rs2]);
-                            }
-                        } else {
-                            // Illegal instruction
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        }
-                        break;
+                    case 0b000:
+                        return OP_LB;
+                    case 0b001:
+                        return OP_LH;
+                    case 0b010:
+                        return OP_LW;
+                    case 0b100:
+                        return OP_LBU;
+                    case 0b101:
+                        return OP_LHU;
+                    default:
+                        return OP_NOP;
+                }
+            case 0b0100011: // STORE
+                return func3 <= 0b010 ? OP_SB + func3 : OP_NOP;
+            case 0b1100011: // BRANCH
+                switch (func3) {
+                    case 0b000:
+                        return OP_BEQ;
+                    case 0b001:
+                        return OP_BNE;
+                    case 0b100:
+                        return OP_BLT;
+                    case 0b101:
+                        return OP_BGE;
+                    case 0b110:
+                        return OP_BLTU;
+                    case 0b111:
+                        return OP_BGEU;
+                    default:
+                        return OP_NOP;
+                }
+            case 0b1101111:
+                return OP_JAL;
+            case 0b1100111:
+                return OP_JALR;
+            case 0b0110111:
+                return OP_LUI;
+            case 0b0010111:
+                return OP_AUIPC;
+            case 0b1110011: // SYSTEM
+                if (func3 == 0) {
+                    switch (imm_i) {
+                        case 0:
+                            return OP_ECALL;
+                        case 1:
+                            return OP_EBREAK;
+                        case 0x302:
+                            return OP_MRET;
+                        case 0x102:
+                            return OP_SRET;
+                        case 0x105:
+                            return OP_WFI;
+                        default:
+                            // SFENCE.VMA: func7 = 0001001, rs2 holds the ASID
+                            return (imm_i >> 5) == 0b0001001 ? OP_SFENCE_VMA : OP_NOP;
+                    }
+                }
+                switch (func3) {
+                    case 0b001:
+                        return OP_CSRRW;
+                    case 0b010:
+                        return OP_CSRRS;
+                    case 0b011:
+                        return OP_CSRRC;
+                    case 0b101:
+                        return OP_CSRRWI;
+                    case 0b110:
+                        return OP_CSRRSI;
+                    case 0b111:
+                        return OP_CSRRCI;
+                    default:
+                        return OP_ILLEGAL;
                 }
+            default:
+                return OP_NOP;
+        }
+    }
+
+    /**
+     * Shift-immediates keep only the shift amount and CSR instructions only
+     * the CSR address, so the handlers need no further masking.
+     */
+    private static int adjustImmediate(int op, int imm) {
+        switch (op) {
+            case OP_SLLI:
+            case OP_SRLI:
+            case OP_SRAI:
+                return imm & 0x1F;
+            case OP_CSRRW:
+            case OP_CSRRS:
+            case OP_CSRRC:
+            case OP_CSRRWI:
+            case OP_CSRRSI:
+            case OP_CSRRCI:
+                return imm & 0xFFF;
+            default:
+                return imm;
+        }
+    }
+
+    private void execute(int op, int rd, int rs1, int rs2, int imm) {
+        switch (op) {
+            case OP_NOP:
                 break;
 
-            // I-type instructions
-            case 0b0010011: // I-type ALU
-                switch (func3) {
-                    case 0b000: // ADDI
-                        x[rd] = x[rs1] + imm_i;
-                        break;
-                    case 0b001: // SLLI
-                        x[rd] = x[rs1] << (imm_i & 0x1F);
-                        break;
-                    case 0b010: // SLTI
-                        x[rd] = (x[rs1] < imm_i) ? 1 : 0;
-                        break;
-                    case 0b011: // SLTIU
-                        x[rd] = (Integer.compareUnsigned(x[rs1], imm_i) < 0) ? 1 : 0;
-                        break;
-                    case 0b100: // XORI
-                        x[rd] = x[rs1] ^ imm_i;
-                        break;
-                    case 0b101: // SRLI/SRAI
-                        if ((imm_i & 0xFE0) == 0) {
-                            x[rd] = x[rs1] >>> (imm_i & 0x1F); // SRLI
-                        } else if ((imm_i & 0xFE0) == 0x400) {
-                            x[rd] = x[rs1] >> (imm_i & 0x1F); // SRAI
-                        }
-                        break;
-                    case 0b110: // ORI
-                        x[rd] = x[rs1] | imm_i;
-                        break;
-                    case 0b111: // ANDI
-                        x[rd] = x[rs1] & imm_i;
-                        break;
+            case OP_ILLEGAL:
+                // Illegal instruction
+                handleException(2, pc - INSTRUCTION_SIZE);
+                break;
+
+            // R-type instructions
+            case OP_ADD:
+                x[rd] = x[rs1] + x[rs2];
+                break;
+            case OP_SUB:
+                x[rd] = x[rs1] - x[rs2];
+                break;
+            case OP_SLL:
+                x[rd] = x[rs1] << (x[rs2] & 0x1F);
+                break;
+            case OP_SLT:
+                x[rd] = (x[rs1] < x[rs2]) ? 1 : 0;
+                break;
+            case OP_SLTU:
+                x[rd] = (Integer.compareUnsigned(x[rs1], x[rs2]) < 0) ? 1 : 0;
+                break;
+            case OP_XOR:
+                x[rd] = x[rs1] ^ x[rs2];
+                break;
+            case OP_SRL:
+                x[rd] = x[rs1] >>> (x[rs2] & 0x1F);
+                break;
+            case OP_SRA:
+                x[rd] = x[rs1] >> (x[rs2] & 0x1F);
+                break;
+            case OP_OR:
+                x[rd] = x[rs1] | x[rs2];
+                break;
+            case OP_AND:
+                x[rd] = x[rs1] & x[rs2];
+                break;
+
+            // M-extension
+            case OP_MUL:
+                x[rd] = x[rs1] * x[rs2];
+                break;
+            case OP_MULH:
+                // High bits of signed×signed product
+                x[rd] = (int) (((long) x[rs1] * (long) x[rs2]) >> 32);
+                break;
+            case OP_MULHSU:
+                // High bits of signed×unsigned product
+                x[rd] = (int) (((long) x[rs1] * Integer.toUnsignedLong(x[rs2])) >> 32);
+                break;
+            case OP_MULHU:
+                // High bits of unsigned×unsigned product
+                x[rd] = (int) ((Integer.toUnsignedLong(x[rs1]) * Integer.toUnsignedLong(x[rs2])) >>> 32);
+                break;
+            case OP_DIV:
+                if (x[rs2] == 0) {
+                    x[rd] = -1; // Division by zero: all 1s (0xFFFFFFFF)
+                } else if (x[rs1] == Integer.MIN_VALUE && x[rs2] == -1) {
+                    x[rd] = Integer.MIN_VALUE; // Signed overflow case
+                } else {
+                    x[rd] = x[rs1] / x[rs2];
                 }
                 break;
+            case OP_DIVU:
+                if (x[rs2] == 0) {
+                    x[rd] = -1; // Division by zero: all 1s (0xFFFFFFFF)
+                } else {
+                    x[rd] = Integer.divideUnsigned(x[rs1], x[rs2]);
+                }
+                break;
+            case OP_REM:
+                if (x[rs2] == 0) {
+                    x[rd] = x[rs1]; // Division by zero: return dividend
+                } else if (x[rs1] == Integer.MIN_VALUE && x[rs2] == -1) {
+                    x[rd] = 0; // Signed overflow case
+                } else {
+                    x[rd] = x[rs1] % x[rs2];
+                }
+                break;
+            case OP_REMU:
+                if (x[rs2] == 0) {
+                    x[rd] = x[rs1]; // Division by zero: return dividend
+                } else {
+                    x[rd] = Integer.remainderUnsigned(x[rs1], x[rs2]);
+                }
+                break;
+
+            // I-type instructions
+            case OP_ADDI:
+                x[rd] = x[rs1] + imm;
+                break;
+            case OP_SLLI:
+                x[rd] = x[rs1] << imm;
+                break;
+            case OP_SLTI:
+                x[rd] = (x[rs1] < imm) ? 1 : 0;
+                break;
+            case OP_SLTIU:
+                x[rd] = (Integer.compareUnsigned(x[rs1], imm) < 0) ? 1 : 0;
+                break;
+            case OP_XORI:
+                x[rd] = x[rs1] ^ imm;
+                break;
+            case OP_SRLI:
+                x[rd] = x[rs1] >>> imm;
+                break;
+            case OP_SRAI:
+                x[rd] = x[rs1] >> imm;
+                break;
+            case OP_ORI:
+                x[rd] = x[rs1] | imm;
+                break;
+            case OP_ANDI:
+                x[rd] = x[rs1] & imm;
+                break;
 
             // Load instructions
-            case 0b0000011: // LOAD
+            case OP_LB:
+            case OP_LH:
+            case OP_LW:
+            case OP_LBU:
+            case OP_LHU:
                 try {
-                    int address = mapAddress(x[rs1] + imm_i);
-                    switch (func3) {
-                        case 0b000: // LB
+                    int address = mapAddress(x[rs1] + imm, Sv32Mmu.ACCESS_LOAD);
+                    switch (op) {
+                        case OP_LB:
                             x[rd] = memory.readByte(address);
                             break;
-                        case 0b001: // LH
+                        case OP_LH:
                             x[rd] = memory.readHalfWord(address);
                             break;
-                        case 0b010: // LW
+                        case OP_LW:
                             x[rd] = memory.readWord(address);
                             break;
-                        case 0b100: // LBU
+                        case OP_LBU:
                             x[rd] = memory.readByte(address) & 0xFF;
                             break;
-                        case 0b101: // LHU
+                        default: // OP_LHU
                             x[rd] = memory.readHalfWord(address) & 0xFFFF;
                             break;
                     }
+                } catch (PageFaultException e) {
+                    raisePageFault(e);
                 } catch (MemoryAccessException e) {
                     // Handle load access fault
-                    handleException(5, x[rs1] + imm_i); // 5 = load access fault
+                    handleException(5, x[rs1] + imm); // 5 = load access fault
                 }
                 break;
 
             // Store instructions
-            case 0b0100011: // STORE
+            case OP_SB:
+            case OP_SH:
+            case OP_SW:
                 try {
-                    int address = mapAddressForWrite(x[rs1] + imm_s);
-                    switch (func3) {
-                        case 0b000: // SB
+                    int address = mapAddressForWrite(x[rs1] + imm);
+                    switch (op) {
+                        case OP_SB:
                             memory.writeByte(address, (byte) x[rs2]);
                             break;
-                        case 0b001: // SH
+                        case OP_SH:
                             memory.writeHalfWord(address, (short) x[rs2]);
                             break;
-                        case 0b010: // SW
+                        default: // OP_SW
                             memory.writeWord(address, x[rs2]);
                             break;
                     }
+                } catch (PageFaultException e) {
+                    raisePageFault(e);
                 } catch (MemoryAccessException e) {
                     // Handle store access fault
-                    handleException(7, x[rs1] + imm_s); // 7 = store/AMO access fault
+                    handleException(7, x[rs1] + imm); // 7 = store/AMO access fault
                 }
                 break;
 
             // Branch instructions
-            case 0b1100011: // BRANCH
-                boolean takeBranch = false;
-                switch (func3) {
-                    case 0b000: // BEQ
-                        takeBranch = (x[rs1] == x[rs2]);
-                        break;
-                    case 0b001: // BNE
-                        takeBranch = (x[rs1] != x[rs2]);
-                        break;
-                    case 0b100: // BLT
-                        takeBranch = (x[rs1] < x[rs2]);
-                        break;
-                    case 0b101: // BGE
-                        takeBranch = (x[rs1] >= x[rs2]);
-                        break;
-                    case 0b110: // BLTU
-                        takeBranch = (Integer.compareUnsigned(x[rs1], x[rs2]) < 0);
-                        break;
-                    case 0b111: // BGEU
-                        takeBranch = (Integer.compareUnsigned(x[rs1], x[rs2]) >= 0);
-                        break;
-                }
-                if (takeBranch) {
-                    pc += imm_b - INSTRUCTION_SIZE; // Subtract INSTRUCTION_SIZE because pc was already incremented in
-                                                    // fetch
-                    /*
-                     * if (lastPCBranch == -1) {
-                     * lastPCBranch = pc;
-                     * } else if (pc == lastPCBranch) {
-                     * loopCountBranch++;
-                     * } else {
-                     * loopCountBranch = 0;
-                     * lastPCBranch = -1;
-                     * }
-                     * if (loopCountBranch > 20) {
-                     * loopCountBranch = 0;
-                     * lastPCBranch = -1;
-                     * System.out.println("Getting input");
-                     * memory.getInput(reader.nextLine());
-                     * }
-                     */
-                }
+            // Subtract INSTRUCTION_SIZE because pc was already incremented in fetch
+            case OP_BEQ:
+                if (x[rs1] == x[rs2])
+                    pc += imm - INSTRUCTION_SIZE;
+                break;
+            case OP_BNE:
+                if (x[rs1] != x[rs2])
+                    pc += imm - INSTRUCTION_SIZE;
+                break;
+            case OP_BLT:
+                if (x[rs1] < x[rs2])
+                    pc += imm - INSTRUCTION_SIZE;
+                break;
+            case OP_BGE:
+                if (x[rs1] >= x[rs2])
+                    pc += imm - INSTRUCTION_SIZE;
+                break;
+            case OP_BLTU:
+                if (Integer.compareUnsigned(x[rs1], x[rs2]) < 0)
+                    pc += imm - INSTRUCTION_SIZE;
+                break;
+            case OP_BGEU:
+                if (Integer.compareUnsigned(x[rs1], x[rs2]) >= 0)
+                    pc += imm - INSTRUCTION_SIZE;
                 break;
 
             // Jump instructions
-            case 0b1101111: // JAL
+            case OP_JAL:
                 if (rd != 0) {
                     x[rd] = pc;
                 }
-                pc += imm_j - INSTRUCTION_SIZE;
+                pc += imm - INSTRUCTION_SIZE;
                 break;
 
-            case 0b1100111: // JALR
+            case OP_JALR:
                 int temp = pc;
-                pc = (x[rs1] + imm_i) & ~1;
+                pc = (x[rs1] + imm) & ~1;
                 if (rd != 0) {
                     x[rd] = temp;
                 }
                 break;
 
             // LUI and AUIPC
-            case 0b0110111: // LUI
-                x[rd] = imm_u;
+            case OP_LUI:
+                x[rd] = imm;
                 break;
 
-            case 0b0010111: // AUIPC
-                x[rd] = pc - INSTRUCTION_SIZE + imm_u;
+            case OP_AUIPC:
+                x[rd] = pc - INSTRUCTION_SIZE + imm;
                 break;
 
-            case 0b1110011: // SYSTEM
-                if (func3 == 0) {
-                    if (imm_i == 0) { // ECALL
-                        // Mark that an ECALL occurred - let the kernel handle it
-                        lastInstructionWasEcall = true;
-                        // Don't handle the system call here - let the kernel's SystemCallHandler do it
-                        // The kernel will check isEcall() and call the appropriate handler
-                    } else if (imm_i == 1) { // EBREAK
-                        handleQemuSemihosting();
-                    } else if (imm_i == 0x302) { // MRET
-                        // Return from M-mode trap
-                        if (privilegeMode != PRIVILEGE_MACHINE) {
-                            // Illegal instruction exception if executed in lower privilege mode
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        } else {
-                            returnFromException(PRIVILEGE_MACHINE);
-                        }
-                    } else if (imm_i == 0x102) { // SRET
-                        // Return from S-mode trap
-                        if (privilegeMode < PRIVILEGE_SUPERVISOR) {
-                            // Illegal instruction exception if executed in U-mode
-                            handleException(2, pc - INSTRUCTION_SIZE);
-                        } else {
-                            returnFromException(PRIVILEGE_SUPERVISOR);
-                        }
-                    }
+            // SYSTEM
+            case OP_ECALL:
+                // Mark that an ECALL occurred - let the kernel handle it
+                lastInstructionWasEcall = true;
+                // Don't handle the system call here - let the kernel's SystemCallHandler do it
+                // The kernel will check isEcall() and call the appropriate handler
+                break;
+
+            case OP_EBREAK:
+                handleQemuSemihosting();
+                break;
+
+            case OP_WFI:
+                // No interrupts are modelled; just give up the rest of the slice
+                waitingForInterrupt = true;
+                break;
+
+            case OP_SFENCE_VMA:
+                if (privilegeMode < PRIVILEGE_SUPERVISOR) {
+                    handleException(2, pc - INSTRUCTION_SIZE);
+                } else if (rs1 == 0) {
+                    mmu.flush();
                 } else {
-                    // CSR instructions
-                    int csrAddr = imm_i & 0xFFF;
-                    int oldCsrValue = readCSR(csrAddr);
-                    int newValue;
-
-                    switch (func3) {
-                        case 0b001: // CSRRW
-                            newValue = x[rs1];
-                            break;
-                        case 0b010: // CSRRS
-                            newValue = oldCsrValue | x[rs1];
-                            break;
-                        case 0b011: // CSRRC
-                            newValue = oldCsrValue & ~x[rs1];
-                            break;
-                        case 0b101: // CSRRWI
-                            newValue = rs1; // Immediate value is in rs1 field
-                            break;
-                        case 0b110: // CSRRSI
-                            newValue = oldCsrValue | rs1; // Immediate value is in rs1 field
-                            break;
-                        case 0b111: // CSRRCI
-                            newValue = oldCsrValue & ~rs1; // Immediate value is in rs1 field
-                            break;
-                        default:
-                            newValue = oldCsrValue; // No change for unknown func3
-                            break;
-                    }
+                    mmu.flushPage(x[rs1]);
+                }
+                break;
 
-                    // Update the CSR register directly
-                    csrRegisters.put(csrAddr, newValue);
+            case OP_MRET:
+                // Return from M-mode trap
+                if (privilegeMode != PRIVILEGE_MACHINE) {
+                    // Illegal instruction exception if executed in lower privilege mode
+                    handleException(2, pc - INSTRUCTION_SIZE);
+                } else {
+                    returnFromException(PRIVILEGE_MACHINE);
+                }
+                break;
 
-                    // Handle side effects if needed
-                    if (csrAddr == MSTATUS || csrAddr == SSTATUS) {
-                        handleCSRSideEffects(csrAddr, newValue, oldCsrValue);
-                    }
+            case OP_SRET:
+                // Return from S-mode trap
+                if (privilegeMode < PRIVILEGE_SUPERVISOR) {
+                    // Illegal instruction exception if executed in U-mode
+                    handleException(2, pc - INSTRUCTION_SIZE);
+                } else {
+                    returnFromException(PRIVILEGE_SUPERVISOR);
+                }
+                break;
+
+            // CSR instructions (imm holds the CSR address)
+            case OP_CSRRW:
+            case OP_CSRRS:
+            case OP_CSRRC:
+            case OP_CSRRWI:
+            case OP_CSRRSI:
+            case OP_CSRRCI: {
+                int csrAddr = imm;
+
+                // CSRRS/CSRRC with x0 and the immediate forms with 0 only read
+                boolean writes = op == OP_CSRRW || op == OP_CSRRWI || rs1 != 0;
+                if (!csrs.isAccessible(csrAddr, privilegeMode) || (writes && !csrs.isWritable(csrAddr))) {
+                    handleException(2, pc - INSTRUCTION_SIZE); // 2 = illegal instruction
+                    break;
+                }
+
+                int oldCsrValue = csrs.get(csrAddr);
+                int newValue;
+
+                switch (op) {
+                    case OP_CSRRW:
+                        newValue = x[rs1];
+                        break;
+                    case OP_CSRRS:
+                        newValue = oldCsrValue | x[rs1];
+                        break;
+                    case OP_CSRRC:
+                        newValue = oldCsrValue & ~x[rs1];
+                        break;
+                    case OP_CSRRWI:
+                        newValue = rs1; // Immediate value is in rs1 field
+                        break;
+                    case OP_CSRRSI:
+                        newValue = oldCsrValue | rs1; // Immediate value is in rs1 field
+                        break;
+                    default: // OP_CSRRCI
+                        newValue = oldCsrValue & ~rs1; // Immediate value is in rs1 field
+                        break;
+                }
 
-                    if (rd != 0) {
-                        x[rd] = oldCsrValue;
+                // Apply the CSR's masks and side effects
+                if (writes) {
+                    csrs.write(csrAddr, newValue);
+                    if (csrAddr == SATP) {
+                        mmu.flush(); // No ASIDs, so a new root invalidates everything
                     }
                 }
+
+                if (rd != 0) {
+                    x[rd] = oldCsrValue;
+                }
                 break;
+            }
         }
 
     }
@@ -899,6 +1213,7 @@ public class RV32Cpu {
     private void handleQemuSemihosting() {
         if (x[17] == 93) { // Exit operation
             this.running = false;
+            halted = true;
             System.out.println("Program exited with code: " + x[10]);
         }
     }
@@ -926,9 +1241,24 @@ public class RV32Cpu {
      * Maps a virtual address to a physical address and validates access permissions
      * 
      * @param virtualAddr The virtual address to map
+     * @param access      Sv32Mmu.ACCESS_LOAD or Sv32Mmu.ACCESS_STORE
      * @return The physical address
+     * @throws PageFaultException If Sv32 translation is on and fails
      */
-    private int mapAddress(int virtualAddr) {
+    private int mapAddress(int virtualAddr, int access) throws PageFaultException {
+        // Loads and stores use MPP's privilege when M-mode sets MSTATUS.MPRV
+        int mstatus = csrs.get(MSTATUS);
+        int dataMode = privilegeMode;
+        if (privilegeMode == PRIVILEGE_MACHINE && (mstatus & MSTATUS_MPRV) != 0) {
+            dataMode = (mstatus >> 11) & 0x3;
+        }
+
+        // With Sv32 enabled the page tables decide, including for MMIO
+        int satp = csrs.get(SATP);
+        if (Sv32Mmu.isEnabled(satp, dataMode)) {
+            return mmu.translate(virtualAddr, access, dataMode, satp, mstatus);
+        }
+
         // Handle UART addresses - these are passed through unchanged
         if (checkUARTAddress(virtualAddr)) {
             // UART access is only allowed in machine mode and supervisor mode
@@ -939,19 +1269,6 @@ public class RV32Cpu {
             return virtualAddr;
         }
 
-        // Check if virtual memory translation is enabled in S-mode
-        if (privilegeMode <= PRIVILEGE_SUPERVISOR && (readCSR(SATP) & 0x80000000) != 0) {
-            // In a real implementation, we would perform page table walks here
-            // For now, we'll implement a simple identity mapping with permission checks
-            try {
-                memory.validateAccess(virtualAddr, privilegeMode);
-            } catch (MemoryAccessException e) {
-                // Convert to runtime exception for now
-                throw new RuntimeException("Memory access violation: " + e.getMessage());
-            }
-            return virtualAddr;
-        }
-
         // For ELF-loaded programs, use virtual addresses directly
         // The SimpleMemory class will handle the translation to physical addresses
         return virtualAddr;
@@ -964,10 +1281,51 @@ public class RV32Cpu {
      * @param virtualAddr The virtual address to map
      * @return The physical address
      */
-    private int mapAddressForWrite(int virtualAddr) {
-        int physicalAddr = mapAddress(virtualAddr);
-        // Additional write permission check could be added here
-        return physicalAddr;
+    private int mapAddressForWrite(int virtualAddr) throws PageFaultException {
+        return mapAddress(virtualAddr, Sv32Mmu.ACCESS_STORE);
+    }
+
+    private static boolean isPageFault(int cause) {
+        return cause == 12 || cause == 13 || cause == 15;
+    }
+
+    /**
+     * Raise a load/store page fault. Unlike access faults, the saved PC is the
+     * faulting instruction itself so the handler can map the page and retry.
+     */
+    private void raisePageFault(PageFaultException e) {
+        pc -= INSTRUCTION_SIZE;
+        handleException(e.getTrapCause(), e.getAddress());
+    }
+
+    public Sv32Mmu getMmu() {
+        return mmu;
+    }
+
+    /**
+     * Save the architectural state: PC, registers, privilege mode and CSRs.
+     * Caches are not saved, they refill after a restore.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(pc);
+        for (int value : x) {
+            out.writeInt(value);
+        }
+        out.writeByte(privilegeMode);
+        out.writeBoolean(waitingForInterrupt);
+        csrs.writeState(out);
+    }
+
+    public void readState(DataInput in) throws IOException {
+        pc = in.readInt();
+        for (int i = 0; i < x.length; i++) {
+            x[i] = in.readInt();
+        }
+        privilegeMode = in.readByte();
+        waitingForInterrupt = in.readBoolean();
+        csrs.readState(in);
+        mmu.flush();
+        blockBoundary = true;
     }
 
     // Test-purpose only methods
@@ -1000,6 +1358,7 @@ public class RV32Cpu {
      */
     public void setPc(int value) {
         pc = value;
+        blockBoundary = true;
     }
 
     /**
@@ -1009,7 +1368,10 @@ public class RV32Cpu {
      * @param value   The value to write
      */
     public void writeCSRTest(int csrAddr, int value) {
-        csrRegisters.put(csrAddr, value);
+        csrs.set(csrAddr, value);
+        if (csrAddr == SATP) {
+            mmu.flush();
+        }
     }
 
     /**
@@ -1019,7 +1381,7 @@ public class RV32Cpu {
      * @return The value of the CSR register
      */
     public int readCSRTest(int csrAddr) {
-        return csrRegisters.getOrDefault(csrAddr, 0);
+        return csrs.get(csrAddr);
     }
 
     /**
@@ -1068,8 +1430,46 @@ public class RV32Cpu {
      * }
      */
 
+    /**
+     * Test method to execute a decoded instruction. It is encoded back into
+     * an instruction word so that it runs through the same decoder as
+     * fetched code.
+     */
     public void executeTest(InstructionDecoded inst) {
-        execute(inst);
+        testExecuteInstruction(encode(inst));
+    }
+
+    /**
+     * Build the instruction word for the fields of a decoded instruction,
+     * taking the immediate from the format its opcode uses.
+     */
+    private static int encode(InstructionDecoded inst) {
+        int opcode = inst.getOpcode();
+        int word = opcode | inst.getRd() << 7 | inst.getFunc3() << 12 | inst.getRs1() << 15
+                | inst.getRs2() << 20 | inst.getFunc7() << 25;
+        switch (opcode) {
+            case 0b0110011: // R-type: no immediate
+                return word;
+            case 0b0100011: { // S-type
+                int imm = inst.getImm_s();
+                return word | (imm >> 5) << 25 | (imm & 0x1F) << 7;
+            }
+            case 0b1100011: { // B-type
+                int imm = inst.getImm_b();
+                return word | ((imm >> 12) & 0x1) << 31 | ((imm >> 5) & 0x3F) << 25
+                        | ((imm >> 1) & 0xF) << 8 | ((imm >> 11) & 0x1) << 7;
+            }
+            case 0b0110111: // LUI
+            case 0b0010111: // AUIPC
+                return word | (inst.getImm_u() & 0xFFFFF000);
+            case 0b1101111: { // J-type
+                int imm = inst.getImm_j();
+                return word | ((imm >> 20) & 0x1) << 31 | ((imm >> 1) & 0x3FF) << 21
+                        | ((imm >> 11) & 0x1) << 20 | ((imm >> 12) & 0xFF) << 12;
+            }
+            default: // I-type
+                return word | inst.getImm_i() << 20;
+        }
     }
 
     /**
@@ -1078,12 +1478,14 @@ public class RV32Cpu {
      * @param instruction The raw 32-bit instruction to execute
      */
     public void testExecuteInstruction(int instruction) {
-        InstructionDecoded decoded = decode(instruction);
-        execute(decoded);
+        long decoded = predecode(instruction);
+        int packed = (int) decoded;
+        execute(packed & 0xFF, (packed >>> 8) & 0x1F, (packed >>> 13) & 0x1F, (packed >>> 18) & 0x1F,
+                (int) (decoded >> 32));
     }
 
-    public int mapAddressTest(int i) {
-        return mapAddress(i);
+    public int mapAddressTest(int i) throws PageFaultException {
+        return mapAddress(i, Sv32Mmu.ACCESS_LOAD);
     }
 
     public void find13And12(byte[] arr) {
@@ -1,5 +1,9 @@
 package cse311;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import cse311.Exception.MemoryAccessException;
@@ -12,6 +16,15 @@ public class SimpleMemory {
     private static final int HALF_WORD_ALIGN = 2;
     private static final int WORD_ALIGN = 4;
 
+    // Little-endian views of the byte array: one load/store per access,
+    // whatever the alignment
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private boolean misalignedAllowed = false;
+
     public SimpleMemory() {
         memory = new byte[MEMORY_SIZE];
     }
@@ -21,9 +34,18 @@ public class SimpleMemory {
         memory = new byte[MEMORY_SIZE];
     }
 
+    /**
+     * For backends that keep guest RAM outside a heap array. Such a subclass
+     * overrides every access method and getSize(); no array is allocated.
+     */
+    protected SimpleMemory(long memSize, byte[] backing) {
+        MEMORY_SIZE = (int) Math.min(memSize, Integer.MAX_VALUE);
+        memory = backing;
+    }
+
     // Add MMIO ranges
-    private static final int MMIO_START = 0x10000000;
-    private static final int MMIO_END = 0x10001000;
+    protected static final int MMIO_START = 0x10000000;
+    protected static final int MMIO_END = 0x10001000;
 
     public byte readByte(int address) throws MemoryAccessException {
         // Check if address is in MMIO range
@@ -56,105 +78,187 @@ public class SimpleMemory {
     }
 
     public short readHalfWord(int address) throws MemoryAccessException {
-        checkAddress(address, HALF_WORD_ALIGN);
-        checkAlignment(address, HALF_WORD_ALIGN);
-
-        int physicalAddress = translateAddress(address);
-        return (short) ((memory[physicalAddress + 1] & 0xFF) << 8 |
-                (memory[physicalAddress] & 0xFF));
+        int physicalAddress = checkAccess(address, HALF_WORD_ALIGN);
+        return (short) SHORT_LE.get(memory, physicalAddress);
     }
 
     public int readWord(int address) throws MemoryAccessException {
-        checkAddress(address, WORD_ALIGN);
-        checkAlignment(address, WORD_ALIGN);
-
-        int physicalAddress = translateAddress(address);
-        return (memory[physicalAddress + 3] & 0xFF) << 24 |
-                (memory[physicalAddress + 2] & 0xFF) << 16 |
-                (memory[physicalAddress + 1] & 0xFF) << 8 |
-                (memory[physicalAddress] & 0xFF);
+        int physicalAddress = checkAccess(address, WORD_ALIGN);
+        return (int) INT_LE.get(memory, physicalAddress);
     }
 
     public void writeHalfWord(int address, short value) throws MemoryAccessException {
-        checkAddress(address, HALF_WORD_ALIGN);
-        checkAlignment(address, HALF_WORD_ALIGN);
+        int physicalAddress = checkAccess(address, HALF_WORD_ALIGN);
+        SHORT_LE.set(memory, physicalAddress, value);
+    }
+
+    public void writeWord(int address, int value) throws MemoryAccessException {
+        int physicalAddress = checkAccess(address, WORD_ALIGN);
+        INT_LE.set(memory, physicalAddress, value);
+    }
+
+    /**
+     * Allow halfword and word accesses that are not naturally aligned
+     * (off by default, such accesses raise an exception).
+     */
+    public void setMisalignedAccessAllowed(boolean allowed) {
+        this.misalignedAllowed = allowed;
+    }
 
+    /**
+     * Translate once, then check bounds and alignment for a multi-byte access.
+     *
+     * @return The index of the first byte in the backing array
+     */
+    private int checkAccess(int address, int size) throws MemoryAccessException {
         int physicalAddress = translateAddress(address);
-        memory[physicalAddress] = (byte) (value & 0xFF);
-        memory[physicalAddress + 1] = (byte) ((value >> 8) & 0xFF);
+        if (physicalAddress > MEMORY_SIZE - size) {
+            throw new MemoryAccessException(
+                    String.format("Memory access out of bounds: virtual=0x%08X, physical=0x%08X, size=%d",
+                            address, physicalAddress, size));
+        }
+        if ((address & (size - 1)) != 0 && !misalignedAllowed) {
+            throw new MemoryAccessException(
+                    String.format("Misaligned memory access: address=%d, required alignment=%d",
+                            address, size));
+        }
+        return physicalAddress;
     }
 
-    public void writeWord(int address, int value) throws MemoryAccessException {
-        checkAddress(address, WORD_ALIGN);
-        checkAlignment(address, WORD_ALIGN);
+    // Bulk access: one bounds check per range, then a single array operation
 
+    public void readBytes(int address, byte[] dst, int offset, int length) throws MemoryAccessException {
+        checkRange(address, length);
+        System.arraycopy(memory, translateAddress(address), dst, offset, length);
+    }
+
+    public void writeBytes(int address, byte[] src, int offset, int length) throws MemoryAccessException {
+        checkRange(address, length);
+        System.arraycopy(src, offset, memory, translateAddress(address), length);
+    }
+
+    /**
+     * Write bytes offset to offset + length of src, e.g. a mapped file. The
+     * buffer's position is neither used nor changed.
+     */
+    public void writeBytes(int address, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        checkRange(address, length);
+        src.get(offset, memory, translateAddress(address), length);
+    }
+
+    public void fill(int address, int length, byte value) throws MemoryAccessException {
+        checkRange(address, length);
         int physicalAddress = translateAddress(address);
-        memory[physicalAddress] = (byte) (value & 0xFF);
-        memory[physicalAddress + 1] = (byte) ((value >> 8) & 0xFF);
-        memory[physicalAddress + 2] = (byte) ((value >> 16) & 0xFF);
-        memory[physicalAddress + 3] = (byte) ((value >> 24) & 0xFF);
+        Arrays.fill(memory, physicalAddress, physicalAddress + length, value);
+    }
+
+    public void copy(int srcAddress, int dstAddress, int length) throws MemoryAccessException {
+        checkRange(srcAddress, length);
+        checkRange(dstAddress, length);
+        System.arraycopy(memory, translateAddress(srcAddress), memory, translateAddress(dstAddress), length);
     }
 
-    // Utility methods
-    private void checkAddress(int address, int accessSize) throws MemoryAccessException {
+    private void checkRange(int address, int length) throws MemoryAccessException {
+        if (length < 0) {
+            throw new MemoryAccessException("Negative length " + length + " at 0x" + Integer.toHexString(address));
+        }
         int physicalAddress = translateAddress(address);
-        if (physicalAddress < 0 || physicalAddress + accessSize > MEMORY_SIZE) {
+        if (physicalAddress < 0 || physicalAddress > MEMORY_SIZE - length) {
             throw new MemoryAccessException(
                     String.format("Memory access out of bounds: virtual=0x%08X, physical=0x%08X, size=%d",
-                            address, physicalAddress, accessSize));
+                            address, physicalAddress, length));
         }
     }
 
     /**
      * Translate virtual address to physical address
-     * Handles the mapping from ELF virtual addresses to our memory array indices
+     * Handles the mapping from ELF virtual addresses to our memory array indices:
+     * high addresses (0x80000000+) fold onto the low region
      */
-    private int translateAddress(int virtualAddress) {
-        // Handle high addresses (like 0x80000000) by converting to unsigned and mapping
-        if (virtualAddress < 0) {
-            // Convert negative int to unsigned long
-            long unsignedAddr = virtualAddress & 0xFFFFFFFFL;
-
-            // Map high addresses (0x80000000+) to lower memory region
-            if (unsignedAddr >= 0x80000000L) {
-                return (int) (unsignedAddr - 0x80000000L);
-            }
+    private static int translateAddress(int virtualAddress) {
+        return virtualAddress & 0x7FFFFFFF;
+    }
 
-            // For other negative addresses, use as-is (shouldn't happen in normal cases)
-            return virtualAddress;
-        }
+    /**
+     * @return The physical offset an address maps to in this memory
+     */
+    public long physicalAddress(int address) {
+        return Integer.toUnsignedLong(address & getAddressMask());
+    }
+
+    /**
+     * Bus address bits that select a byte of physical memory. Everything
+     * above them aliases, which is how the 0x80000000+ window folds onto
+     * low memory.
+     */
+    public int getAddressMask() {
+        return 0x7FFFFFFF;
+    }
 
-        // For positive addresses, use directly
-        return virtualAddress;
+    /**
+     * Memories above 2 GiB need every address bit; smaller ones fold the
+     * 0x80000000+ window onto low memory.
+     */
+    protected static int addressMaskFor(long memSize) {
+        return memSize > (1L << 31) ? 0xFFFFFFFF : 0x7FFFFFFF;
     }
 
-    private void checkAlignment(int address, int alignment) throws MemoryAccessException {
-        if ((address % alignment) != 0) {
+    // Checks for subclasses addressing up to 4 GiB with long offsets
+
+    protected final long checkPhysicalAccess(int address, int accessSize) throws MemoryAccessException {
+        long pa = physicalAddress(address);
+        if (pa > getSize() - accessSize) {
+            throw new MemoryAccessException(
+                    String.format("Memory access out of bounds: virtual=0x%08X, physical=0x%08X, size=%d",
+                            address, pa, accessSize));
+        }
+        if ((address & (accessSize - 1)) != 0 && !misalignedAllowed) {
             throw new MemoryAccessException(
                     String.format("Misaligned memory access: address=%d, required alignment=%d",
-                            address, alignment));
+                            address, accessSize));
         }
+        return pa;
+    }
+
+    protected final long checkPhysicalRange(int address, int length) throws MemoryAccessException {
+        if (length < 0) {
+            throw new MemoryAccessException("Negative length " + length + " at 0x" + Integer.toHexString(address));
+        }
+        long pa = physicalAddress(address);
+        if (pa > getSize() - length) {
+            throw new MemoryAccessException(
+                    String.format("Memory access out of bounds: virtual=0x%08X, physical=0x%08X, size=%d",
+                            address, pa, length));
+        }
+        return pa;
     }
 
     public void clear() {
         Arrays.fill(memory, (byte) 0);
     }
 
+    /**
+     * Write guest RAM back to its backing store. Nothing to do for memory
+     * that only lives in this process.
+     */
+    public void flush() {
+    }
+
     // Debug helper methods
     public String dumpMemory(int startAddress, int length) throws MemoryAccessException {
-        checkAddress(startAddress, length);
+        byte[] bytes = new byte[length];
+        readBytes(startAddress, bytes, 0, length);
         StringBuilder sb = new StringBuilder();
 
-        int physicalStart = translateAddress(startAddress);
         for (int i = 0; i < length; i += 16) {
             // Print virtual address
             sb.append(String.format("%08x: ", startAddress + i));
 
-            // Print hex values using physical addresses
+            // Print hex values
             for (int j = 0; j < 16 && (i + j) < length; j++) {
                 if (j % 4 == 0)
                     sb.append(" ");
-                sb.append(String.format("%02x ", memory[physicalStart + i + j]));
+                sb.append(String.format("%02x ", bytes[i + j]));
             }
 
             sb.append("\n");
@@ -171,7 +275,22 @@ public class SimpleMemory {
         System.arraycopy(data, 0, memory, physicalAddress, data.length);
     }
 
+    /**
+     * @return The heap array holding guest RAM
+     * @throws UnsupportedOperationException If RAM is not kept in a heap array
+     */
     public byte[] getMemory() {
         return memory;
     }
+
+    /**
+     * @return Physical memory size in bytes
+     */
+    public long getSize() {
+        return MEMORY_SIZE;
+    }
+
+    public boolean isMisalignedAccessAllowed() {
+        return misalignedAllowed;
+    }
 }
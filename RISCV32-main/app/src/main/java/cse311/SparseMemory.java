@@ -0,0 +1,290 @@
+package cse311;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import cse311.Exception.MemoryAccessException;
+
+/**
+ * Physical memory that only commits the 4 KiB pages that have been written.
+ * A page directory holds one array per page, allocated on the first
+ * non-zero write; untouched pages read as zero from a shared zero page.
+ * Zero-filling whole pages releases them again. Up to 4 GiB can be
+ * addressed, with the same address folding rules as OffHeapMemory.
+ */
+public class SparseMemory extends SimpleMemory {
+    public static final long MAX_SIZE = 1L << 32;
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE]; // Never written
+
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[][] pages;
+    private final long size;
+    private final int addressMask;
+    private int residentPages;
+
+    public SparseMemory(long size) {
+        super(size, null);
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Sparse memory size must be between 1 byte and 4 GiB: " + size);
+        }
+        this.size = size;
+        this.addressMask = addressMaskFor(size);
+        this.pages = new byte[(int) ((size + PAGE_SIZE - 1) >>> PAGE_SHIFT)][];
+    }
+
+    @Override
+    public byte readByte(int address) throws MemoryAccessException {
+        if (address >= MMIO_START && address < MMIO_END) {
+            // Let MemoryManager handle MMIO
+            throw new MemoryAccessException("MMIO_ACCESS:" + address);
+        }
+        long pa = checkPhysicalAccess(address, 1);
+        return pageForRead(pa)[offset(pa)];
+    }
+
+    @Override
+    public void writeByte(int address, byte value) throws MemoryAccessException {
+        if (address >= MMIO_START && address < MMIO_END) {
+            // Let MemoryManager handle MMIO
+            throw new MemoryAccessException("MMIO_ACCESS:" + address);
+        }
+        long pa = checkPhysicalAccess(address, 1);
+        if (value != 0 || pages[page(pa)] != null) {
+            pageForWrite(pa)[offset(pa)] = value;
+        }
+    }
+
+    @Override
+    public short readHalfWord(int address) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 2);
+        int offset = offset(pa);
+        if (offset <= PAGE_SIZE - 2) {
+            return (short) SHORT_LE.get(pageForRead(pa), offset);
+        }
+        return (short) readAcrossPages(pa, 2);
+    }
+
+    @Override
+    public int readWord(int address) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 4);
+        int offset = offset(pa);
+        if (offset <= PAGE_SIZE - 4) {
+            return (int) INT_LE.get(pageForRead(pa), offset);
+        }
+        return readAcrossPages(pa, 4);
+    }
+
+    @Override
+    public void writeHalfWord(int address, short value) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 2);
+        int offset = offset(pa);
+        if (offset > PAGE_SIZE - 2) {
+            writeAcrossPages(pa, 2, value);
+        } else if (value != 0 || pages[page(pa)] != null) {
+            SHORT_LE.set(pageForWrite(pa), offset, value);
+        }
+    }
+
+    @Override
+    public void writeWord(int address, int value) throws MemoryAccessException {
+        long pa = checkPhysicalAccess(address, 4);
+        int offset = offset(pa);
+        if (offset > PAGE_SIZE - 4) {
+            writeAcrossPages(pa, 4, value);
+        } else if (value != 0 || pages[page(pa)] != null) {
+            INT_LE.set(pageForWrite(pa), offset, value);
+        }
+    }
+
+    // Only misaligned accesses can straddle two pages
+
+    private int readAcrossPages(long pa, int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            long p = pa + i;
+            value |= (pageForRead(p)[offset(p)] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private void writeAcrossPages(long pa, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            long p = pa + i;
+            pageForWrite(p)[offset(p)] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    // Bulk access, split at page boundaries
+
+    @Override
+    public void readBytes(int address, byte[] dst, int offset, int length) throws MemoryAccessException {
+        readPhysical(checkPhysicalRange(address, length), dst, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int address, byte[] src, int offset, int length) throws MemoryAccessException {
+        writePhysical(checkPhysicalRange(address, length), src, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int address, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        long pa = checkPhysicalRange(address, length);
+        while (length > 0) {
+            int n = Math.min(length, PAGE_SIZE - offset(pa));
+            // As for arrays: all-zero data leaves an untouched page untouched
+            if (pages[page(pa)] != null || src.slice(offset, n).mismatch(ByteBuffer.wrap(ZERO_PAGE, 0, n)) >= 0) {
+                src.get(offset, pageForWrite(pa), offset(pa), n);
+            }
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Zero-filling a whole page drops it instead of writing zeros.
+     */
+    @Override
+    public void fill(int address, int length, byte value) throws MemoryAccessException {
+        long pa = checkPhysicalRange(address, length);
+        while (length > 0) {
+            int offset = offset(pa);
+            int n = Math.min(length, PAGE_SIZE - offset);
+            int index = page(pa);
+            if (value == 0 && n == PAGE_SIZE) {
+                release(index);
+            } else if (value != 0 || pages[index] != null) {
+                Arrays.fill(pageForWrite(pa), offset, offset + n, value);
+            }
+            pa += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copy with memmove semantics, one page-sized block at a time. Blocks
+     * are copied back to front when the destination overlaps the end of the
+     * source.
+     */
+    @Override
+    public void copy(int srcAddress, int dstAddress, int length) throws MemoryAccessException {
+        long src = checkPhysicalRange(srcAddress, length);
+        long dst = checkPhysicalRange(dstAddress, length);
+        if (src == dst || length == 0) {
+            return;
+        }
+
+        byte[] buffer = new byte[Math.min(length, PAGE_SIZE)];
+        boolean backwards = dst > src && dst < src + length;
+        int done = 0;
+        while (done < length) {
+            int n = Math.min(buffer.length, length - done);
+            long at = backwards ? length - done - n : done;
+            readPhysical(src + at, buffer, 0, n);
+            writePhysical(dst + at, buffer, 0, n);
+            done += n;
+        }
+    }
+
+    private void readPhysical(long pa, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, PAGE_SIZE - offset(pa));
+            System.arraycopy(pageForRead(pa), offset(pa), dst, offset, n);
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void writePhysical(long pa, byte[] src, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, PAGE_SIZE - offset(pa));
+            // All-zero data for an untouched page (BSS, zeroed buffers) leaves it untouched
+            if (pages[page(pa)] != null || Arrays.mismatch(src, offset, offset + n, ZERO_PAGE, 0, n) >= 0) {
+                System.arraycopy(src, offset, pageForWrite(pa), offset(pa), n);
+            }
+            pa += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private byte[] pageForRead(long pa) {
+        byte[] page = pages[page(pa)];
+        return page != null ? page : ZERO_PAGE;
+    }
+
+    private byte[] pageForWrite(long pa) {
+        int index = page(pa);
+        byte[] page = pages[index];
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            pages[index] = page;
+            residentPages++;
+        }
+        return page;
+    }
+
+    private void release(int index) {
+        if (pages[index] != null) {
+            pages[index] = null;
+            residentPages--;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(pages, null);
+        residentPages = 0;
+    }
+
+    @Override
+    public void initializeMemory(int startAddress, byte[] data) {
+        writePhysical(physicalAddress(startAddress), data, 0, data.length);
+    }
+
+    /**
+     * Guest RAM is not one heap array.
+     */
+    @Override
+    public byte[] getMemory() {
+        throw new UnsupportedOperationException("Sparse memory has no backing byte[]");
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int getAddressMask() {
+        return addressMask;
+    }
+
+    /**
+     * @return Bytes actually committed on the heap
+     */
+    public long getResidentBytes() {
+        return (long) residentPages * PAGE_SIZE;
+    }
+
+    private static int page(long pa) {
+        return (int) (pa >>> PAGE_SHIFT);
+    }
+
+    private static int offset(long pa) {
+        return (int) pa & PAGE_MASK;
+    }
+}
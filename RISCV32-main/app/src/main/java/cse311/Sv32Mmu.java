@@ -0,0 +1,192 @@
+package cse311;
+
+import cse311.Exception.MemoryAccessException;
+import cse311.Exception.PageFaultException;
+
+import java.util.Arrays;
+
+/**
+ * Sv32 memory management unit.
+ * Page tables live in guest physical memory and are walked through the
+ * CPU's memory bus, rooted at the page number held in SATP. The hardware
+ * sets the A and D bits itself. Translations are cached in a
+ * direct-mapped TLB that is flushed by SFENCE.VMA and by writes to SATP.
+ * There are no ASIDs.
+ */
+public class Sv32Mmu {
+    public static final int ACCESS_FETCH = 0;
+    public static final int ACCESS_LOAD = 1;
+    public static final int ACCESS_STORE = 2;
+
+    // Trap causes indexed by access type
+    private static final int[] PAGE_FAULT = { 12, 13, 15 };
+    private static final int[] ACCESS_FAULT = { 1, 5, 7 };
+
+    // PTE bits
+    private static final int PTE_V = 1 << 0;
+    private static final int PTE_R = 1 << 1;
+    private static final int PTE_W = 1 << 2;
+    private static final int PTE_X = 1 << 3;
+    private static final int PTE_U = 1 << 4;
+    private static final int PTE_A = 1 << 6;
+    private static final int PTE_D = 1 << 7;
+
+    // MSTATUS bits affecting translation
+    private static final int MSTATUS_SUM = 1 << 18;
+    private static final int MSTATUS_MXR = 1 << 19;
+
+    private static final int TLB_SLOTS = 64;
+    private static final int EMPTY = -1;
+
+    private final MemoryManager memory;
+
+    // TLB, one 4 KiB page per slot (megapages are split on fill)
+    private final int[] tlbVpn = new int[TLB_SLOTS];
+    private final int[] tlbPpn = new int[TLB_SLOTS];
+    private final int[] tlbFlags = new int[TLB_SLOTS]; // Leaf PTE bits 0-7 after the A/D update
+
+    private long hits;
+    private long misses;
+
+    public Sv32Mmu(MemoryManager memory) {
+        this.memory = memory;
+        flush();
+    }
+
+    /**
+     * Translation applies below M-mode when SATP.MODE selects Sv32.
+     */
+    public static boolean isEnabled(int satp, int privilegeMode) {
+        return satp < 0 && privilegeMode < RV32Cpu.PRIVILEGE_MACHINE;
+    }
+
+    /**
+     * Translate a virtual address, walking the page table on a TLB miss.
+     *
+     * @param virtualAddress The address to translate
+     * @param access         ACCESS_FETCH, ACCESS_LOAD or ACCESS_STORE
+     * @param privilegeMode  Effective privilege mode of the access
+     * @param satp           Current SATP value
+     * @param mstatus        Current MSTATUS value (SUM and MXR)
+     * @return The physical address
+     * @throws PageFaultException If the page is unmapped or the access is not
+     *                            permitted
+     */
+    public int translate(int virtualAddress, int access, int privilegeMode, int satp, int mstatus)
+            throws PageFaultException {
+        int vpn = virtualAddress >>> 12;
+        int slot = vpn & (TLB_SLOTS - 1);
+        if (tlbVpn[slot] == vpn) {
+            int flags = tlbFlags[slot];
+            // A store to a clean page goes back to the walker to set D
+            if (access != ACCESS_STORE || (flags & PTE_D) != 0) {
+                if (!permits(flags, access, privilegeMode, mstatus)) {
+                    throw new PageFaultException(PAGE_FAULT[access], virtualAddress);
+                }
+                hits++;
+                return (tlbPpn[slot] << 12) | (virtualAddress & 0xFFF);
+            }
+        }
+        misses++;
+        return walk(virtualAddress, access, privilegeMode, satp, mstatus);
+    }
+
+    private int walk(int virtualAddress, int access, int privilegeMode, int satp, int mstatus)
+            throws PageFaultException {
+        int vpn = virtualAddress >>> 12;
+        int pteAddress = ((satp & 0x3FFFFF) << 12) + ((vpn >>> 10) << 2);
+        int pte = readPte(pteAddress, access, virtualAddress);
+        boolean megapage = true;
+
+        if ((pte & (PTE_R | PTE_X)) == 0 && (pte & PTE_V) != 0 && (pte & PTE_W) == 0) {
+            // Pointer to the next level
+            pteAddress = ((pte >>> 10) << 12) + ((vpn & 0x3FF) << 2);
+            pte = readPte(pteAddress, access, virtualAddress);
+            megapage = false;
+        }
+
+        // Invalid, reserved W-without-R, or a pointer at the last level
+        if ((pte & PTE_V) == 0 || (pte & (PTE_R | PTE_W)) == PTE_W || (pte & (PTE_R | PTE_X)) == 0
+                || !permits(pte, access, privilegeMode, mstatus)) {
+            throw new PageFaultException(PAGE_FAULT[access], virtualAddress);
+        }
+
+        int ppn = pte >>> 10;
+        if (megapage) {
+            if ((ppn & 0x3FF) != 0) { // Misaligned megapage
+                throw new PageFaultException(PAGE_FAULT[access], virtualAddress);
+            }
+            ppn |= vpn & 0x3FF;
+        }
+
+        int updated = pte | PTE_A | (access == ACCESS_STORE ? PTE_D : 0);
+        if (updated != pte) {
+            try {
+                memory.writeWord(pteAddress, updated);
+            } catch (MemoryAccessException e) {
+                throw new PageFaultException(ACCESS_FAULT[access], virtualAddress);
+            }
+        }
+
+        int slot = vpn & (TLB_SLOTS - 1);
+        tlbVpn[slot] = vpn;
+        tlbPpn[slot] = ppn;
+        tlbFlags[slot] = updated & 0xFF;
+        return (ppn << 12) | (virtualAddress & 0xFFF);
+    }
+
+    private int readPte(int address, int access, int virtualAddress) throws PageFaultException {
+        try {
+            return memory.readWord(address);
+        } catch (MemoryAccessException e) {
+            throw new PageFaultException(ACCESS_FAULT[access], virtualAddress);
+        }
+    }
+
+    private static boolean permits(int flags, int access, int privilegeMode, int mstatus) {
+        if ((flags & PTE_U) != 0) {
+            // S-mode may only touch user pages with SUM set, and never execute them
+            if (privilegeMode == RV32Cpu.PRIVILEGE_SUPERVISOR
+                    && (access == ACCESS_FETCH || (mstatus & MSTATUS_SUM) == 0)) {
+                return false;
+            }
+        } else if (privilegeMode == RV32Cpu.PRIVILEGE_USER) {
+            return false;
+        }
+
+        switch (access) {
+            case ACCESS_FETCH:
+                return (flags & PTE_X) != 0;
+            case ACCESS_LOAD:
+                return (flags & PTE_R) != 0 || ((mstatus & MSTATUS_MXR) != 0 && (flags & PTE_X) != 0);
+            default:
+                return (flags & PTE_W) != 0;
+        }
+    }
+
+    /**
+     * SFENCE.VMA with rs1 = x0, or a write to SATP.
+     */
+    public void flush() {
+        Arrays.fill(tlbVpn, EMPTY);
+    }
+
+    /**
+     * SFENCE.VMA for a single virtual address.
+     */
+    public void flushPage(int virtualAddress) {
+        int vpn = virtualAddress >>> 12;
+        int slot = vpn & (TLB_SLOTS - 1);
+        if (tlbVpn[slot] == vpn) {
+            tlbVpn[slot] = EMPTY;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
@@ -1,5 +1,7 @@
 package cse311;
 
+import java.nio.ByteBuffer;
+
 import cse311.Exception.MemoryAccessException;
 
 /**
@@ -110,6 +112,50 @@ public class TaskAwareMemoryManager extends MemoryManager {
         virtualMemoryManager.writeByte(currentTaskId, address, value);
     }
 
+    // Bulk access goes byte by byte through the current task's memory
+
+    @Override
+    public void readBytes(int address, byte[] dst, int offset, int length) throws MemoryAccessException {
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = readByte(address + i);
+        }
+    }
+
+    @Override
+    public void writeBytes(int address, byte[] src, int offset, int length) throws MemoryAccessException {
+        for (int i = 0; i < length; i++) {
+            writeByteToVirtualAddress(address + i, src[offset + i]);
+        }
+    }
+
+    @Override
+    public void writeBytes(int address, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        for (int i = 0; i < length; i++) {
+            writeByteToVirtualAddress(address + i, src.get(offset + i));
+        }
+    }
+
+    // Instruction fetch goes through the task's private array, which has no
+    // physical address to key decoded instructions by
+
+    @Override
+    public int translateInstructionAddress(int address) throws MemoryAccessException {
+        if (currentTaskId == -1) {
+            throw new MemoryAccessException("No active task set for memory access");
+        }
+        return address;
+    }
+
+    @Override
+    public int readInstructionWord(int address) throws MemoryAccessException {
+        return readWord(address);
+    }
+
+    @Override
+    public DecodeCache getDecodeCache() {
+        return null;
+    }
+
     // Task-specific memory operations
 
     /**
@@ -8,11 +8,12 @@ import java.util.Map;
 
 /**
  * Virtual Memory Manager that provides individual address spaces for each task
- * Uses a 2D array approach where each task has its own memory space
+ * Each task has its own sparse memory space, so only the pages a task
+ * actually writes are allocated
  */
 public class VirtualMemoryManager {
-    // 2D array: [taskId][address] = byte value
-    private final Map<Integer, byte[]> taskMemorySpaces = new ConcurrentHashMap<>();
+    // taskId -> that task's memory
+    private final Map<Integer, SparseMemory> taskMemorySpaces = new ConcurrentHashMap<>();
 
     // Shared memory regions (like UART) that all tasks can access
     private final byte[] sharedMemory;
@@ -70,13 +71,11 @@ public class VirtualMemoryManager {
             return false;
         }
 
-        // Allocate memory space for this task
-        byte[] taskMemory = new byte[TASK_MEMORY_SIZE];
+        // Reserve memory space for this task; pages are committed on first write
+        SparseMemory taskMemory = new SparseMemory(TASK_MEMORY_SIZE);
+        taskMemory.setMisalignedAccessAllowed(true);
         taskMemorySpaces.put(taskId, taskMemory);
 
-        // Initialize stack area to zero
-        initializeTaskMemory(taskId);
-
         System.out.println("Allocated " + (TASK_MEMORY_SIZE / (1024 * 1024)) + "MB memory for task " + taskId);
         return true;
     }
@@ -85,27 +84,12 @@ public class VirtualMemoryManager {
      * Deallocate memory space for a task
      */
     public void deallocateTaskMemory(int taskId) {
-        byte[] memory = taskMemorySpaces.remove(taskId);
+        SparseMemory memory = taskMemorySpaces.remove(taskId);
         if (memory != null) {
             System.out.println("Deallocated memory for task " + taskId);
         }
     }
 
-    /**
-     * Initialize task memory with default values
-     */
-    private void initializeTaskMemory(int taskId) {
-        byte[] memory = taskMemorySpaces.get(taskId);
-        if (memory == null)
-            return;
-
-        // Initialize stack area (fill with zeros)
-        int stackEnd = STACK_START + STACK_SIZE;
-        for (int i = STACK_START; i < stackEnd && i < memory.length; i++) {
-            memory[i] = 0;
-        }
-    }
-
     /**
      * Read a byte from task's virtual address space
      */
@@ -116,10 +100,10 @@ public class VirtualMemoryManager {
         }
 
         // Read from task's private memory
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress, TASK_MEMORY_SIZE);
 
-        return taskMemory[virtualAddress];
+        return taskMemory.readByte(virtualAddress);
     }
 
     /**
@@ -133,11 +117,11 @@ public class VirtualMemoryManager {
         }
 
         // Write to task's private memory
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress, TASK_MEMORY_SIZE);
         validateWriteAccess(virtualAddress);
 
-        taskMemory[virtualAddress] = value;
+        taskMemory.writeByte(virtualAddress, value);
     }
 
     /**
@@ -148,11 +132,10 @@ public class VirtualMemoryManager {
             return (short) uart.read(virtualAddress);
         }
 
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress + 1, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress + 1, TASK_MEMORY_SIZE);
 
-        return (short) ((taskMemory[virtualAddress + 1] & 0xFF) << 8 |
-                (taskMemory[virtualAddress] & 0xFF));
+        return taskMemory.readHalfWord(virtualAddress);
     }
 
     /**
@@ -164,12 +147,11 @@ public class VirtualMemoryManager {
             return;
         }
 
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress + 1, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress + 1, TASK_MEMORY_SIZE);
         validateWriteAccess(virtualAddress);
 
-        taskMemory[virtualAddress] = (byte) (value & 0xFF);
-        taskMemory[virtualAddress + 1] = (byte) ((value >> 8) & 0xFF);
+        taskMemory.writeHalfWord(virtualAddress, value);
     }
 
     /**
@@ -180,13 +162,10 @@ public class VirtualMemoryManager {
             return uart.read(virtualAddress);
         }
 
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress + 3, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress + 3, TASK_MEMORY_SIZE);
 
-        return (taskMemory[virtualAddress + 3] & 0xFF) << 24 |
-                (taskMemory[virtualAddress + 2] & 0xFF) << 16 |
-                (taskMemory[virtualAddress + 1] & 0xFF) << 8 |
-                (taskMemory[virtualAddress] & 0xFF);
+        return taskMemory.readWord(virtualAddress);
     }
 
     /**
@@ -198,27 +177,24 @@ public class VirtualMemoryManager {
             return;
         }
 
-        byte[] taskMemory = getTaskMemory(taskId);
-        validateAddress(virtualAddress + 3, taskMemory.length);
+        SparseMemory taskMemory = getTaskMemory(taskId);
+        validateAddress(virtualAddress + 3, TASK_MEMORY_SIZE);
         validateWriteAccess(virtualAddress);
 
-        taskMemory[virtualAddress] = (byte) (value & 0xFF);
-        taskMemory[virtualAddress + 1] = (byte) ((value >> 8) & 0xFF);
-        taskMemory[virtualAddress + 2] = (byte) ((value >> 16) & 0xFF);
-        taskMemory[virtualAddress + 3] = (byte) ((value >> 24) & 0xFF);
+        taskMemory.writeWord(virtualAddress, value);
     }
 
     /**
      * Load program data into task's memory space
      */
     public void loadProgram(int taskId, byte[] programData, int loadAddress) throws MemoryAccessException {
-        byte[] taskMemory = getTaskMemory(taskId);
+        SparseMemory taskMemory = getTaskMemory(taskId);
 
-        if (loadAddress + programData.length > taskMemory.length) {
+        if (loadAddress + programData.length > TASK_MEMORY_SIZE) {
             throw new MemoryAccessException("Program too large for task memory space");
         }
 
-        System.arraycopy(programData, 0, taskMemory, loadAddress, programData.length);
+        taskMemory.writeBytes(loadAddress, programData, 0, programData.length);
         System.out.println("Loaded " + programData.length + " bytes into task " + taskId + " at address 0x" +
                 Integer.toHexString(loadAddress));
     }
@@ -226,8 +202,8 @@ public class VirtualMemoryManager {
     /**
      * Get task's memory space
      */
-    private byte[] getTaskMemory(int taskId) throws MemoryAccessException {
-        byte[] taskMemory = taskMemorySpaces.get(taskId);
+    private SparseMemory getTaskMemory(int taskId) throws MemoryAccessException {
+        SparseMemory taskMemory = taskMemorySpaces.get(taskId);
         if (taskMemory == null) {
             throw new MemoryAccessException("Task " + taskId + " has no allocated memory space");
         }
@@ -280,12 +256,12 @@ public class VirtualMemoryManager {
      * Get memory statistics for a task
      */
     public TaskMemoryStats getTaskMemoryStats(int taskId) {
-        byte[] taskMemory = taskMemorySpaces.get(taskId);
+        SparseMemory taskMemory = taskMemorySpaces.get(taskId);
         if (taskMemory == null) {
             return null;
         }
 
-        return new TaskMemoryStats(taskId, taskMemory.length, TASK_MEMORY_SIZE);
+        return new TaskMemoryStats(taskId, (int) taskMemory.getResidentBytes(), TASK_MEMORY_SIZE);
     }
 
     /**
@@ -293,7 +269,10 @@ public class VirtualMemoryManager {
      */
     public VirtualMemoryStats getMemoryStats() {
         int allocatedTasks = taskMemorySpaces.size();
-        long totalAllocated = (long) allocatedTasks * TASK_MEMORY_SIZE;
+        long totalAllocated = 0; // Pages actually committed
+        for (SparseMemory taskMemory : taskMemorySpaces.values()) {
+            totalAllocated += taskMemory.getResidentBytes();
+        }
         long totalVirtual = (long) maxTasks * TASK_MEMORY_SIZE;
 
         return new VirtualMemoryStats(allocatedTasks, maxTasks, totalAllocated, totalVirtual);
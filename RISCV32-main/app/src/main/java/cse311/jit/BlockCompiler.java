@@ -0,0 +1,439 @@
+package cse311.jit;
+
+import cse311.RV32Cpu;
+import cse311.jit.ClassFileBuilder.Code;
+import cse311.jit.ClassFileBuilder.Code.Label;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Translates a basic block of decoded RV32IM instructions into a hidden
+ * JVM class implementing {@link CompiledBlock}.
+ *
+ * Guest registers touched by the block are cached in JVM locals for its
+ * whole duration and written back on every exit, so HotSpot can keep them
+ * in host registers. A block contains only ALU, load/store, LUI and AUIPC
+ * instructions, optionally ended by one branch or jump; SYSTEM and CSR
+ * instructions are always left to the interpreter.
+ */
+public final class BlockCompiler {
+    public static final int MAX_BLOCK_LENGTH = 64;
+
+    private static final String CLASS_NAME = "cse311/jit/Block";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String INTEGER = "java/lang/Integer";
+    private static final String COMPILED_BLOCK = "cse311/jit/CompiledBlock";
+    private static final String RUNTIME = "cse311/jit/BlockRuntime";
+    private static final String SUPPORT = "cse311/jit/JitSupport";
+    private static final String RUN_DESCRIPTOR = "([IL" + RUNTIME + ";)I";
+
+    // JVM local variable layout of the generated run() method
+    private static final int LOCAL_REGS = 1;
+    private static final int LOCAL_RUNTIME = 2;
+    private static final int LOCAL_X0 = 3;
+    private static final int LOCAL_TEMP = LOCAL_X0 + 32;
+    private static final int LOCAL_NEXT = LOCAL_TEMP + 1;
+    private static final int MAX_STACK = 8;
+
+    private static final int INSTRUCTION_SIZE = 4;
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Whether an instruction may appear in a compiled block.
+     */
+    public static boolean canCompile(int op) {
+        return (op >= RV32Cpu.OP_ADD && op <= RV32Cpu.OP_AUIPC) || op == RV32Cpu.OP_NOP;
+    }
+
+    /**
+     * Whether an instruction transfers control and therefore ends a block.
+     */
+    public static boolean endsBlock(int op) {
+        return op >= RV32Cpu.OP_BEQ && op <= RV32Cpu.OP_JALR;
+    }
+
+    /**
+     * Compile a block. Every op must satisfy {@link #canCompile(int)} and only
+     * the last one may satisfy {@link #endsBlock(int)}.
+     *
+     * @param startPc Guest virtual PC of the first instruction
+     * @param length  Number of instructions
+     */
+    public CompiledBlock compile(int startPc, int length, int[] ops, int[] rd, int[] rs1, int[] rs2, int[] imm) {
+        boolean[] used = new boolean[32];
+        boolean[] written = new boolean[32];
+        for (int i = 0; i < length; i++) {
+            markRegisters(ops[i], rd[i], rs1[i], rs2[i], used, written);
+        }
+
+        ClassFileBuilder cf = new ClassFileBuilder();
+
+        Code init = new Code(cf, 1, 1);
+        init.aload(0);
+        init.invokeSpecial(OBJECT, "<init>", "()V");
+        init.op(Code.RETURN);
+        cf.addMethod(ClassFileBuilder.ACC_PUBLIC, "<init>", "()V", init);
+
+        Code code = new Code(cf, MAX_STACK, LOCAL_NEXT + 1);
+        for (int r = 0; r < 32; r++) {
+            if (used[r]) {
+                code.aload(LOCAL_REGS);
+                code.pushInt(r);
+                code.op(Code.IALOAD);
+                code.istore(LOCAL_X0 + r);
+            }
+        }
+
+        Label faultExit = new Label();
+        boolean terminated = false;
+        for (int i = 0; i < length; i++) {
+            int pc = startPc + i * INSTRUCTION_SIZE;
+            emitInstruction(code, ops[i], rd[i], rs1[i], rs2[i], imm[i], pc, faultExit);
+            terminated = endsBlock(ops[i]);
+        }
+        if (!terminated) {
+            code.pushInt(startPc + length * INSTRUCTION_SIZE);
+            code.istore(LOCAL_NEXT);
+        }
+
+        writeBack(code, written);
+        code.iload(LOCAL_NEXT);
+        code.op(Code.IRETURN);
+
+        // Faulting access: the runtime holds the trap details, the return value is unused
+        code.bind(faultExit);
+        writeBack(code, written);
+        code.pushInt(0);
+        code.op(Code.IRETURN);
+
+        cf.addMethod(ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_FINAL, "run", RUN_DESCRIPTOR, code);
+        byte[] classFile = cf.build(ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_FINAL
+                | ClassFileBuilder.ACC_SUPER, CLASS_NAME, OBJECT, COMPILED_BLOCK);
+
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+            return (CompiledBlock) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to define block at PC 0x" + Integer.toHexString(startPc), e);
+        }
+    }
+
+    private static void markRegisters(int op, int rd, int rs1, int rs2,
+            boolean[] used, boolean[] written) {
+        if (op == RV32Cpu.OP_NOP) {
+            return;
+        }
+        boolean readsRs1 = op != RV32Cpu.OP_JAL && op != RV32Cpu.OP_LUI && op != RV32Cpu.OP_AUIPC;
+        boolean readsRs2 = (op >= RV32Cpu.OP_ADD && op <= RV32Cpu.OP_REMU)
+                || (op >= RV32Cpu.OP_SB && op <= RV32Cpu.OP_BGEU);
+        boolean writesRd;
+        if (op == RV32Cpu.OP_JAL || op == RV32Cpu.OP_JALR) {
+            writesRd = rd != 0; // The interpreter skips the link write for x0
+        } else {
+            writesRd = !(op >= RV32Cpu.OP_SB && op <= RV32Cpu.OP_BGEU);
+        }
+
+        if (readsRs1) {
+            used[rs1] = true;
+        }
+        if (readsRs2) {
+            used[rs2] = true;
+        }
+        if (writesRd) {
+            used[rd] = true;
+            written[rd] = true;
+        }
+    }
+
+    private static void writeBack(Code code, boolean[] written) {
+        for (int r = 0; r < 32; r++) {
+            if (written[r]) {
+                code.aload(LOCAL_REGS);
+                code.pushInt(r);
+                code.iload(LOCAL_X0 + r);
+                code.op(Code.IASTORE);
+            }
+        }
+    }
+
+    private static void emitInstruction(Code code, int op, int rd, int rs1, int rs2, int imm,
+            int pc, Label faultExit) {
+        int dst = LOCAL_X0 + rd;
+        int a = LOCAL_X0 + rs1;
+        int b = LOCAL_X0 + rs2;
+
+        switch (op) {
+            case RV32Cpu.OP_NOP:
+                break;
+
+            // R-type and M-extension
+            case RV32Cpu.OP_ADD:
+                binary(code, a, b, Code.IADD, dst);
+                break;
+            case RV32Cpu.OP_SUB:
+                binary(code, a, b, Code.ISUB, dst);
+                break;
+            case RV32Cpu.OP_SLL:
+                binary(code, a, b, Code.ISHL, dst); // JVM shifts mask the count to 5 bits
+                break;
+            case RV32Cpu.OP_SRL:
+                binary(code, a, b, Code.IUSHR, dst);
+                break;
+            case RV32Cpu.OP_SRA:
+                binary(code, a, b, Code.ISHR, dst);
+                break;
+            case RV32Cpu.OP_XOR:
+                binary(code, a, b, Code.IXOR, dst);
+                break;
+            case RV32Cpu.OP_OR:
+                binary(code, a, b, Code.IOR, dst);
+                break;
+            case RV32Cpu.OP_AND:
+                binary(code, a, b, Code.IAND, dst);
+                break;
+            case RV32Cpu.OP_MUL:
+                binary(code, a, b, Code.IMUL, dst);
+                break;
+            case RV32Cpu.OP_SLT:
+                code.iload(a);
+                code.iload(b);
+                setIfNegative(code, "compare", dst);
+                break;
+            case RV32Cpu.OP_SLTU:
+                code.iload(a);
+                code.iload(b);
+                setIfNegative(code, "compareUnsigned", dst);
+                break;
+            case RV32Cpu.OP_MULH:
+            case RV32Cpu.OP_MULHSU:
+            case RV32Cpu.OP_MULHU:
+                code.iload(a);
+                code.op(Code.I2L);
+                if (op == RV32Cpu.OP_MULHU) {
+                    code.pushLong(0xFFFFFFFFL);
+                    code.op(Code.LAND);
+                }
+                code.iload(b);
+                code.op(Code.I2L);
+                if (op != RV32Cpu.OP_MULH) {
+                    code.pushLong(0xFFFFFFFFL);
+                    code.op(Code.LAND);
+                }
+                code.op(Code.LMUL);
+                code.pushInt(32);
+                code.op(op == RV32Cpu.OP_MULHU ? Code.LUSHR : Code.LSHR);
+                code.op(Code.L2I);
+                code.istore(dst);
+                break;
+            case RV32Cpu.OP_DIV:
+                helper(code, a, b, "div", dst);
+                break;
+            case RV32Cpu.OP_DIVU:
+                helper(code, a, b, "divu", dst);
+                break;
+            case RV32Cpu.OP_REM:
+                helper(code, a, b, "rem", dst);
+                break;
+            case RV32Cpu.OP_REMU:
+                helper(code, a, b, "remu", dst);
+                break;
+
+            // I-type ALU
+            case RV32Cpu.OP_ADDI:
+                immediate(code, a, imm, Code.IADD, dst);
+                break;
+            case RV32Cpu.OP_SLLI:
+                immediate(code, a, imm, Code.ISHL, dst);
+                break;
+            case RV32Cpu.OP_SRLI:
+                immediate(code, a, imm, Code.IUSHR, dst);
+                break;
+            case RV32Cpu.OP_SRAI:
+                immediate(code, a, imm, Code.ISHR, dst);
+                break;
+            case RV32Cpu.OP_XORI:
+                immediate(code, a, imm, Code.IXOR, dst);
+                break;
+            case RV32Cpu.OP_ORI:
+                immediate(code, a, imm, Code.IOR, dst);
+                break;
+            case RV32Cpu.OP_ANDI:
+                immediate(code, a, imm, Code.IAND, dst);
+                break;
+            case RV32Cpu.OP_SLTI:
+                code.iload(a);
+                code.pushInt(imm);
+                setIfNegative(code, "compare", dst);
+                break;
+            case RV32Cpu.OP_SLTIU:
+                code.iload(a);
+                code.pushInt(imm);
+                setIfNegative(code, "compareUnsigned", dst);
+                break;
+
+            // Loads: stage the value so a faulting load leaves rd untouched
+            case RV32Cpu.OP_LB:
+            case RV32Cpu.OP_LH:
+            case RV32Cpu.OP_LW:
+            case RV32Cpu.OP_LBU:
+            case RV32Cpu.OP_LHU:
+                code.aload(LOCAL_RUNTIME);
+                code.iload(a);
+                code.pushInt(imm);
+                code.op(Code.IADD);
+                code.pushInt(pc);
+                code.invokeVirtual(RUNTIME, loadName(op), "(II)I");
+                code.istore(LOCAL_TEMP);
+                checkFault(code, faultExit);
+                code.iload(LOCAL_TEMP);
+                code.istore(dst);
+                break;
+
+            // Stores
+            case RV32Cpu.OP_SB:
+            case RV32Cpu.OP_SH:
+            case RV32Cpu.OP_SW:
+                code.aload(LOCAL_RUNTIME);
+                code.iload(a);
+                code.pushInt(imm);
+                code.op(Code.IADD);
+                code.iload(b);
+                code.pushInt(pc);
+                code.invokeVirtual(RUNTIME, op == RV32Cpu.OP_SB ? "sb" : op == RV32Cpu.OP_SH ? "sh" : "sw",
+                        "(III)V");
+                checkFault(code, faultExit);
+                break;
+
+            case RV32Cpu.OP_LUI:
+                code.pushInt(imm);
+                code.istore(dst);
+                break;
+            case RV32Cpu.OP_AUIPC:
+                code.pushInt(pc + imm);
+                code.istore(dst);
+                break;
+
+            // Block terminators: leave the next PC in LOCAL_NEXT
+            case RV32Cpu.OP_BEQ:
+            case RV32Cpu.OP_BNE:
+            case RV32Cpu.OP_BLT:
+            case RV32Cpu.OP_BGE:
+            case RV32Cpu.OP_BLTU:
+            case RV32Cpu.OP_BGEU: {
+                Label taken = new Label();
+                Label join = new Label();
+                code.iload(a);
+                code.iload(b);
+                switch (op) {
+                    case RV32Cpu.OP_BEQ:
+                        code.jump(Code.IF_ICMPEQ, taken);
+                        break;
+                    case RV32Cpu.OP_BNE:
+                        code.jump(Code.IF_ICMPNE, taken);
+                        break;
+                    case RV32Cpu.OP_BLT:
+                        code.jump(Code.IF_ICMPLT, taken);
+                        break;
+                    case RV32Cpu.OP_BGE:
+                        code.jump(Code.IF_ICMPGE, taken);
+                        break;
+                    case RV32Cpu.OP_BLTU:
+                        code.invokeStatic(INTEGER, "compareUnsigned", "(II)I");
+                        code.jump(Code.IFLT, taken);
+                        break;
+                    default: // OP_BGEU
+                        code.invokeStatic(INTEGER, "compareUnsigned", "(II)I");
+                        code.jump(Code.IFGE, taken);
+                        break;
+                }
+                code.pushInt(pc + INSTRUCTION_SIZE);
+                code.istore(LOCAL_NEXT);
+                code.jump(Code.GOTO, join);
+                code.bind(taken);
+                code.pushInt(pc + imm);
+                code.istore(LOCAL_NEXT);
+                code.bind(join);
+                break;
+            }
+            case RV32Cpu.OP_JAL:
+                if (rd != 0) {
+                    code.pushInt(pc + INSTRUCTION_SIZE);
+                    code.istore(dst);
+                }
+                code.pushInt(pc + imm);
+                code.istore(LOCAL_NEXT);
+                break;
+            case RV32Cpu.OP_JALR:
+                // Target is computed before the link register is written
+                code.iload(a);
+                code.pushInt(imm);
+                code.op(Code.IADD);
+                code.pushInt(~1);
+                code.op(Code.IAND);
+                code.istore(LOCAL_NEXT);
+                if (rd != 0) {
+                    code.pushInt(pc + INSTRUCTION_SIZE);
+                    code.istore(dst);
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Instruction cannot be compiled: op " + op);
+        }
+    }
+
+    private static void binary(Code code, int a, int b, int opcode, int dst) {
+        code.iload(a);
+        code.iload(b);
+        code.op(opcode);
+        code.istore(dst);
+    }
+
+    private static void immediate(Code code, int a, int imm, int opcode, int dst) {
+        code.iload(a);
+        code.pushInt(imm);
+        code.op(opcode);
+        code.istore(dst);
+    }
+
+    private static void helper(Code code, int a, int b, String name, int dst) {
+        code.iload(a);
+        code.iload(b);
+        code.invokeStatic(SUPPORT, name, "(II)I");
+        code.istore(dst);
+    }
+
+    /**
+     * dst = Integer.compare[Unsigned](lhs, rhs) < 0 ? 1 : 0, without branching.
+     */
+    private static void setIfNegative(Code code, String compare, int dst) {
+        code.invokeStatic(INTEGER, compare, "(II)I");
+        code.pushInt(31);
+        code.op(Code.IUSHR);
+        code.istore(dst);
+    }
+
+    private static void checkFault(Code code, Label faultExit) {
+        code.aload(LOCAL_RUNTIME);
+        code.getField(RUNTIME, "faulted", "Z");
+        code.jump(Code.IFNE, faultExit);
+    }
+
+    private static String loadName(int op) {
+        switch (op) {
+            case RV32Cpu.OP_LB:
+                return "lb";
+            case RV32Cpu.OP_LH:
+                return "lh";
+            case RV32Cpu.OP_LW:
+                return "lw";
+            case RV32Cpu.OP_LBU:
+                return "lbu";
+            default: // OP_LHU
+                return "lhu";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package cse311.jit;
+
+/**
+ * Memory access callbacks used by compiled blocks.
+ * Implementations must never throw: a failed access records the fault and
+ * returns, and the generated code leaves the block right after the call,
+ * writing back every register updated by the instructions before it.
+ */
+public abstract class BlockRuntime {
+    // Read by generated code after every load and store
+    public boolean faulted;
+
+    public int faultPc; // Guest PC of the faulting instruction
+    public int faultCause; // Exception cause to raise
+    public int faultValue; // Trap value to raise
+
+    public abstract int lb(int address, int pc);
+
+    public abstract int lh(int address, int pc);
+
+    public abstract int lw(int address, int pc);
+
+    public abstract int lbu(int address, int pc);
+
+    public abstract int lhu(int address, int pc);
+
+    public abstract void sb(int address, int value, int pc);
+
+    public abstract void sh(int address, int value, int pc);
+
+    public abstract void sw(int address, int value, int pc);
+
+    /**
+     * Record a fault for the instruction at pc.
+     */
+    protected final void fault(int pc, int cause, int value) {
+        faulted = true;
+        faultPc = pc;
+        faultCause = cause;
+        faultValue = value;
+    }
+}
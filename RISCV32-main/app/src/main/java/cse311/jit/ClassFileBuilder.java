@@ -0,0 +1,334 @@
+package cse311.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer used by the block compiler.
+ * Emits version 49 class files: the verifier then infers branch target
+ * types itself, so no StackMapTable has to be computed for generated code.
+ */
+final class ClassFileBuilder {
+    private static final int MAJOR_VERSION = 49;
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // Access flags
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1; // Index 0 is unused
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+    // ---- Constant pool ----
+
+    int utf8(String value) {
+        return constant("U" + value, () -> {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+        }, 1);
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, () -> {
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(name);
+        }, 1);
+    }
+
+    int integer(int value) {
+        return constant("I" + value, () -> {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(value);
+        }, 1);
+    }
+
+    int longConstant(long value) {
+        return constant("J" + value, () -> {
+            pool.writeByte(CONSTANT_LONG);
+            pool.writeLong(value);
+        }, 2); // Longs take two pool slots
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int typeIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, () -> {
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(typeIndex);
+        }, 1);
+        return constant("M" + tag + owner + "." + name + ":" + descriptor, () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    private int constant(String key, PoolWriter writer, int slots) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream never throws
+        }
+        int index = poolCount;
+        poolCount += slots;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    // ---- Methods ----
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        byte[] body = code.toByteArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1); // One attribute: Code
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // Exception table length
+            out.writeShort(0); // Code attributes count
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] build(int access, String thisName, String superName, String interfaceName) {
+        int thisIndex = classRef(thisName);
+        int superIndex = classRef(superName);
+        int interfaceIndex = classRef(interfaceName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // Minor version
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(access);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(1);
+            out.writeShort(interfaceIndex);
+            out.writeShort(0); // Fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // Class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Bytecode buffer for one method body with forward-branch patching.
+     */
+    static final class Code {
+        // Opcodes used by the block compiler
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ILOAD = 0x15;
+        static final int ALOAD = 0x19;
+        static final int IALOAD = 0x2e;
+        static final int ISTORE = 0x36;
+        static final int IASTORE = 0x4f;
+        static final int IADD = 0x60;
+        static final int ISUB = 0x64;
+        static final int IMUL = 0x68;
+        static final int LMUL = 0x69;
+        static final int ISHL = 0x78;
+        static final int ISHR = 0x7a;
+        static final int LSHR = 0x7b;
+        static final int IUSHR = 0x7c;
+        static final int LUSHR = 0x7d;
+        static final int IAND = 0x7e;
+        static final int LAND = 0x7f;
+        static final int IOR = 0x80;
+        static final int IXOR = 0x82;
+        static final int I2L = 0x85;
+        static final int L2I = 0x88;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IF_ICMPEQ = 0x9f;
+        static final int IF_ICMPNE = 0xa0;
+        static final int IF_ICMPLT = 0xa1;
+        static final int IF_ICMPGE = 0xa2;
+        static final int GOTO = 0xa7;
+        static final int IRETURN = 0xac;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        private final ClassFileBuilder owner;
+        final int maxStack;
+        final int maxLocals;
+
+        Code(ClassFileBuilder owner, int maxStack, int maxLocals) {
+            this.owner = owner;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /** A branch target; forward references are patched when bound. */
+        static final class Label {
+            private int position = -1;
+            private final List<Integer> references = new ArrayList<>();
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(owner.integer(value));
+            }
+        }
+
+        void pushLong(long value) {
+            op(LDC2_W);
+            u2(owner.longConstant(value));
+        }
+
+        void iload(int local) {
+            op(ILOAD);
+            u1(local);
+        }
+
+        void istore(int local) {
+            op(ISTORE);
+            u1(local);
+        }
+
+        void aload(int local) {
+            op(ALOAD);
+            u1(local);
+        }
+
+        void invokeStatic(String ownerName, String name, String descriptor) {
+            op(INVOKESTATIC);
+            u2(owner.methodRef(ownerName, name, descriptor));
+        }
+
+        void invokeVirtual(String ownerName, String name, String descriptor) {
+            op(INVOKEVIRTUAL);
+            u2(owner.methodRef(ownerName, name, descriptor));
+        }
+
+        void invokeSpecial(String ownerName, String name, String descriptor) {
+            op(INVOKESPECIAL);
+            u2(owner.methodRef(ownerName, name, descriptor));
+        }
+
+        void getField(String ownerName, String name, String descriptor) {
+            op(GETFIELD);
+            u2(owner.fieldRef(ownerName, name, descriptor));
+        }
+
+        void jump(int opcode, Label target) {
+            int at = length;
+            op(opcode);
+            if (target.position >= 0) {
+                u2(target.position - at);
+            } else {
+                target.references.add(at);
+                u2(0); // Patched in bind()
+            }
+        }
+
+        void bind(Label label) {
+            label.position = length;
+            for (int at : label.references) {
+                int offset = label.position - at;
+                bytes[at + 1] = (byte) (offset >> 8);
+                bytes[at + 2] = (byte) offset;
+            }
+            label.references.clear();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
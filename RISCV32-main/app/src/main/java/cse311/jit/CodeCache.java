@@ -0,0 +1,153 @@
+package cse311.jit;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped cache of compiled blocks keyed by physical PC.
+ * Each slot also carries an execution counter for the block head hashed
+ * to it; once a head reaches the hotness threshold it is compiled. A new
+ * block simply replaces whatever occupied its slot, and the replaced class
+ * is unloaded once nothing references it.
+ */
+public class CodeCache {
+    public static final int DEFAULT_SLOTS = 4096;
+    public static final int DEFAULT_THRESHOLD = 50;
+
+    private static final int EMPTY = -1;
+
+    private final int mask;
+    private final int threshold;
+    private final int addressMask; // Physical address bits, as the decode cache keys pages
+    private final TranslatedBlock[] blocks;
+    private final int[] counterTags; // Physical PC being counted in each slot
+    private final int[] counters;
+
+    // Statistics
+    private long compiled;
+    private long evicted;
+    private long invalidated;
+
+    public CodeCache() {
+        this(0x7FFFFFFF);
+    }
+
+    /**
+     * @param addressMask Mask the decode cache applies to physical addresses
+     *                    before taking page numbers
+     */
+    public CodeCache(int addressMask) {
+        this(DEFAULT_SLOTS, DEFAULT_THRESHOLD, addressMask);
+    }
+
+    public CodeCache(int slots, int threshold) {
+        this(slots, threshold, 0x7FFFFFFF);
+    }
+
+    /**
+     * @param slots       Number of cache slots (a power of two)
+     * @param threshold   Executions of a block head before it is compiled
+     * @param addressMask Mask the decode cache applies to physical addresses
+     *                    before taking page numbers
+     */
+    public CodeCache(int slots, int threshold, int addressMask) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two: " + slots);
+        }
+        this.mask = slots - 1;
+        this.threshold = threshold;
+        this.addressMask = addressMask;
+        this.blocks = new TranslatedBlock[slots];
+        this.counterTags = new int[slots];
+        this.counters = new int[slots];
+        Arrays.fill(counterTags, EMPTY);
+    }
+
+    private int slot(int physicalPc) {
+        return (physicalPc >>> 2) & mask;
+    }
+
+    /**
+     * @return The block translated for this PC pair, or null
+     */
+    public TranslatedBlock lookup(int physicalPc, int virtualPc) {
+        TranslatedBlock block = blocks[slot(physicalPc)];
+        if (block != null && block.physicalPc == physicalPc && block.virtualPc == virtualPc) {
+            return block;
+        }
+        return null;
+    }
+
+    /**
+     * Count one execution of a block head.
+     *
+     * @return true once the head is hot, until a block for it is installed
+     */
+    public boolean countExecution(int physicalPc) {
+        int slot = slot(physicalPc);
+        if (counterTags[slot] != physicalPc) {
+            counterTags[slot] = physicalPc;
+            counters[slot] = 0;
+        }
+        return ++counters[slot] >= threshold;
+    }
+
+    /**
+     * Stop counting a head that cannot be compiled.
+     */
+    public void markUncompilable(int physicalPc) {
+        int slot = slot(physicalPc);
+        counterTags[slot] = physicalPc;
+        counters[slot] = Integer.MIN_VALUE;
+    }
+
+    public void install(TranslatedBlock block) {
+        int slot = slot(block.physicalPc);
+        if (blocks[slot] != null) {
+            evicted++;
+        }
+        blocks[slot] = block;
+        compiled++;
+        // The same code reached through another virtual PC counts afresh
+        counterTags[slot] = block.physicalPc;
+        counters[slot] = 0;
+    }
+
+    /**
+     * Drop every block that starts in a physical page.
+     */
+    public void invalidatePage(int ppn) {
+        for (int i = 0; i < blocks.length; i++) {
+            TranslatedBlock block = blocks[i];
+            if (block != null && (block.physicalPc & addressMask) >>> 12 == ppn) {
+                blocks[i] = null;
+                invalidated++;
+            }
+            // The page may now hold different code, so start counting afresh
+            if (counterTags[i] != EMPTY && (counterTags[i] & addressMask) >>> 12 == ppn) {
+                counterTags[i] = EMPTY;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null) {
+                blocks[i] = null;
+                invalidated++;
+            }
+        }
+        Arrays.fill(counterTags, EMPTY);
+    }
+
+    public long getCompiledCount() {
+        return compiled;
+    }
+
+    public long getEvictedCount() {
+        return evicted;
+    }
+
+    public long getInvalidatedCount() {
+        return invalidated;
+    }
+}
@@ -0,0 +1,18 @@
+package cse311.jit;
+
+/**
+ * A basic block translated to JVM bytecode.
+ * Guest registers are read from and written back to the register file;
+ * memory accesses go through the runtime so faults are reported precisely.
+ */
+public interface CompiledBlock {
+    /**
+     * Execute the block.
+     *
+     * @param x       The guest register file
+     * @param runtime Memory access callbacks and fault state
+     * @return The guest PC of the next instruction (ignored if the runtime
+     *         reports a fault)
+     */
+    int run(int[] x, BlockRuntime runtime);
+}
@@ -0,0 +1,38 @@
+package cse311.jit;
+
+/**
+ * Out-of-line helpers called from generated code for the instructions whose
+ * RISC-V semantics differ from the JVM's (division by zero and overflow).
+ */
+public final class JitSupport {
+    private JitSupport() {
+    }
+
+    public static int div(int a, int b) {
+        if (b == 0) {
+            return -1; // Division by zero: all 1s
+        }
+        if (a == Integer.MIN_VALUE && b == -1) {
+            return Integer.MIN_VALUE; // Signed overflow case
+        }
+        return a / b;
+    }
+
+    public static int divu(int a, int b) {
+        return b == 0 ? -1 : Integer.divideUnsigned(a, b);
+    }
+
+    public static int rem(int a, int b) {
+        if (b == 0) {
+            return a; // Division by zero: return dividend
+        }
+        if (a == Integer.MIN_VALUE && b == -1) {
+            return 0; // Signed overflow case
+        }
+        return a % b;
+    }
+
+    public static int remu(int a, int b) {
+        return b == 0 ? a : Integer.remainderUnsigned(a, b);
+    }
+}
@@ -0,0 +1,21 @@
+package cse311.jit;
+
+/**
+ * A compiled block together with the addresses it was translated for.
+ * Code generation bakes in guest PCs (branch targets, link values, AUIPC),
+ * so a block is only valid for the virtual and physical PC pair it was
+ * built from.
+ */
+public final class TranslatedBlock {
+    public final int physicalPc;
+    public final int virtualPc;
+    public final int length; // Number of guest instructions
+    public final CompiledBlock code;
+
+    public TranslatedBlock(int physicalPc, int virtualPc, int length, CompiledBlock code) {
+        this.physicalPc = physicalPc;
+        this.virtualPc = virtualPc;
+        this.length = length;
+        this.code = code;
+    }
+}
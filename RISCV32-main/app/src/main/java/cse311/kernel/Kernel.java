@@ -10,6 +10,9 @@ import cse311.kernel.NonContiguous.paging.PagingMapper;
 import cse311.kernel.contiguous.ContiguousMemoryCoordinator;
 import cse311.kernel.contiguous.ContiguousMemoryManager;
 import cse311.kernel.memory.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -117,6 +120,7 @@ public class Kernel {
      */
     public void stop() {
         running = false;
+        memory.flush(); // File-backed RAM is written out here
         System.out.println("Kernel stopped");
     }
 
@@ -186,19 +190,14 @@ public class Kernel {
             task.setState(TaskState.RUNNING);
             task.restoreState(cpu);
 
-            int instructionsExecuted = 0;
-            int maxInstructions = scheduler.getTimeSlice();
             boolean stateSavedBySyscall = false; // Flag to track if syscall saved state
 
-            // Execute instructions until time slice expires or task yields
-            while (instructionsExecuted < maxInstructions && task.getState() == TaskState.RUNNING) {
-                try {
-                    // Execute one instruction
-                    cpu.step();
-                    instructionsExecuted++;
+            // Execute until the time slice expires or the task needs the kernel
+            try {
+                int exitReason = cpu.run(scheduler.getTimeSlice());
 
-                    // Check if task made a system call
-                    if (cpu.isEcall()) {
+                switch (exitReason) {
+                    case RV32Cpu.EXIT_ECALL:
                         // 1. Save state BEFORE handling syscall (Required for fork/wait to work)
                         task.saveState(cpu);
 
@@ -206,23 +205,29 @@ public class Kernel {
                         handleSystemCall(task);
 
                         // 3. Mark that we have already saved/handled the state.
-                        // This prevents the code below the loop from overwriting
+                        // This prevents the code below from overwriting
                         // changes made by 'exec' (like the new PC).
                         stateSavedBySyscall = true;
                         break;
-                    }
 
-                    // Check if task hit a breakpoint or exception
-                    if (cpu.isException()) {
+                    case RV32Cpu.EXIT_EXCEPTION:
+                        // Task hit a breakpoint or exception
                         handleException(task);
                         break;
-                    }
 
-                } catch (Exception e) {
-                    System.err.println("Task " + task.getId() + " error: " + e.getMessage());
-                    task.setState(TaskState.TERMINATED);
-                    break;
+                    case RV32Cpu.EXIT_HALT:
+                        // Program exited through semihosting or is stuck in a loop
+                        System.err.println("Task " + task.getId() + " halted");
+                        task.setState(TaskState.TERMINATED);
+                        break;
+
+                    default:
+                        // EXIT_SLICE_EXPIRED or EXIT_WFI: the task stays runnable
+                        break;
                 }
+            } catch (Exception e) {
+                System.err.println("Task " + task.getId() + " error: " + e.getMessage());
+                task.setState(TaskState.TERMINATED);
             }
 
             if (!stateSavedBySyscall) {
@@ -284,8 +289,15 @@ public class Kernel {
      * Create a new task from ELF data
      */
     public Task createTask(byte[] elfData, String name) throws Exception {
+        return createTask(ElfImage.parse(elfData), name);
+    }
+
+    /**
+     * Create a new task from a parsed ELF image
+     */
+    public Task createTask(ElfImage image, String name) throws Exception {
         int pid = nextPid++;
-        Task task = taskManager.createTask(pid, elfData, name);
+        Task task = taskManager.createTask(pid, image, name, null);
         tasks.put(pid, task);
         scheduler.addTask(task);
 
@@ -389,6 +401,86 @@ public class Kernel {
         }
     }
 
+    /**
+     * Save the task table, process tree, scheduler queue and task memory
+     * layout. Take it between time slices: a running kernel keeps changing
+     * them.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(nextPid);
+
+        out.writeInt(tasks.size());
+        for (Task task : tasks.values()) {
+            if (task instanceof cse311.JavaTask) {
+                throw new IOException("Java task " + task.getId() + " cannot be saved");
+            }
+            task.writeState(out);
+        }
+
+        // Parent and children by PID
+        for (Task task : tasks.values()) {
+            out.writeInt(task.getId());
+            out.writeInt(task.getParent() != null ? task.getParent().getId() : -1);
+            List<Task> children = task.getChildren();
+            out.writeInt(children.size());
+            for (Task child : children) {
+                out.writeInt(child.getId());
+            }
+        }
+
+        out.writeInt(scheduler.getTimeSlice());
+        List<Task> queued = scheduler.getQueuedTasks();
+        out.writeInt(queued.size());
+        for (Task task : queued) {
+            out.writeInt(task.getId());
+        }
+
+        taskManager.writeState(out);
+    }
+
+    /**
+     * Replace the task table with a saved one. Links to tasks that were not
+     * saved are dropped.
+     */
+    public void readState(DataInput in) throws IOException {
+        nextPid = in.readInt();
+
+        tasks.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            Task task = Task.readState(in);
+            tasks.put(task.getId(), task);
+        }
+
+        Map<Task, Task> parents = new HashMap<>();
+        for (int n = tasks.size(); n > 0; n--) {
+            Task task = tasks.get(in.readInt());
+            Task parent = tasks.get(in.readInt());
+            for (int c = in.readInt(); c > 0; c--) {
+                Task child = tasks.get(in.readInt());
+                if (child != null) {
+                    task.addChild(child);
+                }
+            }
+            parents.put(task, parent);
+        }
+        // addChild sets the parent too; the saved link wins
+        for (Map.Entry<Task, Task> e : parents.entrySet()) {
+            e.getKey().setParent(e.getValue());
+        }
+
+        scheduler.setTimeSlice(in.readInt());
+        List<Task> queued = new ArrayList<>();
+        for (int n = in.readInt(); n > 0; n--) {
+            Task task = tasks.get(in.readInt());
+            if (task != null) {
+                queued.add(task);
+            }
+        }
+        scheduler.restoreQueue(queued);
+
+        taskManager.readState(in);
+    }
+
     // Getters for kernel subsystems
     public RV32Cpu getCpu() {
         return cpu;
@@ -8,6 +8,7 @@ import cse311.Exception.MemoryAccessException;
 import java.util.ArrayList;
 import java.util.List;
 
+import cse311.ElfImage;
 import cse311.ElfLoader;
 
 /**
@@ -18,12 +19,26 @@ public class NonContiguousMemoryCoordinator implements ProcessMemoryCoordinator
 
     private final NonContiguousMemoryMapper mapper;
     private final int stackSize;
+    private boolean lazyLoading;
 
     public NonContiguousMemoryCoordinator(NonContiguousMemoryMapper mapper, int stackSize) {
         this.mapper = mapper;
         this.stackSize = stackSize;
     }
 
+    /**
+     * With lazy loading, loadProgram only records the ELF segments and
+     * each page is read from the image on its first touch, so starting a
+     * program costs the pages it uses rather than its size.
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+    }
+
+    public boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
     @Override
     public MemoryLayout allocateMemory(int pid, int sizeBytes) throws MemoryAccessException {
         // 1. Create the address space (Page Table or Segment Table)
@@ -37,14 +52,17 @@ public class NonContiguousMemoryCoordinator implements ProcessMemoryCoordinator
     }
 
     @Override
-    public ProgramInfo loadProgram(int pid, byte[] elfData) throws Exception {
+    public ProgramInfo loadProgram(int pid, ElfImage image) throws Exception {
         // 1. Switch context so we write to the correct tables
         mapper.switchContext(pid);
 
         // 2. Load ELF
         // We use the mapper's memory interface (which handles the translation)
         ElfLoader loader = new ElfLoader(mapper.getMemoryInterface());
-        loader.loadElf(elfData);
+        loader.setSegmentMapper((segment, segments, data) -> (lazyLoading
+                && mapper.mapSegmentLazily(pid, segment, segments, data))
+                || mapper.mapSegment(pid, segment, segments, data));
+        loader.load(image);
 
         return loader.getProgramInfo();
     }
@@ -82,9 +100,7 @@ public class NonContiguousMemoryCoordinator implements ProcessMemoryCoordinator
             byte[] bytes = (arg + "\0").getBytes();
             sp -= bytes.length;
             sp &= ~0xF; // 16-byte alignment
-            for (int i = 0; i < bytes.length; i++) {
-                memory.writeByteToVirtualAddress(sp + i, bytes[i]);
-            }
+            memory.writeBytes(sp, bytes, 0, bytes.length);
             argvPtrs.add(sp);
         }
 
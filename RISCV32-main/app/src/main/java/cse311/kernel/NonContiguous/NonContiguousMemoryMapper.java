@@ -1,5 +1,9 @@
 package cse311.kernel.NonContiguous;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import cse311.ElfLoader.ElfSegment;
 import cse311.MemoryManager;
 import cse311.Exception.MemoryAccessException;
 
@@ -23,6 +27,29 @@ public interface NonContiguousMemoryMapper {
     /** Copies tables for fork() */
     void copyAddressSpace(int parentPid, int childPid) throws MemoryAccessException;
 
+    /**
+     * Places an ELF segment of the current process without copying it, e.g.
+     * from frames shared with other processes running the same program.
+     *
+     * @return false to have the segment copied
+     */
+    default boolean mapSegment(int pid, ElfSegment segment, List<ElfSegment> segments, ByteBuffer elfData)
+            throws MemoryAccessException {
+        return false;
+    }
+
+    /**
+     * Records an ELF segment of the current process to be loaded page by
+     * page on first touch. elfData is kept, not copied.
+     *
+     * @return false to have the segment placed by mapSegment or copied
+     */
+    default boolean mapSegmentLazily(int pid, ElfSegment segment, List<ElfSegment> segments,
+            ByteBuffer elfData)
+            throws MemoryAccessException {
+        return false;
+    }
+
     /** Returns the underlying MemoryManager (PagedMemoryManager, etc.) */
     MemoryManager getMemoryInterface();
 }
@@ -1,42 +1,45 @@
 package cse311.kernel.NonContiguous.paging;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import cse311.ElfLoader.ElfSegment;
 import cse311.Exception.MemoryAccessException;
 
 public final class AddressSpace {
-    // Root of a 2-level page table (Sv32-like): 4KB pages
+    // Root of a 2-level Sv32 page table: 4KB pages, PTEs packed as ints
     final int pid;
-    final PageDirectory root;
+    final int[] root = new int[1024]; // L1 (Page Directory)
+    final int[][] tables = new int[1024][]; // L2 (Page Tables), indexed by L1 index
+
+    // Sv32 PTE layout: flags in bits 0-9, PPN in bits 10-31
+    static final int PTE_V = 1 << 0;
+    static final int PTE_R = 1 << 1;
+    static final int PTE_W = 1 << 2;
+    static final int PTE_X = 1 << 3;
+    static final int PTE_U = 1 << 4;
+    static final int PTE_SWAPPED = 1 << 5; // G bit, reused while V is clear: the PPN field holds a swap slot
+    static final int PTE_A = 1 << 6;
+    static final int PTE_D = 1 << 7;
+    static final int PTE_SHARED = 1 << 8; // First RSW bit: frame shared with other spaces
+    static final int PTE_COW = 1 << 9; // Second RSW bit: copy the frame on the first write
+    static final int PPN_SHIFT = 10;
+
+    // Permissions kept across a swap-out and swap-in
+    private static final int SWAP_KEPT = PTE_R | PTE_W | PTE_X | PTE_U;
+
+    // ELF segments whose pages are read from the image on first touch
+    private List<ElfSegment> fileSegments = new ArrayList<>();
+    private ByteBuffer image;
 
     AddressSpace(int pid) {
         this.pid = pid;
-        this.root = new PageDirectory();
         this.memoryManager = null;
     }
 
-    static final class PageDirectory {
-        final PageTableEntry[] entries = new PageTableEntry[1024]; // L1 (Page Directory)
-    }
-
-    static final class PageTable {
-        final PageTableEntry[] entries = new PageTableEntry[1024]; // L2 (Page Table)
-
-        PageTable() {
-            // Initialize entries to null (not present)
-        }
-    }
-
-    static final class PageTableEntry {
-        int ppn; // physical page number (<<12 to make PA)
-        boolean V, R, W, X, U;
-        boolean D; // Dirty bit (for Linux-like page management)
-        boolean A; // Accessed bit (for page replacement)
-        boolean shared;
-
-        @Override
-        public String toString() {
-            return String.format("PTE{ppn=0x%x, V=%b, R=%b, W=%b, X=%b, D=%b, A=%b, Shared=%b}",
-                    ppn, V, R, W, X, D, A, shared);
-        }
+    static int ppn(int pte) {
+        return pte >>> PPN_SHIFT;
     }
 
     // Helper methods for pager - Abstract interface for paging policies
@@ -49,8 +52,7 @@ public final class AddressSpace {
      * Abstracts page table implementation from policies
      */
     public boolean isPagePresent(int vpn) {
-        PageTableEntry pte = getPTEInternal(vpn);
-        return pte != null && pte.V;
+        return (getPte(vpn) & PTE_V) != 0;
     }
 
     /**
@@ -58,8 +60,8 @@ public final class AddressSpace {
      * Returns -1 if page not present
      */
     public int getFrameNumber(int vpn) {
-        PageTableEntry pte = getPTEInternal(vpn);
-        return (pte != null && pte.V) ? pte.ppn : -1;
+        int pte = getPte(vpn);
+        return (pte & PTE_V) != 0 ? ppn(pte) : -1;
     }
 
     /**
@@ -74,9 +76,12 @@ public final class AddressSpace {
      * Unmap a page (mark as not present)
      */
     public void unmapPage(int vpn) {
-        PageTableEntry pte = getPTEInternal(vpn);
-        if (pte != null) {
-            pte.V = false;
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        if (table != null) {
+            table[vpn & 0x3FF] &= ~PTE_V;
+            if (memoryManager != null) {
+                memoryManager.onMappingChanged(this, vpn);
+            }
         }
     }
 
@@ -85,73 +90,224 @@ public final class AddressSpace {
      * Returns reference bit (accessed) and dirty bit
      */
     public PageStats getPageStats(int vpn) {
-        PageTableEntry pte = getPTEInternal(vpn);
-        if (pte == null)
-            return new PageStats(false, false);
-        return new PageStats(pte.A, pte.D);
+        int pte = getPte(vpn);
+        return new PageStats((pte & PTE_A) != 0, (pte & PTE_D) != 0);
     }
 
     /**
      * Update page statistics after access
      */
     public void updatePageAccess(int vpn, boolean wasWrite) {
-        PageTableEntry pte = getPTEInternal(vpn);
-        if (pte != null) {
-            pte.A = true;
-            if (wasWrite)
-                pte.D = true;
+        setFlags(vpn, wasWrite ? PTE_A | PTE_D : PTE_A);
+    }
+
+    /**
+     * Whether the page is mapped copy-on-write, i.e. a write must first give
+     * this address space its own frame
+     */
+    public boolean isCopyOnWrite(int vpn) {
+        return (getPte(vpn) & (PTE_V | PTE_COW)) == (PTE_V | PTE_COW);
+    }
+
+    /**
+     * Swap slot holding the page if it was swapped out, or -1
+     */
+    public int getSwapSlot(int vpn) {
+        int pte = getPte(vpn);
+        return (pte & (PTE_V | PTE_SWAPPED)) == PTE_SWAPPED ? ppn(pte) : -1;
+    }
+
+    /**
+     * Replace a resident page by a reference to its swap slot. The frame
+     * was private to this space, so any copy-on-write mark is dropped.
+     */
+    void markSwapped(int vpn, int slot) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        int pte = table[vpn & 0x3FF];
+        table[vpn & 0x3FF] = (slot << PPN_SHIFT) | (pte & SWAP_KEPT) | PTE_SWAPPED;
+        if (memoryManager != null) {
+            memoryManager.onMappingChanged(this, vpn);
         }
     }
 
-    public PageTableEntry getPTEInternal(int vpn) {
-        int l1Index = (vpn >> 10) & 0x3FF;
-        int l2Index = vpn & 0x3FF;
+    /**
+     * Map a frame holding a page read back from swap. The page no longer
+     * has a copy in swap, so it starts dirty; it is only marked accessed
+     * once touched, which read-ahead pages may never be.
+     */
+    void mapSwappedIn(int vpn, int frame) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        int pte = table[vpn & 0x3FF];
+        table[vpn & 0x3FF] = (frame << PPN_SHIFT) | (pte & SWAP_KEPT) | PTE_V | PTE_D;
+        if (memoryManager != null) {
+            memoryManager.onMappingChanged(this, vpn);
+        }
+    }
+
+    /**
+     * Copy a swapped-out PTE from another space, e.g. on fork.
+     */
+    boolean copySwapEntry(int vpn, int pte) {
+        int[] table = tableFor(vpn);
+        if (table == null) {
+            return false;
+        }
+        table[vpn & 0x3FF] = pte;
+        if (memoryManager != null) {
+            memoryManager.onMappingChanged(this, vpn);
+        }
+        return true;
+    }
+
+    /**
+     * Load a segment's pages from image on first touch instead of now.
+     * All segments of an address space come from the same image.
+     */
+    void addFileSegment(ElfSegment segment, ByteBuffer image) {
+        if (this.image != null && this.image != image) {
+            throw new IllegalArgumentException("Address space " + pid + " already maps another image");
+        }
+        this.image = image;
+        fileSegments.add(segment);
+    }
+
+    /**
+     * Share the parent's segment descriptors with a forked child.
+     */
+    void copyFileSegments(AddressSpace parent) {
+        this.image = parent.image;
+        this.fileSegments = new ArrayList<>(parent.fileSegments);
+    }
+
+    List<ElfSegment> getFileSegments() {
+        return fileSegments;
+    }
+
+    ByteBuffer getImage() {
+        return image;
+    }
 
-        PageTableEntry l1Entry = root.entries[l1Index];
-        if (l1Entry == null || !l1Entry.V)
-            return null;
+    /**
+     * Whether part of page vpn belongs to a segment not loaded yet.
+     */
+    boolean isFileBacked(int vpn) {
+        int pageVa = vpn << 12;
+        for (ElfSegment s : fileSegments) {
+            if (overlapsPage(s, pageVa)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The segment overlapping page vpn if no other segment does, or null.
+     */
+    ElfSegment soleFileSegmentAt(int vpn) {
+        int pageVa = vpn << 12;
+        ElfSegment found = null;
+        for (ElfSegment s : fileSegments) {
+            if (overlapsPage(s, pageVa)) {
+                if (found != null) {
+                    return null;
+                }
+                found = s;
+            }
+        }
+        return found;
+    }
+
+    static boolean overlapsPage(ElfSegment s, int pageVa) {
+        return s.memorySize > 0 && s.virtualAddr - (pageVa + PagedMemoryManager.PAGE_SIZE) < 0
+                && pageVa - (s.virtualAddr + s.memorySize) < 0;
+    }
+
+    /**
+     * Whether the L2 page table covering vpn exists.
+     */
+    boolean hasPageTable(int vpn) {
+        return tables[(vpn >> 10) & 0x3FF] != null;
+    }
 
-        PageTable l2Table = getPageTable(l1Entry.ppn);
-        if (l2Table == null)
-            return null;
+    /**
+     * Raw leaf PTE for a page, or 0 if its page table does not exist.
+     */
+    int getPte(int vpn) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        return table != null ? table[vpn & 0x3FF] : 0;
+    }
 
-        return l2Table.entries[l2Index];
+    /**
+     * Set flag bits on an existing leaf PTE.
+     */
+    void setFlags(int vpn, int flags) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        if (table != null && table[vpn & 0x3FF] != 0) {
+            table[vpn & 0x3FF] |= flags;
+        }
+    }
+
+    /**
+     * Clear flag bits on an existing leaf PTE.
+     */
+    void clearFlags(int vpn, int flags) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        if (table != null) {
+            table[vpn & 0x3FF] &= ~flags;
+        }
+    }
+
+    /**
+     * Replace the R/W/X permissions of an existing leaf PTE.
+     */
+    void setPermissions(int vpn, boolean r, boolean w, boolean x) {
+        int[] table = tables[(vpn >> 10) & 0x3FF];
+        if (table != null && table[vpn & 0x3FF] != 0) {
+            int pte = table[vpn & 0x3FF] & ~(PTE_R | PTE_W | PTE_X);
+            table[vpn & 0x3FF] = pte | (r ? PTE_R : 0) | (w ? PTE_W : 0) | (x ? PTE_X : 0);
+        }
     }
 
     // Internal methods - hidden from policies
     private boolean mapPageInternal(int vpn, int frame, boolean write, boolean exec) {
-        int l1Index = (vpn >> 10) & 0x3FF;
-        int l2Index = vpn & 0x3FF;
+        int[] table = tableFor(vpn);
+        if (table == null)
+            return false; // Out of memory
+
+        // A and D start clear
+        table[vpn & 0x3FF] = (frame << PPN_SHIFT) | PTE_V | PTE_R
+                | (write ? PTE_W : 0) | (exec ? PTE_X : 0);
+        if (memoryManager != null) {
+            memoryManager.onMappingChanged(this, vpn);
+        }
+        return true;
+    }
 
-        // Ensure L2 table exists
-        PageTableEntry l1Entry = root.entries[l1Index];
-        if (l1Entry == null || !l1Entry.V) {
+    /**
+     * The L2 table covering vpn, allocated if needed; null when no frame is
+     * left for it.
+     */
+    private int[] tableFor(int vpn) {
+        int l1Index = (vpn >> 10) & 0x3FF;
+        int[] table = tables[l1Index];
+        if (table == null) {
             int l2TableFrame = allocatePageTable();
             if (l2TableFrame < 0)
-                return false; // Out of memory
+                return null;
 
-            l1Entry = new PageTableEntry();
-            l1Entry.ppn = l2TableFrame;
-            l1Entry.V = true;
-            l1Entry.R = l1Entry.W = l1Entry.X = true;
-            root.entries[l1Index] = l1Entry;
+            table = installPageTable(l1Index, l2TableFrame);
         }
+        return table;
+    }
 
-        PageTable l2Table = getPageTable(l1Entry.ppn);
-        if (l2Table == null)
-            return false;
-
-        PageTableEntry pte = new PageTableEntry();
-        pte.ppn = frame;
-        pte.V = true;
-        pte.R = true;
-        pte.W = write;
-        pte.X = exec;
-        pte.A = false;
-        pte.D = false;
-
-        l2Table.entries[l2Index] = pte;
-        return true;
+    /**
+     * Install an empty L2 table backed by a frame the caller allocated.
+     */
+    int[] installPageTable(int l1Index, int l2TableFrame) {
+        int[] table = new int[1024];
+        tables[l1Index] = table;
+        root[l1Index] = (l2TableFrame << PPN_SHIFT) | PTE_V; // Non-leaf: R/W/X clear
+        return table;
     }
 
     // Page statistics class for policies
@@ -173,21 +329,16 @@ public final class AddressSpace {
         return va & 0xFFF; // 12-bit page offset
     }
 
-    // Page table management - now handled by PagedMemoryManager
+    // Page table frames are accounted for by PagedMemoryManager
     private final PagedMemoryManager memoryManager;
 
     AddressSpace(int pid, PagedMemoryManager memoryManager) {
         this.pid = pid;
         this.memoryManager = memoryManager;
-        this.root = new PageDirectory();
     }
 
     private int allocatePageTable() {
-        return memoryManager.allocatePageTableFrame();
-    }
-
-    public PageTable getPageTable(int ppn) {
-        return memoryManager.getPageTableInstance(ppn);
+        return memoryManager.allocateFrameForPageTable();
     }
 
     // Address translation
@@ -195,11 +346,11 @@ public final class AddressSpace {
         int vpn = getVPN(virtualAddress);
         int offset = getPageOffset(virtualAddress);
 
-        PageTableEntry pte = getPTEInternal(vpn);
-        if (pte == null || !pte.V) {
+        int pte = getPte(vpn);
+        if ((pte & PTE_V) == 0) {
             throw new MemoryAccessException("Page fault: VPN " + vpn + " not present");
         }
 
-        return (pte.ppn << 12) | offset;
+        return (ppn(pte) << 12) | offset;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Approximate LRU with aging counters. Each frame has a 32-bit counter;
+ * every time a victim is needed all counters shift right and the frame's
+ * reference bit enters at the top. The evictable frame with the smallest
+ * counter has gone unreferenced the longest.
+ */
+public class AgingPolicy implements ReplacementPolicy {
+    private final int maxFrames;
+    private final int[] age;
+    private final BitSet referenced;
+
+    public AgingPolicy(int maxFrames) {
+        this.maxFrames = maxFrames;
+        this.age = new int[maxFrames];
+        this.referenced = new BitSet(maxFrames);
+    }
+
+    @Override
+    public void onAccess(int frame) {
+        if (frame >= 0 && frame < maxFrames) {
+            referenced.set(frame);
+        }
+    }
+
+    @Override
+    public void onMap(int frame) {
+        if (frame >= 0 && frame < maxFrames) {
+            age[frame] = 0;
+            referenced.set(frame);
+        }
+    }
+
+    @Override
+    public void onUnmap(int frame) {
+        if (frame >= 0 && frame < maxFrames) {
+            age[frame] = 0;
+            referenced.clear(frame);
+        }
+    }
+
+    @Override
+    public int pickVictim(IntPredicate canEvict) {
+        int victim = -1;
+        for (int frame = 0; frame < maxFrames; frame++) {
+            int a = (age[frame] >>> 1) | (referenced.get(frame) ? 0x80000000 : 0);
+            age[frame] = a;
+            if ((victim < 0 || Integer.compareUnsigned(a, age[victim]) < 0) && canEvict.test(frame)) {
+                victim = frame;
+            }
+        }
+        referenced.clear();
+        return victim;
+    }
+}
@@ -0,0 +1,137 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). T1 holds pages seen once
+ * recently, T2 pages seen at least twice; B1 and B2 remember pages evicted
+ * from each. A fault on a page in B1 means T1 was too small and grows the
+ * target p, a fault on a page in B2 shrinks it. Victims come from T1 while
+ * it is above p, otherwise from T2.
+ */
+public class ArcPolicy implements ReplacementPolicy {
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final FrameList t1;
+    private final FrameList t2;
+    private final LinkedHashSet<Long> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> b2 = new LinkedHashSet<>();
+    private final long[] keys;
+    private int p; // Target size of T1
+
+    public ArcPolicy(int maxFrames) {
+        this.capacity = maxFrames;
+        this.t1 = new FrameList(maxFrames);
+        this.t2 = new FrameList(maxFrames);
+        this.keys = new long[maxFrames];
+        Arrays.fill(keys, NO_KEY);
+    }
+
+    @Override
+    public void onAccess(int frame) {
+        if (frame < 0 || frame >= capacity) {
+            return;
+        }
+        if (t1.contains(frame)) {
+            t1.remove(frame);
+            t2.addLast(frame);
+        } else if (t2.contains(frame)) {
+            t2.addLast(frame);
+        }
+    }
+
+    @Override
+    public void onMap(int frame) {
+        onMap(frame, NO_KEY);
+    }
+
+    @Override
+    public void onMap(int frame, long pageKey) {
+        if (frame < 0 || frame >= capacity) {
+            return;
+        }
+        // A frame freed without an eviction may still be listed
+        t1.remove(frame);
+        t2.remove(frame);
+        keys[frame] = pageKey;
+
+        if (pageKey != NO_KEY && b1.contains(pageKey)) {
+            p = Math.min(capacity, p + Math.max(b2.size() / b1.size(), 1));
+            b1.remove(pageKey);
+            t2.addLast(frame);
+        } else if (pageKey != NO_KEY && b2.contains(pageKey)) {
+            p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+            b2.remove(pageKey);
+            t2.addLast(frame);
+        } else {
+            t1.addLast(frame);
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public void onUnmap(int frame) {
+        if (frame < 0 || frame >= capacity) {
+            return;
+        }
+        long key = keys[frame];
+        if (t1.contains(frame)) {
+            t1.remove(frame);
+            if (key != NO_KEY) {
+                b1.add(key);
+            }
+        } else if (t2.contains(frame)) {
+            t2.remove(frame);
+            if (key != NO_KEY) {
+                b2.add(key);
+            }
+        }
+        keys[frame] = NO_KEY;
+        trimGhosts();
+    }
+
+    /**
+     * Keep |T1| + |B1| <= c and the whole directory within 2c.
+     */
+    private void trimGhosts() {
+        while (t1.size() + b1.size() > capacity && !b1.isEmpty()) {
+            removeOldest(b1);
+        }
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty()) {
+            removeOldest(b2);
+        }
+    }
+
+    private static void removeOldest(LinkedHashSet<Long> ghosts) {
+        Iterator<Long> oldest = ghosts.iterator();
+        oldest.next();
+        oldest.remove();
+    }
+
+    @Override
+    public int pickVictim(IntPredicate canEvict) {
+        boolean fromT1 = t1.size() > 0 && (t1.size() > p || t2.size() == 0);
+        int victim = firstEvictable(fromT1 ? t1 : t2, canEvict);
+        return victim >= 0 ? victim : firstEvictable(fromT1 ? t2 : t1, canEvict);
+    }
+
+    private static int firstEvictable(FrameList list, IntPredicate canEvict) {
+        for (int frame = list.first(); frame != FrameList.NONE; frame = list.next(frame)) {
+            if (canEvict.test(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Current target size of T1, for diagnostics
+     */
+    public int getTarget() {
+        return p;
+    }
+}
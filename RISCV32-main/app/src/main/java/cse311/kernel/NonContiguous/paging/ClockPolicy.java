@@ -43,8 +43,9 @@ public class ClockPolicy implements ReplacementPolicy {
 
     @Override
     public int pickVictim(IntPredicate canEvict) {
-        int start = hand;
-        while (true) {
+        // The first sweep may only clear reference bits; the second finds
+        // a victim if any frame can be evicted at all
+        for (int scanned = 0; scanned < 2 * maxFrames; scanned++) {
             if (hand >= maxFrames)
                 hand = 0;
 
@@ -54,10 +55,7 @@ public class ClockPolicy implements ReplacementPolicy {
 
             referenced.clear(hand); // Give second chance
             hand = (hand + 1) % maxFrames;
-
-            if (hand == start) {
-                return -1; // No victim found
-            }
         }
+        return -1; // No victim found
     }
 }
\ No newline at end of file
@@ -1,88 +1,164 @@
 package cse311.kernel.NonContiguous.paging;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import cse311.Exception.MemoryAccessException;
 
 /**
  * Demand pager implementation that allocates pages on demand and supports
- * eviction.
+ * eviction. With a swap device on the memory manager, dirty victims are
+ * written to swap and read back on their next fault; clean victims were
+ * never written and simply refault as zero pages, or from the ELF image.
+ *
+ * A read of a page never touched before maps the manager's shared zero page
+ * copy-on-write; the page only gets a frame of its own on its first write.
+ * Pages of ELF segments recorded for lazy loading are instead read from the
+ * image on their first touch, read-only text through the shared text cache.
+ *
+ * Fault-around: a fault on the page right after the previous fault of a
+ * stream maps a batch of following pages too, and touching the first page
+ * of a batch maps the next one, so a sequential scan faults a handful of
+ * times instead of once per page. Batches double up to the configured
+ * maximum and stay small for address spaces that waste most of them.
  */
 public class DemandPager implements Pager {
+    private static final int PAGE_SIZE = PagedMemoryManager.PAGE_SIZE;
+    private static final int LAST_VPN = AddressSpace.getVPN(-1); // VPNs are 22 bits wide
+    private static final int FAULT_AROUND_MIN = 4; // First batch of a stream
+    private static final int FAULT_AROUND_MAX = 16; // Default batch limit
+
     private final PagedMemoryManager mm;
     private final ReplacementPolicy repl;
+    private final byte[] pageBuffer = new byte[PAGE_SIZE]; // Swap I/O staging
+
+    // Free-frame watermarks: a fault that finds fewer than low free frames
+    // evicts ahead until high are free, so later faults find a frame ready
+    private int lowWatermark;
+    private int highWatermark;
+    private int readAhead; // Swapped-out neighbours read in with a faulting page
+
+    private long evictedAhead;
+    private long readAheadPages;
+    private PageTrace trace; // Records every reference the pager sees, if set
+
+    private int faultAroundMax = FAULT_AROUND_MAX;
+    private final Map<AddressSpace, FaultAround> faultAround = new WeakHashMap<>();
+    private AddressSpace lastSpace; // Saves the map lookup on consecutive calls
+    private FaultAround lastFaultAround;
 
     public DemandPager(PagedMemoryManager mm, ReplacementPolicy repl) {
         this.mm = mm;
         this.repl = repl;
     }
 
+    /**
+     * Keep free frames between low and high while a swap device is set.
+     * Write-back on the swap device keeps the evictions from waiting on
+     * disk. 0 disables eviction ahead of demand.
+     */
+    public void setFreeFrameWatermarks(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Watermarks need 0 <= low <= high: " + low + ", " + high);
+        }
+        this.lowWatermark = low;
+        this.highWatermark = high;
+    }
+
+    /**
+     * On a swap-in, also read back swapped-out pages up to this many pages
+     * either side of the faulting one, as long as free frames stay above
+     * the low watermark.
+     */
+    public void setReadAhead(int pages) {
+        this.readAhead = Math.max(0, pages);
+    }
+
+    /**
+     * Largest batch of pages mapped ahead of a sequential fault stream.
+     * 0 disables fault-around.
+     */
+    public void setFaultAround(int maxPages) {
+        this.faultAroundMax = Math.max(0, maxPages);
+    }
+
+    /**
+     * @return Fault and prefetch counters of a process, or null if it has
+     *         not faulted yet
+     */
+    public FaultAround getFaultAroundStats(int pid) {
+        AddressSpace as = mm.getAddressSpace(pid);
+        return as != null ? faultAround.get(as) : null;
+    }
+
+    /**
+     * Record every page reference from now on, for replay with
+     * {@link PageTraceBenchmark}. null stops recording.
+     */
+    public void setTraceRecorder(PageTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return Pages evicted to restore the free-frame watermark
+     */
+    public long getEvictedAhead() {
+        return evictedAhead;
+    }
+
+    /**
+     * @return Pages swapped in by read-ahead rather than by their own fault
+     */
+    public long getReadAheadPages() {
+        return readAheadPages;
+    }
+
     @Override
     public int ensureResident(AddressSpace as, int va, VmAccess access) throws MemoryAccessException {
         if (PagedMemoryManager.isUart(va))
             return -2; // MMIO
 
         int vpn = AddressSpace.getVPN(va);
+        if (trace != null) {
+            trace.record(as.getPid(), vpn, access == VmAccess.WRITE);
+        }
 
         if (!as.isPagePresent(vpn)) {
-            // Page fault - need to allocate a frame
-            int frame = mm.allocateFrame();
-
-            // If Out Of Memory (OOM), we must evict a victim frame
-            if (frame < 0) {
-                // 1. Pick a victim frame from ANY process (Global replacement)
-                frame = repl.pickVictim(i -> true);
-
-                if (frame >= 0) {
-                    // 2. Identify the owner of this victim frame
-                    FrameOwner owner = mm.getFrameOwner(frame);
-
-                    if (owner != null && owner.pid != -1) {
-                        // 3. Retrieve the VICTIM'S address space (this fixes the cross-process
-                        // corruption)
-                        AddressSpace victimAS = mm.getAddressSpace(owner.pid);
-
-                        if (victimAS != null) {
-                            // 4. Unmap the page from the VICTIM'S page table
-                            // We use the VPN stored in the FrameOwner record
-                            victimAS.unmapPage(owner.vpn);
-                        }
-
-                        // 5. Clear ownership and notify the replacement policy
-                        mm.setFrameOwner(frame, null);
-                        repl.onUnmap(frame);
-                    }
-
-                    // 6. Mark the frame as free so we can immediately re-allocate it below
-                    mm.freeFrame(frame);
-
-                    // 7. Allocate the frame we just freed
-                    frame = mm.allocateFrame();
+            int slot = as.getSwapSlot(vpn);
+            if (slot < 0 && as.isFileBacked(vpn)) {
+                if (!mm.mapCachedTextPage(as, vpn)) {
+                    evictAhead();
+                    loadFilePage(as, vpn, obtainFrame());
+                }
+            } else if (slot < 0 && access == VmAccess.READ && mm.mapSharedZeroPage(as, vpn)) {
+                // Read of an untouched page: the first write allocates its frame
+            } else {
+                // Page fault - need to allocate a frame
+                evictAhead();
+                int frame = obtainFrame();
+                if (slot >= 0) {
+                    swapIn(as, vpn, slot, frame);
+                    readAround(as, vpn);
+                } else {
+                    mapZeroPage(as, vpn, frame, access);
                 }
             }
-
-            if (frame < 0) {
-                throw new MemoryAccessException("Out of physical memory - Thrashing detected or Swap unavailable");
-            }
-
-            // Map the page with appropriate permissions
-            boolean write = (access == VmAccess.WRITE);
-            boolean exec = (access == VmAccess.EXEC);
-
-            boolean mapped = as.mapPage(vpn, frame, write, exec);
-            if (!mapped) {
-                mm.freeFrame(frame);
-                throw new MemoryAccessException("Failed to map page");
+            if (faultAroundMax > 0) {
+                onFault(as, vpn, access);
             }
+        } else if (faultAroundMax > 0 && (as.getPte(vpn) & AddressSpace.PTE_A) == 0) {
+            // First touch of a page mapped without being accessed
+            onFirstTouch(as, vpn);
+        }
 
-            // Register new ownership for the current process
-            mm.setFrameOwner(frame, new FrameOwner(as.getPid(), vpn));
-
-            // Zero the frame (Security: prevent reading old data from previous process)
-            int frameStart = frame * PagedMemoryManager.PAGE_SIZE;
-            for (int i = 0; i < PagedMemoryManager.PAGE_SIZE; i++) {
-                mm.writeByteToPhysicalAddress(frameStart + i, (byte) 0);
+        // Write fault on a page shared copy-on-write after fork
+        if (access == VmAccess.WRITE && as.isCopyOnWrite(vpn)) {
+            int copy = mm.isFrameShared(as.getFrameNumber(vpn)) ? obtainFrame() : -1;
+            mm.resolveCopyOnWrite(as, vpn, copy);
+            if (copy >= 0) {
+                repl.onMap(copy, ReplacementPolicy.pageKey(as.getPid(), vpn));
             }
-
-            repl.onMap(frame);
         }
 
         // Check permissions and update access bits
@@ -98,4 +174,277 @@ public class DemandPager implements Pager {
 
         return frame;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int reclaimFrame() {
+        try {
+            return obtainFrame();
+        } catch (MemoryAccessException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * First touch of a page: map a zeroed frame.
+     */
+    private void mapZeroPage(AddressSpace as, int vpn, int frame, VmAccess access) throws MemoryAccessException {
+        // Map the page with appropriate permissions
+        mapZeroPage(as, vpn, frame, access == VmAccess.WRITE, access == VmAccess.EXEC);
+    }
+
+    private void mapZeroPage(AddressSpace as, int vpn, int frame, boolean write, boolean exec)
+            throws MemoryAccessException {
+        boolean mapped = as.mapPage(vpn, frame, write, exec);
+        if (!mapped) {
+            mm.freeFrame(frame);
+            throw new MemoryAccessException("Failed to map page");
+        }
+
+        // Register new ownership for the current process
+        mm.setFrameOwner(frame, new FrameOwner(as.getPid(), vpn));
+
+        // Zero the frame (Security: prevent reading old data from previous process)
+        mm.fillPhysical(frame * PAGE_SIZE, PAGE_SIZE, (byte) 0);
+
+        repl.onMap(frame, ReplacementPolicy.pageKey(as.getPid(), vpn));
+    }
+
+    /**
+     * First touch of a page of a lazily loaded segment: read it from the
+     * image.
+     */
+    private void loadFilePage(AddressSpace as, int vpn, int frame) throws MemoryAccessException {
+        if (mm.loadFilePage(as, vpn, frame)) {
+            repl.onMap(frame, ReplacementPolicy.pageKey(as.getPid(), vpn));
+        }
+    }
+
+    /**
+     * Read a swapped-out page back into frame and give up its slot.
+     */
+    private void swapIn(AddressSpace as, int vpn, int slot, int frame) throws MemoryAccessException {
+        SwapDevice swap = mm.getSwapDevice();
+        if (swap == null) {
+            mm.freeFrame(frame);
+            throw new MemoryAccessException("Page " + vpn + " is in swap but no swap device is set");
+        }
+        try {
+            swap.readPage(slot, pageBuffer);
+        } catch (IOException e) {
+            mm.freeFrame(frame);
+            throw new MemoryAccessException("Swap-in of page " + vpn + " failed: " + e.getMessage());
+        }
+        mm.writePhysical(frame * PAGE_SIZE, pageBuffer, 0, PAGE_SIZE);
+
+        as.mapSwappedIn(vpn, frame);
+        mm.setFrameOwner(frame, new FrameOwner(as.getPid(), vpn));
+        swap.release(slot);
+        repl.onMap(frame, ReplacementPolicy.pageKey(as.getPid(), vpn));
+    }
+
+    /**
+     * Swap in neighbours of vpn that are in swap too, using only free
+     * frames above the low watermark. Pages swapped out together are
+     * usually needed together.
+     */
+    private void readAround(AddressSpace as, int vpn) throws MemoryAccessException {
+        int first = Math.max(0, vpn - readAhead);
+        int last = Math.min(LAST_VPN, vpn + readAhead);
+        for (int n = first; n <= last; n++) {
+            int slot = n != vpn ? as.getSwapSlot(n) : -1;
+            if (slot < 0) {
+                continue;
+            }
+            if (mm.getFreeFrameCount() <= lowWatermark) {
+                return;
+            }
+            int frame = mm.allocateFrame();
+            if (frame < 0) {
+                return;
+            }
+            swapIn(as, n, slot, frame);
+            readAheadPages++;
+        }
+    }
+
+    private FaultAround faultAroundOf(AddressSpace as) {
+        if (as != lastSpace) {
+            lastFaultAround = faultAround.computeIfAbsent(as, space -> new FaultAround());
+            lastSpace = as;
+        }
+        return lastFaultAround;
+    }
+
+    /**
+     * Count the fault and, if it continues a stream, map the next batch.
+     */
+    private void onFault(AddressSpace as, int vpn, VmAccess access) throws MemoryAccessException {
+        FaultAround fa = faultAroundOf(as);
+        fa.faults++;
+        fa.pending.remove(vpn); // Prefetched once, but evicted before use
+
+        int s = fa.streamAt(vpn);
+        if (s == FaultAround.NONE) {
+            fa.start(vpn, access == VmAccess.WRITE, access == VmAccess.EXEC);
+            return;
+        }
+        prefetch(as, fa, s, vpn + 1);
+    }
+
+    private void onFirstTouch(AddressSpace as, int vpn) throws MemoryAccessException {
+        FaultAround fa = faultAroundOf(as);
+        if (!fa.pending.remove(vpn)) {
+            return; // Mapped by fork or swap read-ahead
+        }
+        fa.used++;
+        int s = fa.streamMarkedAt(vpn);
+        if (s != FaultAround.NONE) {
+            prefetch(as, fa, s, fa.next[s]);
+        }
+    }
+
+    /**
+     * Map the next batch of a stream from page start on, growing the batch
+     * while the address space uses what it is given. Only free frames above
+     * the low watermark are used, and no page table is allocated for it.
+     */
+    private void prefetch(AddressSpace as, FaultAround fa, int s, int start) throws MemoryAccessException {
+        int limit = fa.getWasted() > fa.used ? FAULT_AROUND_MIN : faultAroundMax;
+        int window = Math.min(limit, fa.window[s] == 0 ? FAULT_AROUND_MIN : fa.window[s] * 2);
+        fa.window[s] = window;
+        fa.marker[s] = FaultAround.NONE;
+
+        int end = Math.min(LAST_VPN + 1, start + window);
+        int vpn = start;
+        for (; vpn < end; vpn++) {
+            if (as.isPagePresent(vpn)) {
+                continue;
+            }
+            if (!as.hasPageTable(vpn) || PagedMemoryManager.isUart(vpn * PAGE_SIZE)) {
+                break;
+            }
+            int slot = as.getSwapSlot(vpn);
+            boolean fromFile = slot < 0 && as.isFileBacked(vpn);
+            boolean readOnly = !fa.write[s] && !fa.exec[s];
+            boolean mapped = fromFile ? mm.mapCachedTextPage(as, vpn)
+                    : slot < 0 && readOnly && mm.mapSharedZeroPage(as, vpn);
+            if (!mapped) {
+                int frame = mm.getFreeFrameCount() > lowWatermark ? mm.allocateFrame() : -1;
+                if (frame < 0) {
+                    break;
+                }
+                if (slot >= 0) {
+                    swapIn(as, vpn, slot, frame);
+                } else if (fromFile) {
+                    loadFilePage(as, vpn, frame);
+                } else {
+                    mapZeroPage(as, vpn, frame, fa.write[s], fa.exec[s]);
+                }
+            }
+            if (fa.marker[s] == FaultAround.NONE) {
+                fa.marker[s] = vpn;
+            }
+            fa.pending.add(vpn);
+            fa.prefetched++;
+        }
+        fa.next[s] = vpn;
+    }
+
+    /**
+     * Restore the free-frame watermark once it has been crossed.
+     */
+    private void evictAhead() throws MemoryAccessException {
+        if (lowWatermark == 0 || mm.getSwapDevice() == null || mm.getFreeFrameCount() >= lowWatermark) {
+            return;
+        }
+        while (mm.getFreeFrameCount() < highWatermark) {
+            int victim = repl.pickVictim(mm::isEvictable, mm::isFrameDirty);
+            if (victim < 0) {
+                return;
+            }
+            evictFrame(victim);
+            evictedAhead++;
+        }
+    }
+
+    /**
+     * Take a resident page away from its address space: dirty pages go to
+     * swap, clean ones are dropped.
+     */
+    private void evict(AddressSpace victimAS, int vpn, int frame) throws MemoryAccessException {
+        SwapDevice swap = mm.getSwapDevice();
+        if (swap == null || !victimAS.getPageStats(vpn).dirty) {
+            victimAS.unmapPage(vpn);
+            return;
+        }
+
+        int slot = swap.allocateSlot();
+        if (slot < 0) {
+            throw new MemoryAccessException("Out of swap space");
+        }
+        mm.readPhysical(frame * PAGE_SIZE, pageBuffer, 0, PAGE_SIZE);
+        try {
+            swap.writePage(slot, pageBuffer);
+        } catch (IOException e) {
+            swap.release(slot);
+            throw new MemoryAccessException("Swap-out of page " + vpn + " failed: " + e.getMessage());
+        }
+        victimAS.markSwapped(vpn, slot);
+    }
+
+    /**
+     * Allocate a free frame, evicting a victim if physical memory is full.
+     */
+    private int obtainFrame() throws MemoryAccessException {
+        int frame = mm.allocateFrame();
+
+        // If Out Of Memory (OOM), we must evict a victim frame
+        if (frame < 0) {
+            // 1. Pick a victim frame from ANY process (Global replacement).
+            // Page tables and frames shared by several spaces cannot be evicted.
+            frame = repl.pickVictim(mm::isEvictable, mm::isFrameDirty);
+
+            if (frame >= 0) {
+                evictFrame(frame);
+
+                // Allocate the frame we just freed
+                frame = mm.allocateFrame();
+            }
+        }
+
+        if (frame < 0) {
+            throw new MemoryAccessException("Out of physical memory - Thrashing detected or Swap unavailable");
+        }
+        return frame;
+    }
+
+    /**
+     * Evict the page held by a victim frame and free the frame.
+     */
+    private void evictFrame(int frame) throws MemoryAccessException {
+        // 1. Identify the owner of this victim frame
+        FrameOwner owner = mm.getFrameOwner(frame);
+
+        // 2. Retrieve the VICTIM'S address space (this fixes the cross-process
+        // corruption)
+        AddressSpace victimAS = mm.getAddressSpace(owner.pid);
+
+        if (victimAS != null) {
+            // 3. Unmap the page from the VICTIM'S page table, saving it to
+            // swap if it was written. We use the VPN stored in the FrameOwner
+            // record
+            evict(victimAS, owner.vpn, frame);
+            FaultAround fa = faultAround.get(victimAS);
+            if (fa != null) {
+                fa.pending.remove(owner.vpn);
+            }
+        }
+
+        // 4. Clear ownership and notify the replacement policy
+        mm.setFrameOwner(frame, null);
+        repl.onUnmap(frame);
+
+        // 5. Mark the frame as free
+        mm.freeFrame(frame);
+    }
+}
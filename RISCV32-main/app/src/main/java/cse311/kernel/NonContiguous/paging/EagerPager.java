@@ -39,14 +39,26 @@ public class EagerPager implements Pager {
             mm.setFrameOwner(frame, new FrameOwner(as.getPid(), vpn));
 
             // Zero the frame
-            int frameStart = frame * PagedMemoryManager.PAGE_SIZE;
-            for (int i = 0; i < PagedMemoryManager.PAGE_SIZE; i++) {
-                mm.writeByteToPhysicalAddress(frameStart + i, (byte) 0);
-            }
+            mm.fillPhysical(frame * PagedMemoryManager.PAGE_SIZE, PagedMemoryManager.PAGE_SIZE, (byte) 0);
 
             repl.onMap(frame);
         }
 
+        // Write fault on a page shared copy-on-write after fork
+        if (access == VmAccess.WRITE && as.isCopyOnWrite(vpn)) {
+            int copy = -1;
+            if (mm.isFrameShared(as.getFrameNumber(vpn))) {
+                copy = mm.allocateFrame();
+                if (copy < 0) {
+                    throw new MemoryAccessException("Out of physical memory");
+                }
+            }
+            mm.resolveCopyOnWrite(as, vpn, copy);
+            if (copy >= 0) {
+                repl.onMap(copy);
+            }
+        }
+
         int frame = as.getFrameNumber(vpn);
         if (frame < 0) {
             throw new MemoryAccessException("Page not found after mapping");
@@ -0,0 +1,124 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fault-around state of one address space: a few sequential fault streams
+ * (e.g. the source and destination of a copy) and the pages mapped ahead
+ * of them that have not been touched yet. The counters are the
+ * per-process prefetch statistics.
+ */
+public final class FaultAround {
+    static final int STREAMS = 4;
+    static final int NONE = -1;
+
+    // Per stream: the page it will fault on next, the prefetched page whose
+    // first use maps the next batch, the current batch size and the
+    // permissions pages are mapped with
+    final int[] next = new int[STREAMS];
+    final int[] marker = new int[STREAMS];
+    final int[] window = new int[STREAMS];
+    final boolean[] write = new boolean[STREAMS];
+    final boolean[] exec = new boolean[STREAMS];
+    private final long[] lastUse = new long[STREAMS];
+    private long clock;
+
+    final Set<Integer> pending = new HashSet<>(); // Mapped ahead, not yet touched
+
+    long faults;
+    long prefetched;
+    long used;
+
+    FaultAround() {
+        for (int s = 0; s < STREAMS; s++) {
+            next[s] = NONE;
+            marker[s] = NONE;
+        }
+    }
+
+    /**
+     * @return The stream expecting a fault at vpn, or NONE
+     */
+    int streamAt(int vpn) {
+        for (int s = 0; s < STREAMS; s++) {
+            if (next[s] == vpn) {
+                lastUse[s] = ++clock;
+                return s;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return The stream whose marker is vpn, or NONE
+     */
+    int streamMarkedAt(int vpn) {
+        for (int s = 0; s < STREAMS; s++) {
+            if (marker[s] == vpn) {
+                lastUse[s] = ++clock;
+                return s;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Start a stream after a fault that continued none, replacing the
+     * least recently used one.
+     */
+    void start(int vpn, boolean write, boolean exec) {
+        int victim = 0;
+        for (int s = 1; s < STREAMS; s++) {
+            if (lastUse[s] < lastUse[victim]) {
+                victim = s;
+            }
+        }
+        next[victim] = vpn + 1;
+        marker[victim] = NONE;
+        window[victim] = 0;
+        this.write[victim] = write;
+        this.exec[victim] = exec;
+        lastUse[victim] = ++clock;
+    }
+
+    /**
+     * @return Page faults taken by this address space
+     */
+    public long getFaults() {
+        return faults;
+    }
+
+    /**
+     * @return Pages mapped ahead of a fault
+     */
+    public long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * @return Prefetched pages that were touched afterwards
+     */
+    public long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return Prefetched pages not touched yet
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return Prefetched pages evicted or left behind without being touched
+     */
+    public long getWasted() {
+        return prefetched - used - pending.size();
+    }
+
+    @Override
+    public String toString() {
+        return "faults=" + faults + " prefetched=" + prefetched + " used=" + used + " wasted=" + getWasted();
+    }
+}
@@ -0,0 +1,90 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.BitSet;
+
+/**
+ * Free-frame pool: a LIFO stack of free frame numbers, so allocating and
+ * freeing are O(1) whatever the memory size, and the most recently freed
+ * (cache-warm) frame is handed out first. A bit set mirrors the stack for
+ * membership tests and snapshots.
+ */
+final class FrameAllocator {
+    private final int[] stack;
+    private int top; // Number of free frames
+    private final BitSet free;
+
+    /**
+     * All frames free except the reserved ones. The initial stack hands
+     * out the lowest frames first.
+     */
+    FrameAllocator(int frames, BitSet reserved) {
+        this.stack = new int[frames];
+        this.free = new BitSet(frames);
+        free.set(0, frames);
+        free.andNot(reserved);
+        rebuild();
+    }
+
+    /**
+     * @return A free frame, or -1 if there is none
+     */
+    int allocate() {
+        if (top == 0) {
+            return -1;
+        }
+        int frame = stack[--top];
+        free.clear(frame);
+        return frame;
+    }
+
+    /**
+     * Allocate up to count frames into out.
+     *
+     * @return The number of frames allocated
+     */
+    int allocate(int[] out, int count) {
+        int n = Math.min(count, top);
+        for (int i = 0; i < n; i++) {
+            int frame = stack[--top];
+            free.clear(frame);
+            out[i] = frame;
+        }
+        return n;
+    }
+
+    void free(int frame) {
+        if (free.get(frame)) {
+            throw new IllegalStateException("Frame " + frame + " freed twice");
+        }
+        free.set(frame);
+        stack[top++] = frame;
+    }
+
+    boolean isFree(int frame) {
+        return free.get(frame);
+    }
+
+    int freeCount() {
+        return top;
+    }
+
+    long[] toLongArray() {
+        return free.toLongArray();
+    }
+
+    /**
+     * Replace the free set, e.g. from a snapshot.
+     */
+    void restore(BitSet frames) {
+        free.clear();
+        free.or(frames);
+        rebuild();
+    }
+
+    private void rebuild() {
+        top = 0;
+        for (int frame = free.previousSetBit(stack.length - 1); frame >= 0; frame = free.previousSetBit(frame - 1)) {
+            stack[top++] = frame;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.Arrays;
+
+/**
+ * Doubly-linked list of frame numbers, ordered from least to most recently
+ * inserted. Links live in arrays indexed by frame, so every operation is
+ * O(1) and allocation-free. A frame may be in at most one list at a time
+ * per FrameList instance.
+ */
+final class FrameList {
+    static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] member;
+    private int head = NONE; // Least recent
+    private int tail = NONE; // Most recent
+    private int size;
+
+    FrameList(int frames) {
+        this.prev = new int[frames];
+        this.next = new int[frames];
+        this.member = new boolean[frames];
+        Arrays.fill(prev, NONE);
+        Arrays.fill(next, NONE);
+    }
+
+    boolean contains(int frame) {
+        return member[frame];
+    }
+
+    /**
+     * Append at the most recent end, moving the frame if already present.
+     */
+    void addLast(int frame) {
+        if (member[frame]) {
+            if (frame == tail) {
+                return;
+            }
+            remove(frame);
+        }
+        prev[frame] = tail;
+        next[frame] = NONE;
+        if (tail != NONE) {
+            next[tail] = frame;
+        } else {
+            head = frame;
+        }
+        tail = frame;
+        member[frame] = true;
+        size++;
+    }
+
+    void remove(int frame) {
+        if (!member[frame]) {
+            return;
+        }
+        int p = prev[frame];
+        int n = next[frame];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+        prev[frame] = NONE;
+        next[frame] = NONE;
+        member[frame] = false;
+        size--;
+    }
+
+    /**
+     * @return The least recent frame, or NONE
+     */
+    int first() {
+        return head;
+    }
+
+    /**
+     * @return The frame after this one towards the most recent end, or NONE
+     */
+    int next(int frame) {
+        return next[frame];
+    }
+
+    int size() {
+        return size;
+    }
+}
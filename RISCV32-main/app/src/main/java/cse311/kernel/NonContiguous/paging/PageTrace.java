@@ -0,0 +1,91 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Page-reference trace: the (pid, vpn, write) sequence a pager saw, in
+ * order. {@link DemandPager#setTraceRecorder} records one from a guest
+ * run; {@link PageTraceBenchmark} replays it through each replacement
+ * policy. The pager only sees software-TLB misses, which are also the only
+ * references a replacement policy is told about, so a recorded trace is
+ * exactly the policy's input.
+ */
+public class PageTrace {
+    private static final int MAGIC = 0x50475452; // "PGTR"
+
+    private long[] refs;
+    private int size;
+
+    public PageTrace() {
+        this(1 << 16);
+    }
+
+    public PageTrace(int capacity) {
+        this.refs = new long[Math.max(16, capacity)];
+    }
+
+    public void record(int pid, int vpn, boolean write) {
+        if (size == refs.length) {
+            refs = Arrays.copyOf(refs, refs.length * 2);
+        }
+        refs[size++] = ((long) pid << 32) | ((long) (vpn & 0xFFFFF) << 1) | (write ? 1 : 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pid(int i) {
+        return (int) (refs[i] >>> 32);
+    }
+
+    public int vpn(int i) {
+        return (int) (refs[i] >>> 1) & 0xFFFFF;
+    }
+
+    public boolean isWrite(int i) {
+        return (refs[i] & 1) != 0;
+    }
+
+    /**
+     * @return The page's {@link ReplacementPolicy#pageKey(int, int)}
+     */
+    public long pageKey(int i) {
+        return ReplacementPolicy.pageKey(pid(i), vpn(i));
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(refs[i]);
+            }
+        }
+    }
+
+    public static PageTrace load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a page trace: " + file);
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt page trace: " + file);
+            }
+            PageTrace trace = new PageTrace(count);
+            for (int i = 0; i < count; i++) {
+                trace.refs[i] = in.readLong();
+            }
+            trace.size = count;
+            return trace;
+        }
+    }
+}
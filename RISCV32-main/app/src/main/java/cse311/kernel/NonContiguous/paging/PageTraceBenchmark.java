@@ -0,0 +1,224 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import cse311.kernel.NonContiguous.paging.PagingConfiguration.Policy;
+
+/**
+ * Replays page-reference traces through every replacement policy on a
+ * simulated memory of N frames and reports fault rate, dirty evictions
+ * (swap writes) and the CPU time the policy itself spends per reference.
+ *
+ * Usage: PageTraceBenchmark [frames] [trace-file ...]
+ *
+ * Trace files come from {@link DemandPager#setTraceRecorder} on a guest
+ * run; without any, synthetic sequential, loop, random and hot-set-plus-
+ * scan workloads are generated.
+ *
+ * Policy cost is measured by replaying a second time with the victims the
+ * policy chose fed back by a scripted policy: the simulator does exactly
+ * the same work, so the difference is the policy's own bookkeeping.
+ */
+public class PageTraceBenchmark {
+    private static final Policy[] POLICIES = { Policy.CLOCK, Policy.LRU, Policy.WSCLOCK, Policy.TWO_QUEUE,
+            Policy.ARC };
+    private static final int SYNTHETIC_REFS = 1 << 20;
+    private static final int RUNS = 3; // Best of, to skip JIT warm-up
+    private static final IntPredicate ANY_FRAME = frame -> true;
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+
+        System.out.printf("%-12s %-10s %10s %9s %10s %12s%n", "workload", "policy", "faults", "rate", "writes",
+                "ns/ref");
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                report(Paths.get(args[i]).getFileName().toString(), PageTrace.load(Paths.get(args[i])), frames);
+            }
+        } else {
+            Random random = new Random(311);
+            report("sequential", sequential(frames), frames);
+            report("loop", loop(frames), frames);
+            report("random", uniform(frames, random), frames);
+            report("hot+scan", hotSetWithScan(frames, random), frames);
+        }
+    }
+
+    private static void report(String workload, PageTrace trace, int frames) {
+        for (Policy policy : POLICIES) {
+            Result result = null;
+            long policyNanos = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                result = replay(trace, PagingConfiguration.createReplacementPolicy(policy, frames), frames, true);
+                long withPolicy = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                replay(trace, new ScriptedPolicy(result.victims), frames, false);
+                long scripted = System.nanoTime() - start;
+                policyNanos = Math.min(policyNanos, Math.max(0, withPolicy - scripted));
+            }
+            int refs = Math.max(1, trace.size());
+            System.out.printf("%-12s %-10s %10d %8.2f%% %10d %12.1f%n", workload, policy, result.faults,
+                    100.0 * result.faults / refs, result.writebacks, (double) policyNanos / refs);
+        }
+    }
+
+    /**
+     * Run the trace against a policy the way DemandPager drives it:
+     * onMap then onAccess on a fault, onAccess on a hit, and pickVictim
+     * then onUnmap when memory is full.
+     */
+    public static Result replay(PageTrace trace, ReplacementPolicy repl, int frames) {
+        return replay(trace, repl, frames, false);
+    }
+
+    private static Result replay(PageTrace trace, ReplacementPolicy repl, int frames, boolean recordVictims) {
+        HashMap<Long, Integer> resident = new HashMap<>(frames * 2);
+        long[] frameKey = new long[frames];
+        boolean[] dirty = new boolean[frames];
+        IntPredicate isDirty = frame -> dirty[frame];
+        Result result = new Result(recordVictims ? trace.size() : 0);
+        int used = 0;
+
+        for (int i = 0; i < trace.size(); i++) {
+            long key = trace.pageKey(i);
+            Integer hit = resident.get(key);
+            int frame;
+            if (hit != null) {
+                frame = hit;
+            } else {
+                result.faults++;
+                if (used < frames) {
+                    frame = used++;
+                } else {
+                    frame = repl.pickVictim(ANY_FRAME, isDirty);
+                    if (frame < 0) {
+                        throw new IllegalStateException(repl.getClass().getSimpleName() + " found no victim");
+                    }
+                    if (recordVictims) {
+                        result.victims[result.evictions] = frame;
+                    }
+                    result.evictions++;
+                    if (dirty[frame]) {
+                        result.writebacks++;
+                    }
+                    resident.remove(frameKey[frame]);
+                    repl.onUnmap(frame);
+                }
+                resident.put(key, frame);
+                frameKey[frame] = key;
+                dirty[frame] = false;
+                repl.onMap(frame, key);
+            }
+            if (trace.isWrite(i)) {
+                dirty[frame] = true;
+            }
+            repl.onAccess(frame);
+        }
+        return result;
+    }
+
+    public static final class Result {
+        private final int[] victims;
+        private long faults;
+        private long writebacks;
+        private int evictions;
+
+        private Result(int capacity) {
+            this.victims = new int[capacity];
+        }
+
+        public long getFaults() {
+            return faults;
+        }
+
+        /**
+         * @return Evictions of dirty pages, i.e. swap writes
+         */
+        public long getWritebacks() {
+            return writebacks;
+        }
+    }
+
+    /**
+     * Replays a recorded victim sequence at no bookkeeping cost.
+     */
+    private static final class ScriptedPolicy implements ReplacementPolicy {
+        private final int[] victims;
+        private int next;
+
+        ScriptedPolicy(int[] victims) {
+            this.victims = victims;
+        }
+
+        @Override
+        public void onAccess(int frameIndex) {
+        }
+
+        @Override
+        public void onMap(int frameIndex) {
+        }
+
+        @Override
+        public void onUnmap(int frameIndex) {
+        }
+
+        @Override
+        public int pickVictim(IntPredicate canEvict) {
+            return victims[next++];
+        }
+    }
+
+    // ---- Synthetic workloads ----
+
+    /** Repeated scans over twice as many pages as frames. */
+    public static PageTrace sequential(int frames) {
+        PageTrace trace = new PageTrace(SYNTHETIC_REFS);
+        for (int i = 0; i < SYNTHETIC_REFS; i++) {
+            trace.record(1, i % (2 * frames), false);
+        }
+        return trace;
+    }
+
+    /** A loop slightly larger than memory, the classic LRU worst case. */
+    public static PageTrace loop(int frames) {
+        PageTrace trace = new PageTrace(SYNTHETIC_REFS);
+        int pages = frames + Math.max(1, frames / 8);
+        for (int i = 0; i < SYNTHETIC_REFS; i++) {
+            trace.record(1, i % pages, i % 4 == 0);
+        }
+        return trace;
+    }
+
+    /** Uniform references over twice as many pages as frames. */
+    public static PageTrace uniform(int frames, Random random) {
+        PageTrace trace = new PageTrace(SYNTHETIC_REFS);
+        for (int i = 0; i < SYNTHETIC_REFS; i++) {
+            trace.record(1, random.nextInt(2 * frames), random.nextInt(4) == 0);
+        }
+        return trace;
+    }
+
+    /**
+     * A hot set of half the frames taking 80% of references, interleaved
+     * with a one-pass scan of cold pages from a second process. Scan-
+     * resistant policies keep the hot set resident.
+     */
+    public static PageTrace hotSetWithScan(int frames, Random random) {
+        PageTrace trace = new PageTrace(SYNTHETIC_REFS);
+        int hot = Math.max(1, frames / 2);
+        int cold = 0;
+        for (int i = 0; i < SYNTHETIC_REFS; i++) {
+            if (random.nextInt(5) != 0) {
+                trace.record(1, random.nextInt(hot), random.nextInt(4) == 0);
+            } else {
+                trace.record(2, cold++ & 0xFFFFF, false);
+            }
+        }
+        return trace;
+    }
+}
@@ -1,10 +1,19 @@
 package cse311.kernel.NonContiguous.paging;
 
+import cse311.ElfLoader.ElfSegment;
 import cse311.MemoryManager;
 import cse311.Exception.MemoryAccessException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,22 +23,40 @@ import java.util.Map;
  */
 public class PagedMemoryManager extends MemoryManager {
     public static final int PAGE_SIZE = 4096;
-    private final BitSet freeFrames; // frame allocator
+    private final FrameAllocator freeFrames; // frame allocator
     private final int totalFrames;
     private final FrameOwner[] reverseMap; // reverse mapping for frame ownership
 
-    // Page table management for 2-level structure
-    private final Map<Integer, AddressSpace.PageTable> pageTableFrames = new HashMap<>();
-    private final Map<Integer, AddressSpace.PageDirectory> pageDirectoryFrames = new HashMap<>();
-
     // Address-space mapping
     private final Map<Integer, AddressSpace> spaces = new HashMap<>();
     private AddressSpace current = null;
     private Pager pager = null; // Policy implementation
+    private SwapDevice swap = null; // Where evicted dirty pages go, if any
+
+    // Instruction-fetch TLB: the code page of the current address space.
+    // Hits skip the pager entirely, so it is flushed whenever that mapping
+    // could change (switchTo, map/unmap of the page, frame release).
+    private int fetchVpn = -1;
+    private int fetchFrame;
+
+    // Data TLBs for the current address space, with separate entries for
+    // loads and stores. Same flush rules as the fetch entry.
+    private final SoftwareTlb readTlb = new SoftwareTlb();
+    private final SoftwareTlb writeTlb = new SoftwareTlb();
 
     // Shared Memory
     private Map<Integer, Integer> sharedKeyMap = new HashMap<>(); // Key (user provided) -> Frame Index
+    private final Map<Integer, Integer> sharedFrameKeys = new HashMap<>(); // Frame Index -> Key
     private int[] frameRefCount;
+    private long cowCopies; // Frames copied when a copy-on-write page was written
+
+    // Shared zero page: read faults on untouched pages map this frame
+    // copy-on-write. The manager holds one reference so it is never freed.
+    private int zeroFrame = -1;
+    private long zeroFills; // Frames allocated by the first write to a zero-mapped page
+
+    // Read-only executable ELF pages shared between processes
+    private final TextPageCache textPages = new TextPageCache();
 
     // Physical UART mapping
     private static final int UART_BASE = 0x10000000;
@@ -40,12 +67,30 @@ public class PagedMemoryManager extends MemoryManager {
     }
 
     public PagedMemoryManager(int totalMemoryBytes) {
-        super(new cse311.SimpleMemory(totalMemoryBytes));
-        this.totalFrames = totalMemoryBytes / PAGE_SIZE;
-        this.freeFrames = new BitSet(totalFrames);
+        this(new cse311.SimpleMemory(totalMemoryBytes));
+    }
+
+    /**
+     * Page over an existing physical memory, e.g. an off-heap one of up to
+     * 4 GiB.
+     */
+    public PagedMemoryManager(cse311.SimpleMemory memory) {
+        super(memory);
+        this.totalFrames = (int) (memory.getSize() / PAGE_SIZE);
         this.reverseMap = new FrameOwner[totalFrames];
-        this.freeFrames.set(0, totalFrames); // all free
         this.frameRefCount = new int[totalFrames];
+
+        // Physical addresses in the UART window would reach the device, and
+        // the last byte of a 4 GiB memory is the MMIO sentinel -1
+        BitSet reserved = new BitSet();
+        int uartFrame = UART_BASE / PAGE_SIZE;
+        if (uartFrame < totalFrames) {
+            reserved.set(uartFrame);
+        }
+        if (totalFrames == 1 << 20) {
+            reserved.set(totalFrames - 1);
+        }
+        this.freeFrames = new FrameAllocator(totalFrames, reserved); // all others free
     }
 
     /**
@@ -55,6 +100,22 @@ public class PagedMemoryManager extends MemoryManager {
         this.pager = pager;
     }
 
+    public Pager getPager() {
+        return pager;
+    }
+
+    /**
+     * Give evicted dirty pages a swap file to go to. Without one they are
+     * dropped on eviction.
+     */
+    public void setSwapDevice(SwapDevice swap) {
+        this.swap = swap;
+    }
+
+    public SwapDevice getSwapDevice() {
+        return swap;
+    }
+
     // ---- Address-space lifecycle ----
     public AddressSpace createAddressSpace(int pid) {
         AddressSpace as = new AddressSpace(pid, this);
@@ -72,37 +133,72 @@ public class PagedMemoryManager extends MemoryManager {
             return;
 
         // 1. Iterate over the Page Directory (Level 1)
+        int[] batch = new int[1024 + 1];
         for (int i = 0; i < 1024; i++) {
-            AddressSpace.PageTableEntry l1Entry = as.root.entries[i];
-
-            // If there is a valid L2 Page Table here
-            if (l1Entry != null && l1Entry.V) {
-                int l2Frame = l1Entry.ppn;
-                AddressSpace.PageTable l2Table = getPageTableInstance(l2Frame);
-
-                if (l2Table != null) {
-                    // 2. Iterate over the Page Table (Level 2) to free DATA frames
-                    for (int j = 0; j < 1024; j++) {
-                        AddressSpace.PageTableEntry l2Entry = l2Table.entries[j];
-                        if (l2Entry != null && l2Entry.V) {
-                            // Free the actual data frame (User Memory)
-                            freeFrame(l2Entry.ppn);
-                        }
-                    }
-                }
+            int[] l2Table = as.tables[i];
+            if (l2Table == null)
+                continue;
 
-                // 3. Free the frame that held the L2 Page Table itself
-                freeFrame(l2Frame);
+            // 2. Collect the DATA frames mapped by this Page Table (Level 2),
+            // and release the swap slots of pages that were swapped out
+            int n = 0;
+            for (int j = 0; j < 1024; j++) {
+                if ((l2Table[j] & AddressSpace.PTE_V) != 0) {
+                    batch[n++] = AddressSpace.ppn(l2Table[j]);
+                } else if ((l2Table[j] & AddressSpace.PTE_SWAPPED) != 0 && swap != null) {
+                    swap.release(AddressSpace.ppn(l2Table[j]));
+                }
             }
+
+            // 3. Free them with the frame accounted to the L2 Page Table itself
+            batch[n++] = AddressSpace.ppn(as.root[i]);
+            freeFrames(batch, n);
         }
 
         // 4. Remove the logical structure
+        if (as == current) {
+            flushTlbs();
+        }
         spaces.remove(pid);
         System.out.println("PagedMemoryManager: Fully reclaimed memory for PID " + pid);
     }
 
     public void switchTo(AddressSpace as) {
         this.current = as;
+        flushTlbs();
+    }
+
+    /**
+     * Called by an address space whenever one of its PTEs is replaced or
+     * invalidated.
+     */
+    void onMappingChanged(AddressSpace as, int vpn) {
+        if (as != current) {
+            return;
+        }
+        if (vpn == fetchVpn) {
+            flushFetchTlb();
+        }
+        readTlb.invalidate(vpn);
+        writeTlb.invalidate(vpn);
+    }
+
+    private void flushFetchTlb() {
+        fetchVpn = -1;
+    }
+
+    private void flushTlbs() {
+        flushFetchTlb();
+        readTlb.flush();
+        writeTlb.flush();
+    }
+
+    public long getTlbHits() {
+        return readTlb.getHits() + writeTlb.getHits();
+    }
+
+    public long getTlbMisses() {
+        return readTlb.getMisses() + writeTlb.getMisses();
     }
 
     // ---- Public helpers used by TaskManager/Kernel ----
@@ -116,69 +212,49 @@ public class PagedMemoryManager extends MemoryManager {
         }
     }
 
-    // Policy-based memory access using Pager
+    // Policy-based memory access using Pager; the data TLBs short-circuit
+    // pages that were already faulted in during this time slice
     @Override
     public void writeByteToVirtualAddress(int va, byte val) throws MemoryAccessException {
-        ensureCurrent();
-        ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.WRITE);
-
-        // --- FIX START ---
-        if (frame == -2) { // UART MMIO
-            // Delegate to parent MemoryManager to handle UART write
+        int pa = translateData(va, VmAccess.WRITE);
+        if (pa == -1) { // UART MMIO
             super.writeByte(va, val);
             return;
         }
-        // --- FIX END ---
-
-        int pa = (frame << 12) | (va & 0xFFF);
         super.writeByte(pa, val);
     }
 
     @Override
     public byte readByte(int va) throws MemoryAccessException {
-        ensureCurrent();
-        ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.READ);
-
-        // --- FIX START ---
-        if (frame == -2) { // UART MMIO
-            // Delegate to parent MemoryManager to handle UART read (Status/Data)
+        int pa = translateData(va, VmAccess.READ);
+        if (pa == -1) // UART MMIO (Status/Data)
             return super.readByte(va);
-        }
-        // --- FIX END ---
-
-        int pa = (frame << 12) | (va & 0xFFF);
         return super.readByte(pa);
     }
 
+    // A misaligned access that crosses into the next page goes byte by byte,
+    // each byte translated in its own page. When misaligned accesses are
+    // not allowed, the physical access below raises the fault instead.
+
     @Override
     public short readHalfWord(int va) throws MemoryAccessException {
-        ensureCurrent();
-        ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.READ);
-
-        // --- FIX START ---
-        if (frame == -2)
+        if (crossesPage(va, 2) && isMisalignedAccessAllowed()) {
+            return (short) readAcrossPages(va, 2);
+        }
+        int pa = translateData(va, VmAccess.READ);
+        if (pa == -1)
             return super.readHalfWord(va);
-        // --- FIX END ---
-
-        int pa = (frame << 12) | (va & 0xFFF);
         return super.readHalfWord(pa);
     }
 
     @Override
     public int readWord(int va) throws MemoryAccessException {
-        ensureCurrent();
-        ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.READ);
-
-        // --- FIX START ---
-        if (frame == -2)
+        if (crossesPage(va, 4) && isMisalignedAccessAllowed()) {
+            return readAcrossPages(va, 4);
+        }
+        int pa = translateData(va, VmAccess.READ);
+        if (pa == -1)
             return super.readWord(va);
-        // --- FIX END ---
-
-        int pa = (frame << 12) | (va & 0xFFF);
         return super.readWord(pa);
     }
 
@@ -189,34 +265,137 @@ public class PagedMemoryManager extends MemoryManager {
 
     @Override
     public void writeHalfWord(int va, short v) throws MemoryAccessException {
-        ensureCurrent();
-        ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.WRITE);
-
-        // --- FIX START ---
-        if (frame == -2) {
+        if (crossesPage(va, 2) && isMisalignedAccessAllowed()) {
+            writeAcrossPages(va, 2, v);
+            return;
+        }
+        int pa = translateData(va, VmAccess.WRITE);
+        if (pa == -1) {
             super.writeHalfWord(va, v);
             return;
         }
-        // --- FIX END ---
-
-        int pa = (frame << 12) | (va & 0xFFF);
         super.writeHalfWord(pa, v);
     }
 
     @Override
     public void writeWord(int va, int v) throws MemoryAccessException {
+        if (crossesPage(va, 4) && isMisalignedAccessAllowed()) {
+            writeAcrossPages(va, 4, v);
+            return;
+        }
+        int pa = translateData(va, VmAccess.WRITE);
+        if (pa == -1) {
+            super.writeWord(va, v);
+            return;
+        }
+        super.writeWord(pa, v);
+    }
+
+    private static boolean crossesPage(int va, int size) {
+        return (va & (PAGE_SIZE - 1)) > PAGE_SIZE - size;
+    }
+
+    private int readAcrossPages(int va, int size) throws MemoryAccessException {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            value |= (readByte(va + i) & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private void writeAcrossPages(int va, int size, int value) throws MemoryAccessException {
+        // Fault both pages in first so a failing second page writes nothing
+        translateData(va, VmAccess.WRITE);
+        translateData(va + size - 1, VmAccess.WRITE);
+        for (int i = 0; i < size; i++) {
+            writeByteToVirtualAddress(va + i, (byte) (value >>> (8 * i)));
+        }
+    }
+
+    // Bulk access, split at page boundaries so each page is translated once
+
+    @Override
+    public void readBytes(int va, byte[] dst, int offset, int length) throws MemoryAccessException {
+        while (length > 0) {
+            int chunk = Math.min(length, PAGE_SIZE - (va & (PAGE_SIZE - 1)));
+            int pa = translateData(va, VmAccess.READ);
+            super.readBytes(pa == -1 ? va : pa, dst, offset, chunk); // MMIO falls back to readByte
+            va += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public void writeBytes(int va, byte[] src, int offset, int length) throws MemoryAccessException {
+        while (length > 0) {
+            int chunk = Math.min(length, PAGE_SIZE - (va & (PAGE_SIZE - 1)));
+            int pa = translateData(va, VmAccess.WRITE);
+            super.writeBytes(pa == -1 ? va : pa, src, offset, chunk);
+            va += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public void writeBytes(int va, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        while (length > 0) {
+            int chunk = Math.min(length, PAGE_SIZE - (va & (PAGE_SIZE - 1)));
+            int pa = translateData(va, VmAccess.WRITE);
+            super.writeBytes(pa == -1 ? va : pa, src, offset, chunk);
+            va += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Translate a data address of the current address space.
+     * A write entry is only filled by a write fault, which has already set
+     * the D bit, so stores that hit never need to touch the PTE. Reads may
+     * use either entry.
+     *
+     * @return The physical address, or -1 for MMIO
+     */
+    private int translateData(int va, VmAccess access) throws MemoryAccessException {
+        int vpn = AddressSpace.getVPN(va);
+        SoftwareTlb tlb = access == VmAccess.WRITE ? writeTlb : readTlb;
+        int frame = tlb.lookup(vpn);
+        if (frame >= 0) {
+            return (frame << 12) | (va & 0xFFF);
+        }
+
         ensureCurrent();
         ensurePager();
-        int frame = pager.ensureResident(current, va, VmAccess.WRITE);
-
+        frame = pager.ensureResident(current, va, access);
         if (frame == -2) {
-            super.writeWord(va, v);
-            return;
+            return -1;
         }
+        tlb.fill(vpn, frame);
+        if (access == VmAccess.WRITE) {
+            readTlb.fill(vpn, frame);
+        }
+        return (frame << 12) | (va & 0xFFF);
+    }
 
-        int pa = (frame << 12) | (va & 0xFFF);
-        super.writeWord(pa, v);
+    @Override
+    public int translateInstructionAddress(int va) throws MemoryAccessException {
+        int vpn = AddressSpace.getVPN(va);
+        if (vpn == fetchVpn) {
+            return (fetchFrame << 12) | (va & 0xFFF);
+        }
+
+        // Miss: the pager faults the page in and marks it accessed once per fill
+        ensureCurrent();
+        ensurePager();
+        int frame = pager.ensureResident(current, va, VmAccess.EXEC);
+        if (frame == -2) {
+            throw new MemoryAccessException("Instruction fetch from MMIO: 0x" + Integer.toHexString(va));
+        }
+        fetchVpn = vpn;
+        fetchFrame = frame;
+        return (frame << 12) | (va & 0xFFF);
     }
 
     // ---- Minimal UART passthrough (shared-mapped) ----
@@ -249,17 +428,45 @@ public class PagedMemoryManager extends MemoryManager {
 
     // Frame management methods for Pager implementations
     public int allocateFrame() {
-        int frame = freeFrames.nextSetBit(0);
+        int frame = freeFrames.allocate();
+        if (frame == -1) {
+            // Text pages no process maps any more go before any live page
+            int cached = textPages.evict(f -> frameRefCount[f] == 1);
+            if (cached != -1) {
+                releaseFrame(cached);
+                frame = freeFrames.allocate();
+            }
+        }
         if (frame != -1) {
-            freeFrames.clear(frame);
             frameRefCount[frame] = 1; // Default to 1 owner
             return frame;
         }
         return -1; // out of memory
     }
 
+    /**
+     * Allocate up to count frames at once, each with one owner.
+     *
+     * @return The number of frames written to out; fewer than count only
+     *         when memory runs out
+     */
+    public int allocateFrames(int[] out, int count) {
+        int n = freeFrames.allocate(out, count);
+        for (int i = 0; i < n; i++) {
+            frameRefCount[out[i]] = 1;
+        }
+        return n;
+    }
+
+    public int getFreeFrameCount() {
+        return freeFrames.freeCount();
+    }
+
     public int allocateFrameForPageTable() {
         int frame = allocateFrame();
+        if (frame == -1 && pager != null) {
+            frame = pager.reclaimFrame();
+        }
         if (frame != -1) {
             // Mark as page table frame
             setFrameOwner(frame, new FrameOwner(-1, -1)); // Special marker
@@ -268,21 +475,163 @@ public class PagedMemoryManager extends MemoryManager {
     }
 
     public void freeFrame(int frame) {
-        if (frame >= 0 && frame < totalFrames) {
+        if (frame >= 0 && frame < totalFrames && !freeFrames.isFree(frame)) {
             // Decrease reference count
             frameRefCount[frame]--;
 
             // Only free when no one is using it (refCount <= 0)
             if (frameRefCount[frame] <= 0) {
-                freeFrames.set(frame);
-                reverseMap[frame] = null;
-                pageTableFrames.remove(frame);
-                pageDirectoryFrames.remove(frame);
+                releaseFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * Drop one reference to each of the first count frames, as freeFrame
+     * does for one.
+     */
+    public void freeFrames(int[] frames, int count) {
+        for (int i = 0; i < count; i++) {
+            freeFrame(frames[i]);
+        }
+    }
+
+    private void releaseFrame(int frame) {
+        frameRefCount[frame] = 0;
+        freeFrames.free(frame);
+        reverseMap[frame] = null;
+
+        // The frame will be remapped, drop any instructions decoded from it
+        getDecodeCache().invalidatePage(frame);
+        if (frame == fetchFrame) {
+            flushFetchTlb();
+        }
+
+        // If frame is in shared map, remove it
+        if (!sharedFrameKeys.isEmpty()) {
+            Integer key = sharedFrameKeys.remove(frame);
+            if (key != null) {
+                sharedKeyMap.remove(key);
+            }
+        }
+        textPages.remove(frame);
+    }
+
+    public boolean isFrameShared(int frame) {
+        return frameRefCount[frame] > 1;
+    }
+
+    /**
+     * Whether a pager may evict the frame: it must hold a single user page,
+     * never a page table or a frame shared between address spaces.
+     */
+    public boolean isEvictable(int frame) {
+        FrameOwner owner = reverseMap[frame];
+        return owner != null && owner.pid != -1 && frameRefCount[frame] == 1;
+    }
+
+    /**
+     * Whether the page held by the frame was written since it was mapped,
+     * i.e. evicting it would need a swap write.
+     */
+    public boolean isFrameDirty(int frame) {
+        FrameOwner owner = reverseMap[frame];
+        if (owner == null || owner.pid == -1) {
+            return false;
+        }
+        AddressSpace as = spaces.get(owner.pid);
+        return as != null && as.getPageStats(owner.vpn).dirty;
+    }
 
-                // If frame is in shared map, remove it
-                sharedKeyMap.values().removeIf(val -> val == frame);
+    /**
+     * Resolve a write to a copy-on-write page. If the frame is still shared
+     * its contents are copied into newFrame, which the caller allocated;
+     * otherwise the last sharer simply takes the frame over.
+     *
+     * @param newFrame Free frame for the copy, or -1 if the frame is not shared
+     * @return The frame now privately mapped at vpn
+     */
+    public int resolveCopyOnWrite(AddressSpace as, int vpn, int newFrame) throws MemoryAccessException {
+        int pte = as.getPte(vpn);
+        int oldFrame = AddressSpace.ppn(pte);
+
+        if (!isFrameShared(oldFrame)) {
+            as.clearFlags(vpn, AddressSpace.PTE_COW);
+            setFrameOwner(oldFrame, new FrameOwner(as.getPid(), vpn));
+            return oldFrame;
+        }
+        if (newFrame < 0) {
+            throw new MemoryAccessException("Copy-on-write: no frame for the copy");
+        }
+
+        if (oldFrame == zeroFrame) {
+            fillPhysical(newFrame << 12, PAGE_SIZE, (byte) 0);
+        } else {
+            copyFrame(oldFrame, newFrame);
+        }
+        boolean mapped = as.mapPage(vpn, newFrame, true, (pte & AddressSpace.PTE_X) != 0);
+        if (!mapped) {
+            throw new MemoryAccessException("Copy-on-write: mapPage failed");
+        }
+        setFrameOwner(newFrame, new FrameOwner(as.getPid(), vpn));
+
+        // The remaining sharers are not tracked, so the old frame stays pinned
+        // until one of them writes to it or exits
+        frameRefCount[oldFrame]--;
+        FrameOwner owner = reverseMap[oldFrame];
+        if (owner != null && owner.pid == as.getPid() && owner.vpn == vpn) {
+            reverseMap[oldFrame] = null;
+        }
+        if (oldFrame == zeroFrame) {
+            zeroFills++;
+        } else {
+            cowCopies++;
+        }
+        return newFrame;
+    }
+
+    /**
+     * Map vpn to the shared zero page, read-only and copy-on-write, so that
+     * a page that is only read never gets a frame of its own.
+     *
+     * @return false if there is no zero page and no free frame to make one
+     */
+    public boolean mapSharedZeroPage(AddressSpace as, int vpn) throws MemoryAccessException {
+        if (zeroFrame < 0) {
+            int frame = allocateFrame(); // The manager's own reference
+            if (frame < 0) {
+                return false;
             }
+            fillPhysical(frame << 12, PAGE_SIZE, (byte) 0);
+            setFrameOwner(frame, new FrameOwner(-1, -1)); // Never evicted
+            zeroFrame = frame;
+        }
+        if (!as.mapPage(vpn, zeroFrame, false, false)) {
+            return false;
         }
+        as.setFlags(vpn, AddressSpace.PTE_COW);
+        frameRefCount[zeroFrame]++;
+        return true;
+    }
+
+    /**
+     * @return The shared zero page's frame, or -1 before the first read
+     *         fault needed it
+     */
+    public int getZeroFrame() {
+        return zeroFrame;
+    }
+
+    public long getZeroFills() {
+        return zeroFills;
+    }
+
+    private void copyFrame(int from, int to) throws MemoryAccessException {
+        copyPhysical(from << 12, to << 12, PAGE_SIZE);
+    }
+
+    public long getCopyOnWriteCopies() {
+        return cowCopies;
     }
 
     public int openSharedRegion(int key) {
@@ -295,12 +644,11 @@ public class PagedMemoryManager extends MemoryManager {
         int newFrame = allocateFrame();
         if (newFrame != -1) {
             sharedKeyMap.put(key, newFrame);
+            sharedFrameKeys.put(newFrame, key);
             // Zero-fill the new frame
-            for (int i = 0; i < PAGE_SIZE; i++) {
-                try {
-                    writeByteToPhysicalAddress((newFrame << 12) + i, (byte) 0);
-                } catch (Exception e) {
-                }
+            try {
+                fillPhysical(newFrame << 12, PAGE_SIZE, (byte) 0);
+            } catch (MemoryAccessException e) {
             }
         }
         return newFrame;
@@ -318,14 +666,187 @@ public class PagedMemoryManager extends MemoryManager {
             frameRefCount[frame]++;
 
             // Set shared flag in PTE
-            AddressSpace.PageTableEntry pte = as.getPTEInternal(vpn); // Need to expose this function or write logic to
-                                                                      // find PTE
-            if (pte != null)
-                pte.shared = true;
+            as.setFlags(vpn, AddressSpace.PTE_SHARED);
         }
         return success;
     }
 
+    /**
+     * Map a read-only executable ELF segment into the current address
+     * space from frames shared with every other process that loaded the
+     * same page contents at the same address. Pages are copy-on-write so a
+     * write only changes the writer's copy. Pages that also hold part of
+     * another segment are loaded privately.
+     *
+     * @return false if the segment is writable or not executable, and must
+     *         be copied as usual
+     */
+    public boolean mapSharedSegment(ElfSegment segment, List<ElfSegment> segments, ByteBuffer elfData)
+            throws MemoryAccessException {
+        if (!isSharedText(segment)) {
+            return false;
+        }
+        ensureCurrent();
+        AddressSpace as = current;
+        int segStart = segment.virtualAddr;
+        int segEnd = segStart + segment.memorySize;
+        int fileEnd = segStart + segment.fileSize;
+
+        for (int va = segStart & ~(PAGE_SIZE - 1); va - segEnd < 0; va += PAGE_SIZE) {
+            if (sharesPageWithOtherSegment(va, segment, segments)) {
+                int from = Math.max(va, segStart); // Segment bytes in this page
+                int to = Math.min(va + PAGE_SIZE, fileEnd);
+                if (to > from) {
+                    writeBytes(from, elfData, segment.fileOffset + (from - segStart), to - from);
+                }
+                continue;
+            }
+
+            int vpn = AddressSpace.getVPN(va);
+            byte[] digest = TextPageCache.digest(segment, elfData, va);
+            int frame = textPages.lookup(digest, vpn);
+            if (frame < 0) {
+                frame = allocateFrame(); // The cache's reference
+                if (frame < 0 && pager != null) {
+                    frame = pager.reclaimFrame();
+                }
+                if (frame < 0) {
+                    throw new MemoryAccessException("Out of memory loading text at 0x" + Integer.toHexString(va));
+                }
+                fillSegmentPage(frame, va, List.of(segment), elfData);
+                cacheTextPage(digest, vpn, frame);
+            }
+            releasePage(as, vpn);
+            mapTextPage(as, vpn, frame);
+        }
+        return true;
+    }
+
+    private static boolean isSharedText(ElfSegment segment) {
+        return segment.executable && !segment.writable && segment.memorySize > 0;
+    }
+
+    private static boolean sharesPageWithOtherSegment(int pageVa, ElfSegment segment, List<ElfSegment> segments) {
+        for (ElfSegment other : segments) {
+            if (other != segment && AddressSpace.overlapsPage(other, pageVa)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void cacheTextPage(byte[] digest, int vpn, int frame) {
+        setFrameOwner(frame, new FrameOwner(-1, -1)); // Pinned while cached
+        textPages.put(digest, vpn, frame);
+    }
+
+    private void mapTextPage(AddressSpace as, int vpn, int frame) throws MemoryAccessException {
+        if (!as.mapPage(vpn, frame, false, true)) {
+            throw new MemoryAccessException("mapTextPage: no frame for a page table");
+        }
+        as.setFlags(vpn, AddressSpace.PTE_SHARED | AddressSpace.PTE_COW);
+        frameRefCount[frame]++;
+    }
+
+    /**
+     * Zero frame and copy into it the file bytes of the given segments
+     * that fall in the page at pageVa.
+     */
+    private void fillSegmentPage(int frame, int pageVa, List<ElfSegment> segments, ByteBuffer elfData)
+            throws MemoryAccessException {
+        fillPhysical(frame << 12, PAGE_SIZE, (byte) 0);
+        for (ElfSegment s : segments) {
+            int from = Math.max(pageVa, s.virtualAddr);
+            int to = Math.min(pageVa + PAGE_SIZE, s.virtualAddr + s.fileSize);
+            if (to > from) {
+                writePhysical((frame << 12) + (from - pageVa), elfData, s.fileOffset + (from - s.virtualAddr),
+                        to - from);
+            }
+        }
+    }
+
+    // ---- Lazily loaded ELF segments ----
+
+    /**
+     * Record an ELF segment of the current address space without loading
+     * it: the demand pager reads each page from elfData, or zeroes it, on
+     * its first touch. elfData must not change afterwards.
+     *
+     * @return false if pages are not loaded on demand, and the segment
+     *         must be copied as usual
+     */
+    public boolean mapLazySegment(ElfSegment segment, ByteBuffer elfData) throws MemoryAccessException {
+        if (!(pager instanceof DemandPager) || segment.memorySize <= 0) {
+            return false;
+        }
+        ensureCurrent();
+        current.addFileSegment(segment, elfData);
+        return true;
+    }
+
+    /**
+     * Map a not yet loaded page of read-only text from the text cache.
+     *
+     * @return false if the page is not shared text or not cached; it is
+     *         then loaded with {@link #loadFilePage}
+     */
+    boolean mapCachedTextPage(AddressSpace as, int vpn) throws MemoryAccessException {
+        ElfSegment segment = as.soleFileSegmentAt(vpn);
+        if (segment == null || !isSharedText(segment)) {
+            return false;
+        }
+        int frame = textPages.lookup(TextPageCache.digest(segment, as.getImage(), vpn << 12), vpn);
+        if (frame < 0) {
+            return false;
+        }
+        mapTextPage(as, vpn, frame);
+        return true;
+    }
+
+    /**
+     * Load a not yet loaded segment page into a free frame and map it.
+     * Read-only text goes to the text cache for other processes to share.
+     *
+     * @return true if the frame is now a private page of as, false if the
+     *         text cache holds it
+     */
+    boolean loadFilePage(AddressSpace as, int vpn, int frame) throws MemoryAccessException {
+        int pageVa = vpn << 12;
+        ByteBuffer image = as.getImage();
+        ElfSegment text = as.soleFileSegmentAt(vpn);
+        if (text != null && isSharedText(text)) {
+            fillSegmentPage(frame, pageVa, List.of(text), image);
+            cacheTextPage(TextPageCache.digest(text, image, pageVa), vpn, frame);
+            mapTextPage(as, vpn, frame);
+            return false;
+        }
+
+        List<ElfSegment> segments = new ArrayList<>(2);
+        boolean write = false;
+        boolean exec = false;
+        for (ElfSegment s : as.getFileSegments()) {
+            if (AddressSpace.overlapsPage(s, pageVa)) {
+                segments.add(s);
+                write |= s.writable;
+                exec |= s.executable;
+            }
+        }
+        fillSegmentPage(frame, pageVa, segments, image);
+        if (!as.mapPage(vpn, frame, write, exec)) {
+            freeFrame(frame);
+            throw new MemoryAccessException("Failed to map page");
+        }
+        setFrameOwner(frame, new FrameOwner(as.getPid(), vpn));
+        return true;
+    }
+
+    /**
+     * @return Text pages cached for sharing between processes
+     */
+    public int getCachedTextPages() {
+        return textPages.size();
+    }
+
     public FrameOwner getFrameOwner(int frame) {
         return reverseMap[frame];
     }
@@ -334,29 +855,215 @@ public class PagedMemoryManager extends MemoryManager {
         reverseMap[frame] = owner;
     }
 
-    // ---- Debug helpers ----
-    public void dumpStats() {
-        int used = totalFrames - freeFrames.cardinality();
-        System.out.println("Memory: " + used + "/" + totalFrames + " frames used");
-        System.out.println("Page tables: " + pageTableFrames.size() + " allocated");
+    // ---- Snapshot support ----
+
+    /**
+     * Save the frame tables and every address space. Replacement-policy
+     * history is not saved, the pager starts cold after a restore.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        if (swap != null && swap.getUsedSlots() > 0) {
+            throw new IOException("Pages in swap are not saved, " + swap.getUsedSlots() + " slots in use");
+        }
+        out.writeInt(totalFrames);
+
+        long[] free = freeFrames.toLongArray();
+        out.writeInt(free.length);
+        for (long word : free) {
+            out.writeLong(word);
+        }
+
+        int owned = 0;
+        int referenced = 0;
+        for (int frame = 0; frame < totalFrames; frame++) {
+            if (reverseMap[frame] != null)
+                owned++;
+            if (frameRefCount[frame] != 0)
+                referenced++;
+        }
+        out.writeInt(owned);
+        for (int frame = 0; frame < totalFrames; frame++) {
+            FrameOwner owner = reverseMap[frame];
+            if (owner != null) {
+                out.writeInt(frame);
+                out.writeInt(owner.pid);
+                out.writeInt(owner.vpn);
+            }
+        }
+        out.writeInt(referenced);
+        for (int frame = 0; frame < totalFrames; frame++) {
+            if (frameRefCount[frame] != 0) {
+                out.writeInt(frame);
+                out.writeInt(frameRefCount[frame]);
+            }
+        }
+
+        out.writeInt(sharedKeyMap.size());
+        for (Map.Entry<Integer, Integer> e : sharedKeyMap.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue());
+        }
+
+        // Only the page tables that exist are written
+        out.writeInt(spaces.size());
+        for (AddressSpace as : spaces.values()) {
+            out.writeInt(as.pid);
+            int tables = 0;
+            for (int[] table : as.tables) {
+                if (table != null)
+                    tables++;
+            }
+            out.writeInt(tables);
+            for (int i = 0; i < 1024; i++) {
+                if (as.tables[i] == null)
+                    continue;
+                out.writeShort(i);
+                out.writeInt(as.root[i]);
+                for (int pte : as.tables[i]) {
+                    out.writeInt(pte);
+                }
+            }
+            writeFileSegments(out, as);
+        }
+
+        out.writeInt(current != null ? current.pid : -1);
+        out.writeLong(cowCopies);
+        out.writeInt(zeroFrame);
+        out.writeLong(zeroFills);
+        textPages.writeState(out);
     }
 
-    // Page table management methods
-    public AddressSpace.PageTable getPageTableInstance(int ppn) {
-        return pageTableFrames.get(ppn);
+    /**
+     * Replace all frame and address-space state with a saved one. The
+     * physical memory must have the same number of frames.
+     */
+    public void readState(DataInput in) throws IOException {
+        int frames = in.readInt();
+        if (frames != totalFrames) {
+            throw new IOException("Snapshot has " + frames + " frames, this memory has " + totalFrames);
+        }
+
+        long[] free = new long[in.readInt()];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = in.readLong();
+        }
+        freeFrames.restore(BitSet.valueOf(free));
+
+        Arrays.fill(reverseMap, null);
+        for (int n = in.readInt(); n > 0; n--) {
+            int frame = in.readInt();
+            reverseMap[frame] = new FrameOwner(in.readInt(), in.readInt());
+        }
+        Arrays.fill(frameRefCount, 0);
+        for (int n = in.readInt(); n > 0; n--) {
+            int frame = in.readInt();
+            frameRefCount[frame] = in.readInt();
+        }
+
+        sharedKeyMap.clear();
+        sharedFrameKeys.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            int key = in.readInt();
+            int frame = in.readInt();
+            sharedKeyMap.put(key, frame);
+            sharedFrameKeys.put(frame, key);
+        }
+
+        spaces.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            AddressSpace as = new AddressSpace(in.readInt(), this);
+            for (int t = in.readInt(); t > 0; t--) {
+                int i = in.readUnsignedShort();
+                as.root[i] = in.readInt();
+                int[] table = new int[1024];
+                for (int j = 0; j < 1024; j++) {
+                    table[j] = in.readInt();
+                }
+                as.tables[i] = table;
+            }
+            readFileSegments(in, as);
+            spaces.put(as.pid, as);
+        }
+
+        int currentPid = in.readInt();
+        current = currentPid != -1 ? spaces.get(currentPid) : null;
+        cowCopies = in.readLong();
+        zeroFrame = in.readInt();
+        zeroFills = in.readLong();
+        textPages.readState(in);
+
+        flushTlbs();
+        getDecodeCache().invalidateAll();
     }
 
-    public AddressSpace.PageDirectory getPageDirectoryInstance(int ppn) {
-        return pageDirectoryFrames.get(ppn);
+    /**
+     * Segments not loaded yet, with the image they are loaded from. Forked
+     * spaces write their own copy of the image.
+     */
+    private static void writeFileSegments(DataOutput out, AddressSpace as) throws IOException {
+        List<ElfSegment> segments = as.getFileSegments();
+        out.writeInt(segments.size());
+        if (segments.isEmpty()) {
+            return;
+        }
+        byte[] image = new byte[as.getImage().capacity()];
+        as.getImage().get(0, image);
+        out.writeInt(image.length);
+        out.write(image);
+        for (ElfSegment s : segments) {
+            out.writeInt(s.virtualAddr);
+            out.writeInt(s.fileSize);
+            out.writeInt(s.memorySize);
+            out.writeByte((s.readable ? 1 : 0) | (s.writable ? 2 : 0) | (s.executable ? 4 : 0));
+            out.writeInt(s.fileOffset);
+        }
     }
 
-    public int allocatePageTableFrame() {
-        int frame = allocateFrameForPageTable();
-        if (frame != -1) {
-            AddressSpace.PageTable table = new AddressSpace.PageTable();
-            pageTableFrames.put(frame, table);
+    private static void readFileSegments(DataInput in, AddressSpace as) throws IOException {
+        int n = in.readInt();
+        if (n == 0) {
+            return;
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ByteBuffer image = ByteBuffer.wrap(bytes).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        for (; n > 0; n--) {
+            int vaddr = in.readInt();
+            int fileSize = in.readInt();
+            int memorySize = in.readInt();
+            int flags = in.readByte();
+            int fileOffset = in.readInt();
+            as.addFileSegment(new ElfSegment(vaddr, fileSize, memorySize, (flags & 1) != 0, (flags & 2) != 0,
+                    (flags & 4) != 0, fileOffset), image);
+        }
+    }
+
+    // ---- Debug helpers ----
+    public void dumpStats() {
+        int used = totalFrames - freeFrames.freeCount();
+        System.out.println("Memory: " + used + "/" + totalFrames + " frames used");
+        int pageTables = 0;
+        for (AddressSpace as : spaces.values()) {
+            for (int[] table : as.tables) {
+                if (table != null)
+                    pageTables++;
+            }
+        }
+        System.out.println("Page tables: " + pageTables + " allocated");
+        System.out.println("Data TLB: " + getTlbHits() + " hits, " + getTlbMisses() + " misses");
+        System.out.println("Copy-on-write: " + cowCopies + " frames copied");
+        if (textPages.size() > 0) {
+            System.out.println("Text cache: " + textPages.size() + " pages, " + textPages.getHits() + " hits, "
+                    + textPages.getMisses() + " misses");
+        }
+        if (zeroFrame >= 0) {
+            System.out.println("Zero page: " + (frameRefCount[zeroFrame] - 1) + " pages mapped, " + zeroFills
+                    + " frames allocated on first write");
+        }
+        if (swap != null) {
+            System.out.println("Swap: " + swap.getUsedSlots() + "/" + swap.getSlots() + " slots used, "
+                    + swap.getSwapIns() + " pages in, " + swap.getSwapOuts() + " pages out");
         }
-        return frame;
     }
 
     private void mapPage(AddressSpace as, int va, boolean R, boolean W, boolean X, boolean zero)
@@ -367,63 +1074,64 @@ public class PagedMemoryManager extends MemoryManager {
         int pa = frame * PAGE_SIZE;
 
         if (zero) {
-            for (int i = 0; i < PAGE_SIZE; i++) {
-                try {
-                    super.writeByte(pa + i, (byte) 0);
-                } catch (MemoryAccessException e) {
-                    // Should not happen
-                }
-            }
+            fillPhysical(pa, PAGE_SIZE, (byte) 0);
         }
 
         // Set permissions
-        int vpn = AddressSpace.getVPN(va);
-        AddressSpace.PageTableEntry pte = as.getPTEInternal(vpn);
-        if (pte != null) {
-            pte.R = R;
-            pte.W = W;
-            pte.X = X;
-        }
+        as.setPermissions(AddressSpace.getVPN(va), R, W, X);
     }
 
     public void copyAddressSpace(AddressSpace oldAS, AddressSpace newAS) throws MemoryAccessException {
         System.out.println(
                 "PagedMemoryManager: Copying address space from PID " + oldAS.getPid() + " to " + newAS.getPid());
 
-        for (int l1Index = 0; l1Index < 1024; l1Index++) {
-            AddressSpace.PageTableEntry l1Entry = oldAS.root.entries[l1Index];
-
-            if (l1Entry == null || !l1Entry.V) {
-                continue;
-            }
+        allocateChildPageTables(oldAS, newAS);
+        newAS.copyFileSegments(oldAS); // Pages the parent never touched
 
-            AddressSpace.PageTable l2Table = getPageTableInstance(l1Entry.ppn);
+        for (int l1Index = 0; l1Index < 1024; l1Index++) {
+            int[] l2Table = oldAS.tables[l1Index];
             if (l2Table == null) {
                 continue;
             }
 
             // Iterate over Page Table (Level 2)
             for (int l2Index = 0; l2Index < 1024; l2Index++) {
-                AddressSpace.PageTableEntry pte = l2Table.entries[l2Index];
+                int pte = l2Table[l2Index];
+                int vpn = (l1Index << 10) | l2Index;
 
-                if (pte == null || !pte.V) {
+                // Swapped out: the child shares the slot until it faults the page in
+                if ((pte & (AddressSpace.PTE_V | AddressSpace.PTE_SWAPPED)) == AddressSpace.PTE_SWAPPED) {
+                    releasePage(newAS, vpn);
+                    if (!newAS.copySwapEntry(vpn, pte)) {
+                        throw new MemoryAccessException("copyAddressSpace: no frame for a page table");
+                    }
+                    swap.retain(AddressSpace.ppn(pte));
                     continue;
                 }
 
-                int vpn = (l1Index << 10) | l2Index;
-                int oldFrame = pte.ppn; // Physical frame of parent
+                if ((pte & AddressSpace.PTE_V) == 0) {
+                    continue;
+                }
+
+                int oldFrame = AddressSpace.ppn(pte); // Physical frame of parent
+
+                // The child may already have its own page here (its stack is
+                // mapped before the copy); release it instead of leaking it
+                releasePage(newAS, vpn);
+
+                boolean write = (pte & AddressSpace.PTE_W) != 0;
+                boolean exec = (pte & AddressSpace.PTE_X) != 0;
 
                 // --- CHECK: IF IT'S A SHARED PAGE ---
-                if (pte.shared) {
+                if ((pte & AddressSpace.PTE_SHARED) != 0) {
                     // 1. Do not allocate new frame.
                     // 2. Map VPN of child directly to old frame of parent.
-                    boolean mapped = newAS.mapPage(vpn, oldFrame, pte.W, pte.X);
+                    boolean mapped = newAS.mapPage(vpn, oldFrame, write, exec);
 
                     if (mapped) {
-                        // Mark PTE of child as shared
-                        AddressSpace.PageTableEntry childPTE = newAS.getPTEInternal(vpn);
-                        if (childPTE != null)
-                            childPTE.shared = true;
+                        // Mark PTE of child as shared; shared text stays
+                        // copy-on-write
+                        newAS.setFlags(vpn, AddressSpace.PTE_SHARED | (pte & AddressSpace.PTE_COW));
 
                         // Increase reference count for this frame
                         frameRefCount[oldFrame]++;
@@ -432,45 +1140,73 @@ public class PagedMemoryManager extends MemoryManager {
                     }
 
                 } else {
-                    // --- CASE: NOT SHARED (PRIVATE) -> OLD LOGIC ---
-
-                    // 1. Allocate new frame for child
-                    int newFrame = allocateFrame();
-                    if (newFrame < 0) {
-                        throw new MemoryAccessException("copyAddressSpace: out of physical memory");
-                    }
-
-                    // 2. Calculate physical addresses to copy data
-                    int oldPa = oldFrame << 12; // Source physical address
-                    int newPa = newFrame << 12; // Destination physical address
-
-                    try {
-                        // Deep Copy each byte from parent to child
-                        for (int i = 0; i < PAGE_SIZE; i++) {
-                            byte b = super.readByte(oldPa + i);
-                            super.writeByte(newPa + i, b);
-                        }
-                    } catch (MemoryAccessException e) {
-                        freeFrame(newFrame);
-                        throw new MemoryAccessException(
-                                "copyAddressSpace: failed to copy frame data: " + e.getMessage());
-                    }
-
-                    // 3. Map frame mới vào bảng trang của con
-                    boolean mapped = newAS.mapPage(vpn, newFrame, pte.W, pte.X);
-
+                    // --- CASE: NOT SHARED (PRIVATE) -> COPY-ON-WRITE ---
+                    // Both sides map the same frame; the first write from
+                    // either one copies it (see resolveCopyOnWrite)
+                    boolean mapped = newAS.mapPage(vpn, oldFrame, write, exec);
                     if (!mapped) {
-                        freeFrame(newFrame);
                         throw new MemoryAccessException("copyAddressSpace: mapPage failed for child");
                     }
-
-                    setFrameOwner(newFrame, new FrameOwner(newAS.getPid(), vpn));
+                    // The child's copy is as dirty as the parent's, or eviction
+                    // would drop data it never wrote itself
+                    newAS.setFlags(vpn, AddressSpace.PTE_COW | (pte & AddressSpace.PTE_D));
+                    oldAS.setFlags(vpn, AddressSpace.PTE_COW);
+                    frameRefCount[oldFrame]++;
                 }
             }
         }
+
+        // The parent's cached write translations would bypass the COW fault
+        if (oldAS == current) {
+            flushTlbs();
+        }
         System.out.println("PagedMemoryManager: Finished copying address space.");
     }
 
+    /**
+     * Give the child, in one allocation, a page table for every parent
+     * table with something to copy. Tables that do not fit are allocated
+     * one by one as the copy reaches them, evicting if need be.
+     */
+    private void allocateChildPageTables(AddressSpace oldAS, AddressSpace newAS) {
+        int[] l1Indices = new int[1024];
+        int missing = 0;
+        for (int i = 0; i < 1024; i++) {
+            if (oldAS.tables[i] != null && newAS.tables[i] == null && hasCopyableEntry(oldAS.tables[i])) {
+                l1Indices[missing++] = i;
+            }
+        }
+
+        int[] frames = new int[missing];
+        int allocated = allocateFrames(frames, missing);
+        for (int k = 0; k < allocated; k++) {
+            setFrameOwner(frames[k], new FrameOwner(-1, -1)); // Page table marker
+            newAS.installPageTable(l1Indices[k], frames[k]);
+        }
+    }
+
+    private static boolean hasCopyableEntry(int[] l2Table) {
+        for (int pte : l2Table) {
+            if ((pte & (AddressSpace.PTE_V | AddressSpace.PTE_SWAPPED)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release whatever backs vpn before it is remapped: its frame, or its
+     * swap slot if it was swapped out.
+     */
+    private void releasePage(AddressSpace as, int vpn) {
+        int frame = as.getFrameNumber(vpn);
+        if (frame >= 0) {
+            freeFrame(frame);
+        } else if (as.getSwapSlot(vpn) >= 0 && swap != null) {
+            swap.release(as.getSwapSlot(vpn));
+        }
+    }
+
     public void writeByteToPhysicalAddress(int physicalAddress, byte value) throws MemoryAccessException {
         super.writeByte(physicalAddress, value);
     }
@@ -14,4 +14,12 @@ public interface Pager {
      */
     int ensureResident(AddressSpace as, int va, VmAccess access)
             throws MemoryAccessException;
+
+    /**
+     * Free a frame by evicting a page, for allocations that are not page
+     * faults (page tables). Return the frame, or -1 if none can be freed.
+     */
+    default int reclaimFrame() {
+        return -1;
+    }
 }
\ No newline at end of file
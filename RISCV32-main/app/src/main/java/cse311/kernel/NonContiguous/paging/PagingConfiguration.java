@@ -7,7 +7,9 @@ package cse311.kernel.NonContiguous.paging;
 public class PagingConfiguration {
 
     public enum Policy {
-        EAGER, DEMAND, CLOCK
+        EAGER, DEMAND,
+        // Replacement policies
+        CLOCK, LRU, WSCLOCK, TWO_QUEUE, ARC
     }
 
     /**
@@ -15,11 +17,12 @@ public class PagingConfiguration {
      * 
      * @param manager           The PagedMemoryManager to configure
      * @param pagerPolicy       The paging policy to use (EAGER or DEMAND)
-     * @param replacementPolicy The page replacement policy to use (currently CLOCK)
+     * @param replacementPolicy The page replacement policy to use (CLOCK, LRU,
+     *                          WSCLOCK, TWO_QUEUE or ARC)
      */
     public static void configure(PagedMemoryManager manager, Policy pagerPolicy, Policy replacementPolicy) {
-        // Create replacement policy
-        ReplacementPolicy replacer = createReplacementPolicy(replacementPolicy);
+        // Create replacement policy, sized for the frames actually present
+        ReplacementPolicy replacer = createReplacementPolicy(replacementPolicy, manager.getTotalFrames());
 
         // Create pager policy
         Pager pager = createPager(pagerPolicy, manager, replacer);
@@ -28,10 +31,21 @@ public class PagingConfiguration {
         manager.setPager(pager);
     }
 
-    private static ReplacementPolicy createReplacementPolicy(Policy policy) {
+    /**
+     * @param frames Physical frames the policy will manage
+     */
+    public static ReplacementPolicy createReplacementPolicy(Policy policy, int frames) {
         switch (policy) {
             case CLOCK:
-                return new ClockPolicy();
+                return new ClockPolicy(frames);
+            case LRU:
+                return new AgingPolicy(frames);
+            case WSCLOCK:
+                return new WSClockPolicy(frames);
+            case TWO_QUEUE:
+                return new TwoQueuePolicy(frames);
+            case ARC:
+                return new ArcPolicy(frames);
             default:
                 throw new IllegalArgumentException("Unsupported replacement policy: " + policy);
         }
@@ -1,5 +1,9 @@
 package cse311.kernel.NonContiguous.paging;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import cse311.ElfLoader.ElfSegment;
 import cse311.MemoryManager;
 import cse311.Exception.MemoryAccessException;
 import cse311.kernel.NonContiguous.NonContiguousMemoryMapper;
@@ -40,6 +44,25 @@ public class PagingMapper implements NonContiguousMemoryMapper {
         pm.copyAddressSpace(pm.getAddressSpace(parentPid), pm.getAddressSpace(childPid));
     }
 
+    /**
+     * Read-only text is mapped from the shared page cache.
+     */
+    @Override
+    public boolean mapSegment(int pid, ElfSegment segment, List<ElfSegment> segments, ByteBuffer elfData)
+            throws MemoryAccessException {
+        return pm.mapSharedSegment(segment, segments, elfData);
+    }
+
+    /**
+     * Only the demand pager loads segments lazily.
+     */
+    @Override
+    public boolean mapSegmentLazily(int pid, ElfSegment segment, List<ElfSegment> segments,
+            ByteBuffer elfData)
+            throws MemoryAccessException {
+        return pm.mapLazySegment(segment, elfData);
+    }
+
     @Override
     public MemoryManager getMemoryInterface() {
         return pm;
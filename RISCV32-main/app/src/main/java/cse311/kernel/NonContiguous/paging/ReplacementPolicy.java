@@ -16,6 +16,16 @@ public interface ReplacementPolicy {
      */
     void onMap(int frameIndex);
 
+    /**
+     * Called when a frame is mapped to a known page. Policies that remember
+     * recently evicted pages (2Q, ARC) use the key to recognise them.
+     *
+     * @param pageKey {@link #pageKey(int, int)} of the page
+     */
+    default void onMap(int frameIndex, long pageKey) {
+        onMap(frameIndex);
+    }
+
     /**
      * Called when a frame is unmapped from a page.
      */
@@ -28,4 +38,19 @@ public interface ReplacementPolicy {
      * @return the frame index to evict, or -1 if no victim available
      */
     int pickVictim(IntPredicate canEvict);
+
+    /**
+     * Pick a victim, knowing which frames would have to be written to swap.
+     * Policies that prefer clean victims override this.
+     */
+    default int pickVictim(IntPredicate canEvict, IntPredicate isDirty) {
+        return pickVictim(canEvict);
+    }
+
+    /**
+     * Identity of a virtual page across address spaces.
+     */
+    static long pageKey(int pid, int vpn) {
+        return ((long) pid << 32) | (vpn & 0xFFFFFFFFL);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped software TLB caching VPN -> frame translations for one
+ * kind of access. An entry is only filled after the pager has made the
+ * page resident and updated its A/D bits, so a hit can skip the pager
+ * entirely.
+ */
+final class SoftwareTlb {
+    private static final int SLOTS = 256;
+    private static final int EMPTY = -1;
+
+    private final int[] vpns = new int[SLOTS];
+    private final int[] frames = new int[SLOTS];
+
+    private long hits;
+    private long misses;
+
+    SoftwareTlb() {
+        flush();
+    }
+
+    /**
+     * @return The cached frame for the page, or -1 on a miss
+     */
+    int lookup(int vpn) {
+        int slot = vpn & (SLOTS - 1);
+        if (vpns[slot] == vpn) {
+            hits++;
+            return frames[slot];
+        }
+        misses++;
+        return EMPTY;
+    }
+
+    void fill(int vpn, int frame) {
+        int slot = vpn & (SLOTS - 1);
+        vpns[slot] = vpn;
+        frames[slot] = frame;
+    }
+
+    void invalidate(int vpn) {
+        int slot = vpn & (SLOTS - 1);
+        if (vpns[slot] == vpn) {
+            vpns[slot] = EMPTY;
+        }
+    }
+
+    void flush() {
+        Arrays.fill(vpns, EMPTY);
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,287 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Host file holding evicted pages in page-sized slots. Slot n lives at file
+ * offset n * PAGE_SIZE and is accessed with positional I/O, so the file
+ * only grows as far as the highest slot written.
+ *
+ * Slots are reference counted: after a fork the parent and the child both
+ * point at the same slot until each of them faults the page back in.
+ *
+ * With write-back enabled, writePage only copies the page into a queue and
+ * a background thread writes it out. Reads of a slot whose write is still
+ * queued are served from the queued copy, so the pager never waits for the
+ * disk on swap-out and rarely on swap-in. Slot bookkeeping stays on the
+ * pager's thread; the writer only does file I/O.
+ */
+public class SwapDevice implements AutoCloseable {
+    private static final int PAGE_SIZE = PagedMemoryManager.PAGE_SIZE;
+
+    // A swapped-out PTE keeps the slot in its PPN field
+    public static final int MAX_SLOTS = 1 << (32 - AddressSpace.PPN_SHIFT);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int slots;
+    private final BitSet used;
+    private final int[] refCount;
+
+    private long swapIns;
+    private long swapOuts;
+    private long pendingHits; // Swap-ins served from a queued write
+
+    // Write-back: queued page copies by slot, and the thread writing them
+    private final BlockingQueue<PendingWrite> writeQueue;
+    private final Map<Integer, byte[]> pending = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private volatile IOException writeError;
+    private int outstanding; // Queued writes not yet on disk, guarded by this
+
+    /**
+     * Open (and truncate) a swap file.
+     *
+     * @param file  Host file for the slots
+     * @param slots Number of page slots, at most {@link #MAX_SLOTS}
+     */
+    public SwapDevice(Path file, int slots) throws IOException {
+        this(file, slots, 0);
+    }
+
+    /**
+     * Open (and truncate) a swap file with background write-back.
+     *
+     * @param file           Host file for the slots
+     * @param slots          Number of page slots, at most {@link #MAX_SLOTS}
+     * @param writebackPages Pages that may wait for the writer before
+     *                       writePage blocks; 0 writes synchronously
+     */
+    public SwapDevice(Path file, int slots, int writebackPages) throws IOException {
+        if (slots <= 0 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("Swap slots must be between 1 and " + MAX_SLOTS + ": " + slots);
+        }
+        this.file = file;
+        this.slots = slots;
+        this.used = new BitSet(slots);
+        this.refCount = new int[slots];
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (writebackPages > 0) {
+            this.writeQueue = new ArrayBlockingQueue<>(writebackPages);
+            this.writer = new Thread(this::writeBack, "swap-writer");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.writeQueue = null;
+            this.writer = null;
+        }
+    }
+
+    private static final class PendingWrite {
+        final int slot;
+        final byte[] page;
+
+        PendingWrite(int slot, byte[] page) {
+            this.slot = slot;
+            this.page = page;
+        }
+    }
+
+    /**
+     * @return A free slot with one reference, or -1 if swap is full
+     */
+    public int allocateSlot() {
+        int slot = used.nextClearBit(0);
+        if (slot >= slots) {
+            return -1;
+        }
+        used.set(slot);
+        refCount[slot] = 1;
+        return slot;
+    }
+
+    /**
+     * Add a reference to a slot, e.g. for the child of a fork.
+     */
+    public void retain(int slot) {
+        refCount[slot]++;
+    }
+
+    /**
+     * Drop a reference; the slot is reused once none are left.
+     */
+    public void release(int slot) {
+        if (slot >= 0 && slot < slots && --refCount[slot] <= 0) {
+            refCount[slot] = 0;
+            used.clear(slot);
+            pending.remove(slot); // A queued write may still land, it is harmless
+        }
+    }
+
+    /**
+     * Store a page in a slot. With write-back the page is copied and queued,
+     * and the call only blocks while the queue is full.
+     */
+    public void writePage(int slot, byte[] page) throws IOException {
+        checkWriteError();
+        if (writer == null) {
+            writeSlot(slot, page);
+        } else {
+            byte[] copy = page.clone();
+            pending.put(slot, copy);
+            synchronized (this) {
+                outstanding++;
+            }
+            try {
+                writeQueue.put(new PendingWrite(slot, copy));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                written(slot, copy);
+                throw new IOException("Interrupted while queueing swap slot " + slot);
+            }
+        }
+        swapOuts++;
+    }
+
+    public void readPage(int slot, byte[] page) throws IOException {
+        byte[] queued = pending.get(slot);
+        if (queued != null) {
+            System.arraycopy(queued, 0, page, 0, PAGE_SIZE);
+            pendingHits++;
+        } else {
+            checkWriteError();
+            ByteBuffer buffer = ByteBuffer.wrap(page, 0, PAGE_SIZE);
+            long position = (long) slot * PAGE_SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Swap slot " + slot + " was never written");
+                }
+            }
+        }
+        swapIns++;
+    }
+
+    private void writeSlot(int slot, byte[] page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(page, 0, PAGE_SIZE);
+        long position = (long) slot * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Writer thread: slots are written in queue order, so a reused slot is
+     * never overwritten by its previous contents.
+     */
+    private void writeBack() {
+        while (true) {
+            PendingWrite w;
+            try {
+                w = writeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                writeSlot(w.slot, w.page);
+            } catch (IOException e) {
+                writeError = e;
+            }
+            written(w.slot, w.page);
+        }
+    }
+
+    private void written(int slot, byte[] page) {
+        // Keep a newer copy queued for the same slot
+        pending.remove(slot, page);
+        synchronized (this) {
+            outstanding--;
+            notifyAll();
+        }
+    }
+
+    private void checkWriteError() throws IOException {
+        IOException e = writeError;
+        if (e != null) {
+            throw new IOException("Swap write-back failed", e);
+        }
+    }
+
+    /**
+     * Wait until every queued page is on disk.
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            while (outstanding > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for swap write-back");
+                }
+            }
+        }
+        checkWriteError();
+    }
+
+    /**
+     * Write out queued pages, stop the writer and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    public boolean isWriteBack() {
+        return writer != null;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public int getUsedSlots() {
+        return used.cardinality();
+    }
+
+    /**
+     * @return Pages read back from swap
+     */
+    public long getSwapIns() {
+        return swapIns;
+    }
+
+    /**
+     * @return Pages written to swap
+     */
+    public long getSwapOuts() {
+        return swapOuts;
+    }
+
+    /**
+     * @return Swap-ins copied from a write that was still queued
+     */
+    public long getPendingHits() {
+        return pendingHits;
+    }
+}
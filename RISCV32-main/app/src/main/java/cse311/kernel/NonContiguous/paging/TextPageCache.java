@@ -0,0 +1,164 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import cse311.ElfLoader.ElfSegment;
+
+/**
+ * Frames holding pages of read-only executable ELF segments, keyed by a
+ * hash of the page's contents plus its page number, so every process
+ * loading the same image maps the same frames. The cache
+ * holds one reference to each frame; frames nobody else maps are kept
+ * until memory runs out, least recently used first.
+ */
+final class TextPageCache {
+    private static final class Key {
+        final byte[] digest;
+        final int page;
+
+        Key(byte[] digest, int page) {
+            this.digest = digest;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return page == other.page && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(digest) + page;
+        }
+    }
+
+    private final Map<Key, Integer> frames = new LinkedHashMap<>(16, 0.75f, true); // Access order
+    private final Map<Integer, Key> keys = new HashMap<>(); // Frame -> key
+    private long hits;
+    private long misses;
+
+    /**
+     * Identity of the contents of the segment page at pageVa: the file
+     * bytes it holds and where in the page they go. The rest is zero.
+     * Hashing a page at a time lets a page be looked up on its first
+     * touch without reading the rest of the segment.
+     */
+    static byte[] digest(ElfSegment segment, ByteBuffer elfData, int pageVa) {
+        int from = Math.max(pageVa, segment.virtualAddr);
+        int to = Math.max(from, Math.min(pageVa + PagedMemoryManager.PAGE_SIZE,
+                segment.virtualAddr + segment.fileSize));
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(ByteBuffer.allocate(8).putInt(from - pageVa).putInt(to - from).array());
+            sha.update(elfData.slice(segment.fileOffset + (from - segment.virtualAddr), to - from));
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /**
+     * @return The cached frame, or -1
+     */
+    int lookup(byte[] digest, int page) {
+        Integer frame = frames.get(new Key(digest, page));
+        if (frame == null) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        return frame;
+    }
+
+    void put(byte[] digest, int page, int frame) {
+        Key key = new Key(digest, page);
+        frames.put(key, frame);
+        keys.put(frame, key);
+    }
+
+    /**
+     * Forget a frame that is being freed.
+     */
+    void remove(int frame) {
+        if (!keys.isEmpty()) {
+            Key key = keys.remove(frame);
+            if (key != null) {
+                frames.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drop the least recently used frame only the cache still references.
+     *
+     * @param unmapped Whether a frame is referenced by the cache alone
+     * @return The dropped frame, which the caller frees, or -1
+     */
+    int evict(IntPredicate unmapped) {
+        Iterator<Map.Entry<Key, Integer>> it = frames.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Integer> e = it.next();
+            int frame = e.getValue();
+            if (unmapped.test(frame)) {
+                it.remove();
+                keys.remove(frame);
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    void clear() {
+        frames.clear();
+        keys.clear();
+    }
+
+    // ---- Snapshot support ----
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(frames.size());
+        for (Map.Entry<Key, Integer> e : frames.entrySet()) {
+            out.writeShort(e.getKey().digest.length);
+            out.write(e.getKey().digest);
+            out.writeInt(e.getKey().page);
+            out.writeInt(e.getValue());
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            byte[] digest = new byte[in.readUnsignedShort()];
+            in.readFully(digest);
+            int page = in.readInt();
+            put(digest, page, in.readInt());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * 2Q (Johnson and Shasha). New pages enter a FIFO (A1in) and leave it
+ * without being promoted, so one-pass scans cannot flush the hot set.
+ * Pages evicted from A1in are remembered in a ghost FIFO (A1out); a page
+ * faulted back in while still remembered was reused and goes to the LRU
+ * main queue (Am).
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    private final int maxFrames;
+    private final int kin; // A1in target size
+    private final int kout; // A1out capacity
+    private final FrameList a1in;
+    private final FrameList am;
+    private final LinkedHashSet<Long> a1out = new LinkedHashSet<>();
+    private final long[] keys;
+
+    public TwoQueuePolicy(int maxFrames) {
+        this(maxFrames, Math.max(1, maxFrames / 4), Math.max(1, maxFrames / 2));
+    }
+
+    /**
+     * @param kin  Frames A1in may hold before it is the preferred victim
+     * @param kout Evicted pages remembered in A1out
+     */
+    public TwoQueuePolicy(int maxFrames, int kin, int kout) {
+        this.maxFrames = maxFrames;
+        this.kin = kin;
+        this.kout = kout;
+        this.a1in = new FrameList(maxFrames);
+        this.am = new FrameList(maxFrames);
+        this.keys = new long[maxFrames];
+        Arrays.fill(keys, NO_KEY);
+    }
+
+    @Override
+    public void onAccess(int frame) {
+        if (frame >= 0 && frame < maxFrames && am.contains(frame)) {
+            am.addLast(frame);
+        }
+    }
+
+    @Override
+    public void onMap(int frame) {
+        onMap(frame, NO_KEY);
+    }
+
+    @Override
+    public void onMap(int frame, long pageKey) {
+        if (frame < 0 || frame >= maxFrames) {
+            return;
+        }
+        // A frame freed without an eviction may still be queued
+        a1in.remove(frame);
+        am.remove(frame);
+
+        keys[frame] = pageKey;
+        if (pageKey != NO_KEY && a1out.remove(pageKey)) {
+            am.addLast(frame);
+        } else {
+            a1in.addLast(frame);
+        }
+    }
+
+    @Override
+    public void onUnmap(int frame) {
+        if (frame < 0 || frame >= maxFrames) {
+            return;
+        }
+        if (a1in.contains(frame)) {
+            a1in.remove(frame);
+            if (keys[frame] != NO_KEY) {
+                a1out.add(keys[frame]);
+                if (a1out.size() > kout) {
+                    Iterator<Long> oldest = a1out.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+        } else {
+            am.remove(frame);
+        }
+        keys[frame] = NO_KEY;
+    }
+
+    @Override
+    public int pickVictim(IntPredicate canEvict) {
+        FrameList preferred = a1in.size() > kin || am.size() == 0 ? a1in : am;
+        FrameList other = preferred == a1in ? am : a1in;
+        int victim = firstEvictable(preferred, canEvict);
+        return victim >= 0 ? victim : firstEvictable(other, canEvict);
+    }
+
+    private static int firstEvictable(FrameList list, IntPredicate canEvict) {
+        for (int frame = list.first(); frame != FrameList.NONE; frame = list.next(frame)) {
+            if (canEvict.test(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+package cse311.kernel.NonContiguous.paging;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * WSClock: a clock over all frames that evicts pages outside the working
+ * set, i.e. not referenced within the last tau events (accesses and
+ * mappings). Clean old pages are taken first since they need no swap
+ * write; a dirty old page is used only if a whole sweep finds no clean one,
+ * and the least recently used evictable frame if the working set covers
+ * all of memory.
+ */
+public class WSClockPolicy implements ReplacementPolicy {
+    private final int maxFrames;
+    private final long tau;
+    private final long[] lastUse;
+    private final BitSet referenced;
+    private long now;
+    private int hand;
+
+    public WSClockPolicy(int maxFrames) {
+        this(maxFrames, maxFrames);
+    }
+
+    /**
+     * @param tau Working-set window in policy events
+     */
+    public WSClockPolicy(int maxFrames, long tau) {
+        this.maxFrames = maxFrames;
+        this.tau = tau;
+        this.lastUse = new long[maxFrames];
+        this.referenced = new BitSet(maxFrames);
+    }
+
+    @Override
+    public void onAccess(int frame) {
+        now++;
+        if (frame >= 0 && frame < maxFrames) {
+            referenced.set(frame);
+        }
+    }
+
+    @Override
+    public void onMap(int frame) {
+        now++;
+        if (frame >= 0 && frame < maxFrames) {
+            referenced.set(frame);
+            lastUse[frame] = now;
+        }
+    }
+
+    @Override
+    public void onUnmap(int frame) {
+        if (frame >= 0 && frame < maxFrames) {
+            referenced.clear(frame);
+        }
+    }
+
+    @Override
+    public int pickVictim(IntPredicate canEvict) {
+        return pickVictim(canEvict, frame -> false);
+    }
+
+    @Override
+    public int pickVictim(IntPredicate canEvict, IntPredicate isDirty) {
+        int dirtyOld = -1;
+        int oldest = -1;
+        for (int scanned = 0; scanned < maxFrames; scanned++) {
+            int frame = hand;
+            hand = (hand + 1) % maxFrames;
+            if (!canEvict.test(frame)) {
+                continue;
+            }
+            if (referenced.get(frame)) {
+                // In the working set: record the use and move on
+                referenced.clear(frame);
+                lastUse[frame] = now;
+            } else if (now - lastUse[frame] > tau) {
+                if (!isDirty.test(frame)) {
+                    return frame;
+                }
+                if (dirtyOld < 0) {
+                    dirtyOld = frame;
+                }
+            }
+            if (oldest < 0 || lastUse[frame] < lastUse[oldest]) {
+                oldest = frame;
+            }
+        }
+        return dirtyOld >= 0 ? dirtyOld : oldest;
+    }
+}
@@ -3,6 +3,7 @@ package cse311.kernel.contiguous;
 import java.util.ArrayList;
 import java.util.List;
 
+import cse311.ElfImage;
 import cse311.ElfLoader;
 import cse311.MemoryManager;
 import cse311.Exception.MemoryAccessException;
@@ -39,14 +40,14 @@ public class ContiguousMemoryCoordinator implements ProcessMemoryCoordinator {
     }
 
     @Override
-    public ProgramInfo loadProgram(int pid, byte[] elfData) throws Exception {
+    public ProgramInfo loadProgram(int pid, ElfImage image) throws Exception {
         // 1. Set Hardware Context (Base/Limit)
         manager.switchContext(pid);
 
         // 2. It writes to "Virtual Addresses" (e.g., 0x10000),
         // and ContiguousMemoryManager adds the Base Register automatically.
         ElfLoader loader = new ElfLoader(manager);
-        loader.loadElf(elfData);
+        loader.load(image);
 
         // Note: For contiguous, the "Virtual" entry point is what we want
         // (e.g. 0x10000), because PC is relative to Base.
@@ -103,9 +104,7 @@ public class ContiguousMemoryCoordinator implements ProcessMemoryCoordinator {
             byte[] bytes = (arg + "\0").getBytes();
             sp -= bytes.length;
             sp &= ~0xF;
-            for (int i = 0; i < bytes.length; i++) {
-                manager.writeByteToVirtualAddress(sp + i, bytes[i]);
-            }
+            manager.writeBytes(sp, bytes, 0, bytes.length);
             argvPtrs.add(sp);
         }
 
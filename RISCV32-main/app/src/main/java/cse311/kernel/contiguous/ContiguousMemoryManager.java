@@ -1,5 +1,9 @@
 package cse311.kernel.contiguous;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +31,16 @@ public class ContiguousMemoryManager extends MemoryManager {
 
     public ContiguousMemoryManager(int totalMemory, AllocationStrategy allocator) {
         // Initialize the underlying physical RAM
-        super(new SimpleMemory(totalMemory));
+        this(new SimpleMemory(totalMemory), allocator);
+    }
+
+    /**
+     * Use an existing physical memory. Base and limit registers are ints, so
+     * at most 2 GiB of it is used.
+     */
+    public ContiguousMemoryManager(SimpleMemory memory, AllocationStrategy allocator) {
+        super(memory);
+        int totalMemory = (int) Math.min(memory.getSize(), Integer.MAX_VALUE);
         this.totalMemory = totalMemory;
         this.allocator = allocator;
         // Initially one giant free block (hole)
@@ -131,6 +144,45 @@ public class ContiguousMemoryManager extends MemoryManager {
         super.writeHalfWord(pa, value);
     }
 
+    @Override
+    public int translateInstructionAddress(int va) throws MemoryAccessException {
+        if (isMMIO(va)) {
+            throw new MemoryAccessException("Instruction fetch from MMIO: 0x" + Integer.toHexString(va));
+        }
+        translate(va + 3); // Whole word must be inside the partition
+        return translate(va);
+    }
+
+    @Override
+    public void readBytes(int va, byte[] dst, int offset, int length) throws MemoryAccessException {
+        if (isMMIO(va) || length <= 0) {
+            super.readBytes(va, dst, offset, length);
+            return;
+        }
+        translate(va + length - 1); // Whole range must be inside the partition
+        super.readBytes(translate(va), dst, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int va, byte[] src, int offset, int length) throws MemoryAccessException {
+        if (isMMIO(va) || length <= 0) {
+            super.writeBytes(va, src, offset, length);
+            return;
+        }
+        translate(va + length - 1);
+        super.writeBytes(translate(va), src, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int va, ByteBuffer src, int offset, int length) throws MemoryAccessException {
+        if (isMMIO(va) || length <= 0) {
+            super.writeBytes(va, src, offset, length);
+            return;
+        }
+        translate(va + length - 1);
+        super.writeBytes(translate(va), src, offset, length);
+    }
+
     @Override
     public void writeByteToVirtualAddress(int va, byte value) throws MemoryAccessException {
         // Used by ElfLoader. It writes to "Logical Address".
@@ -183,16 +235,13 @@ public class ContiguousMemoryManager extends MemoryManager {
             return false;
         }
 
-        // 2. Access the physical RAM
-        byte[] ram = this.getByteMemory();
-
-        // 3. Determine safe copy size (prevent overflow if child < parent)
+        // 2. Determine safe copy size (prevent overflow if child < parent)
         // Note: Ideally child.size >= parent.size, but we use min() for safety.
         int bytesToCopy = Math.min(parent.size, child.size);
 
-        // 4. Perform the physical copy
+        // 3. Perform the physical copy
         try {
-            System.arraycopy(ram, parent.start, ram, child.start, bytesToCopy);
+            copyPhysical(parent.start, child.start, bytesToCopy);
             return true;
         } catch (Exception e) {
             System.err.println("Contiguous Copy Error: " + e.getMessage());
@@ -215,13 +264,16 @@ public class ContiguousMemoryManager extends MemoryManager {
         // Simple compaction: Move all allocated blocks to the start
         int currentPos = 0;
 
-        // We need to move the actual bytes in physical memory!
-        byte[] ram = this.getByteMemory(); // Access raw array from parent
-
         for (ProcessBlock pb : allocatedList) {
             if (pb.start != currentPos) {
-                // Move data: copy pb.size bytes from pb.start to currentPos
-                System.arraycopy(ram, pb.start, ram, currentPos, pb.size);
+                // We need to move the actual bytes in physical memory!
+                // Copy pb.size bytes from pb.start to currentPos
+                try {
+                    copyPhysical(pb.start, currentPos, pb.size);
+                } catch (MemoryAccessException e) {
+                    System.err.println("Compaction Error: " + e.getMessage());
+                    return;
+                }
                 pb.start = currentPos;
             }
 
@@ -244,6 +296,41 @@ public class ContiguousMemoryManager extends MemoryManager {
         }
     }
 
+    /**
+     * Save the base/limit registers and both block lists.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(baseRegister);
+        out.writeInt(limitRegister);
+        out.writeInt(currentPid);
+        out.writeInt(freeList.size());
+        for (MemoryBlock block : freeList) {
+            out.writeInt(block.start);
+            out.writeInt(block.size);
+        }
+        out.writeInt(allocatedList.size());
+        for (ProcessBlock pb : allocatedList) {
+            out.writeInt(pb.pid);
+            out.writeInt(pb.start);
+            out.writeInt(pb.size);
+        }
+    }
+
+    public void readState(DataInput in) throws IOException {
+        baseRegister = in.readInt();
+        limitRegister = in.readInt();
+        currentPid = in.readInt();
+        freeList.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            freeList.add(new MemoryBlock(in.readInt(), in.readInt()));
+        }
+        allocatedList.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            allocatedList.add(new ProcessBlock(in.readInt(), in.readInt(), in.readInt()));
+        }
+        getDecodeCache().invalidateAll();
+    }
+
     private void updateFreeList(int start, int size) {
         // Split the block used
         for (int i = 0; i < freeList.size(); i++) {
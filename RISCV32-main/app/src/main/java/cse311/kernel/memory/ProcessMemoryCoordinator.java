@@ -2,6 +2,7 @@ package cse311.kernel.memory;
 
 import java.util.List;
 
+import cse311.ElfImage;
 import cse311.Exception.MemoryAccessException;
 import cse311.kernel.process.ProgramInfo;
 
@@ -27,7 +28,14 @@ public interface ProcessMemoryCoordinator {
      * 
      * @return The entry point address.
      */
-    ProgramInfo loadProgram(int pid, byte[] elfData) throws Exception;
+    default ProgramInfo loadProgram(int pid, byte[] elfData) throws Exception {
+        return loadProgram(pid, ElfImage.parse(elfData));
+    }
+
+    /**
+     * Loads an already parsed ELF image into the allocated memory.
+     */
+    ProgramInfo loadProgram(int pid, ElfImage image) throws Exception;
 
     /**
      * Frees resources when a process dies.
@@ -1,5 +1,8 @@
 package cse311.kernel.process;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -437,6 +440,72 @@ public class Task {
         return sb.toString();
     }
 
+    /**
+     * Save this task's fields. Parent and child links are saved by the
+     * kernel, which owns the whole task table.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeUTF(name);
+        out.writeInt(pc);
+        for (int value : registers) {
+            out.writeInt(value);
+        }
+        out.writeInt(stackBase);
+        out.writeInt(stackSize);
+        out.writeBoolean(active);
+        out.writeInt(tgid);
+        out.writeUTF(state.name());
+        out.writeUTF(waitReason.name());
+        out.writeLong(wakeupTime);
+        out.writeInt(waitingForPid);
+        out.writeInt(priority);
+        out.writeLong(creationTime);
+        out.writeLong(cpuTime);
+        out.writeInt(exitCode);
+        out.writeInt(allocatedSize);
+        out.writeBoolean(meminfo != null);
+        if (meminfo != null) {
+            out.writeInt(meminfo.entryPoint);
+            out.writeInt(meminfo.textStart);
+            out.writeInt(meminfo.textSize);
+            out.writeInt(meminfo.dataStart);
+            out.writeInt(meminfo.dataSize);
+            out.writeInt(meminfo.heapStart);
+        }
+    }
+
+    /**
+     * Recreate a task saved by {@link #writeState}, without its parent and
+     * children.
+     */
+    public static Task readState(DataInput in) throws IOException {
+        int id = in.readInt();
+        String name = in.readUTF();
+        Task task = new Task(id, name, in.readInt(), 0, 0, null);
+        for (int i = 0; i < task.registers.length; i++) {
+            task.registers[i] = in.readInt();
+        }
+        task.stackBase = in.readInt();
+        task.stackSize = in.readInt();
+        task.active = in.readBoolean();
+        task.tgid = in.readInt();
+        task.state = TaskState.valueOf(in.readUTF());
+        task.waitReason = WaitReason.valueOf(in.readUTF());
+        task.wakeupTime = in.readLong();
+        task.waitingForPid = in.readInt();
+        task.priority = in.readInt();
+        task.creationTime = in.readLong();
+        task.cpuTime = in.readLong();
+        task.exitCode = in.readInt();
+        task.allocatedSize = in.readInt();
+        if (in.readBoolean()) {
+            task.meminfo = new ProgramInfo(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt());
+        }
+        return task;
+    }
+
     @Override
     public String toString() {
         return String.format("Task[pid=%d, name=%s, state=%s]", getId(), name, state);
@@ -11,6 +11,9 @@ import cse311.kernel.contiguous.ContiguousMemoryManager;
 import cse311.kernel.memory.KernelMemoryManager;
 import cse311.kernel.memory.ProcessMemoryCoordinator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.List;
@@ -46,10 +49,11 @@ public class TaskManager {
      * Create a new process from an ELF file with a parent
      */
     public Task createTask(int pid, String elfPath, Task parent) throws Exception {
-        // 1. Read the file bytes (Simulating File System read)
-        byte[] elfData;
+        // 1. Read the file (Simulating File System read), parsed once per
+        // version of the file
+        ElfImage image;
         try {
-            elfData = java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(elfPath));
+            image = ElfImageCache.shared().load(java.nio.file.Paths.get(elfPath));
         } catch (java.io.IOException e) {
             throw new Exception("Failed to read ELF file: " + elfPath);
         }
@@ -57,7 +61,7 @@ public class TaskManager {
         // 2. Delegate to the main creation logic
         // The name of the task defaults to the filename
         String taskName = new java.io.File(elfPath).getName();
-        return createTask(pid, elfData, taskName, parent);
+        return createTask(pid, image, taskName, parent);
     }
 
     /**
@@ -71,8 +75,15 @@ public class TaskManager {
      * Create a new task from ELF data in memory with a parent
      */
     public Task createTask(int pid, byte[] elfData, String name, Task parent) throws Exception {
+        return createTask(pid, ElfImage.parse(elfData), name, parent);
+    }
+
+    /**
+     * Create a new task from a parsed ELF image with a parent
+     */
+    public Task createTask(int pid, ElfImage image, String name, Task parent) throws Exception {
         // 1. Calculate Requirements
-        int elfEndAddress = ElfLoader.calculateRequiredMemory(elfData);
+        int elfEndAddress = image.getRequiredMemory();
         int stackSize = kernel.getConfig().getStackSize();
         int minHeapSize = 64 * 1024; // 64KB Heap buffer
 
@@ -82,7 +93,7 @@ public class TaskManager {
         var layout = memoryCoordinator.allocateMemory(pid, requiredSize);
 
         // 3. Delegate Loading
-        ProgramInfo info = memoryCoordinator.loadProgram(pid, elfData);
+        ProgramInfo info = memoryCoordinator.loadProgram(pid, image);
 
         // 4. Create Task Object
         Task task = new Task(pid, name, info.entryPoint, layout.stackSize, layout.stackBase, info);
@@ -371,6 +382,34 @@ public class TaskManager {
         // System.out.println("Cleaned up task " + pid + " resources");
     }
 
+    /**
+     * Save the per-task memory layout and the init task's PID.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(taskMemory.size());
+        for (TaskMemoryInfo info : taskMemory.values()) {
+            out.writeInt(info.pid);
+            out.writeInt(info.entryPoint);
+            out.writeInt(info.stackBase);
+            out.writeInt(info.stackSize);
+        }
+        out.writeInt(initTask != null ? initTask.getId() : -1);
+    }
+
+    /**
+     * Counterpart of {@link #writeState}; the kernel's tasks must already be
+     * restored.
+     */
+    public void readState(DataInput in) throws IOException {
+        taskMemory.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            TaskMemoryInfo info = new TaskMemoryInfo(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            taskMemory.put(info.pid, info);
+        }
+        int initPid = in.readInt();
+        initTask = initPid != -1 ? kernel.getTask(initPid) : null;
+    }
+
     /**
      * Task memory information
      */
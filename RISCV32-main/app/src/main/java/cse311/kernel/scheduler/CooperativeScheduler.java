@@ -118,6 +118,25 @@ public class CooperativeScheduler extends Scheduler {
                 totalSchedulingTime, "Cooperative");
     }
 
+    /**
+     * The task list rotated so that the next task to be tried comes first
+     */
+    @Override
+    public List<Task> getQueuedTasks() {
+        List<Task> queued = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            queued.add(tasks.get((currentIndex + i) % tasks.size()));
+        }
+        return queued;
+    }
+
+    @Override
+    public void restoreQueue(List<Task> queued) {
+        tasks.clear();
+        tasks.addAll(queued);
+        currentIndex = 0;
+    }
+
     /**
      * Get the number of tasks being managed
      */
@@ -83,6 +83,18 @@ public class PriorityScheduler extends Scheduler {
                 totalSchedulingTime, "Priority");
     }
 
+    @Override
+    public List<Task> getQueuedTasks() {
+        return getReadyQueueSnapshot();
+    }
+
+    @Override
+    public void restoreQueue(List<Task> queued) {
+        readyQueue.clear();
+        currentTask = null;
+        super.restoreQueue(queued);
+    }
+
     /**
      * Get the current ready queue size
      */
@@ -77,6 +77,18 @@ public class RoundRobinScheduler extends Scheduler {
                 totalSchedulingTime, "Round Robin");
     }
 
+    @Override
+    public List<Task> getQueuedTasks() {
+        return getReadyQueueSnapshot();
+    }
+
+    @Override
+    public void restoreQueue(List<Task> queued) {
+        readyQueue.clear();
+        currentTask = null;
+        super.restoreQueue(queued);
+    }
+
     /**
      * Get the current ready queue size
      */
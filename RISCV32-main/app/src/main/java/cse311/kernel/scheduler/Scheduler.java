@@ -1,6 +1,8 @@
 package cse311.kernel.scheduler;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import cse311.kernel.process.Task;
 
@@ -55,6 +57,23 @@ public abstract class Scheduler {
         this.timeSlice = timeSlice;
     }
 
+    /**
+     * Tasks queued in this scheduler, in scheduling order. Used to save the
+     * queue in a snapshot.
+     */
+    public List<Task> getQueuedTasks() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Re-queue tasks saved from {@link #getQueuedTasks()}.
+     */
+    public void restoreQueue(List<Task> queued) {
+        for (Task task : queued) {
+            addTask(task);
+        }
+    }
+
     /**
      * Get scheduler statistics
      * 
@@ -1,6 +1,5 @@
 package cse311.kernel.syscall;
 
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -41,6 +40,9 @@ public class SystemCallHandler {
     public static final int SYS_GET_TIME = 1001;
     public static final int SYS_SLEEP = 1002;
 
+    // Guest buffers are read a page at most at a time
+    private static final int WRITE_CHUNK = 4096;
+
     public SystemCallHandler(Kernel kernel, RV32Cpu cpu) {
         this.kernel = kernel;
         this.cpu = cpu;
@@ -191,17 +193,30 @@ public class SystemCallHandler {
             try {
                 // Read string from task memory
                 StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < count; i++) {
-                    byte b;
-                    if (kernel.getMemory() instanceof TaskAwareMemoryManager) {
-                        TaskAwareMemoryManager taskMemory = (TaskAwareMemoryManager) kernel.getMemory();
-                        b = taskMemory.readByteFromTask(task.getId(), bufferAddr + i);
-                    } else {
-                        b = kernel.getMemory().readByte(bufferAddr + i);
+                if (kernel.getMemory() instanceof TaskAwareMemoryManager) {
+                    TaskAwareMemoryManager taskMemory = (TaskAwareMemoryManager) kernel.getMemory();
+                    for (int i = 0; i < count; i++) {
+                        byte b = taskMemory.readByteFromTask(task.getId(), bufferAddr + i);
+                        if (b == 0)
+                            break; // Null terminator
+                        sb.append((char) b);
+                    }
+                } else {
+                    // Up to the next page boundary per read, so no page past
+                    // the terminator is touched
+                    byte[] chunk = new byte[Math.min(Math.max(count, 0), WRITE_CHUNK)];
+                    int done = 0;
+                    read: while (done < count) {
+                        int address = bufferAddr + done;
+                        int n = Math.min(count - done, WRITE_CHUNK - (address & (WRITE_CHUNK - 1)));
+                        kernel.getMemory().readBytes(address, chunk, 0, n);
+                        for (int i = 0; i < n; i++) {
+                            if (chunk[i] == 0)
+                                break read; // Null terminator
+                            sb.append((char) chunk[i]);
+                        }
+                        done += n;
                     }
-                    if (b == 0)
-                        break; // Null terminator
-                    sb.append((char) b);
                 }
 
                 String output = sb.toString();
@@ -380,10 +395,13 @@ public class SystemCallHandler {
             return -1;
         }
 
-        // 2. Load the file bytes
-        byte[] elfData;
+        // 2. Load the parsed image, cached across execs of the same file
+        ElfImage image;
         try {
-            elfData = Files.readAllBytes(Paths.get(fullPath));
+            image = ElfImageCache.shared().load(Paths.get(fullPath));
+        } catch (ElfException e) {
+            System.err.println("SYS_EXEC: Bad ELF format: " + e.getMessage());
+            return -1;
         } catch (Exception e) {
             System.err.println("SYS_EXEC: Failed to read file: " + fullPath);
             return -1;
@@ -394,13 +412,7 @@ public class SystemCallHandler {
             // Free old resources
             coordinator.freeMemory(task.getId());
 
-            int elfEndAddress = 0;
-            try {
-                elfEndAddress = ElfLoader.calculateRequiredMemory(elfData);
-            } catch (ElfException e) {
-                System.err.println("SYS_EXEC: Bad ELF format: " + e.getMessage());
-                return -1;
-            }
+            int elfEndAddress = image.getRequiredMemory();
 
             // Define a reasonable Heap size (e.g., 64KB or config based)
             int minHeapSize = 64 * 1024;
@@ -411,7 +423,7 @@ public class SystemCallHandler {
             var layout = coordinator.allocateMemory(task.getId(), requiredSize);
 
             // Load new program
-            ProgramInfo newInfo = coordinator.loadProgram(task.getId(), elfData);
+            ProgramInfo newInfo = coordinator.loadProgram(task.getId(), image);
 
             // 4. Setup Stack (Delegated!)
             // This works for Paging AND Contiguous now
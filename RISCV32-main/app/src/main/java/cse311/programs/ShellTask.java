@@ -5,7 +5,6 @@ import cse311.kernel.Kernel;
 import cse311.kernel.process.Task;
 import cse311.kernel.process.TaskState;
 
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Scanner;
 
@@ -93,10 +92,10 @@ public class ShellTask extends JavaTask {
             // (e.g., "hello_os.elf" from your App.java).
             String elfPath = "app/build/resources/main/" + cmd + ".elf";
 
-            byte[] elfData = Files.readAllBytes(Paths.get(elfPath));
+            ElfImage image = ElfImageCache.shared().load(Paths.get(elfPath));
 
             // This one call simulates fork() and exec()
-            Task childTask = kernel.createTask(elfData, cmd);
+            Task childTask = kernel.createTask(image, cmd);
             childTask.setParent(this); // Set us as the parent
             this.addChild(childTask);
 
@@ -0,0 +1,144 @@
+package cse311;
+
+import cse311.jit.CodeCache;
+import cse311.jit.TranslatedBlock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockCompilerTest {
+    private RV32Cpu cpu;
+    private MemoryManager memory;
+
+    private static final int LOOP_PC = 0x1000;
+
+    // x1 = 0; x2 = 100
+    // loop: x1 += x2; sw x1, 0x200(x0); lw x3, 0x200(x0); x2 -= 1; bne x2, x0, loop
+    private static final int[] SUM_LOOP = {
+            0x00000093, // addi x1, x0, 0
+            0x06400113, // addi x2, x0, 100
+            0x002080B3, // add  x1, x1, x2
+            0x20102023, // sw   x1, 0x200(x0)
+            0x20002183, // lw   x3, 0x200(x0)
+            0xFFF10113, // addi x2, x2, -1
+            0xFE0118E3, // bne  x2, x0, -16
+    };
+    private static final int LOOP_END = LOOP_PC + SUM_LOOP.length * 4;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        memory = new MemoryManager(new SimpleMemory(1024 * 1024));
+        cpu = new RV32Cpu(memory);
+        for (int i = 0; i < SUM_LOOP.length; i++) {
+            memory.writeWord(LOOP_PC + i * 4, SUM_LOOP[i]);
+        }
+    }
+
+    private int runToEnd(int budget) throws Exception {
+        cpu.setPc(LOOP_PC);
+        int retired = 0;
+        while (cpu.getProgramCounter() != LOOP_END) {
+            retired += cpu.stepBlock(budget);
+        }
+        return retired;
+    }
+
+    @Test
+    void testHotLoopIsCompiled() throws Exception {
+        int retired = runToEnd(1000);
+
+        assertEquals(5050, cpu.getRegister(1), "Sum of 1..100");
+        assertEquals(5050, cpu.getRegister(3), "Load should observe the compiled store");
+        assertEquals(2 + 100 * 5, retired, "Retired count must match the interpreter");
+        assertTrue(cpu.getCodeCache().getCompiledCount() > 0, "Loop body should have been compiled");
+    }
+
+    @Test
+    void testCompiledMatchesInterpreter() throws Exception {
+        cpu.setJitEnabled(false);
+        int interpreted = runToEnd(1000);
+        int[] expected = cpu.getRegisters();
+
+        cpu = new RV32Cpu(memory);
+        int compiled = runToEnd(1000);
+
+        assertArrayEquals(expected, cpu.getRegisters());
+        assertEquals(interpreted, compiled);
+    }
+
+    @Test
+    void testBudgetSmallerThanBlockFallsBackToInterpreter() throws Exception {
+        int retired = runToEnd(2);
+        assertEquals(5050, cpu.getRegister(1));
+        assertEquals(2 + 100 * 5, retired);
+    }
+
+    @Test
+    void testWriteToCompiledCodeDropsBlock() throws Exception {
+        runToEnd(1000);
+        assertTrue(cpu.getCodeCache().getCompiledCount() > 0);
+
+        // Rewrite "add x1, x1, x2" as "sub x1, x1, x2"
+        memory.writeWord(LOOP_PC + 8, 0x402080B3);
+        assertTrue(cpu.getCodeCache().getInvalidatedCount() > 0, "Write should invalidate the block");
+
+        runToEnd(1000);
+        assertEquals(-5050, cpu.getRegister(1), "CPU should execute the rewritten loop");
+    }
+
+    @Test
+    void testWriteToCompiledCodeAbove2GiBDropsBlock() throws Exception {
+        Path image = Files.createTempFile("ram", ".img");
+        // A sparse image: only the pages the loop touches are backed
+        try (MappedMemory ram = MappedMemory.open(image, 3L << 30, MappedMemory.Mode.SHARED)) {
+            memory = new MemoryManager(ram);
+            cpu = new RV32Cpu(memory);
+            int base = 0x80000000 + LOOP_PC;
+            for (int i = 0; i < SUM_LOOP.length; i++) {
+                memory.writeWord(base + i * 4, SUM_LOOP[i]);
+            }
+            runFrom(base);
+            assertEquals(5050, cpu.getRegister(1));
+            assertTrue(cpu.getCodeCache().getCompiledCount() > 0);
+
+            memory.writeWord(base + 8, 0x402080B3); // add -> sub
+            assertTrue(cpu.getCodeCache().getInvalidatedCount() > 0, "Write should invalidate the block");
+
+            runFrom(base);
+            assertEquals(-5050, cpu.getRegister(1), "CPU should execute the rewritten loop");
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    private void runFrom(int start) throws Exception {
+        int end = start + SUM_LOOP.length * 4;
+        cpu.setPc(start);
+        while (cpu.getProgramCounter() != end) {
+            cpu.stepBlock(1000);
+        }
+    }
+
+    @Test
+    void testHeadIsCompiledAgainForAnotherVirtualPc() {
+        CodeCache cache = new CodeCache(16, 3);
+        int physicalPc = 0x5000;
+        for (int i = 1; i < 3; i++) {
+            assertFalse(cache.countExecution(physicalPc));
+        }
+        assertTrue(cache.countExecution(physicalPc), "Head should become hot at the threshold");
+        cache.install(new TranslatedBlock(physicalPc, 0x1000, 1, null));
+
+        // The same code mapped at another virtual address misses the block
+        assertNull(cache.lookup(physicalPc, 0x2000));
+        for (int i = 1; i < 3; i++) {
+            assertFalse(cache.countExecution(physicalPc), "Install should restart the count");
+        }
+        assertTrue(cache.countExecution(physicalPc), "Second mapping should become hot too");
+        assertTrue(cache.countExecution(physicalPc), "Head stays hot until a block is installed");
+    }
+}
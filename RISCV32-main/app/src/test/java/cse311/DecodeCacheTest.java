@@ -0,0 +1,97 @@
+package cse311;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecodeCacheTest {
+    private RV32Cpu cpu;
+    private MemoryManager memory;
+
+    // ADDI x1, x0, 5 / ADDI x1, x0, 7
+    private static final int ADDI_X1_5 = 0x00500093;
+    private static final int ADDI_X1_7 = 0x00700093;
+
+    @BeforeEach
+    void setUp() {
+        memory = new MemoryManager(new SimpleMemory(1024 * 1024));
+        cpu = new RV32Cpu(memory);
+    }
+
+    @Test
+    void testCachedInstructionIsReused() throws Exception {
+        memory.writeWord(0x100, ADDI_X1_5);
+
+        cpu.setPc(0x100);
+        cpu.step();
+        assertEquals(5, cpu.getRegister(1), "First execution should decode ADDI");
+        assertTrue(memory.getDecodeCache().lookup(0x100) != 0, "Instruction should now be cached");
+
+        cpu.setRegister(1, 0);
+        cpu.setPc(0x100);
+        cpu.step();
+        assertEquals(5, cpu.getRegister(1), "Cached execution should give the same result");
+    }
+
+    @Test
+    void testWriteInvalidatesCachedInstruction() throws Exception {
+        memory.writeWord(0x100, ADDI_X1_5);
+        cpu.setPc(0x100);
+        cpu.step();
+        assertEquals(5, cpu.getRegister(1));
+
+        // Self-modifying write over the cached instruction
+        memory.writeWord(0x100, ADDI_X1_7);
+        assertEquals(0, memory.getDecodeCache().lookup(0x100), "Write should drop the cached entry");
+
+        cpu.setPc(0x100);
+        cpu.step();
+        assertEquals(7, cpu.getRegister(1), "CPU should execute the rewritten instruction");
+    }
+
+    @Test
+    void testMisalignedWriteInvalidatesBothWords() throws Exception {
+        SimpleMemory ram = new SimpleMemory(1024 * 1024);
+        ram.setMisalignedAccessAllowed(true);
+        memory = new MemoryManager(ram);
+        cpu = new RV32Cpu(memory);
+        memory.writeWord(0x108, ADDI_X1_5);
+        cpu.setPc(0x108);
+        cpu.step();
+
+        // Bytes 0x108-0x109 become 0x13 0x01: ADDI x2, x0, 5
+        memory.writeWord(0x106, 0x01130000);
+        assertEquals(0, memory.getDecodeCache().lookup(0x108), "Store should drop the second word too");
+
+        cpu.setPc(0x108);
+        cpu.step();
+        assertEquals(5, cpu.getRegister(2), "CPU should execute the rewritten instruction");
+    }
+
+    @Test
+    void testPageInvalidation() {
+        DecodeCache cache = new DecodeCache();
+        cache.fill(0x2004, 1, 42);
+        assertEquals(42, cache.immediate(0x2004));
+
+        cache.invalidatePage(0x2004 >>> DecodeCache.PAGE_SHIFT);
+        assertEquals(0, cache.lookup(0x2004), "Page invalidation should drop all entries");
+    }
+
+    @Test
+    void testBulkWriteInvalidatesCachedInstruction() throws Exception {
+        memory.writeWord(0x100, ADDI_X1_5);
+        cpu.setPc(0x100);
+        cpu.step();
+
+        byte[] code = { (byte) 0x93, 0x00, 0x70, 0x00 }; // ADDI x1, x0, 7
+        memory.writeBytes(0x100, code, 0, code.length);
+        cpu.setPc(0x100);
+        cpu.step();
+        assertEquals(7, cpu.getRegister(1), "writeBytes must drop the stale decode");
+
+        memory.copyPhysical(0x200, 0x100, 4); // Copy zeroes over it
+        assertEquals(0, memory.getDecodeCache().lookup(0x100));
+    }
+}
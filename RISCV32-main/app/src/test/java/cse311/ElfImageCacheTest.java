@@ -0,0 +1,80 @@
+package cse311;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElfImageCacheTest {
+    /**
+     * One read-only executable LOAD segment at 0x10000 holding a single nop.
+     */
+    private static byte[] minimalElf() {
+        return new byte[] {
+                0x7F, 0x45, 0x4C, 0x46, 0x01, 0x01, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x02, 0x00, (byte) 0xF3, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x34, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x34, 0x00, 0x20, 0x00, 0x01, 0x00, 0x28, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x01, 0x00, 0x00, 0x00, 0x54, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x04, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00, 0x05, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00,
+                0x13, 0x00, 0x00, 0x00
+        };
+    }
+
+    @Test
+    void testImagesAreReusedUntilTheFileChanges() throws Exception {
+        Path a = Files.createTempFile("a", ".elf");
+        Path b = Files.createTempFile("b", ".elf");
+        try {
+            Files.write(a, minimalElf());
+            Files.write(b, minimalElf());
+            int size = minimalElf().length;
+            ElfImageCache cache = new ElfImageCache(size + 1);
+
+            ElfImage image = cache.load(a);
+            assertEquals(0x10000, image.getEntryPoint());
+            assertEquals(0x11000, image.getRequiredMemory());
+            assertEquals(1, image.getSegments().size());
+            assertSame(image, cache.load(a));
+            assertEquals(1, cache.getHits());
+
+            // A rewritten file is parsed again
+            Files.write(a, new byte[] { 0 }, StandardOpenOption.APPEND);
+            ElfImage changed = cache.load(a);
+            assertNotSame(image, changed);
+            assertEquals(size + 1, changed.size());
+
+            // Only one image fits: loading another evicts it
+            cache.load(b);
+            assertEquals(1, cache.size());
+            assertEquals(size, cache.getBytes());
+            assertNotSame(changed, cache.load(a));
+            assertEquals(4, cache.getMisses());
+        } finally {
+            Files.deleteIfExists(a);
+            Files.deleteIfExists(b);
+        }
+    }
+
+    @Test
+    void testMappedImageIsLoadedWithoutAHeapCopy() throws Exception {
+        Path file = Files.createTempFile("nop", ".elf");
+        try {
+            Files.write(file, minimalElf());
+            ElfImage image = ElfImage.map(file);
+            assertTrue(image.getData().isDirect());
+            assertTrue(image.getData().isReadOnly());
+
+            MemoryManager memory = new MemoryManager(new SimpleMemory(1024 * 1024));
+            ElfLoader loader = new ElfLoader(memory);
+            loader.load(image);
+            assertEquals(0x00000013, memory.readWord(0x10000));
+            assertEquals(0x10000, loader.getEntryPoint());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cse311;
+
+import cse311.Enum.MemoryMode;
+import cse311.kernel.NonContiguous.NonContiguousMemoryCoordinator;
+import cse311.kernel.NonContiguous.paging.AddressSpace;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import cse311.kernel.process.Task;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyElfLoadingTest {
+    private static final int TEXT_VPN = AddressSpace.getVPN(0x10000);
+    private static final int DATA_VPN = AddressSpace.getVPN(0x20000);
+
+    /**
+     * A one-nop text segment at 0x10000 and a three-page data segment at
+     * 0x20000 whose first two pages come from the file and whose last is BSS.
+     */
+    private static byte[] elfWithData() {
+        ByteBuffer elf = ByteBuffer.allocate(0x78 + 0x1004).order(ByteOrder.LITTLE_ENDIAN);
+        elf.put(new byte[] { 0x7F, 0x45, 0x4C, 0x46, 0x01, 0x01, 0x01, 0x00 });
+        elf.position(16);
+        elf.putShort((short) 2).putShort((short) 0xF3).putInt(1); // ET_EXEC, RISC-V
+        elf.putInt(0x10000).putInt(0x34).putInt(0).putInt(0); // Entry, phoff, shoff, flags
+        elf.putShort((short) 0x34).putShort((short) 0x20).putShort((short) 2); // ehsize, phentsize, phnum
+        elf.putShort((short) 0x28).putShort((short) 0).putShort((short) 0);
+        // PT_LOAD: type, offset, vaddr, paddr, filesz, memsz, flags, align
+        elf.putInt(1).putInt(0x74).putInt(0x10000).putInt(0x10000).putInt(4).putInt(4).putInt(5).putInt(0x1000);
+        elf.putInt(1).putInt(0x78).putInt(0x20000).putInt(0x20000).putInt(0x1004).putInt(0x3000).putInt(6)
+                .putInt(0x1000);
+        elf.putInt(0x74, 0x00000013); // nop
+        elf.putInt(0x78, 0xDEADBEEF);
+        elf.putInt(0x78 + 0x1000, 0xCAFEBABE);
+        return elf.array();
+    }
+
+    @Test
+    void testSegmentPagesAreLoadedOnFirstTouch() throws Exception {
+        RV32Computer computer = new RV32Computer(4 * 1024 * 1024, 4, MemoryMode.PAGING);
+        ((NonContiguousMemoryCoordinator) computer.getKernel().getMemoryCoordinator()).setLazyLoading(true);
+        PagedMemoryManager pmm = (PagedMemoryManager) computer.getMemoryManager();
+
+        Task a = computer.createTask(elfWithData(), "a");
+        AddressSpace as = pmm.getAddressSpace(a.getId());
+        assertFalse(as.isPagePresent(TEXT_VPN));
+        assertFalse(as.isPagePresent(DATA_VPN));
+        assertFalse(as.isPagePresent(DATA_VPN + 2));
+
+        pmm.switchTo(as);
+        assertEquals(0xDEADBEEF, pmm.readWord(0x20000));
+        assertEquals(0, pmm.readWord(0x22000)); // BSS
+        assertFalse(as.isPagePresent(DATA_VPN + 1));
+        assertEquals(0x00000013, pmm.readWord(0x10000));
+        assertEquals(1, pmm.getCachedTextPages());
+
+        // A second process maps the text page from the cache
+        Task b = computer.createTask(elfWithData(), "b");
+        pmm.switchTo(pmm.getAddressSpace(b.getId()));
+        assertEquals(0x00000013, pmm.readWord(0x10000));
+        assertEquals(as.getFrameNumber(TEXT_VPN), pmm.getAddressSpace(b.getId()).getFrameNumber(TEXT_VPN));
+
+        // A forked child loads pages its parent never touched
+        AddressSpace child = pmm.createAddressSpace(99);
+        pmm.copyAddressSpace(as, child);
+        pmm.switchTo(child);
+        assertEquals(0xCAFEBABE, pmm.readWord(0x21000));
+        assertEquals(0xDEADBEEF, pmm.readWord(0x20000));
+    }
+}
@@ -0,0 +1,55 @@
+package cse311;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMemoryTest {
+    private static final int SIZE = 256 * 1024;
+
+    @Test
+    void testSharedImageSurvivesReopen() throws Exception {
+        Path image = Files.createTempFile("ram", ".img");
+        try {
+            try (MappedMemory ram = MappedMemory.open(image, SIZE, MappedMemory.Mode.SHARED)) {
+                ram.writeWord(0x1000, 0xDEADBEEF);
+                ram.writeBytes(SIZE - 4, new byte[] { 1, 2, 3, 4 }, 0, 4);
+            }
+            assertEquals(SIZE, Files.size(image));
+
+            try (MappedMemory ram = MappedMemory.open(image, SIZE, MappedMemory.Mode.SHARED)) {
+                assertEquals(0xDEADBEEF, ram.readWord(0x1000));
+                assertEquals(0x04030201, ram.readWord(SIZE - 4));
+            }
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    void testPrivateMappingLeavesImageUnchanged() throws Exception {
+        Path image = Files.createTempFile("ram", ".img");
+        try {
+            try (MappedMemory ram = MappedMemory.open(image, SIZE, MappedMemory.Mode.SHARED)) {
+                ram.writeWord(0x2000, 7);
+            }
+
+            try (MappedMemory ram = MappedMemory.open(image, SIZE, MappedMemory.Mode.PRIVATE)) {
+                assertEquals(7, ram.readWord(0x2000), "Private mapping boots from the image");
+                ram.writeWord(0x2000, 8);
+                assertEquals(8, ram.readWord(0x2000));
+            }
+
+            try (MappedMemory ram = MappedMemory.open(image, SIZE, MappedMemory.Mode.PRIVATE)) {
+                assertEquals(7, ram.readWord(0x2000), "Private writes must not reach the file");
+            }
+            assertThrows(IOException.class, () -> MappedMemory.open(image, SIZE * 2, MappedMemory.Mode.PRIVATE));
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cse311;
+
+import cse311.Exception.MemoryAccessException;
+import cse311.kernel.NonContiguous.paging.ClockPolicy;
+import cse311.kernel.NonContiguous.paging.DemandPager;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapMemoryTest {
+
+    @Test
+    void testMatchesHeapMemory() throws Exception {
+        SimpleMemory heap = new SimpleMemory(64 * 1024);
+        SimpleMemory offHeap = new OffHeapMemory(64 * 1024);
+
+        for (SimpleMemory m : new SimpleMemory[] { heap, offHeap }) {
+            m.writeWord(0x100, 0x12345678);
+            m.writeHalfWord(0x106, (short) 0xBEEF);
+            m.writeByte(0x80000108, (byte) 0x7F); // Folds onto 0x108
+        }
+        for (int a = 0x100; a < 0x10C; a++) {
+            assertEquals(heap.readByte(a), offHeap.readByte(a), "Byte at 0x" + Integer.toHexString(a));
+        }
+        assertEquals(0x12345678, offHeap.readWord(0x80000100));
+        assertThrows(MemoryAccessException.class, () -> offHeap.readWord(0x102));
+        assertThrows(MemoryAccessException.class, () -> offHeap.readWord(64 * 1024));
+        assertThrows(UnsupportedOperationException.class, offHeap::getMemory);
+    }
+
+    @Test
+    void testOverlappingCopyAndFill() throws Exception {
+        SimpleMemory m = new OffHeapMemory(256 * 1024);
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        m.writeBytes(0x1000, data, 0, data.length);
+
+        // Destination overlaps the tail of the source, as compaction can do
+        m.copy(0x1000, 0x1800, data.length);
+        byte[] back = new byte[data.length];
+        m.readBytes(0x1800, back, 0, back.length);
+        assertArrayEquals(data, back);
+
+        m.fill(0x1800, 16, (byte) 0x5A);
+        assertEquals(0x5A5A5A5A, m.readWord(0x180C));
+        m.clear();
+        assertEquals(0, m.readWord(0x180C));
+    }
+
+    @Test
+    void testPagingOverOffHeapMemory() throws Exception {
+        PagedMemoryManager mm = new PagedMemoryManager(new OffHeapMemory(1024 * 1024));
+        mm.setPager(new DemandPager(mm, new ClockPolicy(mm.getTotalFrames())));
+        mm.switchTo(mm.createAddressSpace(1));
+
+        mm.writeWord(0x20000, 0xCAFEBABE);
+        assertEquals(0xCAFEBABE, mm.readWord(0x20000));
+        assertEquals(256, mm.getTotalFrames());
+    }
+}
@@ -0,0 +1,295 @@
+package cse311;
+
+import cse311.kernel.NonContiguous.paging.AddressSpace;
+import cse311.kernel.NonContiguous.paging.ClockPolicy;
+import cse311.kernel.NonContiguous.paging.DemandPager;
+import cse311.kernel.NonContiguous.paging.FaultAround;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedMemoryManagerTest {
+    private PagedMemoryManager mm;
+    private AddressSpace as1;
+    private AddressSpace as2;
+
+    private static final int CODE_VA = 0x10000;
+    private static final int DATA_VA = 0x20000;
+
+    @BeforeEach
+    void setUp() {
+        mm = new PagedMemoryManager(1024 * 1024);
+        mm.setPager(new DemandPager(mm, new ClockPolicy(mm.getTotalFrames())));
+        as1 = mm.createAddressSpace(1);
+        as2 = mm.createAddressSpace(2);
+    }
+
+    @Test
+    void testFetchTranslationFollowsAddressSpaceSwitch() throws Exception {
+        mm.switchTo(as1);
+        mm.writeWord(CODE_VA, 0x11111111);
+        int pa1 = mm.translateInstructionAddress(CODE_VA + 4);
+
+        mm.switchTo(as2);
+        mm.writeWord(CODE_VA, 0x22222222);
+        int pa2 = mm.translateInstructionAddress(CODE_VA);
+
+        assertNotEquals(pa1 >>> 12, pa2 >>> 12, "Each address space has its own code frame");
+        assertEquals(0x22222222, mm.readInstructionWord(pa2));
+
+        mm.switchTo(as1);
+        assertEquals(0x11111111, mm.readInstructionWord(mm.translateInstructionAddress(CODE_VA)));
+    }
+
+    @Test
+    void testMisalignedAccessAcrossPagesTranslatesEachPage() throws Exception {
+        SimpleMemory ram = new SimpleMemory(1024 * 1024);
+        ram.setMisalignedAccessAllowed(true);
+        mm = new PagedMemoryManager(ram);
+        mm.setPager(new DemandPager(mm, new ClockPolicy(mm.getTotalFrames())));
+        as1 = mm.createAddressSpace(1);
+        mm.switchTo(as1);
+
+        mm.writeByte(DATA_VA + 0x1000, (byte) 0); // Map the second page first
+        mm.writeWord(DATA_VA + 0xFFE, 0x11223344);
+        assertEquals((short) 0x1122, mm.readHalfWord(DATA_VA + 0x1000));
+        assertEquals(0x11223344, mm.readWord(DATA_VA + 0xFFE));
+        mm.writeHalfWord(DATA_VA + 0x1FFF, (short) 0x5566);
+        assertEquals(0x55, mm.readByte(DATA_VA + 0x2000));
+        assertEquals((short) 0x5566, mm.readHalfWord(DATA_VA + 0x1FFF));
+    }
+
+    @Test
+    void testFetchTranslationDroppedOnUnmap() throws Exception {
+        mm.switchTo(as1);
+        int before = mm.translateInstructionAddress(CODE_VA);
+        assertEquals(before, mm.translateInstructionAddress(CODE_VA), "Second fetch should hit");
+
+        // Unmapping (as eviction does) must force a new fault on the next fetch
+        int vpn = AddressSpace.getVPN(CODE_VA);
+        as1.unmapPage(vpn);
+        int after = mm.translateInstructionAddress(CODE_VA);
+
+        assertTrue(as1.isPagePresent(vpn), "Fetch should have faulted the page back in");
+        assertEquals(as1.getFrameNumber(vpn), after >>> 12, "Fetch must use the new frame");
+        assertNotEquals(before >>> 12, after >>> 12);
+    }
+
+    @Test
+    void testDataTlbHitsAfterFirstTouch() throws Exception {
+        mm.switchTo(as1);
+        long misses = mm.getTlbMisses();
+        for (int i = 0; i < 16; i++) {
+            mm.writeWord(DATA_VA + i * 4, i);
+        }
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, mm.readWord(DATA_VA + i * 4));
+        }
+
+        assertEquals(misses + 1, mm.getTlbMisses(), "Only the first store should go to the pager");
+        assertTrue(mm.getTlbHits() >= 31);
+    }
+
+    @Test
+    void testStoreAfterLoadMarksPageDirty() throws Exception {
+        mm.switchTo(as1);
+        int vpn = AddressSpace.getVPN(DATA_VA);
+        mm.readWord(DATA_VA);
+        assertFalse(as1.getPageStats(vpn).dirty);
+
+        // The read entry must not satisfy a store, or D would never be set
+        mm.writeWord(DATA_VA, 42);
+        assertTrue(as1.getPageStats(vpn).dirty);
+        assertEquals(42, mm.readWord(DATA_VA));
+    }
+
+    @Test
+    void testDataTlbFlushedOnSwitchAndUnmap() throws Exception {
+        mm.switchTo(as1);
+        mm.writeWord(DATA_VA, 0x1111);
+        mm.switchTo(as2);
+        assertEquals(0, mm.readWord(DATA_VA), "Address space 2 must not see address space 1's frame");
+        mm.writeWord(DATA_VA, 0x2222);
+
+        mm.switchTo(as1);
+        assertEquals(0x1111, mm.readWord(DATA_VA));
+
+        as1.unmapPage(AddressSpace.getVPN(DATA_VA));
+        assertEquals(0, mm.readWord(DATA_VA), "Unmapped page should fault in as a fresh zero page");
+    }
+
+    @Test
+    void testCopyAddressSpaceCopiesPrivateAndSharesSharedPages() throws Exception {
+        mm.switchTo(as1);
+        mm.writeWord(DATA_VA, 0x1234);
+        int sharedFrame = mm.openSharedRegion(7);
+        int sharedVpn = AddressSpace.getVPN(0x40000);
+        assertTrue(mm.mapSharedPage(as1, sharedVpn, sharedFrame, true));
+
+        mm.copyAddressSpace(as1, as2);
+        int dataVpn = AddressSpace.getVPN(DATA_VA);
+        assertEquals(as1.getFrameNumber(dataVpn), as2.getFrameNumber(dataVpn), "Fork shares private pages COW");
+        assertEquals(sharedFrame, as2.getFrameNumber(sharedVpn));
+
+        mm.switchTo(as2);
+        assertEquals(0x1234, mm.readWord(DATA_VA));
+        mm.writeWord(DATA_VA, 0x5678);
+        mm.writeWord(0x40000, 99);
+        assertNotEquals(as1.getFrameNumber(dataVpn), as2.getFrameNumber(dataVpn), "First write copies the page");
+        assertEquals(1, mm.getCopyOnWriteCopies());
+
+        mm.switchTo(as1);
+        assertEquals(0x1234, mm.readWord(DATA_VA), "Private pages are copied");
+        assertEquals(99, mm.readWord(0x40000), "Shared pages are not");
+    }
+
+    @Test
+    void testParentWriteAfterChildExitTakesFrameBack() throws Exception {
+        mm.switchTo(as1);
+        mm.writeWord(DATA_VA, 1);
+        int vpn = AddressSpace.getVPN(DATA_VA);
+        int frame = as1.getFrameNumber(vpn);
+
+        mm.copyAddressSpace(as1, as2);
+        mm.destroyAddressSpace(2); // exec right after fork drops the child's mappings
+
+        mm.writeWord(DATA_VA, 2);
+        assertEquals(frame, as1.getFrameNumber(vpn), "Sole owner should not copy");
+        assertFalse(as1.isCopyOnWrite(vpn));
+        assertEquals(0, mm.getCopyOnWriteCopies());
+        assertEquals(2, mm.readWord(DATA_VA));
+    }
+
+    @Test
+    void testBulkAccessSpansPages() throws Exception {
+        mm.switchTo(as1);
+        byte[] data = new byte[6000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        int va = DATA_VA + 0xF00; // Crosses into a second and a third page
+        mm.writeBytes(va, data, 0, data.length);
+        assertEquals(data[0x100], mm.readByte(DATA_VA + 0x1000), "Second page should hold the next chunk");
+
+        byte[] back = new byte[data.length];
+        mm.readBytes(va, back, 0, back.length);
+        assertArrayEquals(data, back);
+    }
+
+    @Test
+    void testFaultAroundMapsSequentialStreamsAhead() throws Exception {
+        mm.switchTo(as1);
+        int pages = 128;
+        for (int i = 0; i < pages; i++) {
+            mm.writeWord(DATA_VA + i * 4096, i);
+        }
+        for (int i = 0; i < pages; i++) {
+            assertEquals(i, mm.readWord(DATA_VA + i * 4096));
+        }
+
+        FaultAround stats = ((DemandPager) mm.getPager()).getFaultAroundStats(1);
+        assertTrue(stats.getFaults() <= pages / 10, "Streaming should fault rarely: " + stats);
+        assertTrue(stats.getUsed() >= pages - stats.getFaults() - 1, stats.toString());
+        assertEquals(0, stats.getWasted());
+    }
+
+    @Test
+    void testFaultAroundMapsAheadAbove2GiB() throws Exception {
+        mm.switchTo(as1);
+        int base = 0x80000000 + DATA_VA;
+        for (int i = 0; i < 32; i++) {
+            mm.writeWord(base + i * 4096, i);
+        }
+
+        FaultAround stats = ((DemandPager) mm.getPager()).getFaultAroundStats(1);
+        assertTrue(stats.getFaults() < 32 / 2, "High addresses should be mapped ahead too: " + stats);
+    }
+
+    @Test
+    void testFaultAroundDisabled() throws Exception {
+        DemandPager pager = (DemandPager) mm.getPager();
+        pager.setFaultAround(0);
+        mm.switchTo(as1);
+        for (int i = 0; i < 32; i++) {
+            mm.writeWord(DATA_VA + i * 4096, i);
+        }
+
+        assertNull(pager.getFaultAroundStats(1));
+        assertFalse(as1.isPagePresent(AddressSpace.getVPN(DATA_VA + 32 * 4096)), "Nothing mapped ahead");
+    }
+
+    @Test
+    void testFrameAllocatorReusesLastFreedFrameAndBatches() {
+        int free = mm.getFreeFrameCount();
+        int frame = mm.allocateFrame();
+        mm.freeFrame(frame);
+        mm.freeFrame(frame); // A second free of a free frame is ignored
+        assertEquals(free, mm.getFreeFrameCount());
+        assertEquals(frame, mm.allocateFrame(), "Most recently freed frame comes back first");
+        mm.freeFrame(frame);
+
+        int[] frames = new int[8];
+        assertEquals(8, mm.allocateFrames(frames, 8));
+        assertEquals(free - 8, mm.getFreeFrameCount());
+        assertEquals(8, java.util.Arrays.stream(frames).distinct().count());
+        mm.freeFrames(frames, 8);
+        assertEquals(free, mm.getFreeFrameCount());
+
+        int[] all = new int[free + 1];
+        assertEquals(free, mm.allocateFrames(all, free + 1), "Batch stops when memory runs out");
+        assertEquals(-1, mm.allocateFrame());
+    }
+
+    @Test
+    void testDestroyReturnsFramesAndSharedKeys() throws Exception {
+        int free = mm.getFreeFrameCount();
+        mm.switchTo(as1);
+        for (int i = 0; i < 8; i++) {
+            mm.writeWord(DATA_VA + i * 4096, i);
+        }
+        int sharedFrame = mm.openSharedRegion(42);
+        mm.writePhysical(sharedFrame * 4096, new byte[] { 7 }, 0, 1);
+        mm.copyAddressSpace(as1, as2);
+
+        mm.destroyAddressSpace(2);
+        mm.destroyAddressSpace(1);
+        mm.freeFrame(sharedFrame);
+
+        assertEquals(free, mm.getFreeFrameCount(), "Every data, page-table and shared frame is back");
+        byte[] first = new byte[1];
+        mm.readPhysical(mm.openSharedRegion(42) * 4096, first, 0, 1);
+        assertEquals(0, first[0], "A freed region's key opens a fresh zeroed frame");
+    }
+
+    @Test
+    void testReadsOfUntouchedPagesShareTheZeroPage() throws Exception {
+        int initial = mm.getFreeFrameCount();
+        mm.switchTo(as1);
+        mm.writeWord(DATA_VA, 1); // Page table for the region
+        int free = mm.getFreeFrameCount();
+
+        int base = DATA_VA + 0x100000;
+        for (int i = 0; i < 64; i++) {
+            assertEquals(0, mm.readWord(base + i * 4096));
+        }
+        assertEquals(free - 1, mm.getFreeFrameCount(), "Only the zero page itself is allocated");
+        int zero = mm.getZeroFrame();
+        assertEquals(zero, as1.getFrameNumber(AddressSpace.getVPN(base)));
+
+        mm.writeWord(base + 4096, 77);
+        assertEquals(77, mm.readWord(base + 4096));
+        assertEquals(0, mm.readWord(base + 2 * 4096), "Neighbours still read zero");
+        assertNotEquals(zero, as1.getFrameNumber(AddressSpace.getVPN(base + 4096)));
+        assertEquals(1, mm.getZeroFills());
+        assertEquals(0, mm.getCopyOnWriteCopies());
+
+        // Fork and exit leave the zero page in place
+        mm.copyAddressSpace(as1, as2);
+        mm.destroyAddressSpace(2);
+        mm.destroyAddressSpace(1);
+        assertEquals(initial - 1, mm.getFreeFrameCount(), "Data and table frames come back; the zero page stays");
+    }
+}
@@ -139,4 +139,56 @@ public class RV32iCpuCSRTest {
         // Check that mcause contains the exception cause
         assertEquals(2, cpu.readCSRTest(RV32Cpu.MCAUSE), "mcause should contain the exception cause");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReadOnlyAndWarlBits() throws Exception {
+        // CSRRW x1, misa, x2: misa is fixed, the write is ignored
+        int misa = cpu.readCSRTest(RV32Cpu.MISA);
+        cpu.setRegister(2, 0x12345678);
+        cpu.testExecuteInstruction(0x301110F3);
+        assertEquals(misa, cpu.getRegister(1), "x1 should contain misa");
+        assertEquals(misa, cpu.readCSRTest(RV32Cpu.MISA), "misa should ignore writes");
+
+        // CSRRW x0, mepc, x2: the low two bits of mepc always read as zero
+        cpu.setRegister(2, 0x1003);
+        cpu.testExecuteInstruction(0x34111073);
+        assertEquals(0x1000, cpu.readCSRTest(RV32Cpu.MEPC), "mepc should be 4-byte aligned");
+    }
+
+    @Test
+    public void testSstatusWriteUpdatesMstatus() throws Exception {
+        // CSRRW x0, sstatus, x2 with SPP and SIE set
+        cpu.setRegister(2, 0x102);
+        cpu.testExecuteInstruction(0x10011073);
+        assertEquals(0x1902, cpu.readCSRTest(RV32Cpu.MSTATUS), "S-mode bits should be merged into mstatus");
+
+        // CSRRW x0, sstatus, x2 with every bit set, then CSRRS x3, sstatus, x0
+        cpu.setRegister(2, -1);
+        cpu.testExecuteInstruction(0x10011073);
+        cpu.testExecuteInstruction(0x100021F3);
+        assertEquals(0x000C0122, cpu.getRegister(3), "sstatus should read back only its S-mode bits");
+        assertEquals(0x000C1922, cpu.readCSRTest(RV32Cpu.MSTATUS), "Only S-mode bits should reach mstatus");
+    }
+
+    @Test
+    public void testUserModeCSRAccessTraps() throws Exception {
+        cpu.writeCSRTest(RV32Cpu.MTVEC, 0x2000);
+
+        // Drop to U-mode through MRET with MPP = 0
+        cpu.writeCSRTest(RV32Cpu.MSTATUS, 0x0);
+        cpu.writeCSRTest(RV32Cpu.MEPC, 0x1000);
+        cpu.testExecuteInstruction(0b00110000001000000000000001110011);
+        assertEquals(RV32Cpu.PRIVILEGE_USER, cpu.getPrivilegeMode());
+
+        // CSRRS x1, cycle, x0 is a legal read from U-mode
+        cpu.resetFlags();
+        cpu.testExecuteInstruction(0xC00020F3);
+        assertFalse(cpu.isException(), "Reading a user-level counter should not trap");
+
+        // CSRRS x1, mstatus, x0 needs M-mode
+        cpu.testExecuteInstruction(0x300020F3);
+        assertTrue(cpu.isException(), "Accessing mstatus from U-mode should trap");
+        assertEquals(2, cpu.readCSRTest(RV32Cpu.MCAUSE), "Cause should be illegal instruction");
+        assertEquals(RV32Cpu.PRIVILEGE_MACHINE, cpu.getPrivilegeMode());
+    }
+}
@@ -0,0 +1,92 @@
+package cse311;
+
+import cse311.kernel.NonContiguous.paging.AddressSpace;
+import cse311.kernel.NonContiguous.paging.DemandPager;
+import cse311.kernel.NonContiguous.paging.PageTrace;
+import cse311.kernel.NonContiguous.paging.PageTraceBenchmark;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import cse311.kernel.NonContiguous.paging.PagingConfiguration;
+import cse311.kernel.NonContiguous.paging.PagingConfiguration.Policy;
+import cse311.kernel.NonContiguous.paging.ReplacementPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplacementPolicyTest {
+    private static final Policy[] POLICIES = { Policy.CLOCK, Policy.LRU, Policy.WSCLOCK, Policy.TWO_QUEUE,
+            Policy.ARC };
+
+    @Test
+    void testEveryPolicyPagesBeyondPhysicalMemory() throws Exception {
+        for (Policy policy : POLICIES) {
+            PagedMemoryManager mm = new PagedMemoryManager(256 * 1024); // 64 frames
+            PagingConfiguration.configure(mm, Policy.DEMAND, policy);
+            AddressSpace as = mm.createAddressSpace(1);
+            mm.switchTo(as);
+
+            for (int page = 0; page < 200; page++) {
+                mm.writeWord(0x10000 + page * 4096, page);
+            }
+            int last = 0x10000 + 199 * 4096;
+            assertEquals(199, mm.readWord(last), policy + " keeps the page just written");
+        }
+    }
+
+    @Test
+    void testPolicySeesRecordedTrace() throws Exception {
+        PagedMemoryManager mm = new PagedMemoryManager(256 * 1024);
+        PagingConfiguration.configure(mm, Policy.DEMAND, Policy.ARC);
+        PageTrace trace = new PageTrace();
+        ((DemandPager) mm.getPager()).setTraceRecorder(trace);
+        AddressSpace as = mm.createAddressSpace(7);
+        mm.switchTo(as);
+
+        mm.writeWord(0x10000, 1);
+        mm.readWord(0x20000);
+
+        assertTrue(trace.size() >= 2);
+        assertEquals(7, trace.pid(0));
+        assertEquals(AddressSpace.getVPN(0x10000), trace.vpn(0));
+        assertTrue(trace.isWrite(0));
+        assertFalse(trace.isWrite(trace.size() - 1));
+    }
+
+    @Test
+    void testScanResistantPoliciesKeepHotSet() {
+        int frames = 64;
+        PageTrace trace = PageTraceBenchmark.hotSetWithScan(frames, new Random(1));
+
+        long lru = faults(trace, Policy.LRU, frames);
+        long twoQueue = faults(trace, Policy.TWO_QUEUE, frames);
+        long arc = faults(trace, Policy.ARC, frames);
+
+        // The cold scan alone faults on a fifth of all references
+        assertTrue(twoQueue < lru, "2Q " + twoQueue + " vs aging LRU " + lru);
+        assertTrue(arc < lru, "ARC " + arc + " vs aging LRU " + lru);
+    }
+
+    @Test
+    void testPoliciesOnlyPickEvictableFrames() {
+        for (Policy policy : POLICIES) {
+            ReplacementPolicy repl = PagingConfiguration.createReplacementPolicy(policy, 16);
+            for (int frame = 0; frame < 16; frame++) {
+                repl.onMap(frame, ReplacementPolicy.pageKey(1, frame));
+                repl.onAccess(frame);
+            }
+            for (int round = 0; round < 32; round++) {
+                int victim = repl.pickVictim(frame -> frame % 4 == 3, frame -> false);
+                assertEquals(3, victim % 4, policy + " picked pinned frame " + victim);
+                repl.onUnmap(victim);
+                repl.onMap(victim, ReplacementPolicy.pageKey(1, 100 + round));
+            }
+            assertEquals(-1, repl.pickVictim(frame -> false), policy + " with nothing evictable");
+        }
+    }
+
+    private static long faults(PageTrace trace, Policy policy, int frames) {
+        return PageTraceBenchmark.replay(trace, PagingConfiguration.createReplacementPolicy(policy, frames), frames)
+                .getFaults();
+    }
+}
@@ -0,0 +1,75 @@
+package cse311;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RunLoopTest {
+    private RV32Cpu cpu;
+    private MemoryManager memory;
+
+    private static final int ADDI_X1_1 = 0x00108093; // addi x1, x1, 1
+    private static final int ECALL = 0x00000073;
+    private static final int WFI = 0x10500073;
+
+    @BeforeEach
+    void setUp() {
+        memory = new MemoryManager(new SimpleMemory(1024 * 1024));
+        cpu = new RV32Cpu(memory);
+    }
+
+    private void load(int... program) throws Exception {
+        for (int i = 0; i < program.length; i++) {
+            memory.writeWord(0x100 + i * 4, program[i]);
+        }
+        cpu.setPc(0x100);
+    }
+
+    @Test
+    void testRunStopsAtEcall() throws Exception {
+        load(ADDI_X1_1, ADDI_X1_1, ADDI_X1_1, ECALL, ADDI_X1_1);
+
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(100));
+        assertEquals(4, cpu.getRetiredInstructions(), "ECALL itself counts as retired");
+        assertEquals(3, cpu.getRegister(1));
+        assertEquals(0x110, cpu.getProgramCounter(), "PC should point past the ECALL");
+        assertFalse(cpu.isEcall(), "run() consumes the ECALL flag");
+    }
+
+    @Test
+    void testRunExpiresSlice() throws Exception {
+        load(ADDI_X1_1, ADDI_X1_1, ADDI_X1_1, ADDI_X1_1, ECALL);
+
+        assertEquals(RV32Cpu.EXIT_SLICE_EXPIRED, cpu.run(2));
+        assertEquals(2, cpu.getRetiredInstructions());
+        assertEquals(2, cpu.getRegister(1));
+
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(10));
+        assertEquals(3, cpu.getRetiredInstructions());
+    }
+
+    @Test
+    void testRunReportsException() throws Exception {
+        load(ADDI_X1_1, 0xFE000033); // Second word is an invalid R-type
+
+        assertEquals(RV32Cpu.EXIT_EXCEPTION, cpu.run(100));
+        assertEquals(2, cpu.getRetiredInstructions());
+    }
+
+    @Test
+    void testRunStopsAtWfi() throws Exception {
+        load(ADDI_X1_1, WFI, ADDI_X1_1);
+
+        assertEquals(RV32Cpu.EXIT_WFI, cpu.run(100));
+        assertEquals(2, cpu.getRetiredInstructions());
+        assertEquals(1, cpu.getRegister(1));
+    }
+
+    @Test
+    void testRunHaltsOnSelfLoop() throws Exception {
+        load(0x0000006F); // jal x0, 0
+
+        assertEquals(RV32Cpu.EXIT_HALT, cpu.run(100000));
+    }
+}
@@ -0,0 +1,58 @@
+package cse311;
+
+import cse311.Enum.MemoryMode;
+import cse311.kernel.NonContiguous.paging.AddressSpace;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import cse311.kernel.process.Task;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedTextTest {
+    private static final int TEXT_VPN = AddressSpace.getVPN(0x10000);
+
+    /**
+     * One read-only executable LOAD segment at 0x10000 holding a single nop.
+     */
+    private static byte[] minimalElf() {
+        return new byte[] {
+                0x7F, 0x45, 0x4C, 0x46, 0x01, 0x01, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x02, 0x00, (byte) 0xF3, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x34, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x34, 0x00, 0x20, 0x00, 0x01, 0x00, 0x28, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x01, 0x00, 0x00, 0x00, 0x54, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x04, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00, 0x05, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00,
+                0x13, 0x00, 0x00, 0x00
+        };
+    }
+
+    @Test
+    void testProcessesRunningTheSameImageShareText() throws Exception {
+        RV32Computer computer = new RV32Computer(4 * 1024 * 1024, 4, MemoryMode.PAGING);
+        PagedMemoryManager pmm = (PagedMemoryManager) computer.getMemoryManager();
+        Task a = computer.createTask(minimalElf(), "a");
+        Task b = computer.createTask(minimalElf(), "b");
+
+        int frame = pmm.getAddressSpace(a.getId()).getFrameNumber(TEXT_VPN);
+        assertEquals(frame, pmm.getAddressSpace(b.getId()).getFrameNumber(TEXT_VPN));
+        assertEquals(1, pmm.getCachedTextPages());
+
+        // A write gives the writer its own copy
+        pmm.switchTo(pmm.getAddressSpace(a.getId()));
+        pmm.writeWord(0x10000, 0x12345678);
+        assertNotEquals(frame, pmm.getAddressSpace(a.getId()).getFrameNumber(TEXT_VPN));
+        pmm.switchTo(pmm.getAddressSpace(b.getId()));
+        assertEquals(0x00000013, pmm.readWord(0x10000));
+
+        // The cache outlives the processes, then gives way under pressure
+        pmm.destroyAddressSpace(a.getId());
+        pmm.destroyAddressSpace(b.getId());
+        Task c = computer.createTask(minimalElf(), "c");
+        assertEquals(frame, pmm.getAddressSpace(c.getId()).getFrameNumber(TEXT_VPN));
+        pmm.destroyAddressSpace(c.getId());
+
+        while (pmm.allocateFrame() >= 0) {
+        }
+        assertEquals(0, pmm.getCachedTextPages());
+    }
+}
@@ -0,0 +1,50 @@
+package cse311;
+
+import cse311.Exception.MemoryAccessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimpleMemoryTest {
+    private SimpleMemory memory;
+
+    @BeforeEach
+    void setUp() {
+        memory = new SimpleMemory(64 * 1024);
+    }
+
+    @Test
+    void testWordsAreLittleEndian() throws Exception {
+        memory.writeWord(0x100, 0x12345678);
+        assertEquals(0x78, memory.readByte(0x100));
+        assertEquals(0x12, memory.readByte(0x103));
+        assertEquals((short) 0x5678, memory.readHalfWord(0x100));
+        assertEquals((short) 0x1234, memory.readHalfWord(0x102));
+
+        memory.writeHalfWord(0x200, (short) 0xBEEF);
+        assertEquals((byte) 0xEF, memory.readByte(0x200));
+        assertEquals(0x0000BEEF, memory.readWord(0x200));
+    }
+
+    @Test
+    void testMisalignedAccess() throws Exception {
+        assertThrows(MemoryAccessException.class, () -> memory.readWord(0x101));
+        assertThrows(MemoryAccessException.class, () -> memory.writeHalfWord(0x101, (short) 1));
+
+        memory.setMisalignedAccessAllowed(true);
+        memory.writeWord(0x101, 0xA1B2C3D4);
+        assertEquals(0xA1B2C3D4, memory.readWord(0x101));
+        assertEquals((byte) 0xD4, memory.readByte(0x101));
+    }
+
+    @Test
+    void testAccessPastEndIsRejected() throws Exception {
+        int last = 64 * 1024 - 4;
+        memory.writeWord(last, 7);
+        assertEquals(7, memory.readWord(last));
+
+        memory.setMisalignedAccessAllowed(true);
+        assertThrows(MemoryAccessException.class, () -> memory.readWord(last + 2));
+    }
+}
@@ -0,0 +1,81 @@
+package cse311;
+
+import cse311.Enum.MemoryMode;
+import cse311.kernel.Kernel;
+import cse311.kernel.process.Task;
+import cse311.kernel.process.TaskState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+    private static final int MEM_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * One LOAD segment at 0x10000 holding a single nop.
+     */
+    private static byte[] minimalElf() {
+        return new byte[] {
+                0x7F, 0x45, 0x4C, 0x46, 0x01, 0x01, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x02, 0x00, (byte) 0xF3, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x34, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x34, 0x00, 0x20, 0x00, 0x01, 0x00, 0x28, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x01, 0x00, 0x00, 0x00, 0x54, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01, 0x00,
+                0x04, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00, 0x05, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00,
+                0x13, 0x00, 0x00, 0x00
+        };
+    }
+
+    @Test
+    void testPagingRoundTrip() throws Exception {
+        roundTrip(MemoryMode.PAGING);
+    }
+
+    @Test
+    void testContiguousRoundTrip() throws Exception {
+        roundTrip(MemoryMode.CONTIGUOUS);
+    }
+
+    private void roundTrip(MemoryMode mode) throws Exception {
+        RV32Computer computer = new RV32Computer(MEM_SIZE, 4, mode);
+        Task parent = computer.createTask(minimalElf(), "parent");
+        Task child = computer.createTask(minimalElf(), "child");
+        parent.addChild(child);
+        child.waitFor(WaitReason.TIMER, 1234);
+        parent.getRegisters()[10] = 0xCAFE;
+        computer.getCpu().setRegister(5, 0x5A5A);
+        computer.getCpu().setProgramCounter(0x10000);
+
+        Path file = Files.createTempFile("rv32", ".snap");
+        try {
+            computer.snapshot(file);
+            assertTrue(Files.size(file) < MEM_SIZE / 4, "Zero pages must not be saved");
+
+            RV32Computer restored = RV32Computer.restore(file);
+            assertEquals(0x5A5A, restored.getCpu().getRegisters()[5]);
+            assertEquals(0x10000, restored.getCpu().getProgramCounter());
+
+            assertEquals(4, restored.getMaxTasks());
+            Kernel kernel = restored.getKernel();
+            assertEquals(4, kernel.getConfig().getMaxProcesses());
+            assertEquals(2, kernel.getAllTasks().size());
+            Task p = kernel.getTask(parent.getId());
+            Task c = kernel.getTask(child.getId());
+            assertEquals("parent", p.getName());
+            assertEquals(0xCAFE, p.getRegisters()[10]);
+            assertSame(p, c.getParent());
+            assertEquals(TaskState.WAITING, c.getState());
+            assertEquals(1234, c.getWakeupTime());
+            assertEquals(child.getId() + 1, kernel.getNextPid());
+
+            // The program text survives in the child's memory
+            kernel.getMemoryCoordinator().switchContext(c.getId());
+            assertEquals(0x00000013, restored.getMemoryManager().readWord(0x10000));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
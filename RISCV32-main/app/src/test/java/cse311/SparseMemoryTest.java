@@ -0,0 +1,55 @@
+package cse311;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SparseMemoryTest {
+
+    @Test
+    void testPagesAreCommittedOnFirstWrite() throws Exception {
+        SparseMemory m = new SparseMemory(128 * 1024 * 1024);
+        assertEquals(0, m.readWord(0x123450));
+        m.writeWord(0x200, 0); // Zero into an untouched page
+        m.writeBytes(0x3000, new byte[8192], 0, 8192); // BSS-style zeroing
+        assertEquals(0, m.getResidentBytes(), "Reads and zero writes must not commit pages");
+
+        m.setMisalignedAccessAllowed(true);
+        m.writeWord(0x1FFE, 0x11223344); // Straddles two pages
+        assertEquals(0x11223344, m.readWord(0x1FFE));
+        assertEquals(2 * 4096, m.getResidentBytes());
+        assertEquals(0x11223344, m.readWord(0x80001FFE), "High window folds onto low memory");
+    }
+
+    @Test
+    void testZeroFillReleasesPagesAndCopyOverlaps() throws Exception {
+        SparseMemory m = new SparseMemory(1024 * 1024);
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i + 1);
+        }
+        m.writeBytes(0x1000, data, 0, data.length);
+
+        m.copy(0x1000, 0x1100, data.length);
+        byte[] back = new byte[data.length];
+        m.readBytes(0x1100, back, 0, back.length);
+        assertArrayEquals(data, back);
+
+        long before = m.getResidentBytes();
+        m.fill(0x1000, 0x2000, (byte) 0);
+        assertEquals(before - 2 * 4096, m.getResidentBytes());
+        assertEquals(0, m.readByte(0x1FFF));
+
+        m.clear();
+        assertEquals(0, m.getResidentBytes());
+    }
+
+    @Test
+    void testTaskMemoryIsSparse() throws Exception {
+        VirtualMemoryManager vmm = new VirtualMemoryManager(64 * 1024 * 1024, 4);
+        assertTrue(vmm.allocateTaskMemory(1));
+        vmm.writeWord(1, VirtualMemoryManager.HEAP_START, 42);
+        assertEquals(42, vmm.readWord(1, VirtualMemoryManager.HEAP_START));
+        assertEquals(4096, vmm.getTaskMemoryStats(1).usedMemory);
+    }
+}
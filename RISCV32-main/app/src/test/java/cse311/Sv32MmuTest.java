@@ -0,0 +1,134 @@
+package cse311;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Sv32MmuTest {
+    private RV32Cpu cpu;
+    private MemoryManager memory;
+
+    private static final int ROOT = 0x10000; // Root page table
+    private static final int L2 = 0x11000; // Page table for VA 0x00400000-0x007FFFFF
+    private static final int CODE_PA = 0x20000;
+    private static final int DATA_PA = 0x21000;
+    private static final int CODE_VA = 0x00400000;
+    private static final int DATA_VA = 0x00401000;
+
+    private static final int V = 1, R = 2, W = 4, X = 8, U = 16, A = 64, D = 128;
+
+    private static final int LUI_X1_DATA = 0x004010B7; // lui x1, 0x401
+    private static final int LW_X2_0_X1 = 0x0000A103; // lw x2, 0(x1)
+    private static final int SW_X2_4_X1 = 0x0020A223; // sw x2, 4(x1)
+    private static final int LW_X3_0_X4 = 0x00022183; // lw x3, 0(x4)
+    private static final int SFENCE_VMA = 0x12000073;
+    private static final int ECALL = 0x00000073;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        memory = new MemoryManager(new SimpleMemory(1024 * 1024));
+        cpu = new RV32Cpu(memory);
+
+        memory.writeWord(ROOT + 1 * 4, pte(L2, V)); // VPN[1] = 1 -> L2 table
+        memory.writeWord(L2 + 0 * 4, pte(CODE_PA, V | R | X));
+        memory.writeWord(L2 + 1 * 4, pte(DATA_PA, V | R | W));
+        memory.writeWord(DATA_PA, 0xCAFE);
+
+        cpu.writeCSRTest(RV32Cpu.SATP, 0x80000000 | (ROOT >>> 12));
+        cpu.writeCSRTest(RV32Cpu.MTVEC, 0x100);
+    }
+
+    private static int pte(int physicalAddress, int flags) {
+        return ((physicalAddress >>> 12) << 10) | flags;
+    }
+
+    private void load(int... program) throws Exception {
+        for (int i = 0; i < program.length; i++) {
+            memory.writeWord(CODE_PA + i * 4, program[i]);
+        }
+    }
+
+    /**
+     * MRET into S-mode at the virtual code page.
+     */
+    private void enterSupervisor() {
+        int mstatus = cpu.readCSRTest(RV32Cpu.MSTATUS);
+        cpu.writeCSRTest(RV32Cpu.MSTATUS, (mstatus & ~0x1800) | (RV32Cpu.PRIVILEGE_SUPERVISOR << 11));
+        cpu.writeCSRTest(RV32Cpu.MEPC, CODE_VA);
+        cpu.testExecuteInstruction(0x30200073); // mret
+    }
+
+    @Test
+    void testTranslatedLoadAndStoreSetAccessedAndDirty() throws Exception {
+        load(LUI_X1_DATA, LW_X2_0_X1, SW_X2_4_X1, ECALL);
+        enterSupervisor();
+
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(100));
+        assertEquals(0xCAFE, cpu.getRegister(2));
+        assertEquals(0xCAFE, memory.readWord(DATA_PA + 4), "Store should land in the mapped frame");
+        assertEquals(A | D, memory.readWord(L2 + 4) & (A | D), "Walker sets A and D on the data PTE");
+        assertEquals(A, memory.readWord(L2) & (A | D), "Code page is accessed but clean");
+    }
+
+    @Test
+    void testLoadPageFaultIsRestartable() throws Exception {
+        load(LW_X3_0_X4);
+        cpu.setRegister(4, 0x00800000); // VPN[1] = 2 has no page table
+        enterSupervisor();
+
+        assertEquals(RV32Cpu.EXIT_EXCEPTION, cpu.run(100));
+        assertEquals(13, cpu.readCSRTest(RV32Cpu.MCAUSE));
+        assertEquals(0x00800000, cpu.readCSRTest(RV32Cpu.MTVAL));
+        assertEquals(CODE_VA, cpu.readCSRTest(RV32Cpu.MEPC), "EPC must point at the faulting load");
+    }
+
+    @Test
+    void testPermissionFaults() throws Exception {
+        // Store to a read-only page
+        memory.writeWord(L2 + 4, pte(DATA_PA, V | R));
+        load(LUI_X1_DATA, SW_X2_4_X1);
+        enterSupervisor();
+        assertEquals(RV32Cpu.EXIT_EXCEPTION, cpu.run(100));
+        assertEquals(15, cpu.readCSRTest(RV32Cpu.MCAUSE));
+
+        // Fetch from a page without X
+        memory.writeWord(L2, pte(CODE_PA, V | R));
+        cpu.writeCSRTest(RV32Cpu.SATP, 0x80000000 | (ROOT >>> 12));
+        enterSupervisor();
+        assertEquals(RV32Cpu.EXIT_EXCEPTION, cpu.run(100));
+        assertEquals(12, cpu.readCSRTest(RV32Cpu.MCAUSE));
+        assertEquals(CODE_VA, cpu.readCSRTest(RV32Cpu.MTVAL));
+
+        // S-mode cannot execute user pages
+        memory.writeWord(L2, pte(CODE_PA, V | R | X | U));
+        cpu.writeCSRTest(RV32Cpu.SATP, 0x80000000 | (ROOT >>> 12));
+        enterSupervisor();
+        assertEquals(RV32Cpu.EXIT_EXCEPTION, cpu.run(100));
+        assertEquals(12, cpu.readCSRTest(RV32Cpu.MCAUSE));
+    }
+
+    @Test
+    void testTlbIsOnlyFlushedBySfence() throws Exception {
+        memory.writeWord(DATA_PA + 0x1000, 0xBEEF);
+        load(LUI_X1_DATA, LW_X2_0_X1, ECALL, LW_X2_0_X1, ECALL, SFENCE_VMA, LW_X2_0_X1, ECALL);
+        enterSupervisor();
+
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(100));
+        assertEquals(0xCAFE, cpu.getRegister(2));
+
+        // Remap the data page without a fence: the stale translation is still used
+        memory.writeWord(L2 + 4, pte(DATA_PA + 0x1000, V | R | W));
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(100));
+        assertEquals(0xCAFE, cpu.getRegister(2));
+
+        assertEquals(RV32Cpu.EXIT_ECALL, cpu.run(100));
+        assertEquals(0xBEEF, cpu.getRegister(2), "SFENCE.VMA should pick up the new mapping");
+        assertTrue(cpu.getMmu().getHits() > 0);
+    }
+
+    @Test
+    void testMachineModeIsNotTranslated() throws Exception {
+        assertEquals(CODE_VA, cpu.mapAddressTest(CODE_VA));
+    }
+}
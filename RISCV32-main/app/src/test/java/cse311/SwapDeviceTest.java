@@ -0,0 +1,131 @@
+package cse311;
+
+import cse311.kernel.NonContiguous.paging.AddressSpace;
+import cse311.kernel.NonContiguous.paging.ClockPolicy;
+import cse311.kernel.NonContiguous.paging.DemandPager;
+import cse311.kernel.NonContiguous.paging.PagedMemoryManager;
+import cse311.kernel.NonContiguous.paging.SwapDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SwapDeviceTest {
+    private static final int HEAP_VA = 0x100000;
+    private static final int PAGES = 200; // Three times the frames available
+
+    private Path file;
+    private SwapDevice swap;
+    private PagedMemoryManager mm;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("rv32", ".swap");
+        swap = new SwapDevice(file, 1024);
+        mm = new PagedMemoryManager(256 * 1024); // 64 frames
+        mm.setPager(new DemandPager(mm, new ClockPolicy(mm.getTotalFrames())));
+        mm.setSwapDevice(swap);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        swap.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testOvercommittedPagesSurviveEviction() throws Exception {
+        AddressSpace as = mm.createAddressSpace(1);
+        mm.switchTo(as);
+        for (int i = 0; i < PAGES; i++) {
+            mm.writeWord(HEAP_VA + i * 4096, 0x1000 + i);
+        }
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(0x1000 + i, mm.readWord(HEAP_VA + i * 4096), "Page " + i);
+        }
+        assertTrue(swap.getSwapOuts() >= PAGES - mm.getTotalFrames());
+        assertTrue(swap.getSwapIns() > 0);
+
+        mm.destroyAddressSpace(1);
+        assertEquals(0, swap.getUsedSlots(), "Exit must release swap slots");
+    }
+
+    @Test
+    void testWriteBackWatermarkAndReadAhead() throws Exception {
+        Path asyncFile = Files.createTempFile("rv32", ".swap");
+        try (SwapDevice async = new SwapDevice(asyncFile, 1024, 32)) {
+            PagedMemoryManager paged = new PagedMemoryManager(256 * 1024);
+            DemandPager pager = new DemandPager(paged, new ClockPolicy(paged.getTotalFrames()));
+            pager.setFreeFrameWatermarks(4, 12);
+            pager.setReadAhead(4);
+            paged.setPager(pager);
+            paged.setSwapDevice(async);
+
+            paged.switchTo(paged.createAddressSpace(1));
+            for (int i = 0; i < PAGES; i++) {
+                paged.writeWord(HEAP_VA + i * 4096, 0x1000 + i);
+            }
+            assertTrue(pager.getEvictedAhead() > 0);
+            assertTrue(paged.getFreeFrameCount() >= 4, "Faults keep the low watermark free");
+
+            for (int i = 0; i < PAGES; i++) {
+                assertEquals(0x1000 + i, paged.readWord(HEAP_VA + i * 4096), "Page " + i);
+            }
+            assertTrue(pager.getReadAheadPages() > 0, "Sequential swap-ins should read ahead");
+            async.sync();
+        } finally {
+            Files.deleteIfExists(asyncFile);
+        }
+    }
+
+    @Test
+    void testCleanPagesAreDroppedWithoutIo() throws Exception {
+        mm.switchTo(mm.createAddressSpace(1));
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(0, mm.readWord(HEAP_VA + i * 4096));
+        }
+        assertEquals(0, swap.getSwapOuts());
+        assertEquals(0, mm.readWord(HEAP_VA));
+    }
+
+    @Test
+    void testForkSharesSwappedPages() throws Exception {
+        AddressSpace parent = mm.createAddressSpace(1);
+        mm.switchTo(parent);
+        for (int i = 0; i < 100; i++) {
+            mm.writeWord(HEAP_VA + i * 4096, i);
+        }
+        // Push more of the parent out, then free those frames: frames shared
+        // copy-on-write are pinned, so the child needs free ones to fault into
+        mm.switchTo(mm.createAddressSpace(3));
+        for (int i = 0; i < 30; i++) {
+            mm.writeWord(HEAP_VA + i * 4096, -1);
+        }
+        mm.destroyAddressSpace(3);
+        mm.switchTo(parent);
+        int swapped = swap.getUsedSlots();
+        assertTrue(swapped > 0);
+
+        AddressSpace child = mm.createAddressSpace(2);
+        mm.copyAddressSpace(parent, child);
+        // At most one more page goes out, to make room for the child's page table
+        assertTrue(swap.getUsedSlots() <= swapped + 1, "Fork must share swap slots, not copy them");
+
+        mm.switchTo(child);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, mm.readWord(HEAP_VA + i * 4096), "Child page " + i);
+        }
+        mm.switchTo(parent);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, mm.readWord(HEAP_VA + i * 4096), "Parent page " + i);
+        }
+
+        mm.destroyAddressSpace(1);
+        mm.destroyAddressSpace(2);
+        assertEquals(0, swap.getUsedSlots());
+    }
+}
@@ -8,6 +8,9 @@ import cse311.kernel.syscall.SystemCallHandler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SystemCallIntegrationTest {
@@ -105,4 +108,30 @@ class SystemCallIntegrationTest {
         // 4. Verify result (PID) was written back to register a0 (index 10)
         assertEquals(task.getId(), task.getRegisters()[10]);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testWriteStopsAtTerminatorOfHugeCount() throws Exception {
+        Task task = kernel.createTask(getMinimalElf(), "write_test");
+        task.restoreState(cpu);
+        memory.writeBytes(0x10008, new byte[] { 'h', 'i', 0 }, 0, 3);
+
+        int[] regs = task.getRegisters();
+        regs[17] = SystemCallHandler.SYS_WRITE;
+        regs[10] = 1; // stdout
+        regs[11] = 0x10008;
+        regs[12] = 0x7FFFFFF0; // The guest's count must not size a host buffer
+        task.restoreState(cpu);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            kernel.getSystemCallHandler().handleSystemCall(task);
+        } finally {
+            System.setOut(out);
+        }
+
+        assertEquals(2, task.getRegisters()[10]);
+        assertEquals("hi", captured.toString());
+    }
+}